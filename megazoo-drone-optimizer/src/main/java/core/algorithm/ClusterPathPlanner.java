@@ -4,20 +4,49 @@ import main.java.core.mock.MockDistanceCalculator;
 import main.java.core.models.AnimalEnclosure;
 import main.java.core.models.FoodStorage;
 import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceKernel;
+import core.services.FedSet;
+import core.services.LocationStore;
+import core.services.RemainingSet;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A clustering-based path planner optimized for large zoos (Level 4).
  * This planner groups enclosures by proximity and food type, creates efficient
  * sub-paths for each cluster, and then merges them into a complete path.
+ * 
+ * K-means depends on its initial centers, so a path can be planned from several starts,
+ * each shuffling with its own seed, in parallel. The best-scoring path wins, the lowest
+ * start on ties, so the result depends on the seed and number of starts but not on how
+ * many threads run them.
  */
 public class ClusterPathPlanner {
     
+    /**
+     * Largest cluster that is ordered exactly when an exact solver is set.
+     */
+    public static final int EXACT_CLUSTER_LIMIT = 16;
+    
     private final MockDistanceCalculator distanceCalculator;
     private final int maxClustersPerDiet; // Maximum number of clusters to create per diet type
     private final double clusterRadiusThreshold; // Distance threshold for considering enclosures in the same cluster
+    private CandidateLists candidateLists; // Optional k-NN lists to shortcut nearest-enclosure scans
+    private HeldKarpSolver exactSolver; // Optional exact ordering for small clusters
+    private final Queue<RemainingSet> pendingPool = new ConcurrentLinkedQueue<>(); // Idle scratch sets, one per concurrent attempt
+    private int starts = 1; // Seeded K-means starts per path
+    private long seed = 1; // Start i shuffles with seed + i
+    
+    // Spread of scores across starts, for the last path and summed over all paths
+    private int plannedPaths;
+    private double lastWorst;
+    private double lastMean;
+    private double lastBest;
+    private double totalGain;
     
     /**
      * Creates a ClusterPathPlanner with a specific distance calculator and clustering parameters.
@@ -51,6 +80,57 @@ public class ClusterPathPlanner {
         this.clusterRadiusThreshold = clusterRadiusThreshold;
     }
     
+    /**
+     * Use precomputed k-nearest-neighbour lists when walking a cluster.
+     * The next enclosure is then taken from the current enclosure's candidate list,
+     * and the cluster is only scanned when none of the candidates is left.
+     * 
+     * @param candidateLists candidate lists built over the same zoo, or null to always scan
+     */
+    public void setCandidateLists(CandidateLists candidateLists) {
+        this.candidateLists = candidateLists;
+        this.pendingPool.clear();
+    }
+    
+    /**
+     * Order clusters of up to {@link #EXACT_CLUSTER_LIMIT} enclosures exactly instead of
+     * nearest neighbour first. Needs candidate lists for the location IDs.
+     * 
+     * @param exactSolver the exact solver over the same zoo, or null to always walk nearest first
+     */
+    public void setExactSolver(HeldKarpSolver exactSolver) {
+        this.exactSolver = exactSolver;
+    }
+    
+    /**
+     * Set how many seeded K-means starts each path is planned from.
+     * 
+     * @param starts number of starts, at least 1
+     */
+    public void setStarts(int starts) {
+        this.starts = Math.max(1, starts);
+    }
+    
+    /**
+     * Seed the initial cluster centers; start i shuffles with seed + i.
+     * 
+     * @param seed the random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    
+    /**
+     * Get the spread of path scores across starts.
+     * 
+     * @return a one-line summary of the last path's spread and the total gain over the mean start
+     */
+    public String getStatistics() {
+        return String.format("Cluster planner: %d paths from %d starts each, last path scores %.1f / %.1f / %.1f"
+                        + " (worst / mean / best), %.1f gained over the mean start in total",
+                plannedPaths, starts, lastWorst, lastMean, lastBest, totalGain);
+    }
+    
     /**
      * Plan an optimal path using clustering approach.
      * 
@@ -58,50 +138,110 @@ public class ClusterPathPlanner {
      * @param enclosuresList List of animal enclosures that need feeding
      * @param foodStoragesList List of food storage locations
      * @param batteryCapacity Maximum distance allowed for this path
+     * @param fed Enclosures fed so far, which are skipped; the chosen path's enclosures are added
      * @return List of locations to visit in order, starting and ending with depot
      */
     public List<Location> planPath(
             Location depot,
             List<? extends Location> enclosuresList,
             List<? extends Location> foodStoragesList,
-            double batteryCapacity) {
+            double batteryCapacity,
+            FedSet fed) {
         
         // Cast to more specific types
         List<AnimalEnclosure> enclosures = castToAnimalEnclosures(enclosuresList);
         List<FoodStorage> foodStorages = castToFoodStorages(foodStoragesList);
         
-        // Filter out already fed enclosures
-        enclosures = enclosures.stream()
-                .filter(e -> !e.isFed())
-                .collect(Collectors.toList());
+        // Group the enclosures that are not fed yet by diet ordinal
+        List<List<AnimalEnclosure>> enclosuresByDiet = groupEnclosuresByDiet(enclosures, fed);
         
         // If no enclosures to feed, return just the depot
-        if (enclosures.isEmpty()) {
+        if (enclosuresByDiet.stream().allMatch(List::isEmpty)) {
             return Collections.singletonList(depot);
         }
         
-        // Group enclosures by diet
-        Map<Character, List<AnimalEnclosure>> enclosuresByDiet = groupEnclosuresByDiet(enclosures);
+        // Look up the food storage for each diet ordinal
+        FoodStorage[] foodStorageByDiet = createFoodStorageTable(foodStorages);
+        
+        // Cluster and route from every start in parallel, then keep the best
+        Attempt[] attempts = new Attempt[starts];
+        IntStream.range(0, starts).parallel().forEach(start -> {
+            RemainingSet pending = borrowPending();
+            try {
+                attempts[start] = buildPath(depot, enclosuresByDiet, foodStorageByDiet, batteryCapacity,
+                        new Random(seed + start), pending);
+            } finally {
+                if (pending != null) {
+                    pendingPool.offer(pending);
+                }
+            }
+        });
+        
+        Attempt best = attempts[0];
+        double worst = attempts[0].score;
+        double sum = 0;
+        for (Attempt attempt : attempts) {
+            if (attempt.score > best.score) {
+                best = attempt;
+            }
+            worst = Math.min(worst, attempt.score);
+            sum += attempt.score;
+        }
+        recordSpread(worst, sum / starts, best.score);
+        
+        // Mark enclosures as fed only on the chosen path
+        for (AnimalEnclosure enclosure : best.fed) {
+            fed.add(enclosure);
+        }
+        return best.path;
+    }
+    
+    /**
+     * Take an idle scratch set for the cluster members still to visit, or make one. Sets span
+     * the whole location store, so they are kept for the next path instead of reallocated;
+     * the pool only grows to the number of attempts that ever ran at once.
+     * 
+     * @return a scratch set, or null without candidate lists
+     */
+    private RemainingSet borrowPending() {
+        if (candidateLists == null) {
+            return null;
+        }
+        RemainingSet pending = pendingPool.poll();
+        return pending != null ? pending : new RemainingSet(candidateLists.getStore());
+    }
+    
+    /**
+     * Plan one path from one set of initial cluster centers, without marking anything as fed.
+     * 
+     * @param depot Starting and ending location
+     * @param enclosuresByDiet Unfed enclosures per diet ordinal
+     * @param foodStorageByDiet Food storage per diet ordinal
+     * @param batteryCapacity Maximum distance allowed for this path
+     * @param random Source of the initial cluster centers
+     * @param pending Scratch set for the cluster members still to visit, reused by every
+     *        cluster of this attempt, or null without candidate lists
+     * @return the path, the enclosures it feeds, and its score
+     */
+    private Attempt buildPath(
+            Location depot,
+            List<List<AnimalEnclosure>> enclosuresByDiet,
+            FoodStorage[] foodStorageByDiet,
+            double batteryCapacity,
+            Random random,
+            RemainingSet pending) {
         
-        // Create a map of food type to food storage
-        Map<Character, FoodStorage> foodStorageMap = createFoodStorageMap(foodStorages);
+        List<AnimalEnclosure> fed = new ArrayList<>();
         
         // Create clusters for each diet type
-        Map<Character, List<Cluster>> clustersByDiet = new HashMap<>();
-        for (char diet : enclosuresByDiet.keySet()) {
+        List<Cluster> allClusters = new ArrayList<>();
+        for (int diet = 0; diet < LocationStore.DIETS.length; diet++) {
             List<AnimalEnclosure> dietEnclosures = enclosuresByDiet.get(diet);
             if (!dietEnclosures.isEmpty()) {
-                List<Cluster> clusters = createClusters(dietEnclosures, diet);
-                clustersByDiet.put(diet, clusters);
+                allClusters.addAll(createClusters(dietEnclosures, LocationStore.DIETS[diet], random));
             }
         }
         
-        // Sort clusters by score (importance/distance ratio)
-        List<Cluster> allClusters = new ArrayList<>();
-        for (List<Cluster> clusters : clustersByDiet.values()) {
-            allClusters.addAll(clusters);
-        }
-        
         // Sort clusters by total importance
         allClusters.sort(Comparator.comparing(Cluster::getTotalImportance).reversed());
         
@@ -116,7 +256,7 @@ public class ClusterPathPlanner {
         // Process clusters in order of importance
         for (Cluster cluster : allClusters) {
             char diet = cluster.getDiet();
-            FoodStorage foodStorage = foodStorageMap.get(diet);
+            FoodStorage foodStorage = foodStorageByDiet[LocationStore.dietOrdinal(diet)];
             
             if (foodStorage == null) {
                 continue; // Skip if no food storage for this diet
@@ -146,7 +286,8 @@ public class ClusterPathPlanner {
                     currentLocation,
                     cluster.getEnclosures(),
                     remainingBattery,
-                    depot);
+                    depot,
+                    pending);
             
             // If the cluster path is empty, skip this cluster
             if (clusterPath.isEmpty() || clusterPath.size() <= 1) {
@@ -170,20 +311,21 @@ public class ClusterPathPlanner {
                 remainingBattery -= distanceToNext;
                 currentLocation = next;
                 
-                // Mark enclosure as fed if it's an animal enclosure
+                // Record the enclosure as fed if it's an animal enclosure
                 if (next instanceof AnimalEnclosure) {
-                    ((AnimalEnclosure) next).setFed(true);
+                    fed.add((AnimalEnclosure) next);
                 }
             }
             
             // Check if we need to return to depot
-            double distanceToDepot = distanceCalculator.calculateDroneDistance(
+            double distanceToDepot = distanceCalculator.calculateReturnDistance(
                     currentLocation, depot);
             
             if (distanceToDepot > remainingBattery) {
                 // Not enough battery to return to depot, path is invalid
                 // Return just the depot to indicate an invalid path
-                return Collections.singletonList(depot);
+                return new Attempt(Collections.singletonList(depot), Collections.emptyList(),
+                        Double.NEGATIVE_INFINITY);
             }
         }
         
@@ -192,7 +334,23 @@ public class ClusterPathPlanner {
             completePath.add(depot);
         }
         
-        return completePath;
+        // Score = sum(importance * 1000) - distance
+        double importance = 0;
+        for (AnimalEnclosure enclosure : fed) {
+            importance += enclosure.getImportance();
+        }
+        double score = importance * 1000 - distanceCalculator.calculatePathDistance(completePath);
+        return new Attempt(completePath, fed, score);
+    }
+    
+    private void recordSpread(double worst, double mean, double best) {
+        plannedPaths++;
+        lastWorst = worst;
+        lastMean = mean;
+        lastBest = best;
+        if (!Double.isInfinite(worst)) {
+            totalGain += best - mean;
+        }
     }
     
     /**
@@ -200,9 +358,10 @@ public class ClusterPathPlanner {
      * 
      * @param enclosures List of enclosures to cluster
      * @param diet Diet type of these enclosures
+     * @param random Source of the initial cluster centers
      * @return List of clusters
      */
-    private List<Cluster> createClusters(List<AnimalEnclosure> enclosures, char diet) {
+    private List<Cluster> createClusters(List<AnimalEnclosure> enclosures, char diet, Random random) {
         if (enclosures.isEmpty()) {
             return Collections.emptyList();
         }
@@ -215,7 +374,7 @@ public class ClusterPathPlanner {
         }
         
         // Use K-means clustering
-        List<Cluster> clusters = initializeClusters(enclosures, diet);
+        List<Cluster> clusters = initializeClusters(enclosures, diet, random);
         
         // Run K-means for a fixed number of iterations
         boolean changed = true;
@@ -239,15 +398,16 @@ public class ClusterPathPlanner {
      * 
      * @param enclosures List of enclosures
      * @param diet Diet type
+     * @param random Source of the shuffle, seeded per start
      * @return List of initialized clusters
      */
-    private List<Cluster> initializeClusters(List<AnimalEnclosure> enclosures, char diet) {
+    private List<Cluster> initializeClusters(List<AnimalEnclosure> enclosures, char diet, Random random) {
         int numClusters = Math.min(maxClustersPerDiet, enclosures.size());
         List<Cluster> clusters = new ArrayList<>(numClusters);
         
         // Shuffle enclosures to randomize initial centers
         List<AnimalEnclosure> shuffled = new ArrayList<>(enclosures);
-        Collections.shuffle(shuffled);
+        Collections.shuffle(shuffled, random);
         
         // Create clusters with initial centers
         for (int i = 0; i < numClusters; i++) {
@@ -276,24 +436,22 @@ public class ClusterPathPlanner {
         
         boolean anyChanged = false;
         
+        // Copy the centers into columns so each assignment is one planar kernel scan
+        int numClusters = clusters.size();
+        int[] centerXs = new int[numClusters];
+        int[] centerYs = new int[numClusters];
+        for (int i = 0; i < numClusters; i++) {
+            centerXs[i] = clusters.get(i).getCenterX();
+            centerYs[i] = clusters.get(i).getCenterY();
+        }
+        
         // Assign each enclosure to the nearest cluster
         for (AnimalEnclosure enclosure : enclosures) {
-            Cluster nearestCluster = null;
-            double minDistance = Double.MAX_VALUE;
-            
-            for (Cluster cluster : clusters) {
-                double distance = calculateDistance(
-                        enclosure.getX(), enclosure.getY(),
-                        cluster.getCenterX(), cluster.getCenterY());
-                
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    nearestCluster = cluster;
-                }
-            }
+            int nearest = DistanceKernel.nearestPlanar(
+                    enclosure.getX(), enclosure.getY(), centerXs, centerYs, numClusters);
             
-            if (nearestCluster != null) {
-                nearestCluster.addEnclosure(enclosure);
+            if (nearest >= 0) {
+                clusters.get(nearest).addEnclosure(enclosure);
                 anyChanged = true;
             }
         }
@@ -339,46 +497,95 @@ public class ClusterPathPlanner {
      * @param enclosures Enclosures in the cluster
      * @param remainingBattery Remaining battery capacity
      * @param depot Depot location (for battery check)
+     * @param pending Scratch set for the members still to visit, or null without candidate lists
      * @return Optimal path through the cluster
      */
     private List<Location> planClusterPath(
             Location startLocation,
             List<AnimalEnclosure> enclosures,
             double remainingBattery,
-            Location depot) {
+            Location depot,
+            RemainingSet pending) {
         
         List<Location> path = new ArrayList<>();
         path.add(startLocation);
         
-        List<AnimalEnclosure> remainingEnclosures = new ArrayList<>(enclosures);
+        // Small clusters get their best order from the exact solver
+        if (exactSolver != null && candidateLists != null && enclosures.size() <= EXACT_CLUSTER_LIMIT) {
+            List<Location> exactPath = planExactClusterPath(startLocation, enclosures, remainingBattery, depot);
+            if (exactPath != null) {
+                return exactPath;
+            }
+        }
+        
+        // Lay the cluster out as coordinate columns for the one-to-many distance kernel
+        int flightHeight = distanceCalculator.getMaxFlightHeight();
+        int count = enclosures.size();
+        AnimalEnclosure[] remaining = enclosures.toArray(new AnimalEnclosure[0]);
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        double[] vertical = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = remaining[i].getX();
+            ys[i] = remaining[i].getY();
+            vertical[i] = Math.abs(flightHeight - remaining[i].getZ());
+        }
+        double[] scratch = new double[count];
+        
+        // Store IDs of the cluster members still to visit, for candidate-list lookups. The
+        // set's slots line up with the columns; without IDs for every member, scan instead
+        LocationStore store = pending != null ? candidateLists.getStore() : null;
+        if (pending != null) {
+            pending.clear();
+            for (int i = 0; i < count && store != null; i++) {
+                int id = store.idOf(remaining[i]);
+                if (id < 0 || !pending.add(id)) {
+                    store = null;
+                }
+            }
+        }
+        
         Location currentLocation = startLocation;
         double batteryLeft = remainingBattery;
         
-        while (!remainingEnclosures.isEmpty()) {
-            // Find the nearest enclosure
-            AnimalEnclosure nearest = null;
-            double minDistance = Double.MAX_VALUE;
+        while (count > 0) {
+            int nearestIndex = -1;
+            double distanceToNext = 0;
             
-            for (AnimalEnclosure enclosure : remainingEnclosures) {
-                double distance = distanceCalculator.calculateDroneDistance(
-                        currentLocation, enclosure);
-                
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    nearest = enclosure;
+            // The candidate list is sorted and covers all enclosures of this diet, so the
+            // first pending candidate is the nearest cluster member
+            int currentId = store != null ? store.idOf(currentLocation) : -1;
+            if (currentId >= 0 && store.isEnclosure(currentId)) {
+                for (int rank = 0; rank < candidateLists.getK(); rank++) {
+                    int candidate = candidateLists.neighbour(currentId, rank);
+                    if (candidate < 0) {
+                        break;
+                    }
+                    if (pending.contains(candidate)) {
+                        nearestIndex = pending.indexOf(candidate);
+                        distanceToNext = candidateLists.neighbourDistance(currentId, rank);
+                        break;
+                    }
                 }
             }
             
-            if (nearest == null) {
-                break;
+            // Otherwise scan the whole cluster for the nearest enclosure
+            if (nearestIndex < 0) {
+                nearestIndex = DistanceKernel.argmin(
+                        currentLocation.getX(), currentLocation.getY(),
+                        Math.abs(flightHeight - currentLocation.getZ()),
+                        xs, ys, vertical, 0, count, scratch);
+                
+                if (nearestIndex < 0) {
+                    break;
+                }
+                distanceToNext = scratch[nearestIndex];
             }
             
-            // Calculate distance to next enclosure
-            double distanceToNext = distanceCalculator.calculateDroneDistance(
-                    currentLocation, nearest);
+            AnimalEnclosure nearest = remaining[nearestIndex];
             
             // Calculate distance from next enclosure to depot
-            double distanceToDepot = distanceCalculator.calculateDroneDistance(
+            double distanceToDepot = distanceCalculator.calculateReturnDistance(
                     nearest, depot);
             
             // Check if we have enough battery to visit next enclosure and return to depot
@@ -390,51 +597,92 @@ public class ClusterPathPlanner {
             path.add(nearest);
             batteryLeft -= distanceToNext;
             currentLocation = nearest;
-            remainingEnclosures.remove(nearest);
+            
+            // Remove it from the columns by moving the last member into its slot,
+            // as the pending set does
+            int last = --count;
+            remaining[nearestIndex] = remaining[last];
+            xs[nearestIndex] = xs[last];
+            ys[nearestIndex] = ys[last];
+            vertical[nearestIndex] = vertical[last];
+            if (store != null) {
+                pending.remove(store.idOf(nearest));
+            }
         }
         
         return path;
     }
     
     /**
-     * Calculate Euclidean distance between two points.
+     * Order a small cluster with the exact solver. Each visit leaves enough battery to get
+     * back to the depot, and enclosures that do not pay for their detour are left out.
+     * 
+     * @return the path from the start location, or null if some location has no store ID
      */
-    private double calculateDistance(int x1, int y1, int x2, int y2) {
-        return Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
+    private List<Location> planExactClusterPath(
+            Location startLocation,
+            List<AnimalEnclosure> enclosures,
+            double remainingBattery,
+            Location depot) {
+        
+        LocationStore store = candidateLists.getStore();
+        int start = store.idOf(startLocation);
+        if (start < 0) {
+            return null;
+        }
+        int[] ids = new int[enclosures.size()];
+        double[] home = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = store.idOf(enclosures.get(i));
+            if (ids[i] < 0) {
+                return null;
+            }
+            home[i] = distanceCalculator.calculateReturnDistance(enclosures.get(i), depot);
+        }
+        
+        List<Location> path = new ArrayList<>();
+        path.add(startLocation);
+        for (int i : exactSolver.orderPath(start, ids, home, remainingBattery)) {
+            path.add(enclosures.get(i));
+        }
+        return path;
     }
     
     /**
-     * Group enclosures by their diet type.
+     * Group enclosures by their diet ordinal, in one pass that also drops fed enclosures.
      */
-    private Map<Character, List<AnimalEnclosure>> groupEnclosuresByDiet(
-            List<AnimalEnclosure> enclosures) {
+    private List<List<AnimalEnclosure>> groupEnclosuresByDiet(
+            List<AnimalEnclosure> enclosures, FedSet fed) {
         
-        Map<Character, List<AnimalEnclosure>> enclosuresByDiet = new HashMap<>();
+        List<List<AnimalEnclosure>> enclosuresByDiet = new ArrayList<>(LocationStore.DIETS.length);
+        for (int diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            enclosuresByDiet.add(new ArrayList<>());
+        }
         
         for (AnimalEnclosure enclosure : enclosures) {
-            char diet = enclosure.getDiet();
-            enclosuresByDiet.computeIfAbsent(diet, k -> new ArrayList<>())
-                    .add(enclosure);
+            if (!fed.contains(enclosure)) {
+                enclosuresByDiet.get(LocationStore.dietOrdinal(enclosure.getDiet())).add(enclosure);
+            }
         }
         
         return enclosuresByDiet;
     }
     
     /**
-     * Create a map of food type to food storage.
+     * Create a table of food storage per diet ordinal.
      * If multiple storages exist for a food type, selects the first one.
      */
-    private Map<Character, FoodStorage> createFoodStorageMap(List<FoodStorage> foodStorages) {
-        Map<Character, FoodStorage> foodStorageMap = new HashMap<>();
+    private FoodStorage[] createFoodStorageTable(List<FoodStorage> foodStorages) {
+        FoodStorage[] foodStorageByDiet = new FoodStorage[LocationStore.DIETS.length];
         
         for (FoodStorage storage : foodStorages) {
-            char foodType = storage.getFoodType();
-            if (!foodStorageMap.containsKey(foodType)) {
-                foodStorageMap.put(foodType, storage);
+            byte diet = LocationStore.dietOrdinal(storage.getFoodType());
+            if (foodStorageByDiet[diet] == null) {
+                foodStorageByDiet[diet] = storage;
             }
         }
         
-        return foodStorageMap;
+        return foodStorageByDiet;
     }
     
     /**
@@ -463,6 +711,21 @@ public class ClusterPathPlanner {
         return result;
     }
     
+    /**
+     * One start's path, the enclosures it feeds, and its score.
+     */
+    private static class Attempt {
+        private final List<Location> path;
+        private final List<AnimalEnclosure> fed;
+        private final double score;
+        
+        Attempt(List<Location> path, List<AnimalEnclosure> fed, double score) {
+            this.path = path;
+            this.fed = fed;
+            this.score = score;
+        }
+    }
+    
     /**
      * Inner class representing a cluster of enclosures.
      */
@@ -3,8 +3,12 @@ package core.algorithm;
 import main.java.core.mock.MockDistanceCalculator;
 import main.java.core.models.AnimalEnclosure;
 import main.java.core.models.Deadzone;
-import main.java.core.models.FoodStorage;
 import core.models.Location;
+import core.services.DeadzoneGrid;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.FedSet;
+import core.services.VisibilityGraph;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -19,7 +23,9 @@ import java.util.stream.Collectors;
  */
 public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
     
-    private final List<Deadzone> deadzones;
+    private final DeadzoneGrid deadzoneGrid;
+    private final VisibilityGraph visibilityGraph;
+    private final EdgeOracle edgeOracle;
     private final MockDistanceCalculator distanceCalculator;
     
     /**
@@ -29,9 +35,24 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
      * @param deadzones the list of deadzones to avoid
      */
     public DeadzoneAvoidancePathPlanner(MockDistanceCalculator distanceCalculator, List<Deadzone> deadzones) {
+        this(distanceCalculator, new EdgeOracle(
+                distanceCalculator instanceof DistanceOracle ? ((DistanceOracle) distanceCalculator).getStore() : null,
+                new VisibilityGraph(deadzones, distanceCalculator.getMaxFlightHeight())));
+    }
+    
+    /**
+     * Creates a DeadzoneAvoidancePathPlanner that shares an edge oracle with other components,
+     * so each edge is only tested against the deadzones once.
+     * 
+     * @param distanceCalculator the calculator to use for distance measurements
+     * @param edgeOracle cached deadzone facts per edge
+     */
+    public DeadzoneAvoidancePathPlanner(MockDistanceCalculator distanceCalculator, EdgeOracle edgeOracle) {
         super(distanceCalculator);
         this.distanceCalculator = distanceCalculator;
-        this.deadzones = new ArrayList<>(deadzones);
+        this.edgeOracle = edgeOracle;
+        this.visibilityGraph = edgeOracle.getGraph();
+        this.deadzoneGrid = visibilityGraph.getGrid();
     }
     
     /**
@@ -41,9 +62,7 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
      * @param deadzones the list of deadzones to avoid
      */
     public DeadzoneAvoidancePathPlanner(int maxFlightHeight, List<Deadzone> deadzones) {
-        super(maxFlightHeight);
-        this.distanceCalculator = new MockDistanceCalculator(maxFlightHeight);
-        this.deadzones = new ArrayList<>(deadzones);
+        this(new MockDistanceCalculator(maxFlightHeight), deadzones);
     }
     
     /**
@@ -53,6 +72,8 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
      * @param enclosuresList List of animal enclosures that need feeding
      * @param foodStoragesList List of food storage locations
      * @param batteryCapacity Maximum distance allowed for this path
+     * @param fed Enclosures fed so far, which are skipped; the base path's enclosures are
+     *            added, including any the detours later leave out. Null plans over every given enclosure
      * @return List of locations to visit in order, starting and ending with depot
      */
     @Override
@@ -60,13 +81,14 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
             Location depot,
             List<? extends Location> enclosuresList,
             List<? extends Location> foodStoragesList,
-            double batteryCapacity) {
+            double batteryCapacity,
+            FedSet fed) {
         
         // First, generate a path using the base greedy algorithm
-        List<Location> basePath = super.planPath(depot, enclosuresList, foodStoragesList, batteryCapacity);
+        List<Location> basePath = super.planPath(depot, enclosuresList, foodStoragesList, batteryCapacity, fed);
         
         // If there are no deadzones or the path is empty, return the base path
-        if (deadzones.isEmpty() || basePath.size() <= 1) {
+        if (deadzoneGrid.size() == 0 || basePath.size() <= 1) {
             return basePath;
         }
         
@@ -103,12 +125,7 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
      * @return true if the path intersects with a deadzone, false otherwise
      */
     private boolean intersectsDeadzone(Location start, Location end) {
-        for (Deadzone deadzone : deadzones) {
-            if (deadzone.intersectsLine(start.getX(), start.getY(), end.getX(), end.getY())) {
-                return true;
-            }
-        }
-        return false;
+        return edgeOracle.isBlocked(start, end);
     }
     
     /**
@@ -136,7 +153,7 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
     
     /**
      * Create a safe path that avoids deadzones.
-     * Uses waypoints to route around deadzones.
+     * Blocked legs are replaced by the shortest detour through the visibility graph.
      * 
      * @param originalPath The original path that may intersect deadzones
      * @param batteryCapacity Maximum battery capacity
@@ -146,12 +163,10 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
         List<Location> safePath = new ArrayList<>();
         safePath.add(originalPath.get(0)); // Start with depot
         
-        Location currentLocation = originalPath.get(0);
+        Location depot = originalPath.get(0);
+        Location currentLocation = depot;
         double remainingBattery = batteryCapacity;
         
-        // Track current food type
-        Character currentFoodType = null;
-        
         // Process each location in the original path
         for (int i = 1; i < originalPath.size(); i++) {
             Location nextLocation = originalPath.get(i);
@@ -160,90 +175,43 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
             if (!intersectsDeadzone(currentLocation, nextLocation)) {
                 double distance = distanceCalculator.calculateDroneDistance(currentLocation, nextLocation);
                 
-                // Check if we have enough battery
-                if (distance > remainingBattery) {
+                // Check if we have enough battery to get there and still make it home
+                if (distance + reserveToReturn(nextLocation, depot) > remainingBattery) {
                     break; // Not enough battery, end path
                 }
                 
-                // Update food type if visiting food storage
-                if (nextLocation instanceof FoodStorage) {
-                    currentFoodType = ((FoodStorage) nextLocation).getFoodType();
-                }
-                
                 // Add location to path
                 safePath.add(nextLocation);
                 remainingBattery -= distance;
                 currentLocation = nextLocation;
             } else {
-                // Path intersects deadzone - find waypoints to avoid it
-                List<Location> waypoints = findWaypointsAroundDeadzones(currentLocation, nextLocation);
-                
-                // Check if we can reach all waypoints and the next location
-                double totalWaypointDistance = 0;
-                Location waypointStart = currentLocation;
-                
-                boolean canReachThroughWaypoints = true;
-                for (Location waypoint : waypoints) {
-                    double waypointDistance = distanceCalculator.calculateDroneDistance(waypointStart, waypoint);
-                    totalWaypointDistance += waypointDistance;
-                    
-                    if (totalWaypointDistance > remainingBattery) {
-                        canReachThroughWaypoints = false;
-                        break;
-                    }
-                    
-                    waypointStart = waypoint;
-                }
-                
-                // Final leg from last waypoint to next location
-                if (canReachThroughWaypoints) {
-                    double finalLegDistance = distanceCalculator.calculateDroneDistance(
-                            waypointStart, nextLocation);
-                    
-                    if (totalWaypointDistance + finalLegDistance > remainingBattery) {
-                        canReachThroughWaypoints = false;
-                    }
-                }
-                
-                if (canReachThroughWaypoints) {
-                    // Add all waypoints to path
-                    for (Location waypoint : waypoints) {
-                        double distance = distanceCalculator.calculateDroneDistance(currentLocation, waypoint);
-                        safePath.add(waypoint);
-                        remainingBattery -= distance;
-                        currentLocation = waypoint;
-                    }
-                    
-                    // Then add the next location
-                    double distance = distanceCalculator.calculateDroneDistance(currentLocation, nextLocation);
-                    
-                    // Update food type if visiting food storage
-                    if (nextLocation instanceof FoodStorage) {
-                        currentFoodType = ((FoodStorage) nextLocation).getFoodType();
-                    }
-                    
-                    safePath.add(nextLocation);
-                    remainingBattery -= distance;
-                    currentLocation = nextLocation;
-                } else {
-                    // Skip this location if we can't reach it safely
+                // Path intersects deadzone - skip this location if it is walled in or the
+                // detour is too long (the cached length avoids building rejected detours)
+                double detourLength = edgeOracle.length(currentLocation, nextLocation);
+                if (detourLength + reserveToReturn(nextLocation, depot) > remainingBattery) {
                     continue;
                 }
+                
+                // Take the shortest detour from the visibility graph
+                VisibilityGraph.Route detour = edgeOracle.route(currentLocation, nextLocation);
+                safePath.addAll(detour.getWaypoints());
+                safePath.add(nextLocation);
+                remainingBattery -= detour.getLength();
+                currentLocation = nextLocation;
             }
         }
         
         // Ensure path ends at depot
-        if (safePath.size() > 1 && !safePath.get(safePath.size() - 1).equals(originalPath.get(0))) {
-            Location depot = originalPath.get(0);
-            double distanceToDepot = distanceCalculator.calculateDroneDistance(
-                    safePath.get(safePath.size() - 1), depot);
+        if (safePath.size() > 1 && !safePath.get(safePath.size() - 1).equals(depot)) {
+            VisibilityGraph.Route home = visibilityGraph.shortestPath(safePath.get(safePath.size() - 1), depot);
             
-            if (distanceToDepot <= remainingBattery) {
+            if (home != null && home.getLength() <= remainingBattery) {
+                safePath.addAll(home.getWaypoints());
                 safePath.add(depot);
             } else {
                 // Not enough battery to return to depot - path is invalid
                 // Return just the depot to indicate an invalid path
-                return new ArrayList<>(List.of(originalPath.get(0)));
+                return new ArrayList<>(List.of(depot));
             }
         }
         
@@ -251,94 +219,40 @@ public class DeadzoneAvoidancePathPlanner extends GreedyPathPlanner {
     }
     
     /**
-     * Find waypoints to navigate around deadzones between two locations.
+     * Battery that must be left after reaching a location so the drone can still get home.
      * 
-     * @param start Starting location
-     * @param end Ending location
-     * @return List of waypoints to navigate safely
+     * @param location the location about to be visited
+     * @param depot the depot the path ends at
+     * @return the return cost, or 0 if the location is the depot itself
      */
-    private List<Location> findWaypointsAroundDeadzones(Location start, Location end) {
-        List<Location> waypoints = new ArrayList<>();
-        
-        // Find deadzones that intersect the path
-        List<Deadzone> intersectingDeadzones = new ArrayList<>();
-        for (Deadzone deadzone : deadzones) {
-            if (deadzone.intersectsLine(start.getX(), start.getY(), end.getX(), end.getY())) {
-                intersectingDeadzones.add(deadzone);
-            }
-        }
-        
-        if (intersectingDeadzones.isEmpty()) {
-            return waypoints; // No intersections, return empty list
-        }
-        
-        // For each intersecting deadzone, create waypoints to navigate around it
-        for (Deadzone deadzone : intersectingDeadzones) {
-            // Find directions to avoid the deadzone
-            int x = deadzone.getX();
-            int y = deadzone.getY();
-            int r = deadzone.getRadius();
-            
-            // Calculate angle from deadzone center to end point
-            double angleToEnd = Math.atan2(end.getY() - y, end.getX() - x);
-            
-            // Create two waypoints to navigate around the deadzone
-            // Use perpendicular directions to create a detour
-            double detourAngle1 = angleToEnd + Math.PI / 2;  // 90 degrees clockwise
-            double detourAngle2 = angleToEnd - Math.PI / 2;  // 90 degrees counterclockwise
-            
-            // Calculate waypoint positions (add buffer of 5m to radius)
-            int buffer = 5;
-            int waypointDistance = r + buffer;
-            
-            int wx1 = x + (int)(waypointDistance * Math.cos(detourAngle1));
-            int wy1 = y + (int)(waypointDistance * Math.sin(detourAngle1));
-            int wx2 = x + (int)(waypointDistance * Math.cos(detourAngle2));
-            int wy2 = y + (int)(waypointDistance * Math.sin(detourAngle2));
-            
-            // Create waypoint locations (use max flight height for z)
-            MockLocation waypoint1 = new MockLocation(wx1, wy1, 50);
-            MockLocation waypoint2 = new MockLocation(wx2, wy2, 50);
-            
-            // Check which waypoint is closer to the end point
-            double dist1 = Math.hypot(end.getX() - wx1, end.getY() - wy1);
-            double dist2 = Math.hypot(end.getX() - wx2, end.getY() - wy2);
-            
-            // Add the closer waypoint to our list
-            if (dist1 <= dist2) {
-                waypoints.add(waypoint1);
-            } else {
-                waypoints.add(waypoint2);
-            }
-        }
-        
-        return waypoints;
+    private double reserveToReturn(Location location, Location depot) {
+        return location.equals(depot) ? 0 : distanceCalculator.calculateReturnDistance(location, depot);
     }
     
     /**
-     * Mock Location class for creating waypoints.
+     * Get the grid used for deadzone intersection checks.
+     * 
+     * @return the deadzone grid
      */
-    private static class MockLocation implements Location {
-        private final int x, y, z;
-        
-        public MockLocation(int x, int y, int z) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
-        }
-        
-        @Override
-        public int getX() { return x; }
-        
-        @Override
-        public int getY() { return y; }
-        
-        @Override
-        public int getZ() { return z; }
-        
-        @Override
-        public String toString() {
-            return "Waypoint(" + x + "," + y + "," + z + ")";
-        }
+    public DeadzoneGrid getDeadzoneGrid() {
+        return deadzoneGrid;
+    }
+    
+    /**
+     * Get the edge oracle holding cached deadzone facts per edge.
+     * 
+     * @return the edge oracle
+     */
+    public EdgeOracle getEdgeOracle() {
+        return edgeOracle;
+    }
+    
+    /**
+     * Get the visibility graph used to route around deadzones.
+     * 
+     * @return the visibility graph
+     */
+    public VisibilityGraph getVisibilityGraph() {
+        return visibilityGraph;
     }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package core.algorithm;
+
+import core.services.EdgeOracle;
+
+/**
+ * A planning stage that can price edges around deadzones. Without an edge oracle it uses
+ * straight drone distances; with one, a blocked edge costs the length of its shortest
+ * detour and the paths the stage returns fly that detour through waypoints.
+ */
+public interface EdgePriced {
+    
+    /**
+     * Attach the zoo's cached deadzone facts per edge.
+     * 
+     * @param edgeOracle the edge oracle, or null to use straight distances
+     */
+    void setEdgeOracle(EdgeOracle edgeOracle);
+}
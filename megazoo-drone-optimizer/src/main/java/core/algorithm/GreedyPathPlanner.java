@@ -4,14 +4,13 @@ import main.java.core.mock.MockDistanceCalculator;
 import main.java.core.models.AnimalEnclosure;
 import main.java.core.models.FoodStorage;
 import core.models.Location;
+import core.services.FedSet;
+import core.services.LocationStore;
 import main.java.core.services.DistanceCalculator;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * A greedy implementation for drone path planning.
@@ -54,21 +53,37 @@ public class GreedyPathPlanner {
             List<? extends Location> enclosuresList,
             List<? extends Location> foodStoragesList,
             double batteryCapacity) {
+        return planPath(depot, enclosuresList, foodStoragesList, batteryCapacity, null);
+    }
+    
+    /**
+     * Plan an optimal path to feed animals within battery constraints, skipping the
+     * enclosures a solution has already fed.
+     * 
+     * @param depot Starting and ending location
+     * @param enclosuresList List of animal enclosures that need feeding
+     * @param foodStoragesList List of food storage locations
+     * @param batteryCapacity Maximum distance allowed for this path
+     * @param fed Enclosures fed so far, which are skipped; the path's enclosures are added.
+     *            Null plans over every given enclosure
+     * @return List of locations to visit in order, starting and ending with depot
+     */
+    public List<Location> planPath(
+            Location depot,
+            List<? extends Location> enclosuresList,
+            List<? extends Location> foodStoragesList,
+            double batteryCapacity,
+            FedSet fed) {
         
         // Cast to more specific types for easier handling
         List<AnimalEnclosure> enclosures = castToAnimalEnclosures(enclosuresList);
         List<FoodStorage> foodStorages = castToFoodStorages(foodStoragesList);
         
-        // Filter out already fed enclosures
-        enclosures = enclosures.stream()
-                .filter(e -> !e.isFed())
-                .collect(Collectors.toList());
+        // Group the enclosures that are not fed yet by diet ordinal
+        List<List<AnimalEnclosure>> enclosuresByDiet = groupEnclosuresByDiet(enclosures, fed);
         
-        // Group enclosures by diet/food type
-        Map<Character, List<AnimalEnclosure>> enclosuresByDiet = groupEnclosuresByDiet(enclosures);
-        
-        // Create a map of food type to food storage
-        Map<Character, FoodStorage> foodStorageMap = createFoodStorageMap(foodStorages);
+        // Look up the food storage for each diet ordinal
+        FoodStorage[] foodStorageByDiet = createFoodStorageTable(foodStorages);
         
         // Build the optimal path
         List<Location> path = new ArrayList<>();
@@ -79,13 +94,13 @@ public class GreedyPathPlanner {
         Character currentFoodType = null;
         
         // Process each diet group
-        for (char diet : new char[]{'c', 'h', 'o'}) {
-            if (!enclosuresByDiet.containsKey(diet) || enclosuresByDiet.get(diet).isEmpty()) {
+        for (int diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            if (enclosuresByDiet.get(diet).isEmpty()) {
                 continue; // Skip if no enclosures of this diet
             }
             
             // Get the food storage for this diet
-            FoodStorage foodStorage = foodStorageMap.get(diet);
+            FoodStorage foodStorage = foodStorageByDiet[diet];
             if (foodStorage == null) {
                 continue; // Skip if no food storage for this diet
             }
@@ -119,7 +134,7 @@ public class GreedyPathPlanner {
                 
                 // Calculate distance from enclosure back to depot
                 double distanceToDepot = ((MockDistanceCalculator) distanceCalculator)
-                        .calculateDroneDistance(enclosure, depot);
+                        .calculateReturnDistance(enclosure, depot);
                 
                 // Check if we have enough battery to visit enclosure and return to depot
                 if (distanceToEnclosure + distanceToDepot > remainingBattery) {
@@ -132,7 +147,9 @@ public class GreedyPathPlanner {
                 currentLocation = enclosure;
                 
                 // Mark enclosure as fed
-                enclosure.setFed(true);
+                if (fed != null) {
+                    fed.add(enclosure);
+                }
             }
         }
         
@@ -228,43 +245,47 @@ public class GreedyPathPlanner {
     }
     
     /**
-     * Group enclosures by their diet type.
+     * Group enclosures by their diet ordinal, in one pass that also drops fed enclosures.
      * 
      * @param enclosures the enclosures to group
-     * @return map of diet type to list of enclosures
+     * @param fed enclosures to leave out, or null to keep all
+     * @return list of enclosures per diet ordinal, empty for diets with none
      */
-    private Map<Character, List<AnimalEnclosure>> groupEnclosuresByDiet(
-            List<AnimalEnclosure> enclosures) {
+    private List<List<AnimalEnclosure>> groupEnclosuresByDiet(
+            List<AnimalEnclosure> enclosures, FedSet fed) {
         
-        Map<Character, List<AnimalEnclosure>> enclosuresByDiet = new HashMap<>();
+        List<List<AnimalEnclosure>> enclosuresByDiet = new ArrayList<>(LocationStore.DIETS.length);
+        for (int diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            enclosuresByDiet.add(new ArrayList<>());
+        }
         
         for (AnimalEnclosure enclosure : enclosures) {
-            char diet = enclosure.getDiet();
-            enclosuresByDiet.computeIfAbsent(diet, k -> new ArrayList<>())
-                    .add(enclosure);
+            if (fed == null || !fed.contains(enclosure)) {
+                enclosuresByDiet.get(LocationStore.dietOrdinal(enclosure.getDiet())).add(enclosure);
+            }
         }
         
         return enclosuresByDiet;
     }
     
     /**
-     * Create a map of food type to food storage.
+     * Create a table of food storage per diet ordinal.
      * If multiple storages exist for a food type, selects the first one.
      * 
      * @param foodStorages the list of food storages
-     * @return map of food type to food storage
+     * @return food storage per diet ordinal, null for diets without one
      */
-    private Map<Character, FoodStorage> createFoodStorageMap(List<FoodStorage> foodStorages) {
-        Map<Character, FoodStorage> foodStorageMap = new HashMap<>();
+    private FoodStorage[] createFoodStorageTable(List<FoodStorage> foodStorages) {
+        FoodStorage[] foodStorageByDiet = new FoodStorage[LocationStore.DIETS.length];
         
         for (FoodStorage storage : foodStorages) {
-            char foodType = storage.getFoodType();
-            if (!foodStorageMap.containsKey(foodType)) {
-                foodStorageMap.put(foodType, storage);
+            byte diet = LocationStore.dietOrdinal(storage.getFoodType());
+            if (foodStorageByDiet[diet] == null) {
+                foodStorageByDiet[diet] = storage;
             }
         }
         
-        return foodStorageMap;
+        return foodStorageByDiet;
     }
     
     /**
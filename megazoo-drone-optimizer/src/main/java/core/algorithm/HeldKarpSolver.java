@@ -0,0 +1,324 @@
+package core.algorithm;
+
+import core.models.AnimalEnclosure;
+import core.models.Location;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.FedSet;
+import core.services.LocationStore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Exact path planning for a handful of enclosures, by Held-Karp dynamic programming over
+ * (visited set, last enclosure). The drone carries the food of the last enclosure it fed,
+ * so the carried diet follows from the state: moving to an enclosure of another diet goes
+ * through the best storage of that diet, and moving within a diet flies direct.
+ * 
+ * The objective is prize-collecting, sum(importance * 1000) - distance, so the best path
+ * may skip enclosures that cost more to reach than they feed. Sets are evaluated one
+ * layer of equal size at a time, every set of a layer in parallel, keeping only two
+ * layers of distances; a byte per state records the predecessor to rebuild the path.
+ * Time grows as 2^n * n^2 and memory as 2^n * n, so n is capped at {@link #MAX_ENCLOSURES}.
+ */
+public class HeldKarpSolver implements EdgePriced {
+    
+    /**
+     * Most enclosures one call can take; 20 needs about 100 MB.
+     */
+    public static final int MAX_ENCLOSURES = 20;
+    
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+    
+    private final RouteCosts costs;
+    private final LocationStore store;
+    
+    /**
+     * Creates a HeldKarpSolver over a zoo's distance oracle.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     */
+    public HeldKarpSolver(DistanceOracle distanceOracle) {
+        this.costs = new RouteCosts(distanceOracle);
+        this.store = distanceOracle.getStore();
+    }
+    
+    /**
+     * Sum detour lengths in the dynamic program, so the visiting order is optimal for the
+     * distance actually flown around the deadzones.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+    }
+    
+    /**
+     * Plan the highest-scoring single path from the depot back to the depot, loading food
+     * at the zoo's storages. Enclosures on the returned path are added to the fed set.
+     * 
+     * @param enclosures the enclosures to plan for, at most {@link #MAX_ENCLOSURES}; fed ones are skipped
+     * @param batteryCapacity Maximum distance allowed for the path
+     * @param fed enclosures fed so far
+     * @return the optimal path, or just the depot if no enclosure is worth visiting
+     * @throws IllegalArgumentException if there are more than {@link #MAX_ENCLOSURES} enclosures
+     */
+    public List<Location> planPath(
+            List<? extends AnimalEnclosure> enclosures, double batteryCapacity, FedSet fed) {
+        int depot = store.depotId();
+        int[] members = enclosures.stream()
+                .mapToInt(store::idOf)
+                .filter(id -> id >= 0 && !fed.contains(id))
+                .distinct()
+                .toArray();
+        checkSize(members.length);
+        
+        int[] storages = IntStream.range(0, store.foodStorageCount())
+                .map(s -> store.firstFoodStorageId() + s)
+                .toArray();
+        double[] home = new double[members.length];
+        for (int i = 0; i < members.length; i++) {
+            home[i] = costs.cost(members[i], depot);
+        }
+        
+        int[] order = solve(depot, members, storages, home, batteryCapacity, true);
+        if (order.length == 0) {
+            return Collections.singletonList(store.location(depot));
+        }
+        int[] route = new int[order.length + 2];
+        route[0] = depot;
+        System.arraycopy(order, 0, route, 1, order.length);
+        route[route.length - 1] = depot;
+        
+        List<Location> path = costs.toPath(route);
+        if (path == null) {
+            return Collections.singletonList(store.location(depot));
+        }
+        for (int id : order) {
+            if (store.isEnclosure(id)) {
+                fed.add(id);
+            }
+        }
+        return path;
+    }
+    
+    /**
+     * Find the highest-scoring order of enclosures on a path from a given start, for a drone
+     * that is already carrying their food. Each visit must leave enough battery to get home,
+     * and the way home from the last enclosure counts against the score, so the order ends
+     * close to home.
+     * 
+     * @param start location ID the path starts from
+     * @param enclosures IDs of the enclosures that may be visited, at most {@link #MAX_ENCLOSURES}
+     * @param home cost to get home from each enclosure, aligned with the enclosures
+     * @param battery battery left at the start, including the way home
+     * @return positions in the enclosures array, in visiting order; unprofitable or
+     *         unreachable enclosures are left out
+     * @throws IllegalArgumentException if there are more than {@link #MAX_ENCLOSURES} enclosures
+     */
+    public int[] orderPath(int start, int[] enclosures, double[] home, double battery) {
+        checkSize(enclosures.length);
+        int[] order = solve(start, enclosures, new int[0], home, battery, true);
+        
+        // Without storages the route holds only enclosures; map them back to positions
+        int[] positions = new int[order.length];
+        for (int p = 0; p < order.length; p++) {
+            int id = order[p];
+            int i = 0;
+            while (enclosures[i] != id) {
+                i++;
+            }
+            positions[p] = i;
+        }
+        return positions;
+    }
+    
+    private static void checkSize(int n) {
+        if (n > MAX_ENCLOSURES) {
+            throw new IllegalArgumentException(
+                    "Exact planning takes at most " + MAX_ENCLOSURES + " enclosures, got " + n);
+        }
+    }
+    
+    /**
+     * The dynamic program itself.
+     * 
+     * @param start location ID the path starts from; its diet is what the drone carries
+     * @param enclosures IDs of the enclosures that may be visited
+     * @param storages IDs of the storages the drone may load food at
+     * @param home cost to get home from each enclosure
+     * @param battery maximum distance including the way home
+     * @param countHome whether the way home counts against the score
+     * @return the location IDs visited after the start, storages included, home excluded
+     */
+    private int[] solve(int start, int[] enclosures, int[] storages, double[] home,
+                        double battery, boolean countHome) {
+        
+        int n = enclosures.length;
+        if (n == 0) {
+            return new int[0];
+        }
+        
+        // Cheapest move into each enclosure from the start and from every other enclosure,
+        // through a storage when the diet changes
+        double[] prize = new double[n];
+        double[] first = new double[n];
+        int[] firstVia = new int[n];
+        double[][] step = new double[n][n];
+        int[][] stepVia = new int[n][n];
+        for (int j = 0; j < n; j++) {
+            prize[j] = store.importance(enclosures[j]) * 1000;
+            first[j] = move(start, store.diet(start), enclosures[j], storages, firstVia, j);
+            for (int i = 0; i < n; i++) {
+                step[i][j] = i == j ? INFINITY
+                        : move(enclosures[i], store.diet(enclosures[i]), enclosures[j], storages, stepVia[i], j);
+            }
+        }
+        
+        // Sets grouped by size; rank[set] is the set's position within its layer
+        int sets = 1 << n;
+        int[][] layers = new int[n + 1][];
+        int[] rank = new int[sets];
+        int[] filled = new int[n + 1];
+        for (int k = 0; k <= n; k++) {
+            layers[k] = new int[binomial(n, k)];
+        }
+        for (int set = 0; set < sets; set++) {
+            int k = Integer.bitCount(set);
+            rank[set] = filled[k];
+            layers[k][filled[k]++] = set;
+        }
+        
+        // distance[rank * n + last] for the current layer, parent[k][rank * n + last] for all
+        byte[][] parent = new byte[n + 1][];
+        double[] previous = new double[n * n];
+        Arrays.fill(previous, INFINITY);
+        parent[1] = new byte[n * n];
+        for (int j = 0; j < n; j++) {
+            previous[rank[1 << j] * n + j] = first[j] <= battery ? first[j] : INFINITY;
+            parent[1][rank[1 << j] * n + j] = -1;
+        }
+        
+        int bestSet = 0;
+        int bestLast = -1;
+        double bestScore = 0;
+        for (int k = 1; k <= n; k++) {
+            double[] distance = previous;
+            if (k > 1) {
+                int[] layer = layers[k];
+                double[] before = previous;
+                byte[] from = new byte[layer.length * n];
+                double[] current = new double[layer.length * n];
+                IntStream.range(0, layer.length).parallel().forEach(r -> {
+                    int set = layer[r];
+                    for (int j = 0; j < n; j++) {
+                        int slot = r * n + j;
+                        current[slot] = INFINITY;
+                        if ((set & (1 << j)) == 0) {
+                            continue;
+                        }
+                        int rest = set ^ (1 << j);
+                        int base = rank[rest] * n;
+                        for (int i = 0; i < n; i++) {
+                            if ((rest & (1 << i)) == 0) {
+                                continue;
+                            }
+                            double d = before[base + i] + step[i][j];
+                            if (d < current[slot]) {
+                                current[slot] = d;
+                                from[slot] = (byte) i;
+                            }
+                        }
+                        if (current[slot] > battery) {
+                            current[slot] = INFINITY;
+                        }
+                    }
+                });
+                parent[k] = from;
+                distance = current;
+                previous = current;
+            }
+            
+            // Best finished path over this layer, fitting the battery with the way home
+            int[] layer = layers[k];
+            for (int r = 0; r < layer.length; r++) {
+                int set = layer[r];
+                double collected = 0;
+                for (int j = 0; j < n; j++) {
+                    if ((set & (1 << j)) != 0) {
+                        collected += prize[j];
+                    }
+                }
+                for (int j = 0; j < n; j++) {
+                    double d = distance[r * n + j];
+                    if (d == INFINITY || d + home[j] > battery) {
+                        continue;
+                    }
+                    double score = collected - d - (countHome ? home[j] : 0);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestSet = set;
+                        bestLast = j;
+                    }
+                }
+            }
+        }
+        
+        // Walk the predecessors back and put the storages in front of diet changes
+        int count = Integer.bitCount(bestSet);
+        int[] visits = new int[count];
+        for (int set = bestSet, last = bestLast, p = count - 1; p >= 0; p--) {
+            visits[p] = last;
+            int previousLast = parent[p + 1][rank[set] * n + last];
+            set ^= 1 << last;
+            last = previousLast;
+        }
+        int[] route = new int[2 * count];
+        int length = 0;
+        for (int p = 0; p < count; p++) {
+            int j = visits[p];
+            int via = p == 0 ? firstVia[j] : stepVia[visits[p - 1]][j];
+            if (via >= 0) {
+                route[length++] = via;
+            }
+            route[length++] = enclosures[j];
+        }
+        return Arrays.copyOf(route, length);
+    }
+    
+    /**
+     * Cost of moving from a location, carrying a diet, to an enclosure: direct if the
+     * enclosure takes that diet, otherwise through the storage of its diet that costs least.
+     * The storage used, or -1, is written to via[slot].
+     */
+    private double move(int from, byte carried, int to, int[] storages, int[] via, int slot) {
+        via[slot] = -1;
+        if (store.diet(to) == carried) {
+            return costs.cost(from, to);
+        }
+        double best = INFINITY;
+        for (int s : storages) {
+            if (store.diet(s) != store.diet(to)) {
+                continue;
+            }
+            double cost = costs.cost(from, s) + costs.cost(s, to);
+            if (cost < best) {
+                best = cost;
+                via[slot] = s;
+            }
+        }
+        return best;
+    }
+    
+    private static int binomial(int n, int k) {
+        long result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+        return (int) result;
+    }
+}
@@ -0,0 +1,745 @@
+package core.algorithm;
+
+import core.models.AnimalEnclosure;
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.FedSet;
+import core.services.LocationStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Prize-collecting cheapest insertion. Feeding an enclosure earns importance * 1000 and
+ * costs the detour it adds to a path, so an enclosure is only worth adding while that
+ * net gain is positive. Every unfed enclosure keeps its best insertion over all open paths
+ * in an indexed priority queue, and enclosures are inserted by decreasing net gain until
+ * no positive-gain insertion fits a battery.
+ * 
+ * An enclosure can go next to a fed k-NN neighbour, next to a storage of its diet, or in
+ * a new storage block in front of a storage or the final depot. Storage and depot visits
+ * are only tried where their edges pass near the enclosure, found on a grid, so pricing an
+ * enclosure does not grow with the number of paths. While battery swaps are left it can
+ * also open a new path. After an insertion only the enclosures that have the
+ * inserted one or its path neighbours as candidates are re-priced; others whose best
+ * insertion lies on the changed path are checked again when they reach the top of the queue.
+ */
+public class InsertionPlanner implements EdgePriced {
+    
+    private final RouteCosts costs;
+    private final CandidateLists candidateLists;
+    private final LocationStore store;
+    
+    // Enclosures that list each enclosure as a candidate, indexed like the candidate lists
+    private int[] reverseStart;
+    private int[] reverse;
+    
+    /**
+     * Creates an InsertionPlanner over a zoo's distance oracle and candidate lists.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     * @param candidateLists candidate lists built over the same location store
+     */
+    public InsertionPlanner(DistanceOracle distanceOracle, CandidateLists candidateLists) {
+        this.costs = new RouteCosts(distanceOracle);
+        this.candidateLists = candidateLists;
+        this.store = distanceOracle.getStore();
+    }
+    
+    /**
+     * Price insertions by detour length. The straight distance stays a lower bound, so
+     * candidates are still pruned before any detour is looked up.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+    }
+    
+    /**
+     * Insert unfed enclosures into the given paths, and into new paths while fewer than
+     * maxPaths exist. Inserted enclosures are added to the fed set.
+     * 
+     * @param paths the paths planned so far, each starting and ending at the depot
+     * @param enclosures the enclosures to insert; fed ones are skipped
+     * @param batteryCapacity Maximum distance allowed per path
+     * @param maxPaths maximum number of paths, counting the given ones
+     * @param fed enclosures fed so far
+     * @return the paths with enclosures inserted; unchanged paths are returned as is
+     */
+    public List<List<Location>> insert(
+            List<List<Location>> paths,
+            List<? extends AnimalEnclosure> enclosures,
+            double batteryCapacity,
+            int maxPaths,
+            FedSet fed) {
+        
+        Search search = new Search(paths, enclosures, fed, batteryCapacity, maxPaths);
+        search.run();
+        return search.result(fed);
+    }
+    
+    /**
+     * Build the reverse candidate lists once: for every enclosure, the enclosures that
+     * have it among their k nearest neighbours.
+     */
+    private synchronized void buildReverseLists() {
+        if (reverse != null) {
+            return;
+        }
+        int first = store.firstEnclosureId();
+        int count = store.enclosureCount();
+        int k = candidateLists.getK();
+        
+        int[] start = new int[count + 1];
+        for (int e = first; e < first + count; e++) {
+            for (int rank = 0; rank < k; rank++) {
+                int j = candidateLists.neighbour(e, rank);
+                if (j < 0) {
+                    break;
+                }
+                start[j - first + 1]++;
+            }
+        }
+        for (int e = 0; e < count; e++) {
+            start[e + 1] += start[e];
+        }
+        
+        int[] fill = Arrays.copyOf(start, count);
+        int[] lists = new int[start[count]];
+        for (int e = first; e < first + count; e++) {
+            for (int rank = 0; rank < k; rank++) {
+                int j = candidateLists.neighbour(e, rank);
+                if (j < 0) {
+                    break;
+                }
+                lists[fill[j - first]++] = e;
+            }
+        }
+        reverseStart = start;
+        reverse = lists;
+    }
+    
+    /**
+     * Paths as doubly linked lists of nodes, plus the best insertion of every unfed enclosure.
+     * A node holds one visit; storages and the depot can have many nodes, enclosures on a
+     * path have exactly one.
+     */
+    private class Search {
+        
+        private static final int NEW_PATH = -1;
+        
+        private final List<List<Location>> paths;
+        private final double capacity;
+        private int emptyPaths;
+        
+        // Node pool
+        private int[] location;
+        private int[] next;
+        private int[] previous;
+        private int[] pathOf;
+        private byte[] carried;
+        private double[] edgeCost;
+        private int nodes;
+        
+        // Nodes a storage block can be opened in front of: storage visits and final depots
+        private boolean[] boundary;
+        
+        // Edges into a boundary or out of a storage, by the node they leave
+        private final GapGrid gaps;
+        
+        // Per path
+        private final List<Integer> heads = new ArrayList<>();
+        private double[] lengths = new double[16];
+        private final List<Boolean> changed = new ArrayList<>();
+        private final List<List<Integer>> inserted = new ArrayList<>();
+        
+        // Per location ID
+        private final int[] nodeOf;
+        private final double[] gain;
+        private final int[] after;
+        private final int[] storage;
+        private final GainQueue queue;
+        private final int[] members;
+        
+        Search(List<List<Location>> paths, List<? extends AnimalEnclosure> enclosures, FedSet fed,
+                double capacity, int maxPaths) {
+            this.paths = paths;
+            this.capacity = capacity;
+            this.emptyPaths = Math.max(0, maxPaths - paths.size());
+            
+            int visits = 0;
+            int[][] routes = new int[paths.size()][];
+            for (int r = 0; r < routes.length; r++) {
+                routes[r] = costs.toRoute(paths.get(r));
+                visits += routes[r].length;
+            }
+            int capacityHint = visits + 4 * enclosures.size() + 4;
+            location = new int[capacityHint];
+            next = new int[capacityHint];
+            previous = new int[capacityHint];
+            pathOf = new int[capacityHint];
+            carried = new byte[capacityHint];
+            edgeCost = new double[capacityHint];
+            boundary = new boolean[capacityHint];
+            gaps = new GapGrid(store, store.enclosureCount() / 8);
+            
+            nodeOf = new int[store.size()];
+            Arrays.fill(nodeOf, -1);
+            for (int[] route : routes) {
+                addPath(route);
+            }
+            
+            members = enclosures.stream()
+                    .mapToInt(store::idOf)
+                    .filter(id -> id >= 0 && nodeOf[id] < 0 && !fed.contains(id))
+                    .distinct()
+                    .sorted()
+                    .toArray();
+            
+            gain = new double[store.size()];
+            after = new int[store.size()];
+            storage = new int[store.size()];
+            queue = new GainQueue(store.size(), gain);
+        }
+        
+        /**
+         * Link a route of location IDs in as a new path, recording which enclosures it feeds.
+         */
+        private int addPath(int[] route) {
+            int path = heads.size();
+            double length = 0;
+            byte diet = LocationStore.NO_DIET;
+            int last = -1;
+            for (int p = 0; p < route.length; p++) {
+                int id = route[p];
+                if (store.isFoodStorage(id)) {
+                    diet = store.diet(id);
+                }
+                int node = newNode(id, path, diet);
+                if (last < 0) {
+                    heads.add(node);
+                } else {
+                    link(last, node);
+                    length += edgeCost[last];
+                }
+                if (store.isEnclosure(id) && store.diet(id) == diet) {
+                    nodeOf[id] = node;
+                }
+                if (store.isFoodStorage(id) || (p == route.length - 1 && p > 0)) {
+                    boundary[node] = true;
+                }
+                last = node;
+            }
+            for (int node = heads.get(path); node >= 0; node = next[node]) {
+                fileGap(node);
+            }
+            if (path == lengths.length) {
+                lengths = Arrays.copyOf(lengths, path * 2);
+            }
+            lengths[path] = length;
+            changed.add(false);
+            inserted.add(new ArrayList<>());
+            return path;
+        }
+        
+        private int newNode(int id, int path, byte diet) {
+            if (nodes == location.length) {
+                int grown = nodes * 2;
+                location = Arrays.copyOf(location, grown);
+                next = Arrays.copyOf(next, grown);
+                previous = Arrays.copyOf(previous, grown);
+                pathOf = Arrays.copyOf(pathOf, grown);
+                carried = Arrays.copyOf(carried, grown);
+                edgeCost = Arrays.copyOf(edgeCost, grown);
+                boundary = Arrays.copyOf(boundary, grown);
+            }
+            location[nodes] = id;
+            pathOf[nodes] = path;
+            carried[nodes] = diet;
+            next[nodes] = -1;
+            previous[nodes] = -1;
+            return nodes++;
+        }
+        
+        private void link(int from, int to) {
+            next[from] = to;
+            previous[to] = from;
+            edgeCost[from] = costs.cost(location[from], location[to]);
+        }
+        
+        /**
+         * File the edge out of a node on the gap grid if a storage block can open on it,
+         * after the node's links changed.
+         */
+        private void fileGap(int node) {
+            gaps.remove(node);
+            int to = next[node];
+            if (to >= 0 && (boundary[to] || store.isFoodStorage(location[node]))) {
+                gaps.add(node, location[node], location[to]);
+            }
+        }
+        
+        void run() {
+            if (members.length == 0) {
+                return;
+            }
+            buildReverseLists();
+            
+            IntStream.range(0, members.length).parallel().forEach(m -> evaluate(members[m]));
+            for (int e : members) {
+                if (gain[e] > 0) {
+                    queue.add(e);
+                }
+            }
+            
+            while (!queue.isEmpty()) {
+                int e = queue.peek();
+                evaluate(e);
+                if (gain[e] <= 0) {
+                    queue.remove(e);
+                    continue;
+                }
+                
+                // The stored gain may be stale; only insert once it is still the best
+                queue.update(e);
+                if (queue.peek() != e) {
+                    continue;
+                }
+                queue.remove(e);
+                apply(e);
+            }
+        }
+        
+        /**
+         * Find the enclosure's best insertion and its net gain over all open paths.
+         */
+        private void evaluate(int e) {
+            double prize = store.importance(e) * 1000;
+            byte diet = store.diet(e);
+            gain[e] = Double.NEGATIVE_INFINITY;
+            
+            // Next to a fed neighbour of the same diet
+            for (int rank = 0; rank < candidateLists.getK(); rank++) {
+                int j = candidateLists.neighbour(e, rank);
+                if (j < 0) {
+                    break;
+                }
+                int node = nodeOf[j];
+                if (node >= 0) {
+                    consider(e, prize, previous[node], -1);
+                    consider(e, prize, node, -1);
+                }
+            }
+            
+            // Right after a storage of its diet, at the end of a block of its diet,
+            // or in a new block of its own in front of a storage or the final depot,
+            // on the storage and depot edges nearest to it
+            gaps.forEachNear(store.x(e), store.y(e), candidateLists.getK(), node -> {
+                if (store.isFoodStorage(location[node]) && carried[node] == diet) {
+                    consider(e, prize, node, -1);
+                }
+                if (!boundary[next[node]]) {
+                    return;
+                }
+                if (carried[node] == diet) {
+                    consider(e, prize, node, -1);
+                    return;
+                }
+                for (int rank = 0; rank < candidateLists.getStoragesPerEnclosure(); rank++) {
+                    int s = candidateLists.nearestStorage(e, rank);
+                    if (s < 0) {
+                        break;
+                    }
+                    consider(e, prize, node, s);
+                }
+            });
+            
+            // A new path of its own
+            if (emptyPaths > 0) {
+                int depot = store.depotId();
+                double tail = costs.cost(e, depot);
+                for (int rank = 0; rank < candidateLists.getStoragesPerEnclosure(); rank++) {
+                    int s = candidateLists.nearestStorage(e, rank);
+                    if (s < 0) {
+                        break;
+                    }
+                    double length = costs.cost(depot, s) + costs.cost(s, e) + tail;
+                    if (length <= capacity && prize - length > gain[e]) {
+                        gain[e] = prize - length;
+                        after[e] = NEW_PATH;
+                        storage[e] = s;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Price inserting the enclosure, behind storage s if s is not -1, after a node.
+         */
+        private void consider(int e, double prize, int node, int s) {
+            int a = location[node];
+            int b = location[next[node]];
+            double slack = capacity - lengths[pathOf[node]];
+            
+            // Skip the exact costs when even the straight-line detour cannot win
+            double lower = s < 0
+                    ? costs.lowerBound(a, e) + costs.lowerBound(e, b) - edgeCost[node]
+                    : costs.lowerBound(a, s) + costs.lowerBound(s, e) + costs.lowerBound(e, b) - edgeCost[node];
+            if (lower > slack || prize - lower <= gain[e]) {
+                return;
+            }
+            
+            double delta = s < 0
+                    ? costs.cost(a, e) + costs.cost(e, b) - edgeCost[node]
+                    : costs.cost(a, s) + costs.cost(s, e) + costs.cost(e, b) - edgeCost[node];
+            if (delta <= slack && prize - delta > gain[e]) {
+                gain[e] = prize - delta;
+                after[e] = node;
+                storage[e] = s;
+            }
+        }
+        
+        /**
+         * Insert the enclosure at its best position, then re-price the enclosures that
+         * have it or its new path neighbours as candidates.
+         */
+        private void apply(int e) {
+            int neighbourBefore;
+            int neighbourAfter;
+            double prize = store.importance(e) * 1000;
+            if (after[e] == NEW_PATH) {
+                int depot = store.depotId();
+                int path = addPath(new int[]{depot, storage[e], e, depot});
+                emptyPaths--;
+                changed.set(path, true);
+                inserted.get(path).add(e);
+                neighbourBefore = -1;
+                neighbourAfter = -1;
+            } else {
+                int a = after[e];
+                int b = next[a];
+                int path = pathOf[a];
+                int from = a;
+                if (storage[e] >= 0) {
+                    int s = newNode(storage[e], path, store.diet(storage[e]));
+                    boundary[s] = true;
+                    link(from, s);
+                    fileGap(from);
+                    from = s;
+                }
+                int node = newNode(e, path, carried[from]);
+                link(from, node);
+                link(node, b);
+                fileGap(from);
+                fileGap(node);
+                nodeOf[e] = node;
+                lengths[path] += prize - gain[e];
+                changed.set(path, true);
+                inserted.get(path).add(e);
+                neighbourBefore = location[a];
+                neighbourAfter = location[b];
+            }
+            
+            reprice(e);
+            if (neighbourBefore >= 0 && store.isEnclosure(neighbourBefore)) {
+                reprice(neighbourBefore);
+            }
+            if (neighbourAfter >= 0 && store.isEnclosure(neighbourAfter)) {
+                reprice(neighbourAfter);
+            }
+        }
+        
+        /**
+         * Re-price the unfed enclosures that list this enclosure as a candidate.
+         */
+        private void reprice(int id) {
+            int offset = id - store.firstEnclosureId();
+            for (int r = reverseStart[offset]; r < reverseStart[offset + 1]; r++) {
+                int x = reverse[r];
+                if (nodeOf[x] >= 0 || !isMember(x)) {
+                    continue;
+                }
+                evaluate(x);
+                if (gain[x] > 0) {
+                    queue.addOrUpdate(x);
+                } else if (queue.contains(x)) {
+                    queue.remove(x);
+                }
+            }
+        }
+        
+        private boolean isMember(int id) {
+            return Arrays.binarySearch(members, id) >= 0;
+        }
+        
+        /**
+         * Turn the changed paths back into locations and add what they feed to the fed set.
+         */
+        List<List<Location>> result(FedSet fed) {
+            List<List<Location>> result = new ArrayList<>(heads.size());
+            for (int path = 0; path < heads.size(); path++) {
+                List<Location> original = path < paths.size() ? paths.get(path) : null;
+                if (!changed.get(path)) {
+                    result.add(original);
+                    continue;
+                }
+                
+                List<Integer> route = new ArrayList<>();
+                for (int node = heads.get(path); node >= 0; node = next[node]) {
+                    route.add(location[node]);
+                }
+                List<Location> improved = costs.toPath(route.stream().mapToInt(Integer::intValue).toArray());
+                if (improved == null) {
+                    if (original != null) {
+                        result.add(original);
+                    }
+                    continue;
+                }
+                result.add(improved);
+                for (int e : inserted.get(path)) {
+                    fed.add(e);
+                }
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * Uniform grid over the zoo holding gaps, edges named by the node they leave. Each gap
+     * is filed under the cells of both its ends, so a ring search from an enclosure finds
+     * the edges that pass near it whichever end is close.
+     */
+    private static class GapGrid {
+        
+        private final int[] xs;
+        private final int[] ys;
+        private final int minX;
+        private final int minY;
+        private final int cellSize;
+        private final int columns;
+        private final int rows;
+        private final int[] head;
+        
+        // Per entry, two per gap: its cell (-1 when not filed) and list links
+        private int[] cell = new int[0];
+        private int[] nextEntry = new int[0];
+        private int[] previousEntry = new int[0];
+        
+        GapGrid(LocationStore store, int cells) {
+            this.xs = store.xs();
+            this.ys = store.ys();
+            int loX = Integer.MAX_VALUE, loY = Integer.MAX_VALUE;
+            int hiX = Integer.MIN_VALUE, hiY = Integer.MIN_VALUE;
+            for (int id = 0; id < store.size(); id++) {
+                loX = Math.min(loX, xs[id]);
+                loY = Math.min(loY, ys[id]);
+                hiX = Math.max(hiX, xs[id]);
+                hiY = Math.max(hiY, ys[id]);
+            }
+            double area = (double) (hiX - loX + 1) * (hiY - loY + 1);
+            this.minX = loX;
+            this.minY = loY;
+            this.cellSize = (int) Math.max(1, Math.ceil(Math.sqrt(area / Math.max(1, cells))));
+            this.columns = (hiX - loX) / cellSize + 1;
+            this.rows = (hiY - loY) / cellSize + 1;
+            this.head = new int[columns * rows];
+            Arrays.fill(head, -1);
+        }
+        
+        void add(int gap, int from, int to) {
+            if (2 * gap + 1 >= cell.length) {
+                int grown = Math.max(64, 2 * (2 * gap + 2));
+                int old = cell.length;
+                cell = Arrays.copyOf(cell, grown);
+                nextEntry = Arrays.copyOf(nextEntry, grown);
+                previousEntry = Arrays.copyOf(previousEntry, grown);
+                Arrays.fill(cell, old, grown, -1);
+            }
+            int first = cellOf(xs[from], ys[from]);
+            int second = cellOf(xs[to], ys[to]);
+            file(2 * gap, first);
+            if (second != first) {
+                file(2 * gap + 1, second);
+            }
+        }
+        
+        void remove(int gap) {
+            if (2 * gap + 1 < cell.length) {
+                unfile(2 * gap);
+                unfile(2 * gap + 1);
+            }
+        }
+        
+        /**
+         * Pass the gaps in the rings of cells around a point to the action, ring by ring,
+         * until at least the wanted number has been seen. A gap near the point through
+         * both ends may be passed twice.
+         */
+        void forEachNear(int x, int y, int want, IntConsumer action) {
+            int centerColumn = Math.min(columns - 1, Math.max(0, (x - minX) / cellSize));
+            int centerRow = Math.min(rows - 1, Math.max(0, (y - minY) / cellSize));
+            int maxRing = Math.max(columns, rows);
+            int seen = 0;
+            for (int ring = 0; ring <= maxRing && seen < want; ring++) {
+                for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                    if (row < 0 || row >= rows) {
+                        continue;
+                    }
+                    boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                    int step = edgeRow ? 1 : 2 * ring;
+                    for (int column = centerColumn - ring; column <= centerColumn + ring; column += step) {
+                        if (column < 0 || column >= columns) {
+                            continue;
+                        }
+                        for (int entry = head[row * columns + column]; entry >= 0; entry = nextEntry[entry]) {
+                            action.accept(entry >> 1);
+                            seen++;
+                        }
+                    }
+                }
+            }
+        }
+        
+        private int cellOf(int x, int y) {
+            return ((y - minY) / cellSize) * columns + (x - minX) / cellSize;
+        }
+        
+        private void file(int entry, int target) {
+            cell[entry] = target;
+            previousEntry[entry] = -1;
+            nextEntry[entry] = head[target];
+            if (head[target] >= 0) {
+                previousEntry[head[target]] = entry;
+            }
+            head[target] = entry;
+        }
+        
+        private void unfile(int entry) {
+            int target = cell[entry];
+            if (target < 0) {
+                return;
+            }
+            if (previousEntry[entry] >= 0) {
+                nextEntry[previousEntry[entry]] = nextEntry[entry];
+            } else {
+                head[target] = nextEntry[entry];
+            }
+            if (nextEntry[entry] >= 0) {
+                previousEntry[nextEntry[entry]] = previousEntry[entry];
+            }
+            cell[entry] = -1;
+        }
+    }
+    
+    /**
+     * Indexed binary max-heap of location IDs keyed by their net gain, so a single
+     * entry can be re-prioritised in O(log n). Ties go to the lower ID.
+     */
+    private static class GainQueue {
+        
+        private final int[] heap;
+        private final int[] position;
+        private final double[] key;
+        private int size;
+        
+        GainQueue(int capacity, double[] key) {
+            this.heap = new int[capacity];
+            this.position = new int[capacity];
+            this.key = key;
+            Arrays.fill(position, -1);
+        }
+        
+        boolean isEmpty() {
+            return size == 0;
+        }
+        
+        boolean contains(int id) {
+            return position[id] >= 0;
+        }
+        
+        int peek() {
+            return heap[0];
+        }
+        
+        void add(int id) {
+            heap[size] = id;
+            position[id] = size;
+            siftUp(size++);
+        }
+        
+        void addOrUpdate(int id) {
+            if (contains(id)) {
+                update(id);
+            } else {
+                add(id);
+            }
+        }
+        
+        /**
+         * Restore heap order after the key of an entry changed either way.
+         */
+        void update(int id) {
+            siftDown(siftUp(position[id]));
+        }
+        
+        void remove(int id) {
+            int slot = position[id];
+            position[id] = -1;
+            size--;
+            if (slot == size) {
+                return;
+            }
+            heap[slot] = heap[size];
+            position[heap[slot]] = slot;
+            siftDown(siftUp(slot));
+        }
+        
+        private boolean before(int a, int b) {
+            return key[a] > key[b] || key[a] == key[b] && a < b;
+        }
+        
+        private int siftUp(int slot) {
+            int id = heap[slot];
+            while (slot > 0) {
+                int parent = (slot - 1) / 2;
+                if (!before(id, heap[parent])) {
+                    break;
+                }
+                heap[slot] = heap[parent];
+                position[heap[slot]] = slot;
+                slot = parent;
+            }
+            heap[slot] = id;
+            position[id] = slot;
+            return slot;
+        }
+        
+        private void siftDown(int slot) {
+            int id = heap[slot];
+            while (true) {
+                int child = 2 * slot + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!before(heap[child], id)) {
+                    break;
+                }
+                heap[slot] = heap[child];
+                position[heap[slot]] = slot;
+                slot = child;
+            }
+            heap[slot] = id;
+            position[id] = slot;
+        }
+    }
+}
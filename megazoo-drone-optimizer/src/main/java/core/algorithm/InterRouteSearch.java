@@ -0,0 +1,470 @@
+package core.algorithm;
+
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Local search across battery paths: moves enclosures between paths rather than within one.
+ * Every move joins an enclosure to one of its k nearest same-diet neighbours from the
+ * {@link CandidateLists} that lies on another path:
+ * - relocate: move a chain of up to MAX_SEGMENT enclosures into the other path,
+ * - swap / CROSS-exchange: trade chains of up to MAX_SEGMENT enclosures between the paths,
+ * - 2-opt*: exchange the tails of the two paths.
+ * Each path keeps prefix sums of its length (a suffix is the length minus a prefix), so the
+ * new lengths of both paths are known in O(1) and checked against the battery before
+ * anything changes. A path left without fed enclosures is dropped, freeing its battery swap.
+ * 
+ * Chains only move into blocks fed from a storage of their own diet and tails only change
+ * places where both paths carry the same food, so the set of fed enclosures is unchanged.
+ */
+public class InterRouteSearch implements EdgePriced {
+    
+    /**
+     * Longest chain of consecutive enclosures moved by a relocate or CROSS-exchange move.
+     */
+    public static final int MAX_SEGMENT = 3;
+    
+    // Improvements smaller than this are rounding noise and would never terminate
+    private static final double EPSILON = 1e-7;
+    
+    private final RouteCosts costs;
+    private final CandidateLists candidateLists;
+    private final LocationStore store;
+    
+    /**
+     * Creates an InterRouteSearch over a zoo's distance oracle and candidate lists.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     * @param candidateLists candidate lists built over the same location store
+     */
+    public InterRouteSearch(DistanceOracle distanceOracle, CandidateLists candidateLists) {
+        this.costs = new RouteCosts(distanceOracle);
+        this.candidateLists = candidateLists;
+        this.store = distanceOracle.getStore();
+    }
+    
+    /**
+     * Price relocate and CROSS-exchange moves by detour length on both paths, and check the
+     * battery of each path with the same lengths.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+    }
+    
+    /**
+     * Improve a set of battery paths by moving enclosures between them.
+     * 
+     * @param paths the paths to improve, each starting and ending at the depot
+     * @param batteryCapacity Maximum distance allowed per path
+     * @return the improved paths in their original order, without the paths that were
+     *         emptied; the original paths if nothing could be improved
+     */
+    public List<List<Location>> improve(List<List<Location>> paths, double batteryCapacity) {
+        int[][] routes = new int[paths.size()][];
+        for (int r = 0; r < routes.length; r++) {
+            routes[r] = costs.toRoute(paths.get(r));
+        }
+        
+        Search search = new Search(routes, batteryCapacity);
+        if (!search.run()) {
+            return paths;
+        }
+        
+        List<List<Location>> improved = new ArrayList<>(paths.size());
+        for (int r = 0; r < routes.length; r++) {
+            if (search.dropped[r]) {
+                continue;
+            }
+            if (!search.changed[r]) {
+                improved.add(paths.get(r));
+                continue;
+            }
+            List<Location> path = costs.toPath(withoutEmptyBlocks(search.routes[r]));
+            if (path == null) {
+                return paths; // Cannot happen for a finite length, but never hand out an unsafe path
+            }
+            improved.add(path);
+        }
+        return improved;
+    }
+    
+    /**
+     * Drop food storages that no longer feed anything: those followed directly by
+     * another storage or the depot.
+     */
+    private int[] withoutEmptyBlocks(int[] route) {
+        int[] result = new int[route.length];
+        int size = 0;
+        for (int p = 0; p < route.length; p++) {
+            if (store.isFoodStorage(route[p]) && p + 1 < route.length && !store.isEnclosure(route[p + 1])) {
+                continue;
+            }
+            result[size++] = route[p];
+        }
+        return Arrays.copyOf(result, size);
+    }
+    
+    /**
+     * Search state over all paths. Positions are indexes into a route; the diet of a
+     * position is the food the drone carries there (that of the last storage visited).
+     */
+    private class Search {
+        
+        private final int[][] routes;
+        private final double batteryCapacity;
+        
+        private final double[][] prefix;
+        private final byte[][] carried;
+        private final int[][] fedPrefix;
+        private final boolean[] changed;
+        private final boolean[] dropped;
+        
+        // Route and position of every enclosure on a live route, -1 otherwise
+        private final int[] routeOf;
+        private final int[] positionOf;
+        
+        // Work queue of enclosure IDs whose don't-look bit is off
+        private final int[] queue;
+        private final boolean[] queued;
+        private int head;
+        private int queueSize;
+        
+        Search(int[][] routes, double batteryCapacity) {
+            this.routes = routes;
+            this.batteryCapacity = batteryCapacity;
+            this.prefix = new double[routes.length][];
+            this.carried = new byte[routes.length][];
+            this.fedPrefix = new int[routes.length][];
+            this.changed = new boolean[routes.length];
+            this.dropped = new boolean[routes.length];
+            this.routeOf = new int[store.size()];
+            this.positionOf = new int[store.size()];
+            this.queue = new int[store.size()];
+            this.queued = new boolean[store.size()];
+        }
+        
+        /**
+         * Apply improving moves until no enclosure has its don't-look bit off.
+         * 
+         * @return true if any route changed
+         */
+        boolean run() {
+            Arrays.fill(routeOf, -1);
+            for (int r = 0; r < routes.length; r++) {
+                for (int id : routes[r]) {
+                    if (store.isEnclosure(id)) {
+                        if (routeOf[id] >= 0) {
+                            return false; // Visited twice; leave such solutions alone
+                        }
+                        routeOf[id] = r;
+                    }
+                }
+            }
+            for (int r = 0; r < routes.length; r++) {
+                reindex(r);
+            }
+            
+            for (int r = 0; r < routes.length; r++) {
+                for (int p = 0; p < routes[r].length; p++) {
+                    if (isFed(r, p)) {
+                        push(routes[r][p]);
+                    }
+                }
+            }
+            
+            boolean improved = false;
+            while (queueSize > 0) {
+                int id = queue[head];
+                head = (head + 1) % queue.length;
+                queueSize--;
+                queued[id] = false;
+                
+                if (routeOf[id] >= 0 && improve(id)) {
+                    improved = true;
+                    push(id);
+                }
+            }
+            return improved;
+        }
+        
+        /**
+         * Recompute prefix lengths, carried food and positions of a route after it changed.
+         */
+        private void reindex(int r) {
+            int[] route = routes[r];
+            int n = route.length;
+            prefix[r] = new double[n];
+            carried[r] = new byte[n];
+            fedPrefix[r] = new int[n];
+            
+            byte diet = LocationStore.NO_DIET;
+            for (int p = 0; p < n; p++) {
+                int id = route[p];
+                if (p > 0) {
+                    prefix[r][p] = prefix[r][p - 1] + costs.cost(route[p - 1], id);
+                    fedPrefix[r][p] = fedPrefix[r][p - 1];
+                }
+                if (store.isEnclosure(id)) {
+                    routeOf[id] = r;
+                    positionOf[id] = p;
+                    if (store.diet(id) == diet) {
+                        fedPrefix[r][p]++;
+                    }
+                } else {
+                    diet = store.isFoodStorage(id) ? store.diet(id) : LocationStore.NO_DIET;
+                }
+                carried[r][p] = diet;
+            }
+        }
+        
+        private boolean isFed(int r, int p) {
+            int id = routes[r][p];
+            return store.isEnclosure(id) && store.diet(id) == carried[r][p];
+        }
+        
+        private double length(int r) {
+            return prefix[r][routes[r].length - 1];
+        }
+        
+        private int fedCount(int r) {
+            return fedPrefix[r][routes[r].length - 1];
+        }
+        
+        private void push(int id) {
+            if (store.isEnclosure(id) && !queued[id]) {
+                queued[id] = true;
+                queue[(head + queueSize) % queue.length] = id;
+                queueSize++;
+            }
+        }
+        
+        /**
+         * Try every move that makes an enclosure adjacent to a candidate on another route.
+         */
+        private boolean improve(int e) {
+            int a = routeOf[e];
+            int i = positionOf[e];
+            if (i < 1 || i > routes[a].length - 2) {
+                return false;
+            }
+            double after = prefix[a][i + 1] - prefix[a][i];
+            double before = prefix[a][i] - prefix[a][i - 1];
+            double longest = Math.max(after, before);
+            
+            for (int rank = 0; rank < candidateLists.getK(); rank++) {
+                int c = candidateLists.neighbour(e, rank);
+                // Straight distances never exceed edge costs, so they bound the new edge
+                if (c < 0 || candidateLists.neighbourDistance(e, rank) >= longest) {
+                    break;
+                }
+                int b = routeOf[c];
+                if (b < 0 || b == a) {
+                    continue;
+                }
+                int j = positionOf[c];
+                double joined = costs.cost(e, c);
+                
+                // New edge (e, c) in place of the edge leaving e
+                if (joined < after && (exchangeTailsIfBetter(a, i, b, j) || crossExchanges(a, i, b, j, true))) {
+                    return true;
+                }
+                
+                // New edge (c, e) in place of the edge arriving at e
+                if (joined < before && (exchangeTailsIfBetter(b, j, a, i) || crossExchanges(a, i, b, j, false))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Try relocate and CROSS-exchange moves that join enclosure e at routes[a][i] to
+         * candidate c at routes[b][j]. Either a chain at c moves next to e, or a chain at e
+         * moves next to c; the other route may send back a chain from the vacated spot.
+         * 
+         * @param eFirst true for the new edge (e, c), false for (c, e)
+         */
+        private boolean crossExchanges(int a, int i, int b, int j, boolean eFirst) {
+            for (int moved = 1; moved <= MAX_SEGMENT; moved++) {
+                for (int back = 0; back <= MAX_SEGMENT; back++) {
+                    boolean better = eFirst
+                            // Chain starting at c follows e / chain ending at e precedes c
+                            ? crossIfBetter(a, i + 1, back, b, j, moved)
+                                || crossIfBetter(a, i - moved + 1, moved, b, j - back, back)
+                            // Chain ending at c precedes e / chain starting at e follows c
+                            : crossIfBetter(a, i - back, back, b, j - moved + 1, moved)
+                                || crossIfBetter(a, i, moved, b, j + 1, back);
+                    if (better) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Exchange routes[a][startA .. startA + lengthA) with routes[b][startB .. startB + lengthB)
+         * if that shortens the solution. A chain may be empty, making the move a relocate.
+         */
+        private boolean crossIfBetter(int a, int startA, int lengthA, int b, int startB, int lengthB) {
+            if (!isChain(a, startA, lengthA) || !isChain(b, startB, lengthB)) {
+                return false;
+            }
+            
+            // Each chain must land where the drone carries the chain's food
+            if (lengthA > 0 && carried[a][startA] != carried[b][startB - 1]) {
+                return false;
+            }
+            if (lengthB > 0 && carried[b][startB] != carried[a][startA - 1]) {
+                return false;
+            }
+            
+            int[] routeA = routes[a];
+            int[] routeB = routes[b];
+            int endA = startA + lengthA;
+            int endB = startB + lengthB;
+            double newA = length(a) - (prefix[a][endA] - prefix[a][startA - 1])
+                    + joinCost(routeA[startA - 1], b, startB, lengthB, routeA[endA]);
+            double newB = length(b) - (prefix[b][endB] - prefix[b][startB - 1])
+                    + joinCost(routeB[startB - 1], a, startA, lengthA, routeB[endB]);
+            int fedA = fedCount(a) - lengthA + lengthB;
+            int fedB = fedCount(b) - lengthB + lengthA;
+            
+            if (!accepts(a, newA, fedA, b, newB, fedB)) {
+                return false;
+            }
+            
+            int[] chainA = Arrays.copyOfRange(routeA, startA, endA);
+            int[] chainB = Arrays.copyOfRange(routeB, startB, endB);
+            routes[a] = splice(routeA, startA, endA, chainB);
+            routes[b] = splice(routeB, startB, endB, chainA);
+            commit(a, fedA, routeA[startA - 1], routeA[endA]);
+            commit(b, fedB, routeB[startB - 1], routeB[endB]);
+            for (int id : chainA) {
+                push(id);
+            }
+            for (int id : chainB) {
+                push(id);
+            }
+            return true;
+        }
+        
+        /**
+         * @return true if positions [start, start + length) hold fed enclosures strictly
+         *         inside the route
+         */
+        private boolean isChain(int r, int start, int length) {
+            int n = routes[r].length;
+            if (start < 1 || start + length > n - 1) {
+                return false;
+            }
+            for (int p = start; p < start + length; p++) {
+                if (!isFed(r, p)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Cost of going from one location to another through a chain of another route.
+         */
+        private double joinCost(int from, int r, int start, int length, int to) {
+            if (length == 0) {
+                return costs.cost(from, to);
+            }
+            int[] route = routes[r];
+            int end = start + length - 1;
+            return costs.cost(from, route[start])
+                    + (prefix[r][end] - prefix[r][start])
+                    + costs.cost(route[end], to);
+        }
+        
+        /**
+         * Exchange tails so that route a keeps its head up to position i and continues
+         * with route b's tail from position j, and route b takes route a's tail.
+         */
+        private boolean exchangeTailsIfBetter(int a, int i, int b, int j) {
+            int[] routeA = routes[a];
+            int[] routeB = routes[b];
+            if (i < 1 || i > routeA.length - 2 || j < 1 || j > routeB.length - 2) {
+                return false;
+            }
+            
+            // Both tails must start where the drone carries the same food
+            if (carried[a][i] != carried[b][j - 1]) {
+                return false;
+            }
+            
+            double newA = prefix[a][i] + costs.cost(routeA[i], routeB[j]) + (length(b) - prefix[b][j]);
+            double newB = prefix[b][j - 1] + costs.cost(routeB[j - 1], routeA[i + 1]) + (length(a) - prefix[a][i + 1]);
+            int fedA = fedPrefix[a][i] + fedCount(b) - fedPrefix[b][j - 1];
+            int fedB = fedPrefix[b][j - 1] + fedCount(a) - fedPrefix[a][i];
+            
+            if (!accepts(a, newA, fedA, b, newB, fedB)) {
+                return false;
+            }
+            
+            int[] tailA = Arrays.copyOfRange(routeA, i + 1, routeA.length);
+            int[] tailB = Arrays.copyOfRange(routeB, j, routeB.length);
+            routes[a] = splice(routeA, i + 1, routeA.length, tailB);
+            routes[b] = splice(routeB, j, routeB.length, tailA);
+            commit(a, fedA, routeA[i], routeB[j]);
+            commit(b, fedB, routeB[j - 1], routeA[i + 1]);
+            return true;
+        }
+        
+        /**
+         * A move is taken if it shortens the solution and both routes fit the battery.
+         * A route left without fed enclosures costs nothing: it will be dropped.
+         */
+        private boolean accepts(int a, double newA, int fedA, int b, double newB, int fedB) {
+            double before = length(a) + length(b);
+            double after = (fedA == 0 ? 0 : newA) + (fedB == 0 ? 0 : newB);
+            return after - before < -EPSILON
+                    && (fedA == 0 || newA <= batteryCapacity)
+                    && (fedB == 0 || newB <= batteryCapacity);
+        }
+        
+        /**
+         * Replace route[from .. to) with a chain.
+         */
+        private int[] splice(int[] route, int from, int to, int[] chain) {
+            int[] result = new int[route.length - (to - from) + chain.length];
+            System.arraycopy(route, 0, result, 0, from);
+            System.arraycopy(chain, 0, result, from, chain.length);
+            System.arraycopy(route, to, result, from + chain.length, route.length - to);
+            return result;
+        }
+        
+        /**
+         * Reindex a route after a move, dropping it if it no longer feeds anything,
+         * and wake up the enclosures next to the changed edges.
+         */
+        private void commit(int r, int fed, int first, int second) {
+            changed[r] = true;
+            if (fed == 0) {
+                dropped[r] = true;
+                for (int id : routes[r]) {
+                    if (store.isEnclosure(id)) {
+                        routeOf[id] = -1;
+                    }
+                }
+                return;
+            }
+            reindex(r);
+            push(first);
+            push(second);
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package core.algorithm;
+
+import core.models.AnimalEnclosure;
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Island-model genetic algorithm over giant tours. A chromosome is one permutation of
+ * every enclosure ID, and {@link TourSplitter} decodes it into the best battery paths
+ * that serve stretches of the tour, with storages in front of every change of diet.
+ * The fitness of a tour is the score of its paths: sum(importance * 1000) - distance.
+ * 
+ * Each island breeds its own population on a thread of its own: order crossover of two
+ * tournament winners, then inversion, swap or relocation next to a candidate neighbour,
+ * and the child replaces the island's worst individual if it is better. Chromosomes live
+ * in buffers allocated once per island, so breeding itself allocates nothing. At fixed
+ * intervals every island sends a copy of its best tour to the next island in a ring
+ * through a lock-free mailbox, and the overall best is kept with a compare-and-set.
+ */
+public class IslandGeneticAlgorithm implements EdgePriced {
+    
+    private static final int POPULATION = 24;
+    private static final int MIGRATION_INTERVAL = 500;
+    private static final int SEED_MUTATIONS = 16;
+    private static final int MAX_SEGMENT = 64;
+    private static final double CROSSOVER_RATE = 0.8;
+    private static final double EPSILON = 1e-7;
+    private static final long JOIN_GRACE_NANOS = 1_000_000_000L;
+    
+    private final RouteCosts costs;
+    private final CandidateLists candidateLists;
+    private final LocationStore store;
+    private final ScoreCalculator scoreCalculator;
+    private int islands = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+    
+    // Statistics of the last run
+    private final LongAdder children = new LongAdder();
+    private final LongAdder migrations = new LongAdder();
+    private double startScore;
+    private double bestScore;
+    private long elapsedNanos;
+    
+    /**
+     * Creates an IslandGeneticAlgorithm over a zoo's distance oracle and candidate lists.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     * @param candidateLists candidate lists built over the same location store
+     */
+    public IslandGeneticAlgorithm(DistanceOracle distanceOracle, CandidateLists candidateLists) {
+        this.costs = new RouteCosts(distanceOracle);
+        this.candidateLists = candidateLists;
+        this.store = distanceOracle.getStore();
+        this.scoreCalculator = new ScoreCalculator(distanceOracle);
+    }
+    
+    /**
+     * Decode tours with detour lengths, so a tour's fitness is the score of paths that fly
+     * around the deadzones.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+    }
+    
+    /**
+     * Set the number of islands, each evolved on its own thread; defaults to the number
+     * of processors.
+     * 
+     * @param islands number of islands, at least 1
+     */
+    public void setIslands(int islands) {
+        this.islands = Math.max(1, islands);
+    }
+    
+    /**
+     * Seed the islands' random generators; island i uses seed + i.
+     * 
+     * @param seed the random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    
+    /**
+     * Evolve tours seeded from the given paths until the time limit and return the best
+     * solution found. The enclosures are only read; what the paths feed follows from the paths.
+     * 
+     * @param paths the paths to start from, each starting and ending at the depot
+     * @param enclosures the enclosures that may be fed
+     * @param batteryCapacity Maximum distance allowed per path
+     * @param maxPaths maximum number of paths to return
+     * @param timeLimitMillis wall-clock time to spend
+     * @return the best paths found; the given paths if none scored higher
+     */
+    public List<List<Location>> evolve(
+            List<List<Location>> paths,
+            List<? extends AnimalEnclosure> enclosures,
+            double batteryCapacity,
+            int maxPaths,
+            long timeLimitMillis) {
+        
+        long start = System.nanoTime();
+        children.reset();
+        migrations.reset();
+        
+        int[] members = enclosures.stream()
+                .mapToInt(store::idOf)
+                .filter(id -> id >= 0)
+                .distinct()
+                .toArray();
+        boolean[] member = new boolean[store.size()];
+        for (int e : members) {
+            member[e] = true;
+        }
+        startScore = score(paths, member);
+        bestScore = startScore;
+        if (members.length < 2 || maxPaths <= 0 || timeLimitMillis <= 0) {
+            elapsedNanos = System.nanoTime() - start;
+            return paths;
+        }
+        
+        TourSplitter splitter = new TourSplitter(costs, store, candidateLists);
+        int[] seedTour = tourOf(paths, members, member);
+        AtomicReference<Elite> best = new AtomicReference<>(
+                new Elite(seedTour, splitter.split(seedTour, batteryCapacity, maxPaths)));
+        AtomicReferenceArray<int[]> mailbox = new AtomicReferenceArray<>(islands);
+        
+        long deadline = start + timeLimitMillis * 1_000_000L;
+        runIslands(batteryCapacity, maxPaths, seedTour, best, mailbox, deadline);
+        elapsedNanos = System.nanoTime() - start;
+        
+        if (best.get().score <= startScore + EPSILON) {
+            return paths;
+        }
+        splitter.split(best.get().tour, batteryCapacity, maxPaths);
+        List<List<Location>> result = result(splitter.getRoutes());
+        if (result == null) {
+            return paths;
+        }
+        bestScore = best.get().score;
+        return result;
+    }
+    
+    /**
+     * Evolve the islands on threads of their own and wait for them until shortly after the
+     * deadline, rather than holding the common pool for the whole time limit. Islands still
+     * running after the grace period are interrupted; the best tour published by then is kept.
+     */
+    private void runIslands(double batteryCapacity, int maxPaths, int[] seedTour,
+            AtomicReference<Elite> best, AtomicReferenceArray<int[]> mailbox, long deadline) {
+        
+        ExecutorService executor = Executors.newFixedThreadPool(islands, task -> {
+            Thread thread = new Thread(task, "ga-island");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < islands; i++) {
+                int index = i;
+                futures.add(executor.submit(() ->
+                        new Island(seed + index, index, batteryCapacity, maxPaths, seedTour, best, mailbox).run(deadline)));
+            }
+            executor.shutdown();
+            for (Future<?> future : futures) {
+                long wait = deadline + JOIN_GRACE_NANOS - System.nanoTime();
+                future.get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            // Keep the best published so far
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("GA island failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Get statistics of the last run.
+     * 
+     * @return a one-line summary of children bred, migrations and score gain
+     */
+    public String getStatistics() {
+        return String.format("GA: %d children on %d islands in %d ms, %d migrations, score %.1f -> %.1f",
+                children.sum(), islands, elapsedNanos / 1_000_000, migrations.sum(), startScore, bestScore);
+    }
+    
+    /**
+     * Score of the given paths: each member enclosure counts once, when first fed.
+     */
+    private double score(List<List<Location>> paths, boolean[] member) {
+        boolean[] fed = new boolean[store.size()];
+        List<List<AnimalEnclosure>> fedPerPath = new ArrayList<>();
+        for (List<Location> path : paths) {
+            List<AnimalEnclosure> fedHere = new ArrayList<>();
+            byte diet = LocationStore.NO_DIET;
+            for (int id : costs.toRoute(path)) {
+                if (store.isFoodStorage(id)) {
+                    diet = store.diet(id);
+                } else if (member[id] && !fed[id] && store.diet(id) == diet) {
+                    fed[id] = true;
+                    fedHere.add((AnimalEnclosure) store.location(id));
+                }
+            }
+            fedPerPath.add(fedHere);
+        }
+        return scoreCalculator.calculateTotalScore(paths, fedPerPath);
+    }
+    
+    /**
+     * The giant tour through the paths in order, followed by the enclosures they miss.
+     */
+    private int[] tourOf(List<List<Location>> paths, int[] members, boolean[] member) {
+        int[] tour = new int[members.length];
+        boolean[] placed = new boolean[store.size()];
+        int n = 0;
+        for (List<Location> path : paths) {
+            for (int id : costs.toRoute(path)) {
+                if (member[id] && !placed[id]) {
+                    placed[id] = true;
+                    tour[n++] = id;
+                }
+            }
+        }
+        for (int e : members) {
+            if (!placed[e]) {
+                tour[n++] = e;
+            }
+        }
+        return tour;
+    }
+    
+    /**
+     * Turn the best tour's routes into paths.
+     * 
+     * @return the paths, or null if some edge has no safe detour
+     */
+    private List<List<Location>> result(int[][] routes) {
+        List<List<Location>> result = new ArrayList<>();
+        for (int[] route : routes) {
+            List<Location> path = costs.toPath(route);
+            if (path == null) {
+                return null;
+            }
+            result.add(path);
+        }
+        return result;
+    }
+    
+    /**
+     * An immutable tour and its fitness.
+     */
+    private static final class Elite {
+        private final int[] tour;
+        private final double score;
+        
+        Elite(int[] tour, double score) {
+            this.tour = tour;
+            this.score = score;
+        }
+    }
+    
+    /**
+     * One island: a private population bred on one thread. The child buffer is swapped
+     * with the buffer of the individual it replaces, so buffers are reused throughout.
+     */
+    private class Island {
+        
+        private final SplittableRandom random;
+        private final int index;
+        private final double capacity;
+        private final int maxPaths;
+        private final TourSplitter splitter = new TourSplitter(costs, store, candidateLists);
+        private final AtomicReference<Elite> best;
+        private final AtomicReferenceArray<int[]> mailbox;
+        private final int k = candidateLists.getK();
+        
+        private final int[][] population = new int[POPULATION][];
+        private final double[] fitness = new double[POPULATION];
+        private int[] child;
+        private int fittest;
+        
+        // Mutations mostly fall in the part of the tour that the fittest decodes into paths;
+        // the rest only matters once it moves forward
+        private int window;
+        
+        // Enclosures copied from the first parent carry the current stamp
+        private final int[] mark;
+        private int stamp;
+        
+        // Where each enclosure sits in the tour being mutated
+        private final int[] position;
+        
+        Island(long seed, int index, double capacity, int maxPaths, int[] seedTour,
+               AtomicReference<Elite> best, AtomicReferenceArray<int[]> mailbox) {
+            this.random = new SplittableRandom(seed);
+            this.index = index;
+            this.capacity = capacity;
+            this.maxPaths = maxPaths;
+            this.best = best;
+            this.mailbox = mailbox;
+            this.mark = new int[store.size()];
+            this.position = new int[store.size()];
+            this.window = seedTour.length;
+            
+            // The seed tour and perturbed copies of it
+            for (int p = 0; p < POPULATION; p++) {
+                population[p] = seedTour.clone();
+                index(population[p], 0, seedTour.length - 1);
+                for (int m = 0; p > 0 && m < SEED_MUTATIONS; m++) {
+                    mutate(population[p]);
+                }
+                fitness[p] = fitness(population[p]);
+                if (fitness[p] > fitness[fittest]) {
+                    fittest = p;
+                }
+            }
+            child = new int[seedTour.length];
+            updateWindow();
+        }
+        
+        void run(long deadline) {
+            publish();
+            long count = 0;
+            while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                breed();
+                count++;
+                if (count % MIGRATION_INTERVAL == 0) {
+                    migrate();
+                }
+            }
+            children.add(count);
+        }
+        
+        /**
+         * Breed one child and let it replace the worst individual if it is better.
+         */
+        private void breed() {
+            int a = tournament();
+            int b = tournament();
+            if (a != b && random.nextDouble() < CROSSOVER_RATE) {
+                crossover(population[a], population[b], child);
+            } else {
+                System.arraycopy(population[a], 0, child, 0, child.length);
+            }
+            index(child, 0, child.length - 1);
+            int mutations = 1 + random.nextInt(3);
+            for (int m = 0; m < mutations; m++) {
+                mutate(child);
+            }
+            accept(fitness(child));
+        }
+        
+        /**
+         * Take the child into the population in place of the worst individual, unless it
+         * is no better or duplicates the fitness of an individual already there.
+         */
+        private void accept(double score) {
+            int worst = 0;
+            for (int p = 0; p < POPULATION; p++) {
+                if (Math.abs(fitness[p] - score) < EPSILON) {
+                    return;
+                }
+                if (fitness[p] < fitness[worst]) {
+                    worst = p;
+                }
+            }
+            if (score <= fitness[worst]) {
+                return;
+            }
+            int[] replaced = population[worst];
+            population[worst] = child;
+            fitness[worst] = score;
+            child = replaced;
+            if (score > fitness[fittest]) {
+                fittest = worst;
+                updateWindow();
+                publish();
+            }
+        }
+        
+        /**
+         * Cover the fittest tour up to its last fed enclosure, with some slack.
+         */
+        private void updateWindow() {
+            splitter.split(population[fittest], capacity, maxPaths);
+            int reach = splitter.getReach();
+            window = Math.min(population[fittest].length, reach + reach / 4 + MAX_SEGMENT);
+        }
+        
+        private double fitness(int[] tour) {
+            return splitter.split(tour, capacity, maxPaths);
+        }
+        
+        private int tournament() {
+            int a = random.nextInt(POPULATION);
+            int b = random.nextInt(POPULATION);
+            return fitness[a] >= fitness[b] ? a : b;
+        }
+        
+        /**
+         * Order crossover: a random segment of the first parent in place, the remaining
+         * enclosures in the order the second parent visits them after the segment.
+         */
+        private void crossover(int[] first, int[] second, int[] out) {
+            int n = out.length;
+            int from = random.nextInt(n);
+            int to = random.nextInt(n);
+            if (from > to) {
+                int swap = from;
+                from = to;
+                to = swap;
+            }
+            stamp++;
+            for (int p = from; p <= to; p++) {
+                out[p] = first[p];
+                mark[first[p]] = stamp;
+            }
+            int q = (to + 1) % n;
+            for (int p = 0; p < n; p++) {
+                int e = second[(to + 1 + p) % n];
+                if (mark[e] != stamp) {
+                    out[q] = e;
+                    q = (q + 1) % n;
+                }
+            }
+        }
+        
+        /**
+         * Record the positions of the tour's enclosures from index from to index to.
+         */
+        private void index(int[] tour, int from, int to) {
+            for (int p = from; p <= to; p++) {
+                position[tour[p]] = p;
+            }
+        }
+        
+        /**
+         * Reverse a short segment, swap two nearby enclosures, or move an enclosure to
+         * just after one of its candidate neighbours. Half of the time the mutation starts
+         * inside the window, half of the time anywhere in the tour. The tour's positions
+         * must be indexed, and stay so.
+         */
+        private void mutate(int[] tour) {
+            int n = tour.length;
+            int i = random.nextInt(random.nextBoolean() ? window : n);
+            int j = Math.min(n - 1, i + 1 + random.nextInt(MAX_SEGMENT));
+            switch (random.nextInt(3)) {
+                case 0:
+                    for (int a = i, b = j; a < b; a++, b--) {
+                        int swap = tour[a];
+                        tour[a] = tour[b];
+                        tour[b] = swap;
+                    }
+                    index(tour, i, j);
+                    break;
+                case 1:
+                    int swap = tour[i];
+                    tour[i] = tour[j];
+                    tour[j] = swap;
+                    position[tour[i]] = i;
+                    position[tour[j]] = j;
+                    break;
+                default:
+                    relocate(tour, i);
+                    break;
+            }
+        }
+        
+        private void relocate(int[] tour, int from) {
+            int neighbour = candidateLists.neighbour(tour[from], random.nextInt(k));
+            if (neighbour < 0) {
+                return;
+            }
+            int to = position[neighbour];
+            if (to >= tour.length || tour[to] != neighbour) {
+                return;
+            }
+            
+            // Shift the enclosures in between by one and drop the moved one after its neighbour
+            int e = tour[from];
+            if (from < to) {
+                System.arraycopy(tour, from + 1, tour, from, to - from);
+                tour[to] = e;
+                index(tour, from, to);
+            } else if (from > to + 1) {
+                System.arraycopy(tour, to + 1, tour, to + 2, from - to - 1);
+                tour[to + 1] = e;
+                index(tour, to + 1, from);
+            }
+        }
+        
+        /**
+         * Send a copy of this island's best tour to the next island, and take in the tour
+         * the previous island sent, if any, in place of the worst individual.
+         */
+        private void migrate() {
+            if (islands == 1) {
+                return;
+            }
+            mailbox.set((index + 1) % islands, population[fittest].clone());
+            int[] migrant = mailbox.getAndSet(index, null);
+            if (migrant == null) {
+                return;
+            }
+            migrations.increment();
+            System.arraycopy(migrant, 0, child, 0, child.length);
+            accept(fitness(child));
+        }
+        
+        /**
+         * Offer this island's best tour as the overall best.
+         */
+        private void publish() {
+            double score = fitness[fittest];
+            Elite global = best.get();
+            if (score <= global.score + EPSILON) {
+                return;
+            }
+            Elite candidate = new Elite(population[fittest].clone(), score);
+            while (score > global.score + EPSILON) {
+                if (best.compareAndSet(global, candidate)) {
+                    return;
+                }
+                global = best.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,919 @@
+package core.algorithm;
+
+import core.models.AnimalEnclosure;
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+import core.services.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Ruin-and-recreate large neighbourhood search over all battery paths at once.
+ * Each iteration removes a few dozen enclosures, with one of three ruin operators:
+ * - spatial: the enclosures nearest a random enclosure, whatever their diet
+ * - route: a stretch of one path
+ * - worst-cost: the fed enclosures whose detour costs most against their importance
+ * and then re-inserts them, along with unfed neighbours, greedily by net gain or by
+ * regret (how much is lost if the best path is taken by something else).
+ * 
+ * Several workers run in parallel on threads of their own, each on a private copy of the solution, and accept
+ * a result by record-to-record travel: it may fall short of the worker's record by a
+ * threshold that shrinks to zero over the time limit. Improvements on the overall best
+ * are published through a lock-free compare-and-set, and workers that fall behind it
+ * pick it up again.
+ */
+public class LargeNeighbourhoodSearch implements EdgePriced {
+    
+    private static final int MIN_RUIN = 10;
+    private static final int MAX_RUIN = 60;
+    private static final int POOL_SIZE = 3 * MAX_RUIN;
+    private static final int NEARBY = 24;
+    private static final int MAX_CANDIDATE_ROUTES = 16;
+    private static final int SYNC_INTERVAL = 100;
+    private static final double DEVIATION = 0.002;
+    private static final double EPSILON = 1e-7;
+    private static final long JOIN_GRACE_NANOS = 1_000_000_000L;
+    
+    private final RouteCosts costs;
+    private final CandidateLists candidateLists;
+    private final LocationStore store;
+    private final double[] vertical;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+    
+    // Nearest enclosures of any diet, padded with -1, built on first use
+    private SpatialIndex enclosureIndex;
+    private int[] nearby;
+    
+    // Statistics of the last run
+    private final LongAdder iterations = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private double startScore;
+    private double bestScore;
+    private long elapsedNanos;
+    
+    /**
+     * Creates a LargeNeighbourhoodSearch over a zoo's distance oracle and candidate lists.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     * @param candidateLists candidate lists built over the same location store
+     */
+    public LargeNeighbourhoodSearch(DistanceOracle distanceOracle, CandidateLists candidateLists) {
+        this.costs = new RouteCosts(distanceOracle);
+        this.candidateLists = candidateLists;
+        this.store = distanceOracle.getStore();
+        this.vertical = distanceOracle.getVertical();
+    }
+    
+    /**
+     * Price repair insertions by detour length, with the straight distance as the bound
+     * that skips hopeless positions before a detour is looked up.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+    }
+    
+    /**
+     * Set the number of parallel workers; defaults to the number of processors.
+     * 
+     * @param workers number of workers, at least 1
+     */
+    public void setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+    
+    /**
+     * Seed the workers' random generators; worker i uses seed + i.
+     * 
+     * @param seed the random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    
+    /**
+     * Improve the paths until the time limit and return the best solution found.
+     * The enclosures are only read; what the paths feed follows from the paths.
+     * 
+     * @param paths the paths to improve, each starting and ending at the depot
+     * @param enclosures the enclosures that may be fed
+     * @param batteryCapacity Maximum distance allowed per path
+     * @param maxPaths maximum number of paths, counting the given ones
+     * @param timeLimitMillis wall-clock time to spend
+     * @return the best paths found; the given paths if none scored higher
+     */
+    public List<List<Location>> improve(
+            List<List<Location>> paths,
+            List<? extends AnimalEnclosure> enclosures,
+            double batteryCapacity,
+            int maxPaths,
+            long timeLimitMillis) {
+        
+        long start = System.nanoTime();
+        buildNearby();
+        iterations.reset();
+        published.reset();
+        
+        int[] members = enclosures.stream()
+                .mapToInt(store::idOf)
+                .filter(id -> id >= 0)
+                .distinct()
+                .toArray();
+        int[][] loaded = load(paths, Math.max(maxPaths, paths.size()));
+        Snapshot initial = snapshot(loaded, members);
+        startScore = initial.score;
+        
+        AtomicReference<Snapshot> best = new AtomicReference<>(initial);
+        if (members.length > 0 && timeLimitMillis > 0) {
+            long deadline = start + timeLimitMillis * 1_000_000L;
+            double threshold = DEVIATION * initial.distance;
+            runWorkers(initial, members, batteryCapacity, best, start, deadline, threshold);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        bestScore = best.get().score;
+        
+        if (bestScore <= startScore + EPSILON) {
+            return paths;
+        }
+        return result(best.get(), loaded, paths);
+    }
+    
+    /**
+     * Run the workers on threads of their own and wait for them until shortly after the deadline.
+     * They are long-running and would otherwise hold the common pool that the other planners'
+     * parallel streams share. Workers still running after the grace period are interrupted;
+     * whatever they published by then is kept.
+     */
+    private void runWorkers(Snapshot initial, int[] members, double batteryCapacity,
+            AtomicReference<Snapshot> best, long start, long deadline, double threshold) {
+        
+        ExecutorService executor = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "lns-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                long workerSeed = seed + w;
+                futures.add(executor.submit(() ->
+                        new Worker(workerSeed, initial, members, batteryCapacity, best).run(start, deadline, threshold)));
+            }
+            executor.shutdown();
+            for (Future<?> future : futures) {
+                long wait = deadline + JOIN_GRACE_NANOS - System.nanoTime();
+                future.get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            // Keep the best published so far
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("LNS worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Get statistics of the last run.
+     * 
+     * @return a one-line summary of iterations, improvements and score gain
+     */
+    public String getStatistics() {
+        return String.format("LNS: %d iterations on %d workers in %d ms, %d improvements published, score %.1f -> %.1f",
+                iterations.sum(), workers, elapsedNanos / 1_000_000, published.sum(), startScore, bestScore);
+    }
+    
+    private synchronized void buildNearby() {
+        if (nearby != null) {
+            return;
+        }
+        int first = store.firstEnclosureId();
+        int count = store.enclosureCount();
+        enclosureIndex = new SpatialIndex(store, vertical, IntStream.range(first, first + count).toArray());
+        
+        int[] lists = new int[count * NEARBY];
+        Arrays.fill(lists, -1);
+        int[] xs = store.xs();
+        int[] ys = store.ys();
+        IntStream.range(0, count).parallel().forEach(e -> {
+            int id = first + e;
+            int[] ids = new int[NEARBY];
+            double[] distances = new double[NEARBY];
+            int found = enclosureIndex.nearest(xs[id], ys[id], vertical[id], NEARBY, id, ids, distances);
+            System.arraycopy(ids, 0, lists, e * NEARBY, found);
+        });
+        nearby = lists;
+    }
+    
+    /**
+     * Turn the paths into routes of location IDs that keep only the visits that feed,
+     * padded with empty routes up to the path limit.
+     */
+    private int[][] load(List<List<Location>> paths, int routes) {
+        int[][] loaded = new int[routes][];
+        boolean[] fed = new boolean[store.size()];
+        for (int r = 0; r < routes; r++) {
+            if (r >= paths.size()) {
+                loaded[r] = new int[]{store.depotId(), store.depotId()};
+                continue;
+            }
+            int[] ids = costs.toRoute(paths.get(r));
+            int n = 0;
+            byte diet = LocationStore.NO_DIET;
+            for (int id : ids) {
+                if (store.isFoodStorage(id)) {
+                    diet = store.diet(id);
+                } else if (store.isEnclosure(id)) {
+                    if (store.diet(id) != diet || fed[id]) {
+                        continue;
+                    }
+                    fed[id] = true;
+                }
+                ids[n++] = id;
+            }
+            loaded[r] = Arrays.copyOf(ids, n);
+        }
+        return loaded;
+    }
+    
+    private Snapshot snapshot(int[][] routes, int[] members) {
+        boolean[] member = new boolean[store.size()];
+        for (int e : members) {
+            member[e] = true;
+        }
+        double prize = 0;
+        double distance = 0;
+        double[] lengths = new double[routes.length];
+        for (int r = 0; r < routes.length; r++) {
+            for (int p = 0; p < routes[r].length; p++) {
+                if (p > 0) {
+                    lengths[r] += costs.cost(routes[r][p - 1], routes[r][p]);
+                }
+                if (member[routes[r][p]]) {
+                    prize += store.importance(routes[r][p]) * 1000;
+                }
+            }
+            distance += lengths[r];
+        }
+        return new Snapshot(routes, lengths, prize - distance, distance);
+    }
+    
+    /**
+     * Turn the best snapshot into paths.
+     */
+    private List<List<Location>> result(Snapshot best, int[][] loaded, List<List<Location>> paths) {
+        List<List<Location>> result = new ArrayList<>();
+        for (int r = 0; r < best.routes.length; r++) {
+            int[] route = best.routes[r];
+            if (route.length <= 2) {
+                continue;
+            }
+            if (r < paths.size() && Arrays.equals(route, loaded[r])) {
+                result.add(paths.get(r));
+                continue;
+            }
+            List<Location> path = costs.toPath(route);
+            if (path == null) {
+                return paths;
+            }
+            result.add(path);
+        }
+        return result;
+    }
+    
+    /**
+     * An immutable solution: trimmed routes, their lengths and the score.
+     */
+    private static final class Snapshot {
+        private final int[][] routes;
+        private final double[] lengths;
+        private final double score;
+        private final double distance;
+        
+        Snapshot(int[][] routes, double[] lengths, double score, double distance) {
+            this.routes = routes;
+            this.lengths = lengths;
+            this.score = score;
+            this.distance = distance;
+        }
+    }
+    
+    /**
+     * One search thread with a private copy of the solution. Routes that an iteration
+     * touches are saved first, so a rejected iteration is undone by copying them back.
+     */
+    private class Worker {
+        
+        private final SplittableRandom random;
+        private final int[] members;
+        private final double capacity;
+        private final AtomicReference<Snapshot> best;
+        private final int k = candidateLists.getK();
+        
+        // Current solution; edge[r][p] is the cost from route[r][p] to route[r][p + 1]
+        private final int[][] route;
+        private final double[][] edge;
+        private final int[] size;
+        private final double[] length;
+        private final int[] routeOf;
+        private final int[] positionOf;
+        private double score;
+        private double record;
+        private int emptyRoute;
+        
+        // Undo log for the current iteration
+        private final int[][] savedRoute;
+        private final double[][] savedEdge;
+        private final int[] savedSize;
+        private final double[] savedLength;
+        private final boolean[] touched;
+        private final int[] touchedRoutes;
+        private int touchedCount;
+        
+        // Enclosures removed in this iteration carry the current stamp
+        private final int[] mark;
+        private int stamp;
+        
+        // Scratch buffers
+        private final int[] removed = new int[3 * MAX_RUIN];
+        private final double[] removedCost = new double[3 * MAX_RUIN];
+        private final double[] nearestDistances = new double[MAX_RUIN];
+        
+        // Recreate pool: per entry its best insertion, second-best gain and candidate routes
+        private final int[] pool = new int[POOL_SIZE];
+        private final double[] bestGain = new double[POOL_SIZE];
+        private final double[] secondGain = new double[POOL_SIZE];
+        private final int[] bestRoute = new int[POOL_SIZE];
+        private final int[] bestAfter = new int[POOL_SIZE];
+        private final int[] bestStorage = new int[POOL_SIZE];
+        private final int[] candidates = new int[POOL_SIZE * MAX_CANDIDATE_ROUTES];
+        private final int[] candidateCount = new int[POOL_SIZE];
+        private int poolCount;
+        
+        // Best insertion found by the last route scan
+        private double scanGain;
+        private int scanAfter;
+        private int scanStorage;
+        
+        Worker(long seed, Snapshot start, int[] members, double capacity, AtomicReference<Snapshot> best) {
+            this.random = new SplittableRandom(seed);
+            this.members = members;
+            this.capacity = capacity;
+            this.best = best;
+            
+            int routes = start.routes.length;
+            route = new int[routes][];
+            edge = new double[routes][];
+            size = new int[routes];
+            length = new double[routes];
+            savedRoute = new int[routes][];
+            savedEdge = new double[routes][];
+            savedSize = new int[routes];
+            savedLength = new double[routes];
+            touched = new boolean[routes];
+            touchedRoutes = new int[routes];
+            routeOf = new int[store.size()];
+            positionOf = new int[store.size()];
+            mark = new int[store.size()];
+            adopt(start);
+        }
+        
+        /**
+         * Replace the current solution with a snapshot.
+         */
+        private void adopt(Snapshot snapshot) {
+            Arrays.fill(routeOf, -1);
+            Arrays.fill(positionOf, -1);
+            for (int r = 0; r < route.length; r++) {
+                int n = snapshot.routes[r].length;
+                if (route[r] == null || route[r].length < n + 2) {
+                    route[r] = new int[n + 32];
+                    edge[r] = new double[n + 32];
+                }
+                System.arraycopy(snapshot.routes[r], 0, route[r], 0, n);
+                size[r] = n;
+                length[r] = snapshot.lengths[r];
+                repriceEdges(r, 0, n - 1);
+                reindex(r);
+            }
+            score = snapshot.score;
+            record = snapshot.score;
+            emptyRoute = findEmptyRoute();
+        }
+        
+        void run(long start, long deadline, double threshold) {
+            long count = 0;
+            for (long now = System.nanoTime(); now < deadline; now = System.nanoTime()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                double progress = (double) (now - start) / (deadline - start);
+                iterate(threshold * (1 - progress));
+                count++;
+                
+                if (count % SYNC_INTERVAL == 0) {
+                    Snapshot global = best.get();
+                    if (global.score > record + EPSILON) {
+                        adopt(global);
+                    }
+                }
+            }
+            iterations.add(count);
+        }
+        
+        /**
+         * Ruin, recreate, and keep the result if it is within the threshold of the record.
+         */
+        private void iterate(double threshold) {
+            double before = score;
+            touchedCount = 0;
+            stamp++;
+            
+            int count;
+            switch (random.nextInt(3)) {
+                case 0:
+                    count = ruinSpatial();
+                    break;
+                case 1:
+                    count = ruinRoute();
+                    break;
+                default:
+                    count = ruinWorst();
+                    break;
+            }
+            if (count == 0) {
+                return;
+            }
+            removeMarked();
+            fillPool(count);
+            recreate(random.nextBoolean());
+            
+            if (score < record - threshold) {
+                undo(before);
+                return;
+            }
+            for (int t = 0; t < touchedCount; t++) {
+                touched[touchedRoutes[t]] = false;
+            }
+            if (score > record + EPSILON) {
+                record = score;
+                publish();
+            }
+        }
+        
+        private int ruinSize() {
+            return MIN_RUIN + random.nextInt(MAX_RUIN - MIN_RUIN + 1);
+        }
+        
+        /**
+         * Mark a fed enclosure for removal.
+         */
+        private int take(int e, int count) {
+            if (routeOf[e] < 0 || mark[e] == stamp) {
+                return count;
+            }
+            mark[e] = stamp;
+            touch(routeOf[e]);
+            removed[count] = e;
+            return count + 1;
+        }
+        
+        /**
+         * The enclosures of any diet nearest a random enclosure.
+         */
+        private int ruinSpatial() {
+            int center = members[random.nextInt(members.length)];
+            int found = enclosureIndex.nearest(store.xs()[center], store.ys()[center], vertical[center],
+                    ruinSize(), -1, removed, nearestDistances);
+            int count = 0;
+            for (int i = 0; i < found; i++) {
+                count = take(removed[i], count);
+            }
+            return count;
+        }
+        
+        /**
+         * A stretch of consecutive enclosures on a random non-empty path.
+         */
+        private int ruinRoute() {
+            int r = random.nextInt(route.length);
+            for (int tries = 0; tries < route.length && size[r] <= 2; tries++) {
+                r = (r + 1) % route.length;
+            }
+            if (size[r] <= 2) {
+                return 0;
+            }
+            int length = ruinSize();
+            int from = 1 + random.nextInt(size[r] - 2);
+            int count = 0;
+            for (int p = from; p < size[r] - 1 && count < length; p++) {
+                if (store.isEnclosure(route[r][p])) {
+                    count = take(route[r][p], count);
+                }
+            }
+            return count;
+        }
+        
+        /**
+         * Of a random sample of fed enclosures, the ones whose detour costs most
+         * against their importance.
+         */
+        private int ruinWorst() {
+            int length = ruinSize();
+            int sampled = 0;
+            for (int tries = 0; tries < removed.length && sampled < removed.length; tries++) {
+                int e = members[random.nextInt(members.length)];
+                if (routeOf[e] < 0 || mark[e] == stamp) {
+                    continue;
+                }
+                int[] ids = route[routeOf[e]];
+                int p = positionOf[e];
+                double cost = edge[routeOf[e]][p - 1] + edge[routeOf[e]][p]
+                        - costs.cost(ids[p - 1], ids[p + 1]) - store.importance(e) * 1000;
+                
+                // Insertion into the sample, most costly first
+                int slot = sampled++;
+                while (slot > 0 && removedCost[slot - 1] < cost) {
+                    removed[slot] = removed[slot - 1];
+                    removedCost[slot] = removedCost[slot - 1];
+                    slot--;
+                }
+                removed[slot] = e;
+                removedCost[slot] = cost;
+            }
+            
+            int count = 0;
+            for (int i = 0; i < Math.min(length, sampled); i++) {
+                count = take(removed[i], count);
+            }
+            return count;
+        }
+        
+        /**
+         * Save a route before its first change in this iteration.
+         */
+        private void touch(int r) {
+            if (touched[r]) {
+                return;
+            }
+            touched[r] = true;
+            touchedRoutes[touchedCount++] = r;
+            if (savedRoute[r] == null || savedRoute[r].length < size[r]) {
+                savedRoute[r] = new int[route[r].length];
+                savedEdge[r] = new double[route[r].length];
+            }
+            System.arraycopy(route[r], 0, savedRoute[r], 0, size[r]);
+            System.arraycopy(edge[r], 0, savedEdge[r], 0, size[r]);
+            savedSize[r] = size[r];
+            savedLength[r] = length[r];
+        }
+        
+        private void undo(double before) {
+            for (int t = 0; t < touchedCount; t++) {
+                int r = touchedRoutes[t];
+                for (int p = 0; p < size[r]; p++) {
+                    routeOf[route[r][p]] = -1;
+                    positionOf[route[r][p]] = -1;
+                }
+            }
+            for (int t = 0; t < touchedCount; t++) {
+                int r = touchedRoutes[t];
+                System.arraycopy(savedRoute[r], 0, route[r], 0, savedSize[r]);
+                System.arraycopy(savedEdge[r], 0, edge[r], 0, savedSize[r]);
+                size[r] = savedSize[r];
+                length[r] = savedLength[r];
+                touched[r] = false;
+                reindex(r);
+            }
+            score = before;
+            emptyRoute = findEmptyRoute();
+        }
+        
+        /**
+         * Drop the marked enclosures from the touched routes, along with storages
+         * left with nothing to feed, and reprice those routes.
+         */
+        private void removeMarked() {
+            for (int t = 0; t < touchedCount; t++) {
+                int r = touchedRoutes[t];
+                int[] ids = route[r];
+                int n = 0;
+                for (int p = 0; p < size[r]; p++) {
+                    int id = ids[p];
+                    if (store.isEnclosure(id) && mark[id] == stamp) {
+                        routeOf[id] = -1;
+                        positionOf[id] = -1;
+                        score -= store.importance(id) * 1000;
+                        continue;
+                    }
+                    if (!store.isEnclosure(id) && n > 0 && store.isFoodStorage(ids[n - 1])) {
+                        n--;
+                    }
+                    ids[n++] = id;
+                }
+                size[r] = n;
+                score += length[r];
+                length[r] = repriceEdges(r, 0, n - 1);
+                score -= length[r];
+                reindex(r);
+            }
+            emptyRoute = findEmptyRoute();
+        }
+        
+        /**
+         * Pool the removed enclosures with their unfed neighbours of the same diet.
+         */
+        private void fillPool(int count) {
+            poolCount = 0;
+            for (int i = 0; i < count; i++) {
+                pool[poolCount++] = removed[i];
+            }
+            for (int i = 0; i < count && poolCount < POOL_SIZE; i++) {
+                for (int rank = 0; rank < k && poolCount < POOL_SIZE; rank++) {
+                    int j = candidateLists.neighbour(removed[i], rank);
+                    if (j >= 0 && routeOf[j] < 0 && mark[j] != stamp) {
+                        mark[j] = stamp;
+                        pool[poolCount++] = j;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Insert pool entries one at a time, by net gain or by regret, while any
+         * positive-gain insertion fits a battery.
+         */
+        private void recreate(boolean regret) {
+            for (int i = 0; i < poolCount; i++) {
+                evaluate(i);
+            }
+            
+            while (true) {
+                int chosen = -1;
+                double chosenKey = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < poolCount; i++) {
+                    if (bestGain[i] <= 0) {
+                        continue;
+                    }
+                    double key = regret ? bestGain[i] - Math.max(0, secondGain[i]) : bestGain[i];
+                    if (key > chosenKey) {
+                        chosenKey = key;
+                        chosen = i;
+                    }
+                }
+                if (chosen < 0) {
+                    return;
+                }
+                
+                int e = pool[chosen];
+                int r = bestRoute[chosen];
+                insert(chosen);
+                
+                // The chosen entry leaves the pool; re-price the entries that could use this route
+                pool[chosen] = pool[--poolCount];
+                copyEntry(poolCount, chosen);
+                for (int i = 0; i < poolCount; i++) {
+                    if (usesRoute(i, r) || isNear(pool[i], e)) {
+                        evaluate(i);
+                    }
+                }
+            }
+        }
+        
+        private void copyEntry(int from, int to) {
+            bestGain[to] = bestGain[from];
+            secondGain[to] = secondGain[from];
+            bestRoute[to] = bestRoute[from];
+            bestAfter[to] = bestAfter[from];
+            bestStorage[to] = bestStorage[from];
+            candidateCount[to] = candidateCount[from];
+            System.arraycopy(candidates, from * MAX_CANDIDATE_ROUTES,
+                    candidates, to * MAX_CANDIDATE_ROUTES, candidateCount[from]);
+        }
+        
+        private boolean usesRoute(int entry, int r) {
+            for (int c = 0; c < candidateCount[entry]; c++) {
+                if (candidates[entry * MAX_CANDIDATE_ROUTES + c] == r) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private boolean isNear(int e, int id) {
+            for (int rank = 0; rank < k; rank++) {
+                if (candidateLists.neighbour(e, rank) == id) {
+                    return true;
+                }
+            }
+            int offset = (e - store.firstEnclosureId()) * NEARBY;
+            for (int i = 0; i < NEARBY; i++) {
+                if (nearby[offset + i] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Collect the routes near an entry and find its best and second-best insertion.
+         */
+        private void evaluate(int entry) {
+            int e = pool[entry];
+            int base = entry * MAX_CANDIDATE_ROUTES;
+            int count = 0;
+            for (int rank = 0; rank < k + NEARBY && count < MAX_CANDIDATE_ROUTES; rank++) {
+                int j = rank < k
+                        ? candidateLists.neighbour(e, rank)
+                        : nearby[(e - store.firstEnclosureId()) * NEARBY + rank - k];
+                if (j >= 0 && routeOf[j] >= 0) {
+                    count = addCandidate(base, count, routeOf[j]);
+                }
+            }
+            if (emptyRoute >= 0 && count < MAX_CANDIDATE_ROUTES) {
+                count = addCandidate(base, count, emptyRoute);
+            }
+            candidateCount[entry] = count;
+            
+            bestGain[entry] = Double.NEGATIVE_INFINITY;
+            secondGain[entry] = Double.NEGATIVE_INFINITY;
+            for (int c = 0; c < count; c++) {
+                int r = candidates[base + c];
+                scan(e, r);
+                if (scanGain > bestGain[entry]) {
+                    secondGain[entry] = bestGain[entry];
+                    bestGain[entry] = scanGain;
+                    bestRoute[entry] = r;
+                    bestAfter[entry] = scanAfter;
+                    bestStorage[entry] = scanStorage;
+                } else if (scanGain > secondGain[entry]) {
+                    secondGain[entry] = scanGain;
+                }
+            }
+        }
+        
+        private int addCandidate(int base, int count, int r) {
+            for (int c = 0; c < count; c++) {
+                if (candidates[base + c] == r) {
+                    return count;
+                }
+            }
+            candidates[base + count] = r;
+            return count + 1;
+        }
+        
+        /**
+         * Best insertion of an enclosure into one route: next to visits carrying its diet,
+         * or in a new block of its own in front of a storage or the final depot.
+         */
+        private void scan(int e, int r) {
+            int[] ids = route[r];
+            double prize = store.importance(e) * 1000;
+            double slack = capacity - length[r];
+            byte diet = store.diet(e);
+            byte carried = LocationStore.NO_DIET;
+            scanGain = Double.NEGATIVE_INFINITY;
+            
+            for (int p = 0; p < size[r] - 1; p++) {
+                int x = ids[p];
+                int y = ids[p + 1];
+                if (store.isFoodStorage(x)) {
+                    carried = store.diet(x);
+                }
+                if (carried == diet) {
+                    consider(prize, slack, edge[r][p], x, e, y, -1, p);
+                } else if (!store.isEnclosure(y)) {
+                    for (int rank = 0; rank < candidateLists.getStoragesPerEnclosure(); rank++) {
+                        int s = candidateLists.nearestStorage(e, rank);
+                        if (s < 0) {
+                            break;
+                        }
+                        consider(prize, slack, edge[r][p], x, e, y, s, p);
+                    }
+                }
+            }
+        }
+        
+        private void consider(double prize, double slack, double edge, int x, int e, int y, int s, int p) {
+            // Skip the exact costs when even the straight-line detour cannot win
+            double lower = s < 0
+                    ? costs.lowerBound(x, e) + costs.lowerBound(e, y) - edge
+                    : costs.lowerBound(x, s) + costs.lowerBound(s, e) + costs.lowerBound(e, y) - edge;
+            if (lower > slack || prize - lower <= scanGain) {
+                return;
+            }
+            double delta = s < 0
+                    ? costs.cost(x, e) + costs.cost(e, y) - edge
+                    : costs.cost(x, s) + costs.cost(s, e) + costs.cost(e, y) - edge;
+            if (delta <= slack && prize - delta > scanGain) {
+                scanGain = prize - delta;
+                scanAfter = p;
+                scanStorage = s;
+            }
+        }
+        
+        private void insert(int entry) {
+            int e = pool[entry];
+            int r = bestRoute[entry];
+            int s = bestStorage[entry];
+            int at = bestAfter[entry] + 1;
+            int added = s < 0 ? 1 : 2;
+            touch(r);
+            if (size[r] + added > route[r].length) {
+                route[r] = Arrays.copyOf(route[r], 2 * (size[r] + added));
+                edge[r] = Arrays.copyOf(edge[r], 2 * (size[r] + added));
+            }
+            System.arraycopy(route[r], at, route[r], at + added, size[r] - at);
+            System.arraycopy(edge[r], at, edge[r], at + added, size[r] - at - 1);
+            if (s >= 0) {
+                route[r][at] = s;
+            }
+            route[r][at + added - 1] = e;
+            size[r] += added;
+            repriceEdges(r, at - 1, at + added);
+            length[r] += store.importance(e) * 1000 - bestGain[entry];
+            score += bestGain[entry];
+            reindex(r);
+            if (r == emptyRoute) {
+                emptyRoute = findEmptyRoute();
+            }
+        }
+        
+        /**
+         * Recompute the edge costs of a route from position from up to, not including, to.
+         * 
+         * @return the sum of those edge costs
+         */
+        private double repriceEdges(int r, int from, int to) {
+            double total = 0;
+            for (int p = from; p < to; p++) {
+                edge[r][p] = costs.cost(route[r][p], route[r][p + 1]);
+                total += edge[r][p];
+            }
+            return total;
+        }
+        
+        private void reindex(int r) {
+            for (int p = 0; p < size[r]; p++) {
+                int id = route[r][p];
+                if (store.isEnclosure(id)) {
+                    routeOf[id] = r;
+                    positionOf[id] = p;
+                }
+            }
+        }
+        
+        private int findEmptyRoute() {
+            for (int r = 0; r < route.length; r++) {
+                if (size[r] <= 2) {
+                    return r;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Offer the current solution as the overall best.
+         */
+        private void publish() {
+            Snapshot global = best.get();
+            if (global.score >= score) {
+                return;
+            }
+            int[][] routes = new int[route.length][];
+            double distance = 0;
+            for (int r = 0; r < route.length; r++) {
+                routes[r] = Arrays.copyOf(route[r], size[r]);
+                distance += length[r];
+            }
+            Snapshot candidate = new Snapshot(routes, length.clone(), score, distance);
+            while (global.score < candidate.score) {
+                if (best.compareAndSet(global, candidate)) {
+                    published.increment();
+                    return;
+                }
+                global = best.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package core.algorithm;
+
+import core.models.Location;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+import core.services.VisibilityGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Edge costs by location ID for the local search stages, and conversion of paths to and
+ * from arrays of IDs. Costs are straight drone distances, or with an edge oracle attached,
+ * the length of the shortest detour around deadzones.
+ */
+class RouteCosts {
+    
+    private final DistanceOracle distanceOracle;
+    private final LocationStore store;
+    private EdgeOracle edgeOracle;
+    
+    RouteCosts(DistanceOracle distanceOracle) {
+        this.distanceOracle = distanceOracle;
+        this.store = distanceOracle.getStore();
+    }
+    
+    void setEdgeOracle(EdgeOracle edgeOracle) {
+        this.edgeOracle = edgeOracle;
+    }
+    
+    /**
+     * Edge cost between two location IDs, around deadzones if an edge oracle is attached.
+     */
+    double cost(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        if (edgeOracle == null) {
+            return distanceOracle.distance(a, b);
+        }
+        return edgeOracle.length(store.location(a), store.location(b));
+    }
+    
+    /**
+     * Straight drone distance between two location IDs, from their coordinates.
+     * Detours are never shorter, so this bounds {@link #cost} without a lookup.
+     */
+    double lowerBound(int a, int b) {
+        double[] vertical = distanceOracle.getVertical();
+        double dx = store.xs()[b] - store.xs()[a];
+        double dy = store.ys()[b] - store.ys()[a];
+        return vertical[a] + Math.sqrt(dx * dx + dy * dy) + vertical[b];
+    }
+    
+    /**
+     * Turn a path into its location IDs. Waypoints only route around deadzones,
+     * so they are dropped; {@link #toPath} rebuilds them.
+     */
+    int[] toRoute(List<Location> path) {
+        int[] route = new int[path.size()];
+        int n = 0;
+        for (Location location : path) {
+            int id = store.idOf(location);
+            if (id >= 0) {
+                route[n++] = id;
+            }
+        }
+        return Arrays.copyOf(route, n);
+    }
+    
+    /**
+     * Turn a route of location IDs back into locations, with detours around deadzones.
+     * 
+     * @return the path, or null if some edge has no safe detour
+     */
+    List<Location> toPath(int[] route) {
+        List<Location> path = new ArrayList<>(route.length);
+        path.add(store.location(route[0]));
+        for (int p = 1; p < route.length; p++) {
+            Location from = store.location(route[p - 1]);
+            Location to = store.location(route[p]);
+            if (edgeOracle != null && edgeOracle.isBlocked(from, to)) {
+                VisibilityGraph.Route detour = edgeOracle.route(from, to);
+                if (detour == null) {
+                    return null;
+                }
+                path.addAll(detour.getWaypoints());
+            }
+            path.add(to);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,418 @@
+package core.algorithm;
+
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Post-optimization for planned battery paths: 2-opt and Or-opt local search on each path.
+ * Moves are only looked for between an enclosure and its k nearest same-diet neighbours from
+ * the {@link CandidateLists}, and enclosures whose neighbourhood has not changed since they last
+ * failed to improve are skipped (don't-look bits), so a pass over a path costs about O(n k).
+ * Every move is priced in O(1) from the few edges it replaces and checked against the path
+ * length kept as prefix sums; it is taken only if it shortens the path and the result fits
+ * the battery.
+ * 
+ * Moves never carry an enclosure past a food storage or the depot into a block of another
+ * diet, so every enclosure is still fed from the storage it was fed from before and the set
+ * of fed enclosures is unchanged. With an edge oracle attached, edges are priced by their
+ * detour around deadzones and detours are rebuilt from the visibility graph afterwards.
+ */
+public class RouteImprover implements EdgePriced {
+    
+    /**
+     * Longest chain of consecutive enclosures moved by one Or-opt move.
+     */
+    public static final int MAX_CHAIN = 3;
+    
+    // Improvements smaller than this are rounding noise and would never terminate
+    private static final double EPSILON = 1e-7;
+    
+    private final RouteCosts costs;
+    private final CandidateLists candidateLists;
+    private final LocationStore store;
+    
+    /**
+     * Creates a RouteImprover over a zoo's distance oracle and candidate lists.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     * @param candidateLists candidate lists built over the same location store
+     */
+    public RouteImprover(DistanceOracle distanceOracle, CandidateLists candidateLists) {
+        this.costs = new RouteCosts(distanceOracle);
+        this.candidateLists = candidateLists;
+        this.store = distanceOracle.getStore();
+    }
+    
+    /**
+     * Compare 2-opt and Or-opt moves by detour length, so a move that shortens the straight
+     * path but adds a detour is rejected.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+    }
+    
+    /**
+     * Improve a set of battery paths, one path per task on the common ForkJoin pool.
+     * 
+     * @param paths the paths to improve, each starting and ending at the depot
+     * @param batteryCapacity Maximum distance allowed per path
+     * @return the improved paths, in the same order
+     */
+    public List<List<Location>> improveAll(List<List<Location>> paths, double batteryCapacity) {
+        List<List<Location>> improved = new ArrayList<>(paths);
+        IntStream.range(0, paths.size()).parallel().forEach(i ->
+                improved.set(i, improve(paths.get(i), batteryCapacity)));
+        return improved;
+    }
+    
+    /**
+     * Improve a single battery path.
+     * 
+     * @param path the path to improve, starting and ending at the depot
+     * @param batteryCapacity Maximum distance allowed for this path
+     * @return the improved path, or the original path if no move shortened it
+     */
+    public List<Location> improve(List<Location> path, double batteryCapacity) {
+        int[] route = costs.toRoute(path);
+        if (route.length < 4) {
+            return path;
+        }
+        
+        PathSearch search = new PathSearch(route, batteryCapacity);
+        if (!search.run()) {
+            return path;
+        }
+        
+        List<Location> improved = costs.toPath(search.route);
+        return improved != null ? improved : path;
+    }
+    
+    /**
+     * Local search state for one path. Positions are indexes into the route; a block is a
+     * food storage (or the depot) followed by the enclosures up to the next one.
+     */
+    private class PathSearch {
+        
+        private int[] route;
+        private final int n;
+        private final double batteryCapacity;
+        
+        private final double[] prefix;
+        private final int[] block;
+        private final byte[] blockDiet;
+        private final int[] position;
+        
+        // Work queue of enclosure IDs whose don't-look bit is off
+        private final int[] queue;
+        private final boolean[] queued;
+        private int head;
+        private int queueSize;
+        
+        PathSearch(int[] route, double batteryCapacity) {
+            this.route = route;
+            this.n = route.length;
+            this.batteryCapacity = batteryCapacity;
+            this.prefix = new double[n];
+            this.block = new int[n];
+            this.blockDiet = new byte[n];
+            this.position = new int[store.size()];
+            this.queue = new int[n];
+            this.queued = new boolean[store.size()];
+        }
+        
+        /**
+         * Apply improving moves until no enclosure has its don't-look bit off.
+         * 
+         * @return true if the route changed
+         */
+        boolean run() {
+            Arrays.fill(position, -1);
+            for (int p = 0; p < n; p++) {
+                int id = route[p];
+                if (store.isEnclosure(id)) {
+                    if (position[id] >= 0) {
+                        return false; // Visited twice; leave such paths alone
+                    }
+                    position[id] = p;
+                }
+            }
+            reindex(0);
+            
+            for (int p = 0; p < n; p++) {
+                if (isInner(p)) {
+                    push(route[p]);
+                }
+            }
+            
+            boolean changed = false;
+            while (queueSize > 0) {
+                int id = queue[head];
+                head = (head + 1) % n;
+                queueSize--;
+                queued[id] = false;
+                
+                if (twoOpt(id) || orOpt(id)) {
+                    changed = true;
+                    push(id);
+                }
+            }
+            return changed;
+        }
+        
+        /**
+         * Recompute prefix lengths, blocks and positions after the route changed.
+         * 
+         * @param start first position that changed; everything before it is still valid
+         */
+        private void reindex(int start) {
+            int current = start == 0 ? 0 : block[start - 1];
+            byte diet = start == 0 ? LocationStore.NO_DIET : blockDiet[start - 1];
+            for (int p = start; p < n; p++) {
+                int id = route[p];
+                if (p > 0) {
+                    prefix[p] = prefix[p - 1] + costs.cost(route[p - 1], id);
+                }
+                if (store.isEnclosure(id)) {
+                    position[id] = p;
+                } else {
+                    current++;
+                    diet = store.isFoodStorage(id) ? store.diet(id) : LocationStore.NO_DIET;
+                }
+                block[p] = current;
+                blockDiet[p] = diet;
+            }
+        }
+        
+        private double length() {
+            return prefix[n - 1];
+        }
+        
+        /**
+         * @return the cost of the edge arriving at position p, read off the prefix sums
+         */
+        private double edge(int p) {
+            return prefix[p] - prefix[p - 1];
+        }
+        
+        /**
+         * @return true if the position holds an enclosure, which local search may move
+         */
+        private boolean isInner(int p) {
+            return p > 0 && p < n - 1 && store.isEnclosure(route[p]);
+        }
+        
+        private void push(int id) {
+            if (store.isEnclosure(id) && !queued[id]) {
+                queued[id] = true;
+                queue[(head + queueSize) % n] = id;
+                queueSize++;
+            }
+        }
+        
+        private boolean accepts(double delta) {
+            return delta < -EPSILON && length() + delta <= batteryCapacity;
+        }
+        
+        /**
+         * Try 2-opt moves that make an enclosure adjacent to one of its candidates.
+         */
+        private boolean twoOpt(int a) {
+            int i = position[a];
+            double succ = edge(i + 1);
+            double pred = edge(i);
+            double longest = Math.max(succ, pred);
+            
+            for (int rank = 0; rank < candidateLists.getK(); rank++) {
+                int c = candidateLists.neighbour(a, rank);
+                // Straight distances never exceed edge costs, so they bound the gain
+                if (c < 0 || candidateLists.neighbourDistance(a, rank) >= longest) {
+                    break;
+                }
+                int j = position[c];
+                if (j < 0 || block[j] != block[i]) {
+                    continue;
+                }
+                double ac = costs.cost(a, c);
+                
+                // Edges (a, succ a) and (c, succ c) become (a, c) and (succ a, succ c)
+                int lo = Math.min(i, j);
+                int hi = Math.max(i, j);
+                if (ac < succ && reverseIfBetter(lo + 1, hi)) {
+                    return true;
+                }
+                
+                // Edges (pred a, a) and (pred c, c) become (pred a, pred c) and (a, c)
+                if (ac < pred && reverseIfBetter(lo, hi - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Reverse route[from..to] if that shortens the path. Edge costs are symmetric,
+         * so only the two edges at the ends of the segment change.
+         */
+        private boolean reverseIfBetter(int from, int to) {
+            if (from >= to || !isInner(from) || block[from] != block[to]) {
+                return false;
+            }
+            int before = route[from - 1];
+            int first = route[from];
+            int last = route[to];
+            int after = route[to + 1];
+            
+            double delta = costs.cost(before, last) + costs.cost(first, after) - edge(from) - edge(to + 1);
+            if (!accepts(delta)) {
+                return false;
+            }
+            
+            for (int lo = from, hi = to; lo < hi; lo++, hi--) {
+                int tmp = route[lo];
+                route[lo] = route[hi];
+                route[hi] = tmp;
+            }
+            reindex(from);
+            push(before);
+            push(first);
+            push(last);
+            push(after);
+            return true;
+        }
+        
+        /**
+         * Try Or-opt moves of chains of up to MAX_CHAIN enclosures starting or ending at an
+         * enclosure, reinserted next to one of the candidates of the chain's ends.
+         */
+        private boolean orOpt(int a) {
+            int i = position[a];
+            for (int length = 1; length <= MAX_CHAIN; length++) {
+                if (moveChainIfBetter(i, i + length - 1)) {
+                    return true;
+                }
+                if (length > 1 && moveChainIfBetter(i - length + 1, i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private boolean moveChainIfBetter(int from, int to) {
+            if (from < 1 || to > n - 2 || !isInner(from) || !isInner(to) || block[from] != block[to]) {
+                return false;
+            }
+            int first = route[from];
+            int last = route[to];
+            byte diet = store.diet(first);
+            for (int p = from; p <= to; p++) {
+                if (store.diet(route[p]) != diet || blockDiet[p] != diet) {
+                    return false; // Only chains of enclosures fed from their block's storage
+                }
+            }
+            
+            int before = route[from - 1];
+            int after = route[to + 1];
+            double removal = edge(from) + edge(to + 1) - costs.cost(before, after);
+            if (removal <= EPSILON) {
+                return false;
+            }
+            
+            return insertNear(first, from, to, removal, true) || insertNear(last, from, to, removal, false);
+        }
+        
+        /**
+         * Reinsert the chain route[from..to] so that one of its ends sits next to a
+         * candidate of that end.
+         * 
+         * @param end the chain end to place next to the candidate
+         * @param atFirst true if end is the chain's first element
+         */
+        private boolean insertNear(int end, int from, int to, double removal, boolean atFirst) {
+            int other = atFirst ? route[to] : route[from];
+            byte diet = store.diet(end);
+            
+            for (int rank = 0; rank < candidateLists.getK(); rank++) {
+                int c = candidateLists.neighbour(end, rank);
+                if (c < 0 || candidateLists.neighbourDistance(end, rank) >= removal) {
+                    break;
+                }
+                int j = position[c];
+                if (j < 0 || (j >= from && j <= to) || blockDiet[j] != diet) {
+                    continue;
+                }
+                double toEnd = costs.cost(c, end);
+                
+                // Between c and its successor: c, end .. other, succ c
+                if (j + 1 < from || j + 1 > to) {
+                    int next = route[j + 1];
+                    double delta = toEnd + costs.cost(other, next) - edge(j + 1) - removal;
+                    if (accepts(delta)) {
+                        moveChain(from, to, j, atFirst);
+                        return true;
+                    }
+                }
+                
+                // Between c's predecessor and c: pred c, other .. end, c
+                if (j - 1 < from || j - 1 > to) {
+                    int previous = route[j - 1];
+                    double delta = toEnd + costs.cost(previous, other) - edge(j) - removal;
+                    if (accepts(delta)) {
+                        moveChain(from, to, j - 1, !atFirst);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Move route[from..to] to just after position target, in its original orientation
+         * if forward is true and reversed otherwise.
+         */
+        private void moveChain(int from, int to, int target, boolean forward) {
+            int[] chain = Arrays.copyOfRange(route, from, to + 1);
+            if (!forward) {
+                for (int lo = 0, hi = chain.length - 1; lo < hi; lo++, hi--) {
+                    int tmp = chain[lo];
+                    chain[lo] = chain[hi];
+                    chain[hi] = tmp;
+                }
+            }
+            
+            int[] moved = new int[n];
+            int size = 0;
+            for (int p = 0; p < n; p++) {
+                if (p >= from && p <= to) {
+                    continue;
+                }
+                moved[size++] = route[p];
+                if (p == target) {
+                    System.arraycopy(chain, 0, moved, size, chain.length);
+                    size += chain.length;
+                }
+            }
+            
+            int before = route[from - 1];
+            int after = route[to + 1];
+            int next = route[target + 1];
+            route = moved;
+            reindex(Math.min(from, target + 1));
+            push(before);
+            push(after);
+            push(next);
+            push(chain[0]);
+            push(chain[chain.length - 1]);
+        }
+    }
+}
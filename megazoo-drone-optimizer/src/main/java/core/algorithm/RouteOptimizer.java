@@ -4,6 +4,11 @@ import main.java.core.mock.MockDistanceCalculator;
 import main.java.core.models.AnimalEnclosure;
 import main.java.core.models.FoodStorage;
 import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+import core.services.RemainingSet;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -14,9 +19,13 @@ import java.util.Map;
  * Optimizes routes for drone feeding paths by splitting them into battery-compliant segments.
  * Handles ensuring that paths respect battery limitations while maximizing feeding efficiency.
  */
-public class RouteOptimizer {
+public class RouteOptimizer implements EdgePriced {
     
     private final MockDistanceCalculator distanceCalculator;
+    private RouteCosts costs; // Shared by the splitter; created on first optimal split
+    private TourSplitter tourSplitter; // Created on first optimal split
+    private EdgeOracle edgeOracle;
+    private CandidateLists candidateLists;
     
     /**
      * Creates a RouteOptimizer with a specific distance calculator.
@@ -36,6 +45,31 @@ public class RouteOptimizer {
         this.distanceCalculator = new MockDistanceCalculator(maxFlightHeight);
     }
     
+    /**
+     * Hand the oracle to the tour splitter behind optimal splits, which then place storages
+     * and depot returns by detour length. Greedy splits ignore it.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        this.edgeOracle = edgeOracle;
+        if (tourSplitter != null) {
+            tourSplitter.setEdgeOracle(edgeOracle);
+        }
+    }
+    
+    /**
+     * Use candidate lists to pick storages in optimal splits, instead of trying every
+     * storage of a diet.
+     * 
+     * @param candidateLists candidate lists built over the distance oracle's store
+     */
+    public void setCandidateLists(CandidateLists candidateLists) {
+        this.candidateLists = candidateLists;
+        this.tourSplitter = null;
+    }
+    
     /**
      * Split a proposed path into multiple battery-compliant segments.
      * Each segment starts and ends at the depot.
@@ -49,12 +83,40 @@ public class RouteOptimizer {
             List<Location> proposedPath,
             Location depot,
             double batteryCapacity) {
-        
-        List<List<Location>> result = new ArrayList<>();
+        return optimizeForBatterySwaps(proposedPath, depot, batteryCapacity, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Split a proposed path into at most maxPaths battery-compliant segments.
+     * Each segment starts and ends at the depot.
+     * 
+     * With a distance oracle over the zoo, the enclosures of the proposed path are split
+     * optimally by {@link TourSplitter}: depot returns and storage visits are placed to
+     * maximise the score, and enclosures that don't pay for themselves are dropped.
+     * Otherwise segments are cut greedily, as soon as the next stop would not leave
+     * enough battery to return home.
+     * 
+     * No level calls this: they plan battery paths directly, and the genetic algorithm
+     * decodes its tours with its own splitters. It is the entry point for callers that hold
+     * one long tour, such as a greedy plan flown under a battery it was not planned for. An
+     * optimal split prices the whole tour once per bisection step of the path limit, which
+     * takes seconds for a Level 4 tour, so split once per tour rather than inside a search.
+     * 
+     * @param proposedPath The ideal path if battery were unlimited
+     * @param depot The depot location for swaps
+     * @param batteryCapacity Maximum distance per charge
+     * @param maxPaths Maximum number of segments
+     * @return List of battery-compliant paths (each starting/ending at depot)
+     */
+    public List<List<Location>> optimizeForBatterySwaps(
+            List<Location> proposedPath,
+            Location depot,
+            double batteryCapacity,
+            int maxPaths) {
         
         // If proposed path is empty or has only the depot, return empty list
         if (proposedPath == null || proposedPath.size() <= 1) {
-            return result;
+            return new ArrayList<>();
         }
         
         // If proposed path doesn't start or end with depot, return empty list
@@ -62,6 +124,64 @@ public class RouteOptimizer {
             throw new IllegalArgumentException("Proposed path must start and end with depot");
         }
         
+        if (distanceCalculator instanceof DistanceOracle) {
+            LocationStore store = ((DistanceOracle) distanceCalculator).getStore();
+            if (store.idOf(depot) == store.depotId()) {
+                return splitOptimally(proposedPath, store, batteryCapacity, maxPaths);
+            }
+        }
+        return splitGreedily(proposedPath, depot, batteryCapacity, maxPaths);
+    }
+    
+    /**
+     * Split the enclosures of a path, in order of first visit, with the tour splitter.
+     */
+    private List<List<Location>> splitOptimally(
+            List<Location> proposedPath,
+            LocationStore store,
+            double batteryCapacity,
+            int maxPaths) {
+        
+        if (tourSplitter == null) {
+            if (costs == null) {
+                costs = new RouteCosts((DistanceOracle) distanceCalculator);
+            }
+            tourSplitter = new TourSplitter(costs, store, candidateLists);
+            tourSplitter.setEdgeOracle(edgeOracle);
+        }
+        
+        // Storages are placed again by the split, so only the enclosure order matters
+        int[] tour = proposedPath.stream()
+                .mapToInt(store::idOf)
+                .filter(id -> id >= 0 && store.isEnclosure(id))
+                .distinct()
+                .toArray();
+        tourSplitter.split(tour, batteryCapacity, maxPaths);
+        
+        // Expand every leg with its detour around the deadzones; a segment with a leg that
+        // has no safe detour is not flown
+        List<List<Location>> result = new ArrayList<>();
+        for (int[] route : tourSplitter.getRoutes()) {
+            List<Location> segment = costs.toPath(route);
+            if (segment != null) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Cut a path into segments, each ending as soon as the next stop would not leave
+     * enough battery to return to the depot.
+     */
+    private List<List<Location>> splitGreedily(
+            List<Location> proposedPath,
+            Location depot,
+            double batteryCapacity,
+            int maxPaths) {
+        
+        List<List<Location>> result = new ArrayList<>();
+        
         // Remove consecutive duplicate locations if any
         List<Location> cleanPath = removeDuplicateConsecutiveLocations(proposedPath);
         
@@ -70,7 +190,7 @@ public class RouteOptimizer {
         
         // Start building segments
         int currentIndex = 1; // Skip the first depot
-        while (currentIndex < cleanPath.size() - 1) { // Skip the last depot
+        while (currentIndex < cleanPath.size() - 1 && result.size() < maxPaths) { // Skip the last depot
             
             // Start a new path segment from the depot
             List<Location> segment = new ArrayList<>();
@@ -93,7 +213,7 @@ public class RouteOptimizer {
                 double distanceToNext = distanceCalculator.calculateDroneDistance(currentLocation, nextLocation);
                 
                 // Calculate distance from next location back to depot
-                double distanceToDepot = distanceCalculator.calculateDroneDistance(nextLocation, depot);
+                double distanceToDepot = distanceCalculator.calculateReturnDistance(nextLocation, depot);
                 
                 // Check if we have enough battery to visit next location and return to depot
                 if (distanceToNext + distanceToDepot > remainingBattery) {
@@ -173,8 +293,8 @@ public class RouteOptimizer {
             double batteryCapacity,
             int maxBatterySwaps) {
         
-        // Create a copy of enclosures to track which ones have been fed
-        List<AnimalEnclosure> remainingEnclosures = new ArrayList<>(enclosures);
+        // Track the enclosures still to feed by ID, so removing one is O(1)
+        RemainingSet remainingEnclosures = new RemainingSet(storeFor(depot, enclosures, foodStorages), enclosures);
         
         // Result list to hold all paths
         List<List<Location>> result = new ArrayList<>();
@@ -185,7 +305,7 @@ public class RouteOptimizer {
         // Keep generating paths until we've used all battery swaps or fed all enclosures
         for (int i = 0; i <= maxBatterySwaps && !remainingEnclosures.isEmpty(); i++) {
             // Generate a path for the current battery
-            List<Location> path = pathPlanner.planPath(depot, remainingEnclosures, foodStorages, batteryCapacity);
+            List<Location> path = pathPlanner.planPath(depot, remainingEnclosures.asList(), foodStorages, batteryCapacity);
             
             // If the path only contains the depot, break (no more useful paths)
             if (path.size() <= 2) {
@@ -203,16 +323,37 @@ public class RouteOptimizer {
     }
     
     /**
-     * Updates the list of remaining enclosures by removing those that were fed in the path.
+     * Get a location store covering the given locations: the distance oracle's when it
+     * indexes this depot, otherwise a store built for this call.
+     * 
+     * @param depot Starting and ending location
+     * @param enclosures List of enclosures to feed
+     * @param foodStorages List of food storages available
+     * @return a store with an ID for every enclosure in the list
+     */
+    private LocationStore storeFor(
+            Location depot,
+            List<AnimalEnclosure> enclosures,
+            List<FoodStorage> foodStorages) {
+        if (distanceCalculator instanceof DistanceOracle) {
+            LocationStore store = ((DistanceOracle) distanceCalculator).getStore();
+            if (store.idOf(depot) == store.depotId()) {
+                return store;
+            }
+        }
+        return new LocationStore(depot, foodStorages, enclosures);
+    }
+    
+    /**
+     * Updates the set of remaining enclosures by removing those that were visited in the path.
      * 
      * @param path The path that was just completed
-     * @param remainingEnclosures The list of enclosures that still need to be fed
+     * @param remainingEnclosures The enclosures that still need to be fed
      */
-    private void updateRemainingEnclosures(List<Location> path, List<AnimalEnclosure> remainingEnclosures) {
+    private void updateRemainingEnclosures(List<Location> path, RemainingSet remainingEnclosures) {
         for (Location location : path) {
             if (location instanceof AnimalEnclosure) {
-                AnimalEnclosure enclosure = (AnimalEnclosure) location;
-                remainingEnclosures.remove(enclosure);
+                remainingEnclosures.remove(location);
             }
         }
     }
@@ -0,0 +1,250 @@
+package core.algorithm;
+
+import core.models.AnimalEnclosure;
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.FedSet;
+import core.services.LocationStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Builds all battery paths at once with the Clarke-Wright savings heuristic.
+ * Every enclosure starts on its own path: depot, the best storage of its diet, the
+ * enclosure, depot. Joining the path ending at i to the path starting at j saves
+ * (i -> depot) + (depot -> storage -> j) - (i -> j), and joins are made in order of
+ * decreasing saving while the joined path fits the battery. Savings are only computed
+ * for the k-NN candidate pairs, which all share a diet, so every path carries one food
+ * and the storage stays in front of the enclosures it serves.
+ * 
+ * The savings are computed in parallel and sorted with a parallel sort; only the joins
+ * themselves run sequentially, in near-linear time with a union-find over paths.
+ * If more paths are left than there are battery swaps, joining continues with the
+ * least costly negative savings, since a fuller path feeds more than it costs to fly.
+ */
+public class SavingsPlanner implements EdgePriced {
+    
+    private final RouteCosts costs;
+    private final CandidateLists candidateLists;
+    private final LocationStore store;
+    
+    /**
+     * Creates a SavingsPlanner over a zoo's distance oracle and candidate lists.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     * @param candidateLists candidate lists built over the same location store
+     */
+    public SavingsPlanner(DistanceOracle distanceOracle, CandidateLists candidateLists) {
+        this.costs = new RouteCosts(distanceOracle);
+        this.candidateLists = candidateLists;
+        this.store = distanceOracle.getStore();
+    }
+    
+    /**
+     * Compute savings and battery checks from detour lengths, so two paths are only joined
+     * when the joined path still fits the battery flying around the deadzones.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+    }
+    
+    /**
+     * Plan battery paths for the unfed enclosures. Storages and the depot are taken from
+     * the location store. Enclosures on the returned paths are added to the fed set.
+     * 
+     * @param enclosures the enclosures to plan for; fed ones are skipped
+     * @param batteryCapacity Maximum distance allowed per path
+     * @param maxPaths maximum number of paths to return
+     * @param fed enclosures fed so far
+     * @return the highest-scoring paths, each starting and ending at the depot
+     */
+    public List<List<Location>> planRoutes(
+            List<? extends AnimalEnclosure> enclosures,
+            double batteryCapacity,
+            int maxPaths,
+            FedSet fed) {
+        
+        int depot = store.depotId();
+        int[] members = enclosures.stream()
+                .mapToInt(store::idOf)
+                .filter(id -> id >= 0 && !fed.contains(id))
+                .distinct()
+                .toArray();
+        
+        // Cheapest way into a path (depot -> storage -> enclosure) and out of it (enclosure -> depot)
+        int[] storageOf = new int[store.size()];
+        double[] head = new double[store.size()];
+        double[] tail = new double[store.size()];
+        boolean[] member = new boolean[store.size()];
+        IntStream.range(0, members.length).parallel().forEach(m -> {
+            int e = members[m];
+            head[e] = Double.POSITIVE_INFINITY;
+            for (int rank = 0; rank < candidateLists.getStoragesPerEnclosure(); rank++) {
+                int s = candidateLists.nearestStorage(e, rank);
+                if (s < 0) {
+                    break;
+                }
+                double in = costs.cost(depot, s) + costs.cost(s, e);
+                if (in < head[e]) {
+                    head[e] = in;
+                    storageOf[e] = s;
+                }
+            }
+            tail[e] = costs.cost(e, depot);
+            member[e] = head[e] + tail[e] <= batteryCapacity;
+        });
+        
+        // One sort key per candidate pair: saving in the high half, pair slot in the low half
+        int k = candidateLists.getK();
+        long[] keys = new long[members.length * k];
+        IntStream.range(0, members.length).parallel().forEach(m -> {
+            int e = members[m];
+            for (int rank = 0; rank < k; rank++) {
+                int slot = m * k + rank;
+                int j = candidateLists.neighbour(e, rank);
+                if (!member[e] || j < 0 || !member[j]) {
+                    keys[slot] = Long.MIN_VALUE;
+                    continue;
+                }
+                double saving = tail[e] + head[j] - costs.cost(e, j);
+                keys[slot] = ((long) sortableBits((float) saving) << 32) | slot;
+            }
+        });
+        Arrays.parallelSort(keys);
+        
+        // Union-find over paths; the root of a path holds its ends and length
+        int[] parent = new int[store.size()];
+        int[] first = new int[store.size()];
+        int[] last = new int[store.size()];
+        int[] next = new int[store.size()];
+        double[] length = new double[store.size()];
+        int paths = 0;
+        for (int e : members) {
+            if (member[e]) {
+                parent[e] = e;
+                first[e] = e;
+                last[e] = e;
+                next[e] = -1;
+                length[e] = head[e] + tail[e];
+                paths++;
+            }
+        }
+        
+        for (int q = keys.length - 1; q >= 0 && keys[q] != Long.MIN_VALUE; q--) {
+            int slot = (int) keys[q];
+            int i = members[slot / k];
+            int j = candidateLists.neighbour(i, slot % k);
+            double saving = tail[i] + head[j] - costs.cost(i, j);
+            if (saving <= 0 && paths <= maxPaths) {
+                break;
+            }
+            
+            // Join only the end of one path to the start of another
+            int a = find(parent, i);
+            int b = find(parent, j);
+            if (a == b || last[a] != i || first[b] != j) {
+                continue;
+            }
+            double joined = length[a] + length[b] - saving;
+            if (joined > batteryCapacity) {
+                continue;
+            }
+            
+            parent[b] = a;
+            next[i] = j;
+            last[a] = last[b];
+            length[a] = joined;
+            paths--;
+        }
+        
+        return selectPaths(members, member, parent, first, next, length, storageOf, maxPaths, fed);
+    }
+    
+    /**
+     * Turn the joined paths into locations, keep the best-scoring ones and add what they feed.
+     */
+    private List<List<Location>> selectPaths(
+            int[] members, boolean[] member, int[] parent, int[] first, int[] next,
+            double[] length, int[] storageOf, int maxPaths, FedSet fed) {
+        
+        List<int[]> routes = new ArrayList<>();
+        List<Double> scores = new ArrayList<>();
+        for (int e : members) {
+            if (!member[e] || parent[e] != e) {
+                continue;
+            }
+            int count = 0;
+            for (int id = first[e]; id >= 0; id = next[id]) {
+                count++;
+            }
+            
+            // Depot, storage, enclosures, depot
+            int[] route = new int[count + 3];
+            route[0] = store.depotId();
+            route[1] = storageOf[first[e]];
+            double importance = 0;
+            int n = 2;
+            for (int id = first[e]; id >= 0; id = next[id]) {
+                route[n++] = id;
+                importance += store.importance(id);
+            }
+            route[n] = store.depotId();
+            
+            // Score = sum(importance * 1000) - distance
+            double score = importance * 1000 - length[e];
+            if (score > 0) {
+                routes.add(route);
+                scores.add(score);
+            }
+        }
+        
+        Integer[] order = new Integer[routes.size()];
+        for (int r = 0; r < order.length; r++) {
+            order[r] = r;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer r) -> scores.get(r)).reversed());
+        
+        List<List<Location>> result = new ArrayList<>();
+        for (int r : order) {
+            if (result.size() >= maxPaths) {
+                break;
+            }
+            List<Location> path = costs.toPath(routes.get(r));
+            if (path == null) {
+                continue;
+            }
+            result.add(path);
+            for (int id : routes.get(r)) {
+                if (store.isEnclosure(id)) {
+                    fed.add(id);
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static int find(int[] parent, int id) {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+    
+    /**
+     * Float bits reordered so that signed int comparison matches float comparison.
+     */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+}
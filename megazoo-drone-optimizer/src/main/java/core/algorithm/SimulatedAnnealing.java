@@ -0,0 +1,635 @@
+package core.algorithm;
+
+import core.models.AnimalEnclosure;
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Time-budgeted simulated annealing over finished battery paths, maximising
+ * sum(importance * 1000) - distance. Moves are drawn around an enclosure and one of its
+ * k-NN neighbours: remove a fed enclosure, insert an unfed one next to a fed neighbour,
+ * relocate or swap two fed enclosures, or reverse the stretch of a diet block between them.
+ * Every move keeps each enclosure behind a storage of its diet and every path within
+ * the battery.
+ * 
+ * Paths are held as primitive arrays of location IDs, so a move is priced in O(1) from a
+ * handful of edge costs without allocating; only accepted moves shift array entries.
+ * The temperature adapts every window of moves so that the share of accepted worsening
+ * moves follows a target that decays from 30% to 0.1% over the time budget.
+ * The best state seen is copied only just before a worsening move is accepted.
+ */
+public class SimulatedAnnealing implements EdgePriced {
+    
+    private static final int WINDOW = 1024;
+    private static final int REMOVE_ODDS = 8;
+    private static final double START_ACCEPTANCE = 0.3;
+    private static final double END_ACCEPTANCE = 0.001;
+    private static final double COOLING = 0.9;
+    private static final double EPSILON = 1e-7;
+    
+    private final RouteCosts costs;
+    private final CandidateLists candidateLists;
+    private final LocationStore store;
+    private long seed = 1;
+    
+    // Statistics of the last run
+    private long moves;
+    private long accepted;
+    private long elapsedNanos;
+    private double startScore;
+    private double bestScore;
+    
+    /**
+     * Creates a SimulatedAnnealing improver over a zoo's distance oracle and candidate lists.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     * @param candidateLists candidate lists built over the same location store
+     */
+    public SimulatedAnnealing(DistanceOracle distanceOracle, CandidateLists candidateLists) {
+        this.costs = new RouteCosts(distanceOracle);
+        this.candidateLists = candidateLists;
+        this.store = distanceOracle.getStore();
+    }
+    
+    /**
+     * Price every move by detour length, so a move across a deadzone is only accepted when
+     * the detour still pays for itself.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+    }
+    
+    /**
+     * Seed the move generator, so that runs with the same move count are repeatable.
+     * 
+     * @param seed the random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    
+    /**
+     * Anneal the paths for the given time and return the best solution found.
+     * The enclosures are only read; what the paths feed follows from the paths.
+     * 
+     * @param paths the paths to improve, each starting and ending at the depot
+     * @param enclosures the enclosures that may be fed
+     * @param batteryCapacity Maximum distance allowed per path
+     * @param budgetMillis wall-clock time to spend
+     * @return the best paths found; the given paths if none scored higher
+     */
+    public List<List<Location>> improve(
+            List<List<Location>> paths,
+            List<? extends AnimalEnclosure> enclosures,
+            double batteryCapacity,
+            long budgetMillis) {
+        
+        Anneal anneal = new Anneal(paths, enclosures, batteryCapacity);
+        startScore = anneal.score;
+        bestScore = anneal.score;
+        moves = 0;
+        accepted = 0;
+        
+        long start = System.nanoTime();
+        if (anneal.members.length > 0) {
+            anneal.run(start, start + budgetMillis * 1_000_000L);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        bestScore = anneal.bestScore;
+        
+        if (bestScore <= startScore + EPSILON) {
+            return paths;
+        }
+        return anneal.result();
+    }
+    
+    /**
+     * @return the number of moves priced per second in the last run
+     */
+    public double getMovesPerSecond() {
+        return elapsedNanos == 0 ? 0 : moves * 1e9 / elapsedNanos;
+    }
+    
+    /**
+     * @return the score of the paths the last run started from
+     */
+    public double getStartScore() {
+        return startScore;
+    }
+    
+    /**
+     * @return the score of the best state the last run reached, before empty storage
+     *         visits are dropped from the returned paths
+     */
+    public double getBestScore() {
+        return bestScore;
+    }
+    
+    /**
+     * Get statistics of the last run.
+     * 
+     * @return a one-line summary of moves, acceptance and score gain
+     */
+    public String getStatistics() {
+        return String.format("Annealing: %d moves in %d ms (%.0f moves/s), %d accepted, score %.1f -> %.1f",
+                moves, elapsedNanos / 1_000_000, getMovesPerSecond(), accepted, startScore, bestScore);
+    }
+    
+    /**
+     * Current and best state of one run. Position 0 and size - 1 of every route hold the
+     * depot; every enclosure in a route sits in the block of a storage of its diet.
+     */
+    private class Anneal {
+        
+        private static final int INSERT = 0;
+        private static final int REMOVE = 1;
+        private static final int RELOCATE = 2;
+        private static final int SWAP = 3;
+        private static final int REVERSE = 4;
+        
+        private final List<List<Location>> paths;
+        private final double capacity;
+        private final SplittableRandom random = new SplittableRandom(seed);
+        private final int k = candidateLists.getK();
+        private final int[] members;
+        
+        // Current state
+        private final int[][] route;
+        private final int[][] blockOf;
+        private final int[] size;
+        private final double[] length;
+        private final int[] routeOf;
+        private final int[] positionOf;
+        private double score;
+        
+        // Best state, copied lazily
+        private final int[][] loaded;
+        private final int[][] bestRoute;
+        private final int[] bestSize;
+        private double bestScore;
+        private boolean pendingBest;
+        
+        // The move last priced
+        private int type;
+        private int moved;
+        private int anchor;
+        private boolean afterAnchor;
+        private double delta;
+        private double newLengthA;
+        private double newLengthB;
+        
+        Anneal(List<List<Location>> paths, List<? extends AnimalEnclosure> enclosures, double capacity) {
+            this.paths = paths;
+            this.capacity = capacity;
+            
+            int count = paths.size();
+            route = new int[count][];
+            blockOf = new int[count][];
+            loaded = new int[count][];
+            bestRoute = new int[count][];
+            size = new int[count];
+            bestSize = new int[count];
+            length = new double[count];
+            routeOf = new int[store.size()];
+            positionOf = new int[store.size()];
+            Arrays.fill(routeOf, -1);
+            Arrays.fill(positionOf, -1);
+            
+            // Keep only the visits that feed; the others are pure cost
+            for (int r = 0; r < count; r++) {
+                int[] ids = costs.toRoute(paths.get(r));
+                int n = 0;
+                byte diet = LocationStore.NO_DIET;
+                for (int id : ids) {
+                    if (store.isFoodStorage(id)) {
+                        diet = store.diet(id);
+                    } else if (store.isEnclosure(id) && (store.diet(id) != diet || routeOf[id] >= 0)) {
+                        continue;
+                    }
+                    ids[n++] = id;
+                    if (store.isEnclosure(id)) {
+                        routeOf[id] = r;
+                    }
+                }
+                loaded[r] = Arrays.copyOf(ids, n);
+                route[r] = Arrays.copyOf(ids, n + 16);
+                blockOf[r] = new int[route[r].length];
+                size[r] = n;
+                for (int p = 1; p < n; p++) {
+                    length[r] += costs.cost(ids[p - 1], ids[p]);
+                    score -= costs.cost(ids[p - 1], ids[p]);
+                }
+                reindex(r, 0);
+            }
+            
+            members = enclosures.stream()
+                    .mapToInt(store::idOf)
+                    .filter(id -> id >= 0)
+                    .distinct()
+                    .toArray();
+            for (int e : members) {
+                if (routeOf[e] >= 0) {
+                    score += prize(e);
+                }
+            }
+            bestScore = score;
+            snapshot();
+        }
+        
+        void run(long start, long deadline) {
+            double temperature = initialTemperature();
+            long worse = 0;
+            long worseAccepted = 0;
+            while (true) {
+                for (int i = 0; i < WINDOW; i++) {
+                    if (!propose()) {
+                        continue;
+                    }
+                    moves++;
+                    if (delta >= 0) {
+                        apply();
+                    } else {
+                        worse++;
+                        if (random.nextDouble() >= Math.exp(delta / temperature)) {
+                            continue;
+                        }
+                        worseAccepted++;
+                        
+                        // Leaving a best state: keep a copy of it first
+                        if (pendingBest) {
+                            snapshot();
+                            pendingBest = false;
+                        }
+                        apply();
+                    }
+                    accepted++;
+                    if (score > bestScore + EPSILON) {
+                        bestScore = score;
+                        pendingBest = true;
+                    }
+                }
+                
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    break;
+                }
+                
+                // Steer the acceptance of worsening moves towards the schedule
+                double progress = (double) (now - start) / (deadline - start);
+                double target = START_ACCEPTANCE * Math.pow(END_ACCEPTANCE / START_ACCEPTANCE, progress);
+                double rate = worse == 0 ? 0 : (double) worseAccepted / worse;
+                temperature *= rate > target ? COOLING : 1 / COOLING;
+                worse = 0;
+                worseAccepted = 0;
+            }
+            if (pendingBest) {
+                snapshot();
+            }
+        }
+        
+        /**
+         * A tenth of the mean edge length, a scale at which small detours are still taken.
+         */
+        private double initialTemperature() {
+            double total = 0;
+            int edges = 0;
+            for (int r = 0; r < route.length; r++) {
+                total += length[r];
+                edges += Math.max(0, size[r] - 1);
+            }
+            return edges == 0 ? 1 : Math.max(1e-3, total / edges / 10);
+        }
+        
+        private double prize(int e) {
+            return store.importance(e) * 1000;
+        }
+        
+        /**
+         * Draw a move and price it; false if the draw gave no feasible move.
+         */
+        private boolean propose() {
+            int e = members[random.nextInt(members.length)];
+            int j = candidateLists.neighbour(e, random.nextInt(k));
+            if (routeOf[e] < 0) {
+                return j >= 0 && routeOf[j] >= 0 && priceInsert(e, j, random.nextBoolean());
+            }
+            if (j < 0 || random.nextInt(REMOVE_ODDS) == 0) {
+                return priceRemove(e);
+            }
+            if (routeOf[j] < 0) {
+                return priceInsert(j, e, random.nextBoolean());
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    return priceRelocate(e, j, random.nextBoolean());
+                case 1:
+                    return priceSwap(e, j);
+                default:
+                    return priceReverse(e, j);
+            }
+        }
+        
+        private boolean priceInsert(int e, int j, boolean after) {
+            int r = routeOf[j];
+            int q = positionOf[j];
+            int x = after ? j : route[r][q - 1];
+            int y = after ? route[r][q + 1] : j;
+            double d = costs.cost(x, e) + costs.cost(e, y) - costs.cost(x, y);
+            if (length[r] + d > capacity) {
+                return false;
+            }
+            type = INSERT;
+            moved = e;
+            anchor = j;
+            afterAnchor = after;
+            newLengthA = length[r] + d;
+            delta = prize(e) - d;
+            return true;
+        }
+        
+        private boolean priceRemove(int e) {
+            int r = routeOf[e];
+            int p = positionOf[e];
+            int a = route[r][p - 1];
+            int b = route[r][p + 1];
+            double d = costs.cost(a, b) - costs.cost(a, e) - costs.cost(e, b);
+            type = REMOVE;
+            moved = e;
+            newLengthA = length[r] + d;
+            delta = -prize(e) - d;
+            return true;
+        }
+        
+        private boolean priceRelocate(int e, int j, boolean after) {
+            int from = routeOf[e];
+            int p = positionOf[e];
+            int to = routeOf[j];
+            int q = positionOf[j];
+            int x = after ? j : route[to][q - 1];
+            int y = after ? route[to][q + 1] : j;
+            if (x == e || y == e) {
+                return false;
+            }
+            int a = route[from][p - 1];
+            int b = route[from][p + 1];
+            double removed = costs.cost(a, b) - costs.cost(a, e) - costs.cost(e, b);
+            double added = costs.cost(x, e) + costs.cost(e, y) - costs.cost(x, y);
+            if (from == to) {
+                newLengthA = length[from] + removed + added;
+                newLengthB = newLengthA;
+            } else {
+                newLengthA = length[from] + removed;
+                newLengthB = length[to] + added;
+            }
+            if (newLengthA > capacity || newLengthB > capacity) {
+                return false;
+            }
+            type = RELOCATE;
+            moved = e;
+            anchor = j;
+            afterAnchor = after;
+            delta = -(removed + added);
+            return true;
+        }
+        
+        private boolean priceSwap(int e, int j) {
+            int r1 = routeOf[e];
+            int p = positionOf[e];
+            int r2 = routeOf[j];
+            int q = positionOf[j];
+            if (r1 == r2 && Math.abs(p - q) == 1) {
+                int lo = Math.min(p, q);
+                int u = route[r1][lo];
+                int v = route[r1][lo + 1];
+                int a = route[r1][lo - 1];
+                int b = route[r1][lo + 2];
+                double d = costs.cost(a, v) + costs.cost(v, u) + costs.cost(u, b)
+                        - costs.cost(a, u) - costs.cost(u, v) - costs.cost(v, b);
+                newLengthA = length[r1] + d;
+                newLengthB = newLengthA;
+            } else {
+                int a1 = route[r1][p - 1];
+                int b1 = route[r1][p + 1];
+                int a2 = route[r2][q - 1];
+                int b2 = route[r2][q + 1];
+                double d1 = costs.cost(a1, j) + costs.cost(j, b1) - costs.cost(a1, e) - costs.cost(e, b1);
+                double d2 = costs.cost(a2, e) + costs.cost(e, b2) - costs.cost(a2, j) - costs.cost(j, b2);
+                if (r1 == r2) {
+                    newLengthA = length[r1] + d1 + d2;
+                    newLengthB = newLengthA;
+                } else {
+                    newLengthA = length[r1] + d1;
+                    newLengthB = length[r2] + d2;
+                }
+            }
+            if (newLengthA > capacity || newLengthB > capacity) {
+                return false;
+            }
+            type = SWAP;
+            moved = e;
+            anchor = j;
+            delta = (length[r1] - newLengthA) + (r1 == r2 ? 0 : length[r2] - newLengthB);
+            return true;
+        }
+        
+        /**
+         * Reverse the stretch between two enclosures of one diet block so they end up adjacent.
+         */
+        private boolean priceReverse(int e, int j) {
+            int r = routeOf[e];
+            if (routeOf[j] != r) {
+                return false;
+            }
+            int[] ids = route[r];
+            int[] block = blockOf[r];
+            int p = positionOf[e];
+            int q = positionOf[j];
+            double d;
+            if (p < q) {
+                // Reverse p+1..q
+                if (q <= p + 1 || !store.isEnclosure(ids[p + 1]) || block[p + 1] != block[q]) {
+                    return false;
+                }
+                d = costs.cost(e, j) + costs.cost(ids[p + 1], ids[q + 1])
+                        - costs.cost(e, ids[p + 1]) - costs.cost(j, ids[q + 1]);
+            } else {
+                // Reverse q..p-1
+                if (p <= q + 1 || block[q] != block[p - 1]) {
+                    return false;
+                }
+                d = costs.cost(ids[q - 1], ids[p - 1]) + costs.cost(j, e)
+                        - costs.cost(ids[q - 1], j) - costs.cost(ids[p - 1], e);
+            }
+            if (length[r] + d > capacity) {
+                return false;
+            }
+            type = REVERSE;
+            moved = e;
+            anchor = j;
+            newLengthA = length[r] + d;
+            delta = -d;
+            return true;
+        }
+        
+        /**
+         * Apply the move last priced.
+         */
+        private void apply() {
+            score += delta;
+            switch (type) {
+                case INSERT: {
+                    int r = routeOf[anchor];
+                    insert(r, positionOf[anchor] + (afterAnchor ? 1 : 0), moved);
+                    length[r] = newLengthA;
+                    break;
+                }
+                case REMOVE: {
+                    int r = routeOf[moved];
+                    remove(r, positionOf[moved]);
+                    length[r] = newLengthA;
+                    break;
+                }
+                case RELOCATE: {
+                    int from = routeOf[moved];
+                    int to = routeOf[anchor];
+                    remove(from, positionOf[moved]);
+                    insert(to, positionOf[anchor] + (afterAnchor ? 1 : 0), moved);
+                    length[from] = newLengthA;
+                    length[to] = newLengthB;
+                    break;
+                }
+                case SWAP: {
+                    int r1 = routeOf[moved];
+                    int p = positionOf[moved];
+                    int r2 = routeOf[anchor];
+                    int q = positionOf[anchor];
+                    route[r1][p] = anchor;
+                    route[r2][q] = moved;
+                    routeOf[anchor] = r1;
+                    positionOf[anchor] = p;
+                    routeOf[moved] = r2;
+                    positionOf[moved] = q;
+                    length[r1] = newLengthA;
+                    length[r2] = newLengthB;
+                    break;
+                }
+                default: {
+                    int r = routeOf[moved];
+                    int p = positionOf[moved];
+                    int q = positionOf[anchor];
+                    if (p < q) {
+                        reverse(r, p + 1, q);
+                    } else {
+                        reverse(r, q, p - 1);
+                    }
+                    length[r] = newLengthA;
+                    break;
+                }
+            }
+        }
+        
+        private void insert(int r, int position, int e) {
+            if (size[r] == route[r].length) {
+                route[r] = Arrays.copyOf(route[r], size[r] * 2);
+                blockOf[r] = Arrays.copyOf(blockOf[r], size[r] * 2);
+            }
+            System.arraycopy(route[r], position, route[r], position + 1, size[r] - position);
+            route[r][position] = e;
+            size[r]++;
+            reindex(r, position);
+        }
+        
+        private void remove(int r, int position) {
+            int e = route[r][position];
+            System.arraycopy(route[r], position + 1, route[r], position, size[r] - position - 1);
+            size[r]--;
+            routeOf[e] = -1;
+            positionOf[e] = -1;
+            reindex(r, position);
+        }
+        
+        private void reverse(int r, int from, int to) {
+            int[] ids = route[r];
+            for (int i = from, j = to; i < j; i++, j--) {
+                int id = ids[i];
+                ids[i] = ids[j];
+                ids[j] = id;
+            }
+            for (int p = from; p <= to; p++) {
+                positionOf[ids[p]] = p;
+            }
+        }
+        
+        /**
+         * Refresh positions and block starts of a route from a position on.
+         */
+        private void reindex(int r, int from) {
+            int[] ids = route[r];
+            int[] block = blockOf[r];
+            for (int p = from; p < size[r]; p++) {
+                int id = ids[p];
+                if (store.isEnclosure(id)) {
+                    block[p] = block[p - 1];
+                    routeOf[id] = r;
+                    positionOf[id] = p;
+                } else {
+                    block[p] = p;
+                }
+            }
+        }
+        
+        private void snapshot() {
+            for (int r = 0; r < route.length; r++) {
+                if (bestRoute[r] == null || bestRoute[r].length < size[r]) {
+                    bestRoute[r] = new int[route[r].length];
+                }
+                System.arraycopy(route[r], 0, bestRoute[r], 0, size[r]);
+                bestSize[r] = size[r];
+            }
+        }
+        
+        /**
+         * Turn the best state into paths, without storages left with nothing to feed.
+         */
+        List<List<Location>> result() {
+            List<List<Location>> result = new ArrayList<>(route.length);
+            for (int r = 0; r < route.length; r++) {
+                int[] ids = bestRoute[r];
+                int n = 0;
+                int[] kept = new int[bestSize[r]];
+                for (int p = 0; p < bestSize[r]; p++) {
+                    boolean emptyBlock = store.isFoodStorage(ids[p]) && !store.isEnclosure(ids[p + 1]);
+                    if (!emptyBlock) {
+                        kept[n++] = ids[p];
+                    }
+                }
+                kept = Arrays.copyOf(kept, n);
+                if (n <= 2) {
+                    continue;
+                }
+                
+                if (Arrays.equals(kept, loaded[r])) {
+                    result.add(paths.get(r));
+                    continue;
+                }
+                List<Location> path = costs.toPath(kept);
+                if (path == null) {
+                    return paths;
+                }
+                result.add(path);
+            }
+            return result;
+        }
+    }
+}
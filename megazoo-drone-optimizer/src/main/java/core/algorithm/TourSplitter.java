@@ -0,0 +1,432 @@
+package core.algorithm;
+
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+
+import java.util.Arrays;
+
+/**
+ * Splits a giant tour of enclosures into battery paths, route first and cluster second.
+ * Every path serves a contiguous stretch of the tour: depot, the best storage for the
+ * first enclosure, the enclosures in tour order with the best storage in front of each
+ * change of diet, depot. A shortest-path dynamic program over tour positions then picks
+ * the stretches, and may leave enclosures between them unserved when they do not pay for
+ * themselves, to maximise sum(importance * 1000) - distance under the battery capacity.
+ * 
+ * Moves between consecutive enclosures are priced once per split and summed as prefix
+ * sums, so a stretch is priced in constant time and stretches stop growing once their
+ * moves alone exceed the battery: O(n * k) for stretches of at most k enclosures.
+ * A limit on the number of paths is met by Lagrangian relaxation: each path is charged a
+ * price, found by bisection, until the split uses few enough paths. If no price gives
+ * exactly the limit, the better of the split just over the limit, cut down to its most
+ * profitable paths, and the split just under it is kept.
+ * 
+ * A splitter keeps its work arrays between calls and is not thread-safe; use one per thread.
+ */
+public class TourSplitter implements EdgePriced {
+    
+    private static final int BISECTION_STEPS = 40;
+    private static final double PRICE_TOLERANCE = 1e-6;
+    private static final double EPSILON = 1e-9;
+    
+    private final RouteCosts costs;
+    private final CandidateLists candidateLists;
+    private final LocationStore store;
+    
+    // Storages per diet ordinal, for when no candidate lists are given
+    private final int[][] storagesByDiet;
+    
+    // Cheapest way in from the depot and back, per location ID; NaN until first needed
+    private final double[] headById;
+    private final int[] headViaById;
+    private final double[] tailById;
+    
+    // Per tour position: prize, way in, move from the previous enclosure, way back
+    private double[] prize = new double[0];
+    private double[] head = new double[0];
+    private int[] headVia = new int[0];
+    private double[] link = new double[0];
+    private int[] linkVia = new int[0];
+    private double[] tail = new double[0];
+    private double[] prefix = new double[0];
+    
+    // Dynamic program over tour prefixes: value, path count, and where the last path starts
+    private double[] value = new double[0];
+    private int[] count = new int[0];
+    private int[] choice = new int[0];
+    
+    // Chosen stretches of the last split, [starts[r], ends[r]) in tour positions
+    private int[] tour;
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private double[] profits = new double[0];
+    private int routeCount;
+    
+    // Price per path that met the limit last time; similar tours need similar prices
+    private double lastPrice;
+    
+    /**
+     * Creates a TourSplitter over a zoo's distance oracle and candidate lists.
+     * 
+     * @param distanceOracle distances between the zoo's locations
+     * @param candidateLists candidate lists built over the same location store, or null to
+     *        consider every storage of a diet
+     */
+    public TourSplitter(DistanceOracle distanceOracle, CandidateLists candidateLists) {
+        this(new RouteCosts(distanceOracle), distanceOracle.getStore(), candidateLists);
+    }
+    
+    TourSplitter(RouteCosts costs, LocationStore store, CandidateLists candidateLists) {
+        this.costs = costs;
+        this.store = store;
+        this.candidateLists = candidateLists;
+        
+        int[] perDiet = new int[LocationStore.DIETS.length];
+        int first = store.firstFoodStorageId();
+        for (int s = first; s < first + store.foodStorageCount(); s++) {
+            perDiet[store.diet(s)]++;
+        }
+        storagesByDiet = new int[perDiet.length][];
+        for (int d = 0; d < perDiet.length; d++) {
+            storagesByDiet[d] = new int[perDiet[d]];
+            perDiet[d] = 0;
+        }
+        for (int s = first; s < first + store.foodStorageCount(); s++) {
+            storagesByDiet[store.diet(s)][perDiet[store.diet(s)]++] = s;
+        }
+        
+        headById = new double[store.size()];
+        headViaById = new int[store.size()];
+        tailById = new double[store.size()];
+        Arrays.fill(headById, Double.NaN);
+    }
+    
+    /**
+     * Price segment legs, including the storage and depot legs, by detour length. Clears the
+     * cached leg costs. Only for splitters created with their own distance oracle.
+     * 
+     * @param edgeOracle cached deadzone facts per edge, or null to use straight distances
+     */
+    @Override
+    public void setEdgeOracle(EdgeOracle edgeOracle) {
+        costs.setEdgeOracle(edgeOracle);
+        Arrays.fill(headById, Double.NaN);
+    }
+    
+    /**
+     * Split a tour into the highest-scoring set of paths.
+     * 
+     * @param tour enclosure IDs in visiting order, each at most once
+     * @param batteryCapacity Maximum distance allowed per path
+     * @param maxPaths maximum number of paths
+     * @return sum(importance * 1000) - distance over the chosen paths
+     */
+    public double split(int[] tour, double batteryCapacity, int maxPaths) {
+        this.tour = tour;
+        prepare(tour, batteryCapacity);
+        int n = tour.length;
+        
+        // Without a price on paths the limit often holds already
+        run(n, batteryCapacity, 0);
+        if (count[n] <= maxPaths) {
+            return collect(n, Integer.MAX_VALUE);
+        }
+        
+        // Bracket the price per path, starting from the last one if there is one;
+        // above the most profitable single path none is worth flying
+        double low = 0;
+        double high = maxProfit(n, batteryCapacity) + 1;
+        if (lastPrice > 0 && lastPrice < high) {
+            double step = lastPrice / 64;
+            double price = lastPrice;
+            while (true) {
+                run(n, batteryCapacity, price);
+                if (count[n] == maxPaths) {
+                    lastPrice = price;
+                    return collect(n, maxPaths);
+                }
+                if (count[n] < maxPaths) {
+                    high = price;
+                    price -= step;
+                } else {
+                    low = price;
+                    price += step;
+                }
+                step *= 4;
+                if (price <= low || price >= high) {
+                    break;
+                }
+            }
+        }
+        
+        // Then bisect it
+        for (int step = 0; step < BISECTION_STEPS && high - low > PRICE_TOLERANCE * high; step++) {
+            double price = (low + high) / 2;
+            run(n, batteryCapacity, price);
+            if (count[n] == maxPaths) {
+                lastPrice = price;
+                return collect(n, maxPaths);
+            }
+            if (count[n] < maxPaths) {
+                high = price;
+            } else {
+                low = price;
+            }
+        }
+        lastPrice = high;
+        
+        // No price hits the limit: the split over it, cut down, or the split under it
+        run(n, batteryCapacity, low);
+        double over = collect(n, maxPaths);
+        run(n, batteryCapacity, high);
+        double under = collect(n, maxPaths);
+        if (over > under) {
+            run(n, batteryCapacity, low);
+            return collect(n, maxPaths);
+        }
+        return under;
+    }
+    
+    /**
+     * Number of paths chosen by the last split.
+     */
+    public int getRouteCount() {
+        return routeCount;
+    }
+    
+    /**
+     * Tour position just past the last enclosure served by the last split, or 0 if none.
+     */
+    public int getReach() {
+        int reach = 0;
+        for (int r = 0; r < routeCount; r++) {
+            reach = Math.max(reach, ends[r]);
+        }
+        return reach;
+    }
+    
+    /**
+     * The paths of the last split as location IDs, each from depot to depot, with the
+     * storages in front of the enclosures they feed.
+     * 
+     * @return one array of location IDs per path, in tour order
+     */
+    public int[][] getRoutes() {
+        int depot = store.depotId();
+        int[][] routes = new int[routeCount][];
+        int[] ids = new int[2 * tour.length + 2];
+        for (int r = 0; r < routeCount; r++) {
+            int n = 0;
+            ids[n++] = depot;
+            for (int p = starts[r]; p < ends[r]; p++) {
+                int via = p == starts[r] ? headVia[p] : linkVia[p];
+                if (via >= 0) {
+                    ids[n++] = via;
+                }
+                ids[n++] = tour[p];
+            }
+            ids[n++] = depot;
+            routes[r] = Arrays.copyOf(ids, n);
+        }
+        return routes;
+    }
+    
+    /**
+     * Price every tour position: its prize, the way in from the depot, the move from the
+     * previous enclosure, and the way back. Moves that no path can afford are clamped just
+     * above the capacity, so the prefix sums stay finite.
+     */
+    private void prepare(int[] tour, double capacity) {
+        int n = tour.length;
+        if (prize.length < n) {
+            prize = new double[n];
+            head = new double[n];
+            headVia = new int[n];
+            link = new double[n];
+            linkVia = new int[n];
+            tail = new double[n];
+            prefix = new double[n];
+            value = new double[n + 1];
+            count = new int[n + 1];
+            choice = new int[n + 1];
+            starts = new int[n];
+            ends = new int[n];
+            profits = new double[n];
+        }
+        double unaffordable = capacity + 1;
+        
+        int depot = store.depotId();
+        for (int p = 0; p < n; p++) {
+            int e = tour[p];
+            if (Double.isNaN(headById[e])) {
+                headViaById[e] = -1;
+                headById[e] = throughStorage(depot, e, headViaById, e);
+                tailById[e] = costs.cost(e, depot);
+            }
+            prize[p] = store.importance(e) * 1000;
+            head[p] = Math.min(headById[e], unaffordable);
+            headVia[p] = headViaById[e];
+            tail[p] = Math.min(tailById[e], unaffordable);
+            
+            // The drone carries the diet of the enclosure it just fed
+            if (p == 0) {
+                link[p] = 0;
+                linkVia[p] = -1;
+            } else if (store.diet(tour[p - 1]) == store.diet(e)) {
+                link[p] = Math.min(costs.cost(tour[p - 1], e), unaffordable);
+                linkVia[p] = -1;
+            } else {
+                link[p] = Math.min(throughStorage(tour[p - 1], e, linkVia, p), unaffordable);
+            }
+            prefix[p] = p == 0 ? 0 : prefix[p - 1] + link[p];
+        }
+    }
+    
+    /**
+     * Cheapest move from a location to an enclosure through a storage of the enclosure's
+     * diet. The storage used, or -1 if there is none, is written to via[slot].
+     */
+    private double throughStorage(int from, int to, int[] via, int slot) {
+        via[slot] = -1;
+        double best = Double.POSITIVE_INFINITY;
+        byte diet = store.diet(to);
+        int options = candidateLists != null ? candidateLists.getStoragesPerEnclosure() : storagesByDiet[diet].length;
+        for (int rank = 0; rank < options; rank++) {
+            int s = candidateLists != null ? candidateLists.nearestStorage(to, rank) : storagesByDiet[diet][rank];
+            if (s < 0) {
+                break;
+            }
+            double cost = costs.cost(from, s) + costs.cost(s, to);
+            if (cost < best) {
+                best = cost;
+                via[slot] = s;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Best value of every tour prefix with each path charged the given price. Ties go to
+     * fewer paths, so the path count never grows with the price.
+     */
+    private void run(int n, double capacity, double price) {
+        value[0] = 0;
+        count[0] = 0;
+        for (int j = 1; j <= n; j++) {
+            
+            // Leave the enclosure at j - 1 unserved
+            double best = value[j - 1];
+            int bestCount = count[j - 1];
+            int bestChoice = -1;
+            
+            // Or end a path there that starts at i
+            double collected = 0;
+            for (int i = j - 1; i >= 0; i--) {
+                double moves = prefix[j - 1] - prefix[i];
+                if (moves > capacity) {
+                    break;
+                }
+                collected += prize[i];
+                double distance = head[i] + moves + tail[j - 1];
+                if (distance > capacity) {
+                    continue;
+                }
+                double candidate = value[i] + collected - distance - price;
+                if (candidate > best + EPSILON
+                        || (candidate > best - EPSILON && count[i] + 1 < bestCount)) {
+                    best = candidate;
+                    bestCount = count[i] + 1;
+                    bestChoice = i;
+                }
+            }
+            value[j] = best;
+            count[j] = bestCount;
+            choice[j] = bestChoice;
+        }
+    }
+    
+    /**
+     * Highest profit of any single path, an upper bound on a useful price per path.
+     */
+    private double maxProfit(int n, double capacity) {
+        double best = 0;
+        for (int j = 1; j <= n; j++) {
+            double collected = 0;
+            for (int i = j - 1; i >= 0; i--) {
+                double moves = prefix[j - 1] - prefix[i];
+                if (moves > capacity) {
+                    break;
+                }
+                collected += prize[i];
+                double distance = head[i] + moves + tail[j - 1];
+                if (distance <= capacity) {
+                    best = Math.max(best, collected - distance);
+                }
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Walk the choices of the last run back into stretches, keep the most profitable
+     * ones up to the limit, and return their total profit.
+     */
+    private double collect(int n, int maxPaths) {
+        routeCount = 0;
+        for (int j = n; j > 0; ) {
+            int i = choice[j];
+            if (i < 0) {
+                j--;
+                continue;
+            }
+            double collected = 0;
+            for (int p = i; p < j; p++) {
+                collected += prize[p];
+            }
+            starts[routeCount] = i;
+            ends[routeCount] = j;
+            profits[routeCount] = collected - (head[i] + prefix[j - 1] - prefix[i] + tail[j - 1]);
+            routeCount++;
+            j = i;
+        }
+        
+        // Reverse into tour order
+        for (int a = 0, b = routeCount - 1; a < b; a++, b--) {
+            swap(a, b);
+        }
+        
+        // Over the limit: drop the least profitable paths, keeping tour order
+        while (routeCount > maxPaths) {
+            int worst = 0;
+            for (int r = 1; r < routeCount; r++) {
+                if (profits[r] < profits[worst]) {
+                    worst = r;
+                }
+            }
+            for (int r = worst; r < routeCount - 1; r++) {
+                swap(r, r + 1);
+            }
+            routeCount--;
+        }
+        
+        double total = 0;
+        for (int r = 0; r < routeCount; r++) {
+            total += profits[r];
+        }
+        return total;
+    }
+    
+    private void swap(int a, int b) {
+        int start = starts[a];
+        int end = ends[a];
+        double profit = profits[a];
+        starts[a] = starts[b];
+        ends[a] = ends[b];
+        profits[a] = profits[b];
+        starts[b] = start;
+        ends[b] = end;
+        profits[b] = profit;
+    }
+}
@@ -11,12 +11,10 @@ public class MockAnimalEnclosure extends MockLocation implements AnimalEnclosure
     private final char diet;
     // Importance multiplier for scoring
     private final double importance;
-    // Track if this enclosure has been fed
-    private boolean fed = false;
     
     /**
      * Create a new mock animal enclosure with the specified parameters.
-     *
+     * 
      * @param x x-coordinate
      * @param y y-coordinate
      * @param z z-coordinate
@@ -48,25 +46,9 @@ public class MockAnimalEnclosure extends MockLocation implements AnimalEnclosure
         return importance;
     }
     
-    /**
-     * @return true if this enclosure has been fed, false otherwise
-     */
-    @Override
-    public boolean isFed() {
-        return fed;
-    }
-    
-    /**
-     * Marks this enclosure as fed.
-     */
-    @Override
-    public void setFed(boolean fed) {
-        this.fed = fed;
-    }
-    
     @Override
     public String toString() {
         return "AnimalEnclosure(" + getX() + "," + getY() + "," + getZ() + 
-               "," + importance + "," + diet + ",fed=" + fed + ")";
+               "," + importance + "," + diet + ")";
     }
 }
\ No newline at end of file
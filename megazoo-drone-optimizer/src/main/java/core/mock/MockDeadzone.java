@@ -1,6 +1,7 @@
 package main.java.core.mock;
 
 import core.models.Deadzone;
+import core.services.DeadzoneGrid;
 
 /**
  * Mock implementation of the Deadzone interface for testing purposes.
@@ -58,28 +59,8 @@ public class MockDeadzone implements Deadzone {
      */
     @Override
     public boolean intersectsLine(int x1, int y1, int x2, int y2) {
-        // Calculate the closest point on the line segment to the center of the circle
-        double length = Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
-        
-        // Line vector components
-        double dx = (x2 - x1) / length;
-        double dy = (y2 - y1) / length;
-        
-        // Vector from line start to circle center
-        double t = dx * (x - x1) + dy * (y - y1);
-        
-        // Clamp t to line segment bounds
-        t = Math.max(0, Math.min(length, t));
-        
-        // Closest point coordinates
-        double closestX = x1 + t * dx;
-        double closestY = y1 + t * dy;
-        
-        // Distance from closest point to circle center
-        double distance = Math.sqrt(Math.pow(closestX - x, 2) + Math.pow(closestY - y, 2));
-        
-        // Intersection occurs if distance is less than or equal to radius
-        return distance <= radius;
+        // Squared-distance test: no pow or sqrt on this hot path
+        return DeadzoneGrid.segmentIntersectsCircle(x1, y1, x2, y2, x, y, (double) radius * radius);
     }
     
     @Override
@@ -1,6 +1,7 @@
 package main.java.core.mock;
 
 import core.models.Location;
+import core.services.DeadzoneGrid;
 import core.services.DistanceCalculator;
 
 /**
@@ -21,6 +22,13 @@ public class MockDistanceCalculator implements DistanceCalculator {
         this.maxFlightHeight = maxFlightHeight;
     }
     
+    /**
+     * @return the maximum height at which drones fly
+     */
+    public int getMaxFlightHeight() {
+        return maxFlightHeight;
+    }
+    
     /**
      * Calculate simple Euclidean distance between two locations.
      * This doesn't account for drone movement rules and is used for general distance calculations.
@@ -69,6 +77,19 @@ public class MockDistanceCalculator implements DistanceCalculator {
         return distance;
     }
     
+    /**
+     * Calculate the battery needed to fly from a location back to the depot.
+     * Battery reserve checks use this instead of the plain drone distance, so subclasses
+     * that know about deadzones can account for the detour home.
+     *
+     * @param from starting location
+     * @param depot the depot to return to
+     * @return the distance the drone would travel to get home
+     */
+    public double calculateReturnDistance(Location from, Location depot) {
+        return calculateDroneDistance(from, depot);
+    }
+    
     /**
      * Calculate the total distance of a drone path through a series of locations.
      *
@@ -105,4 +126,17 @@ public class MockDistanceCalculator implements DistanceCalculator {
         }
         return false;
     }
+    
+    /**
+     * Check if a path segment intersects with any deadzones, using a prebuilt grid so
+     * only the deadzones near the segment are tested.
+     *
+     * @param a starting location
+     * @param b ending location
+     * @param deadzones grid over the deadzones to check against
+     * @return true if the path intersects with any deadzone, false otherwise
+     */
+    public boolean intersectsDeadzone(Location a, Location b, DeadzoneGrid deadzones) {
+        return deadzones.intersects(a.getX(), a.getY(), b.getX(), b.getY());
+    }
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ public class MockZooMap implements ZooMap {
     private final List<FoodStorage> foodStorages = new ArrayList<>();
     private final List<AnimalEnclosure> enclosures = new ArrayList<>();
     private final List<Deadzone> deadzones = new ArrayList<>();
+    private final Map<Character, List<FoodStorage>> foodStoragesByType = new HashMap<>();
     
     /**
      * Create a new mock zoo map with the specified dimensions.
@@ -49,6 +50,7 @@ public class MockZooMap implements ZooMap {
      */
     public void addFoodStorage(FoodStorage storage) {
         foodStorages.add(storage);
+        foodStoragesByType.computeIfAbsent(storage.getFoodType(), type -> new ArrayList<>()).add(storage);
     }
     
     /**
@@ -96,9 +98,8 @@ public class MockZooMap implements ZooMap {
     
     @Override
     public List<FoodStorage> getFoodStoragesByType(char foodType) {
-        return foodStorages.stream()
-                .filter(storage -> storage.getFoodType() == foodType)
-                .collect(Collectors.toList());
+        // Kept up to date by addFoodStorage, so no filtering per call
+        return Collections.unmodifiableList(foodStoragesByType.getOrDefault(foodType, Collections.emptyList()));
     }
     
     @Override
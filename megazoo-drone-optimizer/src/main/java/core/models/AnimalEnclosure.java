@@ -1,6 +1,7 @@
 /**
  * Represents an animal enclosure that needs feeding.
  * Tracks location, diet requirements, and feeding priority.
+ * Immutable; which enclosures a solution feeds is kept in that solution's FedSet.
  *
  * @author Karabo Motsileng
  * @version 12 April 2025
@@ -8,13 +9,11 @@
 public class AnimalEnclosure extends Location {
     private final double importance;
     private final char dietType;  // 'c', 'h', or 'o'
-    private boolean isFed;
 
     public AnimalEnclosure(double x, double y, double z, double importance, char dietType) {
         super(x, y, z);
         this.importance = importance;
         this.dietType = dietType;
-        this.isFed = false;
     }
 
     public double getImportance() {
@@ -25,14 +24,6 @@ public class AnimalEnclosure extends Location {
         return dietType;
     }
 
-    public boolean isFed() {
-        return isFed;
-    }
-
-    public void markAsFed() {
-        isFed = true;
-    }
-
     @Override
     public String toString() {
         return String.format("(%.0f,%.0f)", getX(), getY());
@@ -0,0 +1,232 @@
+package core.services;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distance oracle for zoos too large for a full matrix.
+ * The ID space is tiled into square blocks that are computed on demand and kept in a
+ * size-bounded cache. IDs are first laid out along a Morton (Z-order) curve, so
+ * locations that are close in the zoo share blocks and planners working region by
+ * region keep hitting the same few blocks.
+ *
+ * The cache is lock-free, so parallel searches never wait on each other for a lookup:
+ * blocks sit in a slot table indexed by block coordinates, and a CLOCK hand over the
+ * resident blocks picks which one to evict, giving recently read blocks a second chance.
+ */
+public class BlockDistanceOracle extends DistanceOracle {
+
+    /**
+     * Default block edge length: 256 x 256 doubles = 512 KB per block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private final int blockSize;
+    private final int numBlocks;
+    private final int maxCachedBlocks;
+
+    // Location ID -> position on the Morton curve, and back
+    private final int[] slot;
+    private final int[] idAtSlot;
+
+    // Block (bi, bj) at bi * numBlocks + bj, null when not cached
+    private final AtomicReferenceArray<double[]> blocks;
+    // Recently read flag per block, cleared as the clock hand passes
+    private final AtomicIntegerArray referenced;
+    // Ring of resident block keys plus one, 0 for a free entry
+    private final AtomicIntegerArray resident;
+    private final AtomicInteger hand = new AtomicInteger();
+    private final AtomicInteger cachedBlocks = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a block-cached oracle over all locations of a location store.
+     *
+     * @param store the zoo's location store, which defines the dense IDs
+     * @param maxFlightHeight the maximum height at which drones fly
+     * @param blockSize edge length of a cached block, in locations
+     * @param memoryBudgetBytes upper bound on the memory used by cached blocks; the cache
+     *            never holds more than the blocks on and above the diagonal
+     */
+    public BlockDistanceOracle(LocationStore store, int maxFlightHeight, int blockSize, long memoryBudgetBytes) {
+        super(store, maxFlightHeight);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+
+        this.blockSize = blockSize;
+        this.numBlocks = (size + blockSize - 1) / blockSize;
+
+        // Only blocks on or above the diagonal are ever stored
+        long storedBlocks = (long) numBlocks * (numBlocks + 1) / 2;
+        long bytesPerBlock = (long) blockSize * blockSize * Double.BYTES;
+        this.maxCachedBlocks = (int) Math.max(1, Math.min(storedBlocks, memoryBudgetBytes / bytesPerBlock));
+
+        this.slot = new int[size];
+        this.idAtSlot = new int[size];
+        layOutAlongMortonCurve();
+
+        this.blocks = new AtomicReferenceArray<>(numBlocks * numBlocks);
+        this.referenced = new AtomicIntegerArray(numBlocks * numBlocks);
+        this.resident = new AtomicIntegerArray(maxCachedBlocks);
+    }
+
+    /**
+     * Sort IDs by the Morton code of their (x, y) position.
+     * Packs code and ID into one long so a primitive sort does the work.
+     */
+    private void layOutAlongMortonCurve() {
+        int[] xs = store.xs();
+        int[] ys = store.ys();
+        long[] keys = new long[size];
+        for (int id = 0; id < size; id++) {
+            long code = interleave(xs[id] & 0xFFFF) | (interleave(ys[id] & 0xFFFF) << 1);
+            keys[id] = (code << 32) | id;
+        }
+        Arrays.sort(keys);
+
+        for (int position = 0; position < size; position++) {
+            int id = (int) keys[position];
+            slot[id] = position;
+            idAtSlot[position] = id;
+        }
+    }
+
+    /**
+     * Spread the low 16 bits of a value so there is a zero bit between each of them.
+     */
+    private static long interleave(long value) {
+        value = (value | (value << 8)) & 0x00FF00FFL;
+        value = (value | (value << 4)) & 0x0F0F0F0FL;
+        value = (value | (value << 2)) & 0x33333333L;
+        value = (value | (value << 1)) & 0x55555555L;
+        return value;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        int si = slot[i];
+        int sj = slot[j];
+        int bi = si / blockSize;
+        int bj = sj / blockSize;
+
+        // Distances are symmetric, so only blocks on or above the diagonal are stored
+        if (bi > bj) {
+            int tmp = si;
+            si = sj;
+            sj = tmp;
+            tmp = bi;
+            bi = bj;
+            bj = tmp;
+        }
+
+        double[] block = getBlock(bi, bj);
+        return block[(si - bi * blockSize) * blockSize + (sj - bj * blockSize)];
+    }
+
+    /**
+     * Fetch a block from the cache, computing it on a miss.
+     * Threads that miss the same block at once may both compute it; the first to
+     * publish it wins and the others use its copy.
+     */
+    private double[] getBlock(int bi, int bj) {
+        int key = bi * numBlocks + bj;
+        double[] block = blocks.get(key);
+        if (block != null) {
+            hits.increment();
+            if (referenced.get(key) == 0) {
+                referenced.lazySet(key, 1);
+            }
+            return block;
+        }
+        misses.increment();
+
+        block = computeBlock(bi, bj);
+        if (!blocks.compareAndSet(key, null, block)) {
+            double[] existing = blocks.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            // Evicted again in between; hand this copy out without caching it
+            return block;
+        }
+        admit(key);
+        return block;
+    }
+
+    /**
+     * Give a newly published block a place in the resident ring, evicting the first
+     * block the clock hand finds that has not been read since the hand last passed.
+     */
+    private void admit(int key) {
+        while (true) {
+            int position = Math.floorMod(hand.getAndIncrement(), maxCachedBlocks);
+            int old = resident.get(position);
+            if (old != 0 && referenced.getAndSet(old - 1, 0) != 0) {
+                continue; // Second chance
+            }
+            if (resident.compareAndSet(position, old, key + 1)) {
+                if (old == 0) {
+                    cachedBlocks.incrementAndGet();
+                } else {
+                    blocks.set(old - 1, null);
+                    evictions.increment();
+                }
+                return;
+            }
+        }
+    }
+
+    private double[] computeBlock(int bi, int bj) {
+        double[] block = new double[blockSize * blockSize];
+        int rowStart = bi * blockSize;
+        int colStart = bj * blockSize;
+        int rows = Math.min(blockSize, size - rowStart);
+        int cols = Math.min(blockSize, size - colStart);
+
+        for (int r = 0; r < rows; r++) {
+            int from = idAtSlot[rowStart + r];
+            for (int c = 0; c < cols; c++) {
+                block[r * blockSize + c] = computeDistance(from, idAtSlot[colStart + c]);
+            }
+        }
+        return block;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCachedBlocks() {
+        return cachedBlocks.get();
+    }
+
+    public int getMaxCachedBlocks() {
+        return maxCachedBlocks;
+    }
+
+    /**
+     * @return a one-line summary of the cache counters for logging
+     */
+    public String getStatistics() {
+        long hitCount = getHits();
+        long missCount = getMisses();
+        long lookups = hitCount + missCount;
+        double hitRate = lookups == 0 ? 0 : 100.0 * hitCount / lookups;
+        return String.format("Distance blocks: %d/%d cached, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                getCachedBlocks(), maxCachedBlocks, hitCount, missCount, hitRate, getEvictions());
+    }
+}
@@ -0,0 +1,148 @@
+package core.services;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed k-nearest-neighbour candidate lists for every enclosure.
+ * For each enclosure this keeps the k closest enclosures of the same diet and the
+ * closest food storages of that diet, sorted by drone distance, in flat int arrays.
+ * Construction and improvement heuristics only ever need to look at these candidates,
+ * which turns their O(n) inner scans into O(k). Building them goes through per-diet
+ * {@link SpatialIndex} grids, so it costs about O(n k) rather than O(n^2).
+ */
+public class CandidateLists {
+
+    /**
+     * Default number of neighbouring enclosures kept per enclosure.
+     */
+    public static final int DEFAULT_NEIGHBOURS = 16;
+
+    /**
+     * Default number of food storages kept per enclosure.
+     */
+    public static final int DEFAULT_STORAGES = 3;
+
+    private final LocationStore store;
+    private final int k;
+    private final int storagesPerEnclosure;
+
+    // Row e holds the candidates of enclosure ID firstEnclosureId + e, padded with -1
+    private final int[] neighbours;
+    private final double[] neighbourDistances;
+    private final int[] storages;
+
+    /**
+     * Builds the candidate lists with the default sizes.
+     *
+     * @param oracle distance oracle over the zoo's location store
+     */
+    public CandidateLists(DistanceOracle oracle) {
+        this(oracle, DEFAULT_NEIGHBOURS, DEFAULT_STORAGES);
+    }
+
+    /**
+     * Builds the candidate lists, one enclosure per parallel task.
+     *
+     * @param oracle distance oracle over the zoo's location store
+     * @param k number of neighbouring enclosures to keep per enclosure
+     * @param storagesPerEnclosure number of food storages to keep per enclosure
+     */
+    public CandidateLists(DistanceOracle oracle, int k, int storagesPerEnclosure) {
+        this.store = oracle.getStore();
+        this.k = k;
+        this.storagesPerEnclosure = storagesPerEnclosure;
+
+        int count = store.enclosureCount();
+        this.neighbours = new int[count * k];
+        this.neighbourDistances = new double[count * k];
+        this.storages = new int[count * storagesPerEnclosure];
+        Arrays.fill(neighbours, -1);
+        Arrays.fill(neighbourDistances, Double.MAX_VALUE);
+        Arrays.fill(storages, -1);
+
+        // Candidate pools per diet, each behind a grid index so a query only touches nearby cells
+        double[] vertical = oracle.getVertical();
+        SpatialIndex[] enclosuresByDiet = indexesByDiet(store.firstEnclosureId(), count, vertical);
+        SpatialIndex[] storagesByDiet = indexesByDiet(store.firstFoodStorageId(), store.foodStorageCount(), vertical);
+
+        int[] xs = store.xs();
+        int[] ys = store.ys();
+        int first = store.firstEnclosureId();
+
+        IntStream.range(0, count).parallel().forEach(e -> {
+            int id = first + e;
+            byte diet = store.diet(id);
+            int[] ids = new int[Math.max(k, storagesPerEnclosure)];
+            double[] distances = new double[ids.length];
+
+            int found = enclosuresByDiet[diet].nearest(
+                    xs[id], ys[id], vertical[id], k, id, ids, distances);
+            System.arraycopy(ids, 0, neighbours, e * k, found);
+            System.arraycopy(distances, 0, neighbourDistances, e * k, found);
+
+            found = storagesByDiet[diet].nearest(
+                    xs[id], ys[id], vertical[id], storagesPerEnclosure, -1, ids, distances);
+            System.arraycopy(ids, 0, storages, e * storagesPerEnclosure, found);
+        });
+    }
+
+    private SpatialIndex[] indexesByDiet(int firstId, int count, double[] vertical) {
+        int[][] ids = idsByDiet(firstId, count);
+        SpatialIndex[] indexes = new SpatialIndex[ids.length];
+        for (int d = 0; d < ids.length; d++) {
+            indexes[d] = new SpatialIndex(store, vertical, ids[d]);
+        }
+        return indexes;
+    }
+
+    private int[][] idsByDiet(int firstId, int count) {
+        int[] sizes = new int[LocationStore.DIETS.length];
+        for (int id = firstId; id < firstId + count; id++) {
+            sizes[store.diet(id)]++;
+        }
+
+        int[][] result = new int[LocationStore.DIETS.length][];
+        for (int d = 0; d < result.length; d++) {
+            result[d] = new int[sizes[d]];
+        }
+
+        int[] fill = new int[LocationStore.DIETS.length];
+        for (int id = firstId; id < firstId + count; id++) {
+            byte diet = store.diet(id);
+            result[diet][fill[diet]++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * @param id an enclosure ID
+     * @param rank position in the candidate list (0 = closest)
+     * @return the ID of the neighbouring enclosure at that rank, or -1 past the end of the list
+     */
+    public int neighbour(int id, int rank) {
+        return neighbours[(id - store.firstEnclosureId()) * k + rank];
+    }
+
+    /**
+     * @param id an enclosure ID
+     * @param rank position in the candidate list (0 = closest)
+     * @return the drone distance to the neighbour at that rank
+     */
+    public double neighbourDistance(int id, int rank) {
+        return neighbourDistances[(id - store.firstEnclosureId()) * k + rank];
+    }
+
+    /**
+     * @param id an enclosure ID
+     * @param rank position in the storage list (0 = closest)
+     * @return the ID of the food storage at that rank, or -1 past the end of the list
+     */
+    public int nearestStorage(int id, int rank) {
+        return storages[(id - store.firstEnclosureId()) * storagesPerEnclosure + rank];
+    }
+
+    public int getK() { return k; }
+    public int getStoragesPerEnclosure() { return storagesPerEnclosure; }
+    public LocationStore getStore() { return store; }
+}
@@ -0,0 +1,126 @@
+package core.services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free registry of claimed locations, for building routes on several threads at once.
+ * A builder claims each enclosure before committing it to a route and releases it again if
+ * the route is rolled back, so no enclosure can end up on two routes. Claims are bits of an
+ * {@link AtomicLongArray} indexed by {@link LocationStore} IDs, set and cleared with CAS;
+ * threads only contend when they touch enclosures whose IDs share a 64-bit word.
+ */
+public class ClaimRegistry {
+
+    private final AtomicLongArray words;
+
+    /**
+     * Creates a registry with nothing claimed.
+     *
+     * @param store the zoo's location store
+     */
+    public ClaimRegistry(LocationStore store) {
+        this.words = new AtomicLongArray((store.size() + 63) >>> 6);
+    }
+
+    /**
+     * Claim a location unless another builder holds it.
+     *
+     * @param id a dense location ID
+     * @return true if this call claimed it, false if it was already claimed
+     */
+    public boolean claim(int id) {
+        int word = id >>> 6;
+        long bit = 1L << id;
+        while (true) {
+            long current = words.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claim every location of a route, or none of them.
+     *
+     * @param ids dense location IDs, without repeats
+     * @param from first index of ids to claim
+     * @param to index after the last one
+     * @return true if all were claimed; false if one was taken, with this call's claims released
+     */
+    public boolean claimAll(int[] ids, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!claim(ids[i])) {
+                release(ids, from, i);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Release a claim, for a builder rolling back. Only the claim's holder may release it.
+     *
+     * @param id a dense location ID
+     */
+    public void release(int id) {
+        int word = id >>> 6;
+        long bit = 1L << id;
+        while (true) {
+            long current = words.get(word);
+            if ((current & bit) == 0 || words.compareAndSet(word, current, current & ~bit)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Release the claims on a range of locations.
+     *
+     * @param ids dense location IDs
+     * @param from first index of ids to release
+     * @param to index after the last one
+     */
+    public void release(int[] ids, int from, int to) {
+        for (int i = from; i < to; i++) {
+            release(ids[i]);
+        }
+    }
+
+    /**
+     * @param id a dense location ID
+     * @return true if some builder holds the location
+     */
+    public boolean isClaimed(int id) {
+        return (words.get(id >>> 6) & (1L << id)) != 0;
+    }
+
+    /**
+     * Count the claimed locations. Exact once the builders have stopped; while they run it
+     * may mix claims from different moments.
+     *
+     * @return number of claimed locations
+     */
+    public int count() {
+        int count = 0;
+        for (int w = 0; w < words.length(); w++) {
+            count += Long.bitCount(words.get(w));
+        }
+        return count;
+    }
+
+    /**
+     * Copy the claims into a solution's fed set, once the builders have stopped.
+     *
+     * @param fed the set to add every claimed location to
+     */
+    public void addTo(FedSet fed) {
+        for (int w = 0; w < words.length(); w++) {
+            for (long bits = words.get(w); bits != 0; bits &= bits - 1) {
+                fed.add((w << 6) + Long.numberOfTrailingZeros(bits));
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package core.services;
+
+import core.models.Deadzone;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over the deadzones of a zoo for fast segment intersection queries.
+ * Each cell lists the deadzones whose circle overlaps it. A query walks only the cells
+ * the segment passes through (a 2D DDA) and runs an exact segment-circle test, in
+ * squared distances without any sqrt, against the deadzones listed there.
+ * The grid is immutable after construction, so queries are safe from any thread.
+ */
+public class DeadzoneGrid {
+
+    // Circles are registered one meter beyond their bounding box so rounding at
+    // cell borders can never hide a deadzone from the traversal
+    private static final double MARGIN = 1.0;
+
+    private final double[] centerX;
+    private final double[] centerY;
+    private final double[] radiusSquared;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    // Cell c lists deadzones cellItems[cellStart[c] .. cellStart[c + 1])
+    private final int[] cellStart;
+    private final int[] cellItems;
+
+    /**
+     * Builds a grid over the given deadzones.
+     *
+     * @param deadzones the deadzones of the zoo
+     * @return the grid
+     */
+    public static DeadzoneGrid of(List<? extends Deadzone> deadzones) {
+        int count = deadzones.size();
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] r = new double[count];
+        for (int i = 0; i < count; i++) {
+            Deadzone deadzone = deadzones.get(i);
+            x[i] = deadzone.getX();
+            y[i] = deadzone.getY();
+            r[i] = deadzone.getRadius();
+        }
+        return new DeadzoneGrid(x, y, r);
+    }
+
+    /**
+     * Builds a grid over circular deadzones given as columns.
+     * The cell size is the mean deadzone diameter, so a circle covers about four cells.
+     *
+     * @param centerX x-coordinate of each deadzone's center
+     * @param centerY y-coordinate of each deadzone's center
+     * @param radius radius of each deadzone
+     */
+    public DeadzoneGrid(double[] centerX, double[] centerY, double[] radius) {
+        int count = centerX.length;
+        this.centerX = centerX.clone();
+        this.centerY = centerY.clone();
+        this.radiusSquared = new double[count];
+
+        double loX = Double.MAX_VALUE, loY = Double.MAX_VALUE;
+        double hiX = -Double.MAX_VALUE, hiY = -Double.MAX_VALUE;
+        double diameters = 0;
+        for (int i = 0; i < count; i++) {
+            radiusSquared[i] = radius[i] * radius[i];
+            loX = Math.min(loX, centerX[i] - radius[i] - MARGIN);
+            loY = Math.min(loY, centerY[i] - radius[i] - MARGIN);
+            hiX = Math.max(hiX, centerX[i] + radius[i] + MARGIN);
+            hiY = Math.max(hiY, centerY[i] + radius[i] + MARGIN);
+            diameters += 2 * radius[i];
+        }
+        if (count == 0) {
+            loX = loY = hiX = hiY = 0;
+        }
+
+        this.minX = loX;
+        this.minY = loY;
+        this.maxX = hiX;
+        this.maxY = hiY;
+        this.cellSize = Math.max(1.0, count == 0 ? 1.0 : diameters / count);
+        this.columns = (int) ((hiX - loX) / cellSize) + 1;
+        this.rows = (int) ((hiY - loY) / cellSize) + 1;
+
+        // Two passes over the covered cells: count, then fill
+        int cells = columns * rows;
+        this.cellStart = new int[cells + 1];
+        for (int i = 0; i < count; i++) {
+            forEachCoveredCell(i, radius[i], c -> cellStart[c + 1]++);
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        this.cellItems = new int[cellStart[cells]];
+        int[] fill = new int[cells];
+        for (int i = 0; i < count; i++) {
+            final int deadzone = i;
+            forEachCoveredCell(i, radius[i], c -> cellItems[cellStart[c] + fill[c]++] = deadzone);
+        }
+    }
+
+    private void forEachCoveredCell(int i, double radius, IntConsumer action) {
+        int fromColumn = column(centerX[i] - radius - MARGIN);
+        int toColumn = column(centerX[i] + radius + MARGIN);
+        int fromRow = row(centerY[i] - radius - MARGIN);
+        int toRow = row(centerY[i] + radius + MARGIN);
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                action.accept(column + row * columns);
+            }
+        }
+    }
+
+    private int column(double x) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / cellSize)));
+    }
+
+    private int row(double y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellSize)));
+    }
+
+    /**
+     * Check if the segment from (x1,y1) to (x2,y2) touches any deadzone.
+     *
+     * @param x1 x-coordinate of the segment start
+     * @param y1 y-coordinate of the segment start
+     * @param x2 x-coordinate of the segment end
+     * @param y2 y-coordinate of the segment end
+     * @return true if the segment intersects a deadzone, false otherwise
+     */
+    public boolean intersects(double x1, double y1, double x2, double y2) {
+        return intersecting(x1, y1, x2, y2, null) > 0;
+    }
+
+    /**
+     * Collect the deadzones touched by the segment from (x1,y1) to (x2,y2).
+     * Indices follow the order the deadzones were given in at construction.
+     *
+     * @param x1 x-coordinate of the segment start
+     * @param y1 y-coordinate of the segment start
+     * @param x2 x-coordinate of the segment end
+     * @param y2 y-coordinate of the segment end
+     * @param out receives the deadzone indices, or null to stop at the first hit;
+     *            must hold at least {@link #size()} entries
+     * @return the number of intersecting deadzones (at most 1 when out is null)
+     */
+    public int intersecting(double x1, double y1, double x2, double y2, int[] out) {
+        if (centerX.length == 0) {
+            return 0;
+        }
+
+        // Clip the segment to the grid bounds (Liang-Barsky); outside it there are no deadzones
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double[] range = {0.0, 1.0};
+        if (!clip(-dx, x1 - minX, range) || !clip(dx, maxX - x1, range)
+                || !clip(-dy, y1 - minY, range) || !clip(dy, maxY - y1, range)) {
+            return 0;
+        }
+        double startX = x1 + range[0] * dx;
+        double startY = y1 + range[0] * dy;
+        double endX = x1 + range[1] * dx;
+        double endY = y1 + range[1] * dy;
+
+        // Walk the cells along the clipped segment (Amanatides-Woo traversal)
+        int column = column(startX);
+        int row = row(startY);
+        int endColumn = column(endX);
+        int endRow = row(endY);
+        int stepX = Integer.signum(endColumn - column);
+        int stepY = Integer.signum(endRow - row);
+        double deltaX = dx == 0 ? Double.MAX_VALUE : cellSize / Math.abs(dx);
+        double deltaY = dy == 0 ? Double.MAX_VALUE : cellSize / Math.abs(dy);
+        double nextX = dx == 0 ? Double.MAX_VALUE
+                : ((minX + (column + (stepX > 0 ? 1 : 0)) * cellSize) - x1) / dx;
+        double nextY = dy == 0 ? Double.MAX_VALUE
+                : ((minY + (row + (stepY > 0 ? 1 : 0)) * cellSize) - y1) / dy;
+
+        int found = 0;
+        int maxSteps = columns + rows;
+        for (int step = 0; step <= maxSteps; step++) {
+            int c = column + row * columns;
+            for (int slot = cellStart[c]; slot < cellStart[c + 1]; slot++) {
+                int deadzone = cellItems[slot];
+                if (out != null && contains(out, found, deadzone)) {
+                    continue;
+                }
+                if (segmentIntersectsCircle(x1, y1, x2, y2, centerX[deadzone], centerY[deadzone], radiusSquared[deadzone])) {
+                    if (out == null) {
+                        return 1;
+                    }
+                    out[found++] = deadzone;
+                }
+            }
+
+            if (column == endColumn && row == endRow) {
+                break;
+            }
+            // Step along whichever axis reaches its next cell border first
+            if ((nextX < nextY && column != endColumn) || row == endRow) {
+                column += stepX;
+                nextX += deltaX;
+            } else {
+                row += stepY;
+                nextY += deltaY;
+            }
+        }
+
+        if (out != null) {
+            Arrays.sort(out, 0, found);
+        }
+        return found;
+    }
+
+    /**
+     * Check if any deadzone overlaps an axis-aligned box.
+     *
+     * @param x1 lower x bound of the box
+     * @param y1 lower y bound of the box
+     * @param x2 upper x bound of the box
+     * @param y2 upper y bound of the box
+     * @return true if some deadzone reaches into the box (boundary included)
+     */
+    public boolean overlapsBox(double x1, double y1, double x2, double y2) {
+        if (centerX.length == 0 || x2 < minX || y2 < minY || x1 > maxX || y1 > maxY) {
+            return false;
+        }
+        for (int row = row(y1); row <= row(y2); row++) {
+            for (int column = column(x1); column <= column(x2); column++) {
+                int c = column + row * columns;
+                for (int slot = cellStart[c]; slot < cellStart[c + 1]; slot++) {
+                    int deadzone = cellItems[slot];
+                    // Squared distance from the center to the nearest point of the box
+                    double dx = Math.max(0, Math.max(x1 - centerX[deadzone], centerX[deadzone] - x2));
+                    double dy = Math.max(0, Math.max(y1 - centerY[deadzone], centerY[deadzone] - y2));
+                    if (dx * dx + dy * dy <= radiusSquared[deadzone]) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One Liang-Barsky clipping step: narrow [range[0], range[1]] to where p * t <= q.
+     */
+    private static boolean clip(double p, double q, double[] range) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        double t = q / p;
+        if (p < 0) {
+            if (t > range[1]) {
+                return false;
+            }
+            range[0] = Math.max(range[0], t);
+        } else {
+            if (t < range[0]) {
+                return false;
+            }
+            range[1] = Math.min(range[1], t);
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Exact segment-circle test in squared distances, with no sqrt or division.
+     * The closest point of the segment to the center is an endpoint unless the center
+     * projects inside the segment, in which case the squared distance to the line is
+     * cross^2 / length^2, compared here as cross^2 <= r^2 * length^2.
+     *
+     * @param x1 x-coordinate of the segment start
+     * @param y1 y-coordinate of the segment start
+     * @param x2 x-coordinate of the segment end
+     * @param y2 y-coordinate of the segment end
+     * @param cx x-coordinate of the circle center
+     * @param cy y-coordinate of the circle center
+     * @param radiusSquared squared radius of the circle
+     * @return true if any point of the segment is within the circle (boundary included)
+     */
+    public static boolean segmentIntersectsCircle(
+            double x1, double y1, double x2, double y2,
+            double cx, double cy, double radiusSquared) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double fx = cx - x1;
+        double fy = cy - y1;
+
+        double dot = fx * dx + fy * dy;
+        if (dot <= 0) {
+            return fx * fx + fy * fy <= radiusSquared;
+        }
+
+        double lengthSquared = dx * dx + dy * dy;
+        if (dot >= lengthSquared) {
+            double gx = cx - x2;
+            double gy = cy - y2;
+            return gx * gx + gy * gy <= radiusSquared;
+        }
+
+        double cross = fx * dy - fy * dx;
+        return cross * cross <= radiusSquared * lengthSquared;
+    }
+
+    /**
+     * @return the number of deadzones in the grid
+     */
+    public int size() {
+        return centerX.length;
+    }
+}
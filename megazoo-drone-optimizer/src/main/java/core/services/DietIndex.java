@@ -0,0 +1,159 @@
+package core.services;
+
+import java.util.Arrays;
+
+/**
+ * The zoo's locations grouped by diet, built once per {@link LocationStore}. Every table is
+ * indexed by diet ordinal ({@link LocationStore#dietOrdinal(char)}) and holds dense IDs, so
+ * planners look groups up in an array instead of regrouping enclosures into boxed maps on
+ * every call. The returned arrays are shared and must not be modified.
+ */
+public class DietIndex {
+
+    private final int[][] enclosuresByImportance;
+    private final int[][] enclosuresByLocation;
+    private final int[][] storages;
+    private final double[] totalImportance;
+
+    /**
+     * Creates the index for a zoo.
+     *
+     * @param store the zoo's location store
+     */
+    public DietIndex(LocationStore store) {
+        int diets = LocationStore.DIETS.length;
+        this.storages = group(store, store.firstFoodStorageId(), store.foodStorageCount());
+        int[][] enclosures = group(store, store.firstEnclosureId(), store.enclosureCount());
+        this.enclosuresByLocation = new int[diets][];
+        this.enclosuresByImportance = new int[diets][];
+        this.totalImportance = new double[diets];
+        for (int d = 0; d < diets; d++) {
+            enclosuresByLocation[d] = sortByLocation(store, enclosures[d]);
+            enclosuresByImportance[d] = sortByImportance(store, enclosures[d]);
+            for (int id : enclosures[d]) {
+                totalImportance[d] += store.importance(id);
+            }
+        }
+    }
+
+    private static int[][] group(LocationStore store, int firstId, int count) {
+        int[][] ids = new int[LocationStore.DIETS.length][count];
+        int[] sizes = new int[ids.length];
+        for (int id = firstId; id < firstId + count; id++) {
+            byte diet = store.diet(id);
+            ids[diet][sizes[diet]++] = id;
+        }
+        for (int d = 0; d < ids.length; d++) {
+            ids[d] = Arrays.copyOf(ids[d], sizes[d]);
+        }
+        return ids;
+    }
+
+    /**
+     * Sort IDs by importance, highest first, ties by ID. Each sort key holds the importance
+     * in the high half, inverted so that ascending keys mean descending importance, and the
+     * ID in the low half.
+     */
+    private static int[] sortByImportance(LocationStore store, int[] ids) {
+        long[] keys = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            keys[i] = ((long) ~sortableBits(store.importance(ids[i])) << 32) | ids[i];
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[ids.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = (int) keys[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Sort IDs, given in ascending order, by x, then y, then ID. Each sort key packs the
+     * offsets of x and y from their minimum above the ID's index, in as many bits as each
+     * needs.
+     */
+    private static int[] sortByLocation(LocationStore store, int[] ids) {
+        if (ids.length == 0) {
+            return ids;
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int id : ids) {
+            minX = Math.min(minX, store.x(id));
+            minY = Math.min(minY, store.y(id));
+            maxX = Math.max(maxX, store.x(id));
+            maxY = Math.max(maxY, store.y(id));
+        }
+        int indexBits = bitsFor(ids.length - 1);
+        int yBits = bitsFor((long) maxY - minY);
+        if (indexBits + yBits + bitsFor((long) maxX - minX) > 63) {
+            throw new IllegalArgumentException("Zoo coordinates span too far to index");
+        }
+
+        long[] keys = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            long x = (long) store.x(ids[i]) - minX;
+            long y = (long) store.y(ids[i]) - minY;
+            keys[i] = (x << (yBits + indexBits)) | (y << indexBits) | i;
+        }
+        Arrays.sort(keys);
+        long indexMask = (1L << indexBits) - 1;
+        int[] sorted = new int[ids.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = ids[(int) (keys[i] & indexMask)];
+        }
+        return sorted;
+    }
+
+    private static int bitsFor(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Float bits reordered so that signed int comparison matches float comparison.
+     */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    /**
+     * @param diet a diet ordinal
+     * @return IDs of that diet's enclosures, most important first, ties by ID
+     */
+    public int[] enclosuresByImportance(byte diet) {
+        return enclosuresByImportance[diet];
+    }
+
+    /**
+     * @param diet a diet ordinal
+     * @return IDs of that diet's enclosures ordered by x, then y, ties by ID
+     */
+    public int[] enclosuresByLocation(byte diet) {
+        return enclosuresByLocation[diet];
+    }
+
+    /**
+     * @param diet a diet ordinal
+     * @return IDs of the food storages of that diet, in ID order
+     */
+    public int[] storages(byte diet) {
+        return storages[diet];
+    }
+
+    /**
+     * @param diet a diet ordinal
+     * @return number of enclosures of that diet
+     */
+    public int enclosureCount(byte diet) {
+        return enclosuresByImportance[diet].length;
+    }
+
+    /**
+     * @param diet a diet ordinal
+     * @return summed importance of that diet's enclosures
+     */
+    public double totalImportance(byte diet) {
+        return totalImportance[diet];
+    }
+}
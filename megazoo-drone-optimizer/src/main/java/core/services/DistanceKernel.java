@@ -0,0 +1,161 @@
+package core.services;
+
+/**
+ * One-to-many drone distance kernels over primitive coordinate columns.
+ * Distances from one origin are first written into a scratch array in a branch-free
+ * loop over contiguous int/double columns, which HotSpot's C2 compiler turns into SIMD
+ * code (int-to-double conversion, multiply-add and sqrt all vectorize), and only then
+ * reduced to an argmin or top-k with a short scalar pass.
+ *
+ * A drone distance is: vertical leg of the origin + horizontal Euclidean distance
+ * + vertical leg of the target, where a vertical leg is |maxFlightHeight - z|.
+ */
+public final class DistanceKernel {
+
+    private DistanceKernel() {
+    }
+
+    /**
+     * Compute drone distances from one origin to the targets in [from, to).
+     *
+     * @param originX x-coordinate of the origin
+     * @param originY y-coordinate of the origin
+     * @param originVertical vertical leg of the origin
+     * @param xs x-coordinates of the targets
+     * @param ys y-coordinates of the targets
+     * @param vertical vertical legs of the targets
+     * @param from first target index (inclusive)
+     * @param to last target index (exclusive)
+     * @param out receives the distance of target i at out[i - from]
+     */
+    public static void distances(
+            double originX, double originY, double originVertical,
+            int[] xs, int[] ys, double[] vertical,
+            int from, int to, double[] out) {
+        for (int i = from; i < to; i++) {
+            double dx = xs[i] - originX;
+            double dy = ys[i] - originY;
+            out[i - from] = originVertical + Math.sqrt(dx * dx + dy * dy) + vertical[i];
+        }
+    }
+
+    /**
+     * Find the target in [from, to) closest to the origin by drone distance.
+     * Ties go to the lowest index, like a sequential scan with a strict comparison.
+     *
+     * @param scratch work array of at least (to - from) elements; holds all distances afterwards
+     * @return the index of the nearest target, or -1 if the range is empty
+     */
+    public static int argmin(
+            double originX, double originY, double originVertical,
+            int[] xs, int[] ys, double[] vertical,
+            int from, int to, double[] scratch) {
+        if (from >= to) {
+            return -1;
+        }
+
+        distances(originX, originY, originVertical, xs, ys, vertical, from, to, scratch);
+
+        int best = 0;
+        double bestDistance = scratch[0];
+        for (int i = 1, n = to - from; i < n; i++) {
+            if (scratch[i] < bestDistance) {
+                bestDistance = scratch[i];
+                best = i;
+            }
+        }
+        return from + best;
+    }
+
+    /**
+     * Find the candidate ID closest to the origin by drone distance, reading
+     * coordinates indirectly through the candidate list (e.g. location store IDs).
+     *
+     * @param candidates IDs to consider
+     * @param count number of valid entries in candidates
+     * @return the position in candidates of the nearest ID, or -1 if count is 0
+     */
+    public static int argminOf(
+            double originX, double originY, double originVertical,
+            int[] candidates, int count,
+            int[] xs, int[] ys, double[] vertical) {
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int id = candidates[i];
+            double dx = xs[id] - originX;
+            double dy = ys[id] - originY;
+            double distance = originVertical + Math.sqrt(dx * dx + dy * dy) + vertical[id];
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Select the k candidate IDs closest to the origin by drone distance, sorted ascending.
+     * Uses a bounded insertion buffer, which is cheaper than sorting for the small k planners use.
+     *
+     * @param candidates IDs to consider
+     * @param count number of valid entries in candidates
+     * @param skipId an ID to leave out (typically the origin itself), or -1
+     * @param k maximum number of results
+     * @param outIds receives the selected IDs
+     * @param outDistances receives their distances
+     * @return the number of results written (at most k)
+     */
+    public static int topK(
+            double originX, double originY, double originVertical,
+            int[] candidates, int count, int skipId,
+            int[] xs, int[] ys, double[] vertical,
+            int k, int[] outIds, double[] outDistances) {
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int id = candidates[i];
+            if (id == skipId) {
+                continue;
+            }
+
+            double dx = xs[id] - originX;
+            double dy = ys[id] - originY;
+            double distance = originVertical + Math.sqrt(dx * dx + dy * dy) + vertical[id];
+            if (size == k && distance >= outDistances[k - 1]) {
+                continue;
+            }
+
+            // Shift larger entries right and insert
+            int pos = size < k ? size++ : k - 1;
+            while (pos > 0 && outDistances[pos - 1] > distance) {
+                outDistances[pos] = outDistances[pos - 1];
+                outIds[pos] = outIds[pos - 1];
+                pos--;
+            }
+            outDistances[pos] = distance;
+            outIds[pos] = id;
+        }
+        return size;
+    }
+
+    /**
+     * Find the point in [0, count) closest to the origin in the horizontal plane.
+     * Compares squared distances, so no square roots are taken.
+     *
+     * @return the index of the nearest point, or -1 if count is 0
+     */
+    public static int nearestPlanar(double originX, double originY, int[] xs, int[] ys, int count) {
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            double dx = xs[i] - originX;
+            double dy = ys[i] - originY;
+            double distance = dx * dx + dy * dy;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,49 @@
+package core.services;
+
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed drone distances between every fixed location of a zoo.
+ * All pairwise drone distances are stored once in a flat row-major array indexed by the
+ * dense IDs of a {@link LocationStore}, so planners and the score calculator can look
+ * them up instead of recomputing them on every call.
+ */
+public class DistanceMatrix extends DistanceOracle {
+
+    private final double[] distances;
+
+    /**
+     * Creates a distance matrix over all locations of a location store.
+     * Needs size * size doubles of memory; use {@link DistanceOracle#forStore} to fall back
+     * to a block cache for large zoos.
+     *
+     * @param store the zoo's location store, which defines the dense IDs
+     * @param maxFlightHeight the maximum height at which drones fly
+     */
+    public DistanceMatrix(LocationStore store, int maxFlightHeight) {
+        super(store, maxFlightHeight);
+        this.distances = buildMatrix();
+    }
+
+    /**
+     * Fill the matrix row by row in parallel straight from the coordinate columns.
+     * The drone distance is symmetric, so each row only computes the upper triangle.
+     * The diagonal is not zero: staying put still costs a landing and a takeoff.
+     */
+    private double[] buildMatrix() {
+        double[] matrix = new double[size * size];
+        IntStream.range(0, size).parallel().forEach(i -> {
+            for (int j = i; j < size; j++) {
+                double distance = computeDistance(i, j);
+                matrix[i * size + j] = distance;
+                matrix[j * size + i] = distance;
+            }
+        });
+        return matrix;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return distances[i * size + j];
+    }
+}
@@ -0,0 +1,145 @@
+package core.services;
+
+import core.mock.MockDistanceCalculator;
+import core.models.Location;
+
+/**
+ * Drone distance lookups by dense location ID.
+ * Implementations decide how much of the distance table to keep in memory; all of
+ * them plug into the planners as a regular {@link MockDistanceCalculator} and fall back
+ * to the direct formula for locations that are not in the store (e.g. waypoints).
+ */
+public abstract class DistanceOracle extends MockDistanceCalculator {
+
+    /**
+     * Default memory budget for distance tables (256 MB).
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    protected final LocationStore store;
+    protected final double[] vertical;
+    protected final int size;
+    private ReturnCostField returnCostField;
+
+    /**
+     * @param store the zoo's location store, which defines the dense IDs
+     * @param maxFlightHeight the maximum height at which drones fly
+     */
+    protected DistanceOracle(LocationStore store, int maxFlightHeight) {
+        super(maxFlightHeight);
+        this.store = store;
+        this.size = store.size();
+
+        // Vertical takeoff/landing leg of every location, reused by every pair
+        int[] zs = store.zs();
+        this.vertical = new double[size];
+        for (int i = 0; i < size; i++) {
+            vertical[i] = Math.abs(maxFlightHeight - zs[i]);
+        }
+    }
+
+    /**
+     * Pick the fastest oracle that fits the default memory budget:
+     * a full matrix for small zoos, a block cache for large ones.
+     *
+     * @param store the zoo's location store
+     * @param maxFlightHeight the maximum height at which drones fly
+     * @return a distance oracle for the store
+     */
+    public static DistanceOracle forStore(LocationStore store, int maxFlightHeight) {
+        long matrixBytes = (long) store.size() * store.size() * Double.BYTES;
+        if (matrixBytes <= DEFAULT_MEMORY_BUDGET) {
+            return new DistanceMatrix(store, maxFlightHeight);
+        }
+        return new BlockDistanceOracle(
+                store, maxFlightHeight, BlockDistanceOracle.DEFAULT_BLOCK_SIZE, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Drone distance between two dense location IDs.
+     *
+     * @param i ID of the starting location
+     * @param j ID of the ending location
+     * @return the actual distance the drone would travel
+     */
+    public abstract double distance(int i, int j);
+
+    /**
+     * Same formula as {@link MockDistanceCalculator#calculateDroneDistance}, evaluated on the columns:
+     * takeoff, horizontal flight, then landing.
+     */
+    protected double computeDistance(int i, int j) {
+        int[] xs = store.xs();
+        int[] ys = store.ys();
+        double dx = xs[j] - xs[i];
+        double dy = ys[j] - ys[i];
+        return vertical[i] + Math.sqrt(dx * dx + dy * dy) + vertical[j];
+    }
+
+    /**
+     * Look up the drone distance between two locations.
+     * Falls back to the direct calculation for locations that are not part of the zoo.
+     *
+     * @param a starting location
+     * @param b ending location
+     * @return the actual distance the drone would travel
+     */
+    @Override
+    public double calculateDroneDistance(Location a, Location b) {
+        int i = store.idOf(a);
+        int j = store.idOf(b);
+        if (i < 0 || j < 0) {
+            return super.calculateDroneDistance(a, b);
+        }
+        return distance(i, j);
+    }
+
+    /**
+     * Battery needed to fly home. With a return-cost field attached this includes the
+     * detour around deadzones; otherwise it is the plain drone distance.
+     *
+     * @param from starting location
+     * @param depot the depot to return to
+     * @return the distance the drone would travel to get home
+     */
+    @Override
+    public double calculateReturnDistance(Location from, Location depot) {
+        ReturnCostField field = returnCostField;
+        if (field != null && field.getDepot() == depot) {
+            return field.returnCost(from);
+        }
+        return calculateDroneDistance(from, depot);
+    }
+
+    /**
+     * Attach an obstacle-aware return-cost field for the store's depot.
+     *
+     * @param returnCostField the field, or null to use plain distances again
+     */
+    public void setReturnCostField(ReturnCostField returnCostField) {
+        this.returnCostField = returnCostField;
+    }
+
+    /**
+     * @return the location store that defines the IDs used by this oracle
+     */
+    public LocationStore getStore() {
+        return store;
+    }
+
+    /**
+     * Vertical leg of every location, indexed by ID. Shared, not copied.
+     *
+     * @return the vertical leg column
+     */
+    public double[] getVertical() {
+        return vertical;
+    }
+
+    /**
+     * @return the number of locations covered by this oracle
+     */
+    public int size() {
+        return size;
+    }
+}
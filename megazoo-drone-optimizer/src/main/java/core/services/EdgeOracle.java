@@ -0,0 +1,243 @@
+package core.services;
+
+import core.models.Location;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoized deadzone facts per edge between two zoo locations.
+ * Caches whether the straight edge is blocked and, for blocked edges, the length of the
+ * shortest detour, so the same depot, storage and enclosure edges are only tested once
+ * across planners, paths and validators. Entries live in a lock-free open-addressing
+ * table keyed by the pair of location IDs packed into one long; the table never evicts
+ * and simply stops caching new edges once it is three quarters full.
+ * Locations outside the location store (e.g. waypoints) are always computed directly.
+ */
+public class EdgeOracle {
+
+    /**
+     * Default table capacity: 2^20 edges, 16 MB.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final long EMPTY_KEY = -1L;
+
+    // Values are raw double bits: a non-negative length for a clear edge, -0.0 for a blocked
+    // edge whose detour is not known yet, minus the detour length once it is, and
+    // -Infinity when no detour exists. UNKNOWN marks a claimed slot not yet written.
+    private static final long UNKNOWN = 0x7ff8000000000001L;
+    private static final long BLOCKED_PENDING = Double.doubleToRawLongBits(-0.0);
+
+    private final LocationStore store;
+    private final VisibilityGraph graph;
+    private final DeadzoneGrid grid;
+    private final double[] vertical;
+
+    private final int mask;
+    private final int maxEntries;
+    private final AtomicLongArray keys;
+    private final AtomicLongArray values;
+
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncached = new LongAdder();
+
+    /**
+     * Creates an edge oracle with the default capacity.
+     *
+     * @param store the zoo's location store, or null to cache nothing
+     * @param graph visibility graph over the zoo's deadzones
+     */
+    public EdgeOracle(LocationStore store, VisibilityGraph graph) {
+        this(store, graph, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an edge oracle.
+     *
+     * @param store the zoo's location store, or null to cache nothing
+     * @param graph visibility graph over the zoo's deadzones
+     * @param capacity number of table slots, rounded up to a power of two
+     */
+    public EdgeOracle(LocationStore store, VisibilityGraph graph, int capacity) {
+        this.store = store;
+        this.graph = graph;
+        this.grid = graph.getGrid();
+
+        int slots = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = slots - 1;
+        this.maxEntries = slots / 4 * 3;
+        this.keys = new AtomicLongArray(slots);
+        this.values = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            keys.set(i, EMPTY_KEY);
+            values.set(i, UNKNOWN);
+        }
+
+        int size = store == null ? 0 : store.size();
+        this.vertical = new double[size];
+        for (int id = 0; id < size; id++) {
+            vertical[id] = Math.abs(graph.getMaxFlightHeight() - store.z(id));
+        }
+    }
+
+    /**
+     * Check if the straight edge between two locations crosses a deadzone.
+     *
+     * @param a one end of the edge
+     * @param b the other end of the edge
+     * @return true if the straight edge is blocked
+     */
+    public boolean isBlocked(Location a, Location b) {
+        int slot = slotFor(a, b);
+        if (slot < 0) {
+            return grid.intersects(a.getX(), a.getY(), b.getX(), b.getY());
+        }
+
+        long value = values.get(slot);
+        if (value != UNKNOWN) {
+            hits.increment();
+            return isBlockedValue(value);
+        }
+        misses.increment();
+        return isBlockedValue(fill(slot, a, b));
+    }
+
+    /**
+     * Obstacle-aware drone distance between two locations: the direct distance if the
+     * edge is clear, otherwise the length of the shortest detour around the deadzones.
+     *
+     * @param a starting location
+     * @param b ending location
+     * @return the distance, or Double.POSITIVE_INFINITY if no safe path exists
+     */
+    public double length(Location a, Location b) {
+        int slot = slotFor(a, b);
+        if (slot < 0) {
+            VisibilityGraph.Route route = graph.shortestPath(a, b);
+            return route == null ? Double.POSITIVE_INFINITY : route.getLength();
+        }
+
+        long value = values.get(slot);
+        if (value != UNKNOWN && value != BLOCKED_PENDING) {
+            hits.increment();
+            return Math.abs(Double.longBitsToDouble(value));
+        }
+        misses.increment();
+
+        if (value == UNKNOWN) {
+            // Losing the fill race returns the winner's value, which may already be a detour
+            value = fill(slot, a, b);
+            if (value != BLOCKED_PENDING) {
+                return Math.abs(Double.longBitsToDouble(value));
+            }
+        }
+
+        // Blocked edge: find the detour once and remember its length
+        VisibilityGraph.Route route = graph.shortestPath(a, b);
+        double detour = route == null ? Double.POSITIVE_INFINITY : route.getLength();
+        values.set(slot, Double.doubleToRawLongBits(-detour));
+        return detour;
+    }
+
+    /**
+     * Shortest safe route between two locations, with its waypoints.
+     * Not cached; use {@link #length} first to decide whether the route is worth building.
+     *
+     * @param a starting location
+     * @param b ending location
+     * @return the route, or null if no safe path exists
+     */
+    public VisibilityGraph.Route route(Location a, Location b) {
+        return graph.shortestPath(a, b);
+    }
+
+    private static boolean isBlockedValue(long value) {
+        return value == BLOCKED_PENDING || Double.longBitsToDouble(value) < 0;
+    }
+
+    /**
+     * Record the blocked flag of a fresh edge, with its length if it is clear.
+     */
+    private long fill(int slot, Location a, Location b) {
+        long value;
+        if (grid.intersects(a.getX(), a.getY(), b.getX(), b.getY())) {
+            value = BLOCKED_PENDING;
+        } else {
+            int i = store.idOf(a);
+            int j = store.idOf(b);
+            double dx = b.getX() - a.getX();
+            double dy = b.getY() - a.getY();
+            value = Double.doubleToRawLongBits(vertical[i] + Math.sqrt(dx * dx + dy * dy) + vertical[j]);
+        }
+
+        // Another thread may have filled it in the meantime; both computed the same facts
+        values.compareAndSet(slot, UNKNOWN, value);
+        return values.get(slot);
+    }
+
+    /**
+     * Find or claim the table slot of an edge by linear probing.
+     *
+     * @return the slot, or -1 if the edge cannot be cached
+     */
+    private int slotFor(Location a, Location b) {
+        if (store == null) {
+            uncached.increment();
+            return -1;
+        }
+        int i = store.idOf(a);
+        int j = store.idOf(b);
+        if (i < 0 || j < 0 || i == j) {
+            uncached.increment();
+            return -1;
+        }
+
+        // Edges are undirected: key on (smaller ID, larger ID)
+        long key = ((long) Math.min(i, j) << 32) | Math.max(i, j);
+        int slot = mix(key) & mask;
+        while (true) {
+            long existing = keys.get(slot);
+            if (existing == key) {
+                return slot;
+            }
+            if (existing == EMPTY_KEY) {
+                if (entries.sum() >= maxEntries) {
+                    uncached.increment();
+                    return -1;
+                }
+                if (keys.compareAndSet(slot, EMPTY_KEY, key)) {
+                    entries.increment();
+                    return slot;
+                }
+                continue; // Lost the race for this slot; look at what was put there
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getUncached() { return uncached.sum(); }
+    public long getEntries() { return entries.sum(); }
+    public int getCapacity() { return mask + 1; }
+    public VisibilityGraph getGraph() { return graph; }
+
+    /**
+     * @return a one-line summary of the cache counters for logging
+     */
+    public String getStatistics() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        double hitRate = lookups == 0 ? 0 : 100.0 * hitCount / lookups;
+        return String.format("Edge cache: %d/%d edges, %d hits, %d misses (%.1f%% hit rate), %d uncached",
+                entries.sum(), maxEntries, hitCount, misses.sum(), hitRate, uncached.sum());
+    }
+}
@@ -0,0 +1,134 @@
+package core.services;
+
+import core.models.Location;
+
+import java.util.Arrays;
+
+/**
+ * The enclosures one solution has fed, as a bitset over {@link LocationStore} IDs.
+ * The zoo's locations stay read-only; each solution, planner run or search worker keeps
+ * its own FedSet, so several of them can share one ZooMap without locks.
+ * 
+ * Copies are O(1): a copy shares the bit words with its source until either of them is
+ * written, and only then clones them. A single FedSet is not thread-safe, but copies
+ * handed to different threads are independent.
+ */
+public class FedSet {
+    
+    private final LocationStore store;
+    private long[] words;
+    private boolean shared;
+    private int count;
+    
+    /**
+     * Creates an empty set for a zoo.
+     * 
+     * @param store the zoo's location store
+     */
+    public FedSet(LocationStore store) {
+        this.store = store;
+        this.words = new long[(store.size() + 63) >>> 6];
+    }
+    
+    private FedSet(FedSet source) {
+        this.store = source.store;
+        this.words = source.words;
+        this.count = source.count;
+        this.shared = true;
+        source.shared = true;
+    }
+    
+    /**
+     * @return an independent set with the same contents, sharing storage until either is written
+     */
+    public FedSet copy() {
+        return new FedSet(this);
+    }
+    
+    /**
+     * @param id a dense location ID
+     * @return true if the location is in the set
+     */
+    public boolean contains(int id) {
+        return (words[id >>> 6] & (1L << id)) != 0;
+    }
+    
+    /**
+     * @param location a zoo location
+     * @return true if the location is in the set; false for locations outside the zoo
+     */
+    public boolean contains(Location location) {
+        int id = store.idOf(location);
+        return id >= 0 && contains(id);
+    }
+    
+    /**
+     * @param id a dense location ID
+     * @return true if the location was not in the set before
+     */
+    public boolean add(int id) {
+        if (contains(id)) {
+            return false;
+        }
+        writable()[id >>> 6] |= 1L << id;
+        count++;
+        return true;
+    }
+    
+    /**
+     * @param location a zoo location; locations outside the zoo are ignored
+     * @return true if the location was not in the set before
+     */
+    public boolean add(Location location) {
+        int id = store.idOf(location);
+        return id >= 0 && add(id);
+    }
+    
+    /**
+     * @param id a dense location ID
+     * @return true if the location was in the set before
+     */
+    public boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+        writable()[id >>> 6] &= ~(1L << id);
+        count--;
+        return true;
+    }
+    
+    /**
+     * Empty the set.
+     */
+    public void clear() {
+        if (shared) {
+            words = new long[words.length];
+            shared = false;
+        } else {
+            Arrays.fill(words, 0);
+        }
+        count = 0;
+    }
+    
+    /**
+     * @return number of locations in the set
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * @return the location store the IDs refer to
+     */
+    public LocationStore getStore() {
+        return store;
+    }
+    
+    private long[] writable() {
+        if (shared) {
+            words = words.clone();
+            shared = false;
+        }
+        return words;
+    }
+}
@@ -0,0 +1,164 @@
+package core.services;
+
+import core.models.AnimalEnclosure;
+import core.models.FoodStorage;
+import core.models.Location;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented store of every fixed location in a zoo.
+ * Each location gets a dense int ID (depot first, then food storages, then enclosures)
+ * and its attributes live in parallel primitive arrays, so hot loops can walk arrays
+ * instead of chasing object references. The original objects stay available as views.
+ */
+public class LocationStore {
+
+    // Kinds of location stored in the kind column
+    public static final byte KIND_DEPOT = 0;
+    public static final byte KIND_FOOD_STORAGE = 1;
+    public static final byte KIND_ENCLOSURE = 2;
+
+    // Diet types in ordinal order; the diet column stores the index into this array
+    public static final char[] DIETS = {'c', 'h', 'o'};
+    public static final byte NO_DIET = -1;
+
+    private final int[] x;
+    private final int[] y;
+    private final int[] z;
+    private final float[] importance;
+    private final byte[] diet;
+    private final byte[] kind;
+
+    private final Location[] views;
+    private final Map<Location, Integer> ids;
+    private final int foodStorageCount;
+    private final int enclosureCount;
+
+    /**
+     * Creates a store for a zoo's depot, food storages and enclosures.
+     *
+     * @param depot the drone depot (gets ID 0)
+     * @param foodStorages the food storages (IDs 1 to foodStorages.size())
+     * @param enclosures the animal enclosures (IDs following the food storages)
+     */
+    public LocationStore(
+            Location depot,
+            List<? extends FoodStorage> foodStorages,
+            List<? extends AnimalEnclosure> enclosures) {
+        this.foodStorageCount = foodStorages.size();
+        this.enclosureCount = enclosures.size();
+
+        int size = 1 + foodStorageCount + enclosureCount;
+        this.x = new int[size];
+        this.y = new int[size];
+        this.z = new int[size];
+        this.importance = new float[size];
+        this.diet = new byte[size];
+        this.kind = new byte[size];
+        this.views = new Location[size];
+        this.ids = new IdentityHashMap<>(size * 2);
+
+        int id = 0;
+        put(id++, depot, KIND_DEPOT, NO_DIET, 0);
+        for (FoodStorage storage : foodStorages) {
+            put(id++, storage, KIND_FOOD_STORAGE, dietOrdinal(storage.getFoodType()), 0);
+        }
+        for (AnimalEnclosure enclosure : enclosures) {
+            put(id++, enclosure, KIND_ENCLOSURE, dietOrdinal(enclosure.getDiet()), enclosure.getImportance());
+        }
+    }
+
+    private void put(int id, Location location, byte locationKind, byte dietOrdinal, double locationImportance) {
+        x[id] = coordinate(location.getX());
+        y[id] = coordinate(location.getY());
+        z[id] = coordinate(location.getZ());
+        kind[id] = locationKind;
+        diet[id] = dietOrdinal;
+        // Importance only orders and weighs enclosures, so single precision is enough
+        importance[id] = (float) locationImportance;
+        views[id] = location;
+        ids.put(location, id);
+    }
+
+    /**
+     * Narrow a coordinate to the int columns, refusing values that would lose precision.
+     *
+     * @param value the coordinate in meters
+     * @return the same coordinate as an int
+     * @throws IllegalArgumentException if the value is not a whole number in int range
+     */
+    private static int coordinate(double value) {
+        int whole = (int) value;
+        if (whole != value) {
+            throw new IllegalArgumentException("Coordinate " + value + " is not a whole number in int range");
+        }
+        return whole;
+    }
+
+    /**
+     * Convert a diet character to its ordinal in {@link #DIETS}.
+     *
+     * @param dietType the diet type ('c', 'h', or 'o')
+     * @return the diet ordinal
+     */
+    public static byte dietOrdinal(char dietType) {
+        switch (dietType) {
+            case 'c':
+                return 0;
+            case 'h':
+                return 1;
+            case 'o':
+                return 2;
+            default:
+                throw new IllegalArgumentException("Diet must be 'c', 'h', or 'o'");
+        }
+    }
+
+    /**
+     * @param location a zoo location
+     * @return the dense ID of the location, or -1 if it is not part of the zoo (e.g. a waypoint)
+     */
+    public int idOf(Location location) {
+        Integer id = ids.get(location);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id a dense location ID
+     * @return the original location object for that ID
+     */
+    public Location location(int id) {
+        return views[id];
+    }
+
+    public int size() { return views.length; }
+    public int depotId() { return 0; }
+    public int firstFoodStorageId() { return 1; }
+    public int foodStorageCount() { return foodStorageCount; }
+    public int firstEnclosureId() { return 1 + foodStorageCount; }
+    public int enclosureCount() { return enclosureCount; }
+
+    public int x(int id) { return x[id]; }
+    public int y(int id) { return y[id]; }
+    public int z(int id) { return z[id]; }
+    public float importance(int id) { return importance[id]; }
+    public byte diet(int id) { return diet[id]; }
+    public byte kind(int id) { return kind[id]; }
+
+    public boolean isEnclosure(int id) { return kind[id] == KIND_ENCLOSURE; }
+    public boolean isFoodStorage(int id) { return kind[id] == KIND_FOOD_STORAGE; }
+
+    /**
+     * Raw column accessors for tight loops. The arrays are shared, not copied,
+     * so callers must treat them as read-only.
+     */
+    public int[] xs() { return x; }
+    public int[] ys() { return y; }
+    public int[] zs() { return z; }
+    public float[] importances() { return importance; }
+    public byte[] diets() { return diet; }
+    public byte[] kinds() { return kind; }
+}
@@ -0,0 +1,234 @@
+package core.services;
+
+import core.models.AnimalEnclosure;
+import core.models.Location;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The enclosures still to be routed, as a set of {@link LocationStore} IDs with O(1) add,
+ * remove and membership, and iteration over the survivors only. The members sit densely in
+ * an array, with a position index per ID; removing one moves the last member into its slot.
+ * Each diet keeps the same structure, so per-diet views cost nothing extra to maintain.
+ *
+ * Removal does not keep the members' order. Callers that keep columns aligned with
+ * {@link #indexOf(int)} mirror the move: the member at size() - 1 takes the removed slot.
+ */
+public class RemainingSet {
+
+    private final LocationStore store;
+    private final int[] members;
+    private final int[] position;
+    private int size;
+
+    private final int[][] dietMembers;
+    private final int[] dietPosition;
+    private final int[] dietSize;
+
+    /**
+     * Creates an empty set.
+     *
+     * @param store the zoo's location store
+     */
+    public RemainingSet(LocationStore store) {
+        this.store = store;
+        this.members = new int[store.enclosureCount()];
+        this.position = new int[store.size()];
+        this.dietPosition = new int[store.size()];
+        Arrays.fill(position, -1);
+
+        int[] counts = new int[LocationStore.DIETS.length];
+        for (int id = store.firstEnclosureId(); id < store.firstEnclosureId() + store.enclosureCount(); id++) {
+            counts[store.diet(id)]++;
+        }
+        this.dietMembers = new int[counts.length][];
+        for (int d = 0; d < counts.length; d++) {
+            dietMembers[d] = new int[counts[d]];
+        }
+        this.dietSize = new int[counts.length];
+    }
+
+    /**
+     * Creates a set holding the given enclosures.
+     *
+     * @param store the zoo's location store
+     * @param enclosures the enclosures to add; ones outside the store are ignored
+     */
+    public RemainingSet(LocationStore store, List<? extends Location> enclosures) {
+        this(store);
+        for (Location enclosure : enclosures) {
+            add(enclosure);
+        }
+    }
+
+    /**
+     * @param id a dense enclosure ID
+     * @return true if the enclosure was not in the set before
+     */
+    public boolean add(int id) {
+        if (position[id] >= 0) {
+            return false;
+        }
+        position[id] = size;
+        members[size++] = id;
+        byte diet = store.diet(id);
+        dietPosition[id] = dietSize[diet];
+        dietMembers[diet][dietSize[diet]++] = id;
+        return true;
+    }
+
+    /**
+     * @param location a zoo location; ones that are not enclosures of the store are ignored
+     * @return true if the enclosure was not in the set before
+     */
+    public boolean add(Location location) {
+        int id = store.idOf(location);
+        return id >= 0 && store.isEnclosure(id) && add(id);
+    }
+
+    /**
+     * Remove an enclosure, moving the last member into its slot.
+     *
+     * @param id a dense location ID
+     * @return true if the enclosure was in the set before
+     */
+    public boolean remove(int id) {
+        int slot = position[id];
+        if (slot < 0) {
+            return false;
+        }
+        int last = members[--size];
+        members[slot] = last;
+        position[last] = slot;
+        position[id] = -1;
+
+        byte diet = store.diet(id);
+        int[] dietIds = dietMembers[diet];
+        int dietSlot = dietPosition[id];
+        int dietLast = dietIds[--dietSize[diet]];
+        dietIds[dietSlot] = dietLast;
+        dietPosition[dietLast] = dietSlot;
+        return true;
+    }
+
+    /**
+     * @param location a zoo location; ones outside the store are ignored
+     * @return true if the location was in the set before
+     */
+    public boolean remove(Location location) {
+        int id = store.idOf(location);
+        return id >= 0 && remove(id);
+    }
+
+    /**
+     * Empty the set, in time proportional to its size.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[members[i]] = -1;
+        }
+        size = 0;
+        Arrays.fill(dietSize, 0);
+    }
+
+    /**
+     * @param id a dense location ID
+     * @return true if the location is in the set
+     */
+    public boolean contains(int id) {
+        return position[id] >= 0;
+    }
+
+    /**
+     * @param location a zoo location
+     * @return true if the location is in the set; false for locations outside the store
+     */
+    public boolean contains(Location location) {
+        int id = store.idOf(location);
+        return id >= 0 && contains(id);
+    }
+
+    /**
+     * @param id a dense location ID
+     * @return the member's slot, from 0 to size() - 1, or -1 if it is not in the set
+     */
+    public int indexOf(int id) {
+        return position[id];
+    }
+
+    /**
+     * @param index a slot from 0 to size() - 1
+     * @return the ID of the member in that slot
+     */
+    public int id(int index) {
+        return members[index];
+    }
+
+    /**
+     * @return number of members
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no members
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param diet a diet ordinal
+     * @return number of members of that diet
+     */
+    public int size(byte diet) {
+        return dietSize[diet];
+    }
+
+    /**
+     * @param diet a diet ordinal
+     * @param index a slot from 0 to size(diet) - 1
+     * @return the ID of the member of that diet in that slot
+     */
+    public int id(byte diet, int index) {
+        return dietMembers[diet][index];
+    }
+
+    /**
+     * @return a live, read-only view of the members as enclosures, for APIs that take lists
+     */
+    public List<AnimalEnclosure> asList() {
+        return new AbstractList<AnimalEnclosure>() {
+            @Override
+            public AnimalEnclosure get(int index) {
+                return (AnimalEnclosure) store.location(members[index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @param diet a diet ordinal
+     * @return a live, read-only view of the members of that diet as enclosures
+     */
+    public List<AnimalEnclosure> asList(byte diet) {
+        return new AbstractList<AnimalEnclosure>() {
+            @Override
+            public AnimalEnclosure get(int index) {
+                return (AnimalEnclosure) store.location(dietMembers[diet][index]);
+            }
+
+            @Override
+            public int size() {
+                return dietSize[diet];
+            }
+        };
+    }
+}
@@ -0,0 +1,179 @@
+package core.services;
+
+import core.models.Location;
+
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed obstacle-aware battery cost of flying home to the depot.
+ * One Dijkstra run over the visibility graph from the depot gives the cost of every
+ * graph node; from those, the exact cost home is stored for every location in the
+ * location store, and sampled on a regular raster over the zoo for everything else
+ * (waypoints). Raster lookups return an upper bound built from the corners of the
+ * point's cell that can be reached in a straight line, so reserve checks stay safe;
+ * points with no such corner and points off the raster fall back to an exact computation.
+ * All costs include the takeoff at the starting point and the landing at the depot.
+ */
+public class ReturnCostField {
+
+    /**
+     * Default raster spacing in meters.
+     */
+    public static final int DEFAULT_CELL_SIZE = 10;
+
+    private final LocationStore store;
+    private final VisibilityGraph graph;
+    private final Location depot;
+    private final int maxFlightHeight;
+    private final double depotLanding;
+    private final double[] nodeCosts;
+
+    // Exact horizontal cost home per location ID
+    private final double[] horizontalById;
+
+    // Horizontal cost home at raster corner (i, j) = (minX + i * cellSize, minY + j * cellSize)
+    private final int minX;
+    private final int minY;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final double[] horizontalAtCorner;
+    private final boolean[] cellClear;
+
+    /**
+     * Builds the field with the default raster spacing.
+     *
+     * @param store the zoo's location store; its depot is the target
+     * @param graph visibility graph over the zoo's deadzones
+     */
+    public ReturnCostField(LocationStore store, VisibilityGraph graph) {
+        this(store, graph, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Builds the field. The per-location costs and the raster rows are filled in parallel.
+     *
+     * @param store the zoo's location store; its depot is the target
+     * @param graph visibility graph over the zoo's deadzones
+     * @param cellSize raster spacing in meters
+     */
+    public ReturnCostField(LocationStore store, VisibilityGraph graph, int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        this.store = store;
+        this.graph = graph;
+        this.depot = store.location(store.depotId());
+        this.maxFlightHeight = graph.getMaxFlightHeight();
+        this.depotLanding = Math.abs(maxFlightHeight - depot.getZ());
+        this.nodeCosts = graph.costsFrom(depot);
+
+        int size = store.size();
+        int[] xs = store.xs();
+        int[] ys = store.ys();
+        this.horizontalById = new double[size];
+        IntStream.range(0, size).parallel().forEach(id ->
+                horizontalById[id] = graph.costTo(nodeCosts, depot, xs[id], ys[id]));
+
+        // Raster over the bounding box of all locations, one cell of slack on each side
+        int loX = Integer.MAX_VALUE, loY = Integer.MAX_VALUE;
+        int hiX = Integer.MIN_VALUE, hiY = Integer.MIN_VALUE;
+        for (int id = 0; id < size; id++) {
+            loX = Math.min(loX, xs[id]);
+            loY = Math.min(loY, ys[id]);
+            hiX = Math.max(hiX, xs[id]);
+            hiY = Math.max(hiY, ys[id]);
+        }
+        this.cellSize = cellSize;
+        this.minX = loX - cellSize;
+        this.minY = loY - cellSize;
+        this.columns = (hiX - loX) / cellSize + 3;
+        this.rows = (hiY - loY) / cellSize + 3;
+
+        this.horizontalAtCorner = new double[(columns + 1) * (rows + 1)];
+        IntStream.rangeClosed(0, rows).parallel().forEach(j -> {
+            for (int i = 0; i <= columns; i++) {
+                horizontalAtCorner[j * (columns + 1) + i] =
+                        graph.costTo(nodeCosts, depot, minX + i * cellSize, minY + j * cellSize);
+            }
+        });
+
+        DeadzoneGrid grid = graph.getGrid();
+        this.cellClear = new boolean[columns * rows];
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < columns; i++) {
+                int x = minX + i * cellSize;
+                int y = minY + j * cellSize;
+                cellClear[j * columns + i] = !grid.overlapsBox(x, y, x + cellSize, y + cellSize);
+            }
+        }
+    }
+
+    /**
+     * Exact battery needed to fly home from a location in the store.
+     *
+     * @param id location ID
+     * @return the cost, or Double.POSITIVE_INFINITY if the depot cannot be reached
+     */
+    public double returnCost(int id) {
+        return Math.abs(maxFlightHeight - store.z(id)) + horizontalById[id] + depotLanding;
+    }
+
+    /**
+     * Battery needed to fly home from any location.
+     * Exact for locations in the store; for other points a safe upper bound, at most
+     * about one cell diagonal too high away from deadzones.
+     *
+     * @param location the starting location
+     * @return the cost, or Double.POSITIVE_INFINITY if the depot cannot be reached
+     */
+    public double returnCost(Location location) {
+        int id = store.idOf(location);
+        if (id >= 0) {
+            return returnCost(id);
+        }
+        double takeoff = Math.abs(maxFlightHeight - location.getZ());
+        return takeoff + horizontalCost(location.getX(), location.getY()) + depotLanding;
+    }
+
+    private double horizontalCost(int x, int y) {
+        int i = Math.floorDiv(x - minX, cellSize);
+        int j = Math.floorDiv(y - minY, cellSize);
+        if (i < 0 || j < 0 || i >= columns || j >= rows) {
+            return graph.costTo(nodeCosts, depot, x, y);
+        }
+
+        // Fly straight to a corner of the cell, then follow the corner's cost home.
+        // In a deadzone-free cell every corner is safe to reach; otherwise check each leg.
+        boolean clear = cellClear[j * columns + i];
+        DeadzoneGrid grid = graph.getGrid();
+        double best = Double.POSITIVE_INFINITY;
+        for (int dj = 0; dj <= 1; dj++) {
+            for (int di = 0; di <= 1; di++) {
+                double corner = horizontalAtCorner[(j + dj) * (columns + 1) + (i + di)];
+                int cx = minX + (i + di) * cellSize;
+                int cy = minY + (j + dj) * cellSize;
+                if (corner == Double.POSITIVE_INFINITY || (!clear && grid.intersects(x, y, cx, cy))) {
+                    continue;
+                }
+                double dx = cx - x;
+                double dy = cy - y;
+                best = Math.min(best, corner + Math.sqrt(dx * dx + dy * dy));
+            }
+        }
+
+        // If the cell is clear and no corner leads home, the point cannot get home either;
+        // neither can a point inside a deadzone
+        if (best < Double.POSITIVE_INFINITY || clear || grid.intersects(x, y, x, y)) {
+            return best;
+        }
+        return graph.costTo(nodeCosts, depot, x, y);
+    }
+
+    /**
+     * @return the depot all costs lead to
+     */
+    public Location getDepot() {
+        return depot;
+    }
+}
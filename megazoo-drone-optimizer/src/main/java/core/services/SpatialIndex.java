@@ -0,0 +1,282 @@
+package core.services;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform-grid spatial index over a subset of location store IDs.
+ * Answers nearest, k-nearest and within-range queries by drone distance, searching
+ * outward ring by ring from the origin's cell and stopping as soon as no unvisited
+ * cell can hold anything closer. The index never changes after it is built, so one
+ * index can be shared by every solution; queries skip what a solution has already fed
+ * through an exclusion filter instead.
+ */
+public class SpatialIndex {
+
+    private final int[] xs;
+    private final int[] ys;
+    private final double[] vertical;
+
+    private final int minX;
+    private final int minY;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+
+    // Cell c holds cellItems[cellStart[c] .. cellStart[c + 1])
+    private final int[] cellStart;
+    private final int[] cellItems;
+    private final int size;
+
+    /**
+     * Builds an index over the given IDs with a cell size chosen for about two IDs per cell.
+     *
+     * @param store the zoo's location store
+     * @param vertical vertical leg of every location, indexed by ID
+     * @param ids the IDs to index
+     */
+    public SpatialIndex(LocationStore store, double[] vertical, int[] ids) {
+        this(store, vertical, ids, 0);
+    }
+
+    /**
+     * Builds an index over the given IDs.
+     *
+     * @param store the zoo's location store
+     * @param vertical vertical leg of every location, indexed by ID
+     * @param ids the IDs to index
+     * @param cellSize edge length of a grid cell in meters, or 0 to pick one automatically
+     */
+    public SpatialIndex(LocationStore store, double[] vertical, int[] ids, int cellSize) {
+        this.xs = store.xs();
+        this.ys = store.ys();
+        this.vertical = vertical;
+        this.size = ids.length;
+
+        int loX = Integer.MAX_VALUE, loY = Integer.MAX_VALUE;
+        int hiX = Integer.MIN_VALUE, hiY = Integer.MIN_VALUE;
+        for (int id : ids) {
+            loX = Math.min(loX, xs[id]);
+            loY = Math.min(loY, ys[id]);
+            hiX = Math.max(hiX, xs[id]);
+            hiY = Math.max(hiY, ys[id]);
+        }
+        if (ids.length == 0) {
+            loX = loY = hiX = hiY = 0;
+        }
+
+        if (cellSize <= 0) {
+            double area = (double) (hiX - loX + 1) * (hiY - loY + 1);
+            cellSize = (int) Math.max(1, Math.ceil(Math.sqrt(2 * area / Math.max(1, ids.length))));
+        }
+
+        this.minX = loX;
+        this.minY = loY;
+        this.cellSize = cellSize;
+        this.columns = (hiX - loX) / cellSize + 1;
+        this.rows = (hiY - loY) / cellSize + 1;
+
+        // Counting sort of the IDs into their cells
+        int cells = columns * rows;
+        int[] cellCount = new int[cells];
+        this.cellStart = new int[cells + 1];
+        for (int id : ids) {
+            cellCount[cellOf(id)]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] = cellStart[c] + cellCount[c];
+        }
+
+        this.cellItems = new int[ids.length];
+        int[] fill = new int[cells];
+        for (int id : ids) {
+            int c = cellOf(id);
+            cellItems[cellStart[c] + fill[c]++] = id;
+        }
+    }
+
+    private int cellOf(int id) {
+        return column(xs[id]) + row(ys[id]) * columns;
+    }
+
+    private int column(double x) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / cellSize)));
+    }
+
+    private int row(double y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellSize)));
+    }
+
+    /**
+     * @return the number of IDs in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the indexed ID closest to the origin by drone distance.
+     *
+     * @param originX x-coordinate of the origin
+     * @param originY y-coordinate of the origin
+     * @param originVertical vertical leg of the origin
+     * @return the nearest ID, or -1 if the index is empty
+     */
+    public int nearest(double originX, double originY, double originVertical) {
+        int[] result = new int[1];
+        double[] distance = new double[1];
+        return nearest(originX, originY, originVertical, 1, -1, result, distance) == 0 ? -1 : result[0];
+    }
+
+    /**
+     * Find the k indexed IDs closest to the origin by drone distance, sorted ascending.
+     *
+     * @param originX x-coordinate of the origin
+     * @param originY y-coordinate of the origin
+     * @param originVertical vertical leg of the origin
+     * @param k maximum number of results
+     * @param skipId an ID to leave out (typically the origin itself), or -1
+     * @param outIds receives the selected IDs
+     * @param outDistances receives their distances
+     * @return the number of results written (at most k)
+     */
+    public int nearest(
+            double originX, double originY, double originVertical,
+            int k, int skipId, int[] outIds, double[] outDistances) {
+        return nearest(originX, originY, originVertical, k, id -> id == skipId, outIds, outDistances);
+    }
+
+    /**
+     * Find the k indexed IDs closest to the origin by drone distance that the filter does not
+     * exclude, sorted ascending. Rings are searched outward until k IDs pass the filter or the
+     * grid is exhausted, so excluded IDs only cost the cells they sit in.
+     *
+     * @param originX x-coordinate of the origin
+     * @param originY y-coordinate of the origin
+     * @param originVertical vertical leg of the origin
+     * @param k maximum number of results
+     * @param exclude IDs to leave out, such as the enclosures a solution has fed
+     * @param outIds receives the selected IDs
+     * @param outDistances receives their distances
+     * @return the number of results written (at most k)
+     */
+    public int nearest(
+            double originX, double originY, double originVertical,
+            int k, IntPredicate exclude, int[] outIds, double[] outDistances) {
+        if (k <= 0 || size == 0) {
+            return 0;
+        }
+
+        int originColumn = column(originX);
+        int originRow = row(originY);
+        int maxRing = Math.max(Math.max(originColumn, columns - 1 - originColumn),
+                Math.max(originRow, rows - 1 - originRow));
+
+        int found = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Nothing outside the rings searched so far can beat the current k-th result
+            if (found == k && outDistances[k - 1] <= originVertical + clearance(originX, originY, originColumn, originRow, ring - 1)) {
+                break;
+            }
+
+            for (int row = originRow - ring; row <= originRow + ring; row++) {
+                if (row < 0 || row >= rows) {
+                    continue;
+                }
+                boolean edgeRow = row == originRow - ring || row == originRow + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int column = originColumn - ring; column <= originColumn + ring; column += Math.max(1, step)) {
+                    if (column < 0 || column >= columns) {
+                        continue;
+                    }
+                    found = scanCell(column + row * columns, originX, originY, originVertical,
+                            k, exclude, outIds, outDistances, found);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Collect every indexed ID within a drone distance of the origin.
+     *
+     * @param originX x-coordinate of the origin
+     * @param originY y-coordinate of the origin
+     * @param originVertical vertical leg of the origin
+     * @param range maximum drone distance
+     * @param out receives the IDs; must be large enough for all matches (size() always is)
+     * @return the number of IDs written
+     */
+    public int withinRange(double originX, double originY, double originVertical, double range, int[] out) {
+        double horizontal = range - originVertical;
+        if (horizontal < 0 || size == 0) {
+            return 0;
+        }
+
+        int fromColumn = column(originX - horizontal);
+        int toColumn = column(originX + horizontal);
+        int fromRow = row(originY - horizontal);
+        int toRow = row(originY + horizontal);
+
+        int found = 0;
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                int c = column + row * columns;
+                for (int slot = cellStart[c], end = cellStart[c + 1]; slot < end; slot++) {
+                    int id = cellItems[slot];
+                    double dx = xs[id] - originX;
+                    double dy = ys[id] - originY;
+                    if (originVertical + Math.sqrt(dx * dx + dy * dy) + vertical[id] <= range) {
+                        out[found++] = id;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Merge one cell's items that the filter does not exclude into the sorted result buffer.
+     */
+    private int scanCell(
+            int c, double originX, double originY, double originVertical,
+            int k, IntPredicate exclude, int[] outIds, double[] outDistances, int found) {
+        for (int slot = cellStart[c], end = cellStart[c + 1]; slot < end; slot++) {
+            int id = cellItems[slot];
+            double dx = xs[id] - originX;
+            double dy = ys[id] - originY;
+            double distance = originVertical + Math.sqrt(dx * dx + dy * dy) + vertical[id];
+            if (found == k && distance >= outDistances[k - 1]) {
+                continue;
+            }
+            if (exclude.test(id)) {
+                continue;
+            }
+
+            int pos = found < k ? found++ : k - 1;
+            while (pos > 0 && outDistances[pos - 1] > distance) {
+                outDistances[pos] = outDistances[pos - 1];
+                outIds[pos] = outIds[pos - 1];
+                pos--;
+            }
+            outDistances[pos] = distance;
+            outIds[pos] = id;
+        }
+        return found;
+    }
+
+    /**
+     * Smallest horizontal distance from the origin to any cell outside the square of
+     * rings 0..ring around the origin's cell. Zero if the origin lies outside that square.
+     */
+    private double clearance(double originX, double originY, int originColumn, int originRow, int ring) {
+        if (ring < 0) {
+            return 0;
+        }
+        double left = minX + (double) (originColumn - ring) * cellSize;
+        double right = minX + (double) (originColumn + ring + 1) * cellSize;
+        double bottom = minY + (double) (originRow - ring) * cellSize;
+        double top = minY + (double) (originRow + ring + 1) * cellSize;
+        double clearance = Math.min(Math.min(originX - left, right - originX), Math.min(originY - bottom, top - originY));
+        return Math.max(0, clearance);
+    }
+}
@@ -0,0 +1,400 @@
+package core.services;
+
+import core.models.Deadzone;
+import core.models.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed visibility graph for obstacle-aware shortest paths around deadzones.
+ * Each deadzone circle is wrapped in a regular polygon whose edges are tangent to a
+ * slightly larger circle. The polygon vertices are the graph nodes, rounded to whole
+ * meters because drones fly between integer waypoints. Two nodes are joined when the
+ * segment between them touches no deadzone and supports the polygons at both ends,
+ * since only such edges can lie on a shortest path.
+ * Queries attach the two endpoints to every node they can see and run A* with a
+ * straight-line heuristic.
+ */
+public class VisibilityGraph {
+
+    /**
+     * Default number of vertices per deadzone polygon.
+     */
+    public static final int DEFAULT_SIDES = 16;
+
+    // Clearance kept between the polygon edges and the deadzone boundary; covers rounding
+    // the vertices to whole meters (at most 0.71m)
+    private static final double MARGIN = 1.0;
+
+    private final DeadzoneGrid grid;
+    private final int maxFlightHeight;
+    private final int sides;
+
+    // Node n is vertex (n % sides) of polygon (n / sides); nodes inside another deadzone are unusable
+    private final int[] nodeX;
+    private final int[] nodeY;
+    private final boolean[] usable;
+
+    // Node n links to adjTarget[adjStart[n] .. adjStart[n + 1]) with matching lengths
+    private final int[] adjStart;
+    private final int[] adjTarget;
+    private final double[] adjLength;
+
+    /**
+     * A shortest obstacle-aware path between two locations.
+     */
+    public static class Route {
+        private final List<Location> waypoints;
+        private final double length;
+
+        Route(List<Location> waypoints, double length) {
+            this.waypoints = waypoints;
+            this.length = length;
+        }
+
+        /**
+         * @return the waypoints to fly through between the endpoints (empty if the direct line is clear)
+         */
+        public List<Location> getWaypoints() {
+            return waypoints;
+        }
+
+        /**
+         * @return the drone distance of the whole path, including takeoff and landing
+         */
+        public double getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * A detour waypoint at flight altitude.
+     */
+    public static class Waypoint implements Location {
+        private final int x, y, z;
+
+        public Waypoint(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int getX() { return x; }
+
+        @Override
+        public int getY() { return y; }
+
+        @Override
+        public int getZ() { return z; }
+
+        @Override
+        public String toString() {
+            return "Waypoint(" + x + "," + y + "," + z + ")";
+        }
+    }
+
+    /**
+     * Builds the graph with the default polygon resolution.
+     *
+     * @param deadzones the deadzones of the zoo
+     * @param maxFlightHeight the height at which drones fly between waypoints
+     */
+    public VisibilityGraph(List<? extends Deadzone> deadzones, int maxFlightHeight) {
+        this(deadzones, DeadzoneGrid.of(deadzones), maxFlightHeight, DEFAULT_SIDES);
+    }
+
+    /**
+     * Builds the graph; the visibility test of every candidate edge runs in parallel per node.
+     *
+     * @param deadzones the deadzones of the zoo
+     * @param grid intersection grid over the same deadzones
+     * @param maxFlightHeight the height at which drones fly between waypoints
+     * @param sides number of vertices per deadzone polygon (at least 3)
+     */
+    public VisibilityGraph(List<? extends Deadzone> deadzones, DeadzoneGrid grid, int maxFlightHeight, int sides) {
+        if (sides < 3) {
+            throw new IllegalArgumentException("A deadzone polygon needs at least 3 sides");
+        }
+        this.grid = grid;
+        this.maxFlightHeight = maxFlightHeight;
+        this.sides = sides;
+
+        int nodes = deadzones.size() * sides;
+        this.nodeX = new int[nodes];
+        this.nodeY = new int[nodes];
+        this.usable = new boolean[nodes];
+
+        // Circumscribed polygon: its edges are tangent to the circle of radius r + MARGIN
+        double stretch = 1.0 / Math.cos(Math.PI / sides);
+        for (int d = 0; d < deadzones.size(); d++) {
+            Deadzone deadzone = deadzones.get(d);
+            double reach = (deadzone.getRadius() + MARGIN) * stretch;
+            for (int k = 0; k < sides; k++) {
+                double angle = 2 * Math.PI * k / sides;
+                int n = d * sides + k;
+                nodeX[n] = Math.toIntExact(Math.round(deadzone.getX() + reach * Math.cos(angle)));
+                nodeY[n] = Math.toIntExact(Math.round(deadzone.getY() + reach * Math.sin(angle)));
+                usable[n] = !grid.intersects(nodeX[n], nodeY[n], nodeX[n], nodeY[n]);
+            }
+        }
+
+        // Each node collects its own edges, then the lists are packed into flat arrays
+        int[][] targets = new int[nodes][];
+        IntStream.range(0, nodes).parallel().forEach(n -> targets[n] = visibleNodes(n));
+
+        this.adjStart = new int[nodes + 1];
+        for (int n = 0; n < nodes; n++) {
+            adjStart[n + 1] = adjStart[n] + targets[n].length;
+        }
+        this.adjTarget = new int[adjStart[nodes]];
+        this.adjLength = new double[adjTarget.length];
+        for (int n = 0; n < nodes; n++) {
+            System.arraycopy(targets[n], 0, adjTarget, adjStart[n], targets[n].length);
+            for (int e = adjStart[n]; e < adjStart[n + 1]; e++) {
+                adjLength[e] = planar(nodeX[n], nodeY[n], nodeX[adjTarget[e]], nodeY[adjTarget[e]]);
+            }
+        }
+    }
+
+    private int[] visibleNodes(int from) {
+        if (!usable[from]) {
+            return new int[0];
+        }
+        int[] result = new int[nodeX.length];
+        int count = 0;
+        for (int to = 0; to < nodeX.length; to++) {
+            if (to != from && usable[to]
+                    && supports(from, nodeX[to], nodeY[to])
+                    && supports(to, nodeX[from], nodeY[from])
+                    && !grid.intersects(nodeX[from], nodeY[from], nodeX[to], nodeY[to])) {
+                result[count++] = to;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Check that the line from a node towards (x, y) does not cut into the node's own
+     * polygon, i.e. both polygon neighbours of the node lie on the same side of it.
+     * Shortest paths only ever bend around a polygon, never into it.
+     */
+    private boolean supports(int node, int x, int y) {
+        int base = node - node % sides;
+        int prev = base + (node - base + sides - 1) % sides;
+        int next = base + (node - base + 1) % sides;
+
+        long dx = x - nodeX[node];
+        long dy = y - nodeY[node];
+        long side1 = dx * (nodeY[prev] - nodeY[node]) - dy * (nodeX[prev] - nodeX[node]);
+        long side2 = dx * (nodeY[next] - nodeY[node]) - dy * (nodeX[next] - nodeX[node]);
+        return Long.signum(side1) * Long.signum(side2) >= 0;
+    }
+
+    /**
+     * Find the shortest path between two locations that stays clear of every deadzone.
+     *
+     * @param from starting location
+     * @param to ending location
+     * @return the route, or null if every path is blocked
+     */
+    public Route shortestPath(Location from, Location to) {
+        double takeoff = Math.abs(maxFlightHeight - from.getZ());
+        double landing = Math.abs(maxFlightHeight - to.getZ());
+
+        if (!grid.intersects(from.getX(), from.getY(), to.getX(), to.getY())) {
+            double direct = planar(from.getX(), from.getY(), to.getX(), to.getY());
+            return new Route(Collections.emptyList(), takeoff + direct + landing);
+        }
+
+        // Distance from every node to the target, or NaN where the target is not visible
+        int nodes = nodeX.length;
+        double[] toTarget = new double[nodes];
+        for (int n = 0; n < nodes; n++) {
+            toTarget[n] = linkLength(n, to);
+        }
+
+        // A* over the nodes; index `nodes` stands for the target
+        double[] cost = new double[nodes + 1];
+        int[] parent = new int[nodes + 1];
+        Arrays.fill(cost, Double.MAX_VALUE);
+        Arrays.fill(parent, -1);
+        boolean[] closed = new boolean[nodes + 1];
+        PriorityQueue<double[]> open = new PriorityQueue<>(Comparator.comparingDouble((double[] entry) -> entry[0]));
+
+        for (int n = 0; n < nodes; n++) {
+            double link = linkLength(n, from);
+            if (!Double.isNaN(link)) {
+                cost[n] = link;
+                open.add(new double[] {link + heuristic(n, to), n});
+            }
+        }
+
+        while (!open.isEmpty()) {
+            int n = (int) open.poll()[1];
+            if (closed[n]) {
+                continue;
+            }
+            closed[n] = true;
+            if (n == nodes) {
+                return buildRoute(parent, nodes, takeoff + cost[nodes] + landing);
+            }
+
+            if (!Double.isNaN(toTarget[n]) && cost[n] + toTarget[n] < cost[nodes]) {
+                cost[nodes] = cost[n] + toTarget[n];
+                parent[nodes] = n;
+                open.add(new double[] {cost[nodes], nodes});
+            }
+            for (int e = adjStart[n]; e < adjStart[n + 1]; e++) {
+                int next = adjTarget[e];
+                double candidate = cost[n] + adjLength[e];
+                if (!closed[next] && candidate < cost[next]) {
+                    cost[next] = candidate;
+                    parent[next] = n;
+                    open.add(new double[] {candidate + heuristic(next, to), next});
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Length of a clear link between a node and an outside location, or NaN if it is blocked.
+     */
+    private double linkLength(int node, Location location) {
+        return linkLength(node, location.getX(), location.getY());
+    }
+
+    private double linkLength(int node, int x, int y) {
+        // No tangency pruning here: an endpoint may lie between a deadzone and its polygon
+        if (!usable[node] || grid.intersects(nodeX[node], nodeY[node], x, y)) {
+            return Double.NaN;
+        }
+        return planar(nodeX[node], nodeY[node], x, y);
+    }
+
+    /**
+     * Planar length of the shortest safe path from a source to every node (Dijkstra).
+     * Together with {@link #costTo} this answers many queries from one fixed source.
+     *
+     * @param source the source location
+     * @return the cost of every node, Double.POSITIVE_INFINITY where no safe path exists
+     */
+    public double[] costsFrom(Location source) {
+        int nodes = nodeX.length;
+        double[] cost = new double[nodes];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        boolean[] closed = new boolean[nodes];
+        PriorityQueue<double[]> open = new PriorityQueue<>(Comparator.comparingDouble((double[] entry) -> entry[0]));
+
+        for (int n = 0; n < nodes; n++) {
+            double link = linkLength(n, source);
+            if (!Double.isNaN(link)) {
+                cost[n] = link;
+                open.add(new double[] {link, n});
+            }
+        }
+
+        while (!open.isEmpty()) {
+            int n = (int) open.poll()[1];
+            if (closed[n]) {
+                continue;
+            }
+            closed[n] = true;
+            for (int e = adjStart[n]; e < adjStart[n + 1]; e++) {
+                int next = adjTarget[e];
+                double candidate = cost[n] + adjLength[e];
+                if (candidate < cost[next]) {
+                    cost[next] = candidate;
+                    open.add(new double[] {candidate, next});
+                }
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Planar length of the shortest safe path from the source of a cost table to a point.
+     *
+     * @param costs node costs returned by {@link #costsFrom}
+     * @param source the source those costs were computed from
+     * @param x x-coordinate of the target
+     * @param y y-coordinate of the target
+     * @return the path length, or Double.POSITIVE_INFINITY if no safe path exists
+     */
+    public double costTo(double[] costs, Location source, int x, int y) {
+        if (!grid.intersects(source.getX(), source.getY(), x, y)) {
+            return planar(source.getX(), source.getY(), x, y);
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        for (int n = 0; n < costs.length; n++) {
+            if (costs[n] < best) {
+                double link = linkLength(n, x, y);
+                if (!Double.isNaN(link)) {
+                    best = Math.min(best, costs[n] + link);
+                }
+            }
+        }
+        return best;
+    }
+
+    private double heuristic(int node, Location to) {
+        return planar(nodeX[node], nodeY[node], to.getX(), to.getY());
+    }
+
+    private Route buildRoute(int[] parent, int target, double length) {
+        List<Location> waypoints = new ArrayList<>();
+        for (int n = parent[target]; n >= 0; n = parent[n]) {
+            waypoints.add(new Waypoint(nodeX[n], nodeY[n], maxFlightHeight));
+        }
+        Collections.reverse(waypoints);
+        return new Route(waypoints, length);
+    }
+
+    private static double planar(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @return the number of polygon vertices usable as waypoints
+     */
+    public int getNodeCount() {
+        int count = 0;
+        for (boolean u : usable) {
+            if (u) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of directed edges between waypoints
+     */
+    public int getEdgeCount() {
+        return adjTarget.length;
+    }
+
+    /**
+     * @return the height at which waypoints are flown
+     */
+    public int getMaxFlightHeight() {
+        return maxFlightHeight;
+    }
+
+    /**
+     * @return the intersection grid the graph was built on
+     */
+    public DeadzoneGrid getGrid() {
+        return grid;
+    }
+}
@@ -10,7 +10,12 @@ public class ZooMap {
     private final List<FoodStorage> foodStorages;
     private final List<AnimalEnclosure> enclosures;
     private final List<DeadZone> deadZones;
-    private final Map<Character, List<FoodStorage>> foodStorageByType;
+    private final LocationStore locationStore;
+    private final DietIndex dietIndex;
+    private final double[] verticalLegs;
+    private final SpatialIndex[] enclosureIndexByDiet;
+    private final SpatialIndex[] storageIndexByDiet;
+    private final DeadzoneGrid deadZoneGrid;
 
     public ZooMap(Depot depot,
                   List<FoodStorage> foodStorages,
@@ -21,44 +26,123 @@ public class ZooMap {
         this.enclosures = new ArrayList<>(enclosures);
         this.deadZones = new ArrayList<>(deadZones);
 
-        // Pre-index food storages by type for O(1) access
-        this.foodStorageByType = new HashMap<>();
-        foodStorageByType.put('c', new ArrayList<>());
-        foodStorageByType.put('h', new ArrayList<>());
-        foodStorageByType.put('o', new ArrayList<>());
-        for (FoodStorage storage : foodStorages) {
-            foodStorageByType.get(storage.getDietType()).add(storage);
+        // Columnar copy of all locations with dense IDs for array-based planners
+        this.locationStore = new LocationStore(depot, this.foodStorages, this.enclosures);
+
+        // Enclosure and food storage IDs per diet, grouped once for every planner
+        this.dietIndex = new DietIndex(locationStore);
+
+        // Takeoff/landing leg of every location at the 50m flight altitude
+        int[] zs = locationStore.zs();
+        this.verticalLegs = new double[zs.length];
+        for (int id = 0; id < zs.length; id++) {
+            verticalLegs[id] = verticalLeg(zs[id]);
+        }
+
+        // One grid per diet so nearest queries never look at the wrong food type
+        this.enclosureIndexByDiet = new SpatialIndex[LocationStore.DIETS.length];
+        this.storageIndexByDiet = new SpatialIndex[LocationStore.DIETS.length];
+        for (byte d = 0; d < LocationStore.DIETS.length; d++) {
+            enclosureIndexByDiet[d] = new SpatialIndex(locationStore, verticalLegs, dietIndex.enclosuresByLocation(d));
+            storageIndexByDiet[d] = new SpatialIndex(locationStore, verticalLegs, dietIndex.storages(d));
+        }
+
+        // Grid over the deadzones so path checks only test circles near the segment
+        double[] centerX = new double[this.deadZones.size()];
+        double[] centerY = new double[centerX.length];
+        double[] radius = new double[centerX.length];
+        for (int i = 0; i < centerX.length; i++) {
+            DeadZone deadZone = this.deadZones.get(i);
+            centerX[i] = deadZone.getCenterX();
+            centerY[i] = deadZone.getCenterY();
+            radius[i] = deadZone.getRadius();
+        }
+        this.deadZoneGrid = new DeadzoneGrid(centerX, centerY, radius);
+    }
+
+    /**
+     * Finds nearest enclosure matching drone's current food type that the solution has not fed.
+     * The spatial index is shared and never changed by queries, so fed enclosures are skipped.
+     */
+    public Optional<AnimalEnclosure> findNearestEligibleEnclosure(Location currentPos, char foodType, FedSet fed) {
+        List<AnimalEnclosure> nearest = findNearestEligibleEnclosures(currentPos, foodType, 1, fed);
+        return nearest.isEmpty() ? Optional.empty() : Optional.of(nearest.get(0));
+    }
+
+    /**
+     * Finds up to k nearest enclosures matching the food type that the solution has not fed,
+     * closest first. Fed enclosures are skipped inside the ring search, which keeps widening
+     * until k unfed ones are found.
+     */
+    public List<AnimalEnclosure> findNearestEligibleEnclosures(
+            Location currentPos, char foodType, int k, FedSet fed) {
+        SpatialIndex index = enclosureIndexByDiet[LocationStore.dietOrdinal(foodType)];
+        int want = Math.min(k, index.size());
+        int[] ids = new int[want];
+        double[] distances = new double[want];
+        int found = index.nearest(currentPos.getX(), currentPos.getY(), verticalLeg(currentPos.getZ()),
+                want, fed::contains, ids, distances);
+
+        List<AnimalEnclosure> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            result.add((AnimalEnclosure) locationStore.location(ids[i]));
         }
+        return result;
     }
 
     /**
-     * Finds nearest unfed enclosure matching drone's current food type.
+     * Finds all enclosures of the food type within a drone distance of the position that the
+     * solution has not fed.
      */
-    public Optional<AnimalEnclosure> findNearestEligibleEnclosure(Location currentPos, char foodType) {
-        return enclosures.stream()
-                .filter(e -> !e.isFed() && e.getDietType() == foodType)
-                .min(Comparator.comparingDouble(e ->
-                        DistanceCalculator.calculateMovementDistance(currentPos, e)));
+    public List<AnimalEnclosure> findEligibleEnclosuresWithinRange(
+            Location currentPos, char foodType, double range, FedSet fed) {
+        SpatialIndex index = enclosureIndexByDiet[LocationStore.dietOrdinal(foodType)];
+        int[] ids = new int[index.size()];
+        int found = index.withinRange(currentPos.getX(), currentPos.getY(), verticalLeg(currentPos.getZ()), range, ids);
+
+        List<AnimalEnclosure> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            if (!fed.contains(ids[i])) {
+                result.add((AnimalEnclosure) locationStore.location(ids[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates an empty fed set for one solution over this zoo.
+     */
+    public FedSet newFedSet() {
+        return new FedSet(locationStore);
     }
 
     /**
      * Finds nearest food storage of specified type.
      */
     public Optional<FoodStorage> findNearestFoodStorage(Location currentPos, char foodType) {
-        return foodStorageByType.get(foodType).stream()
-                .min(Comparator.comparingDouble(fs ->
-                        DistanceCalculator.calculateMovementDistance(currentPos, fs)));
+        int id = storageIndexByDiet[LocationStore.dietOrdinal(foodType)]
+                .nearest(currentPos.getX(), currentPos.getY(), verticalLeg(currentPos.getZ()));
+        return id < 0 ? Optional.empty() : Optional.of((FoodStorage) locationStore.location(id));
     }
 
     /**
      * Checks if path between two points intersects any deadzone.
+     * Only the flown segment counts, not the infinite line through both points.
      */
     public boolean isPathSafe(Location start, Location end) {
-        return deadZones.stream()
-                .noneMatch(dz -> dz.intersectsPath(start, end));
+        return !deadZoneGrid.intersects(start.getX(), start.getY(), end.getX(), end.getY());
+    }
+
+    /**
+     * Length of the takeoff or landing leg between a height and the 50m flight altitude.
+     */
+    private static double verticalLeg(double z) {
+        return Math.abs(50.0 - z);
     }
 
     // Accessors
     public Depot getDepot() { return depot; }
     public List<AnimalEnclosure> getEnclosures() { return Collections.unmodifiableList(enclosures); }
+    public LocationStore getLocationStore() { return locationStore; }
+    public DietIndex getDietIndex() { return dietIndex; }
 }
\ No newline at end of file
@@ -1,12 +1,13 @@
 package main.java.levels;
 
 import core.algorithm.GreedyPathPlanner;
+import core.algorithm.HeldKarpSolver;
 import core.algorithm.ScoreCalculator;
-import core.mock.MockDistanceCalculator;
 import core.models.AnimalEnclosure;
 import core.models.Depot;
 import core.models.FoodStorage;
 import core.models.Location;
+import core.services.FedSet;
 import core.services.ZooMap;
 
 import java.util.ArrayList;
@@ -48,7 +49,9 @@ public class Level1Solver extends LevelSolver {
     /**
      * Level 1 optimization strategy:
      * - Since battery is effectively unlimited, we can visit all enclosures in a single run
-     * - We use a greedy approach to find the most efficient path
+     * - With few enough enclosures, an exact dynamic program finds the best path, skipping
+     *   any enclosure whose importance does not pay for its detour
+     * - Otherwise we insert enclosures by net gain, importance against detour, to build an efficient path
      * - No need for battery swap optimization
      * 
      * @param depot The depot location
@@ -62,22 +65,33 @@ public class Level1Solver extends LevelSolver {
             List<AnimalEnclosure> enclosures,
             List<FoodStorage> foodStorages) {
         
-        // Reset fed status of all enclosures
-        for (AnimalEnclosure enclosure : enclosures) {
-            enclosure.setFed(false);
-        }
+        // What this solution feeds, kept apart from the shared zoo model
+        FedSet fed = new FedSet(locationStore);
         
-        // For Level 1, we can simply use the greedy path planner to find a single optimal path
-        List<Location> singlePath = pathPlanner.planPath(
-                depot,
-                enclosures,
-                foodStorages,
-                batteryCapacity
-        );
+        List<Location> singlePath;
+        if (enclosures.size() <= HeldKarpSolver.MAX_ENCLOSURES) {
+            // Level 1 is small enough to search every visiting order and diet sequence
+            singlePath = getHeldKarpSolver().planPath(enclosures, batteryCapacity, fed);
+        } else {
+            // Otherwise build the single path by inserting enclosures in order of net gain,
+            // importance * 1000 minus the detour, while that gain is positive
+            List<List<Location>> paths = getInsertionPlanner().insert(
+                    new ArrayList<>(),
+                    enclosures,
+                    batteryCapacity,
+                    1,
+                    fed
+            );
+            singlePath = paths.isEmpty()
+                    ? Collections.singletonList(depot)
+                    : paths.get(0);
+            
+            // Untangle the greedy path with 2-opt and Or-opt moves
+            singlePath = getRouteImprover().improve(singlePath, batteryCapacity);
+        }
         
         // Calculate distance of path to ensure it's within battery capacity
-        MockDistanceCalculator distanceCalc = new MockDistanceCalculator(maxFlightHeight);
-        double pathDistance = distanceCalc.calculatePathDistance(singlePath);
+        double pathDistance = distanceOracle.calculatePathDistance(singlePath);
         
         // If path exceeds battery capacity (shouldn't happen in Level 1 but good to check)
         if (pathDistance > batteryCapacity) {
@@ -98,15 +112,14 @@ public class Level1Solver extends LevelSolver {
      * @return List of enclosures that were fed in the solution
      */
     public List<AnimalEnclosure> getFedEnclosures() {
-        List<List<Location>> paths = solve();
+        Solution solution = getSolution();
         
-        if (paths.isEmpty()) {
+        if (solution.isEmpty()) {
             return Collections.emptyList();
         }
         
         // For Level 1, we only have one path
-        List<Location> path = paths.get(0);
-        return extractFedEnclosures(path);
+        return solution.getFedEnclosures(0);
     }
     
     /**
@@ -115,31 +128,18 @@ public class Level1Solver extends LevelSolver {
      * @return A string with score details
      */
     public String getScoreDetails() {
-        List<List<Location>> paths = solve();
+        Solution solution = getSolution();
         
-        if (paths.isEmpty()) {
+        if (solution.isEmpty()) {
             return "No valid path found";
         }
         
-        List<Location> path = paths.get(0);
-        List<AnimalEnclosure> fedEnclosures = extractFedEnclosures(path);
-        
-        MockDistanceCalculator distanceCalc = new MockDistanceCalculator(maxFlightHeight);
-        double totalDistance = distanceCalc.calculatePathDistance(path);
-        
-        double totalImportance = 0;
-        for (AnimalEnclosure enclosure : fedEnclosures) {
-            totalImportance += enclosure.getImportance();
-        }
-        
-        double score = totalImportance * 1000 - totalDistance;
-        
         StringBuilder sb = new StringBuilder();
         sb.append("Level 1 Score Details:\n");
-        sb.append("Total enclosures fed: ").append(fedEnclosures.size()).append("\n");
-        sb.append("Total importance: ").append(totalImportance).append("\n");
-        sb.append("Total distance: ").append(totalDistance).append("m\n");
-        sb.append("Final Score: ").append(score).append(" points");
+        sb.append("Total enclosures fed: ").append(solution.getFedCount()).append("\n");
+        sb.append("Total importance: ").append(solution.getTotalImportance()).append("\n");
+        sb.append("Total distance: ").append(solution.getTotalDistance()).append("m\n");
+        sb.append("Final Score: ").append(solution.getTotalScore()).append(" points");
         
         return sb.toString();
     }
@@ -1,13 +1,12 @@
 package main.java.levels;
 
 import core.algorithm.GreedyPathPlanner;
-import core.algorithm.RouteOptimizer;
 import core.algorithm.ScoreCalculator;
-import core.mock.MockDistanceCalculator;
 import core.models.AnimalEnclosure;
 import core.models.Depot;
 import core.models.FoodStorage;
 import core.models.Location;
+import core.services.FedSet;
 import core.services.ZooMap;
 import core.utils.OutputFormatter;
 
@@ -65,20 +64,27 @@ public class Level2Solver extends LevelSolver {
             List<AnimalEnclosure> enclosures,
             List<FoodStorage> foodStorages) {
         
-        // Reset fed status of all enclosures
-        for (AnimalEnclosure enclosure : enclosures) {
-            enclosure.setFed(false);
-        }
+        // What this solution feeds, kept apart from the shared zoo model
+        FedSet fed = new FedSet(locationStore);
         
         // For Level 2, we need to use battery swaps effectively
-        // First, use the RouteOptimizer to generate multiple paths
-        return routeOptimizer.optimizeMultipleRoutes(
-                depot,
+        // First, build every path at once by merging single-enclosure paths in order of
+        // the distance they save; the first battery plus each swap gives one path
+        List<List<Location>> paths = getSavingsPlanner().planRoutes(
                 enclosures,
-                foodStorages,
                 batteryCapacity,
-                maxBatterySwaps
+                maxBatterySwaps + 1,
+                fed
         );
+        
+        // Move enclosures between the paths where that shortens them
+        paths = getInterRouteSearch().improve(paths, batteryCapacity);
+        
+        // Insert the enclosures that are left wherever their importance outweighs the detour
+        paths = getInsertionPlanner().insert(paths, enclosures, batteryCapacity, maxBatterySwaps + 1, fed);
+        
+        // Then shorten each path with 2-opt and Or-opt moves
+        return getRouteImprover().improveAll(paths, batteryCapacity);
     }
     
     /**
@@ -87,54 +93,30 @@ public class Level2Solver extends LevelSolver {
      * @return A string with score details
      */
     public String getScoreDetails() {
-        List<List<Location>> paths = solve();
+        Solution solution = getSolution();
         
-        if (paths.isEmpty()) {
+        if (solution.isEmpty()) {
             return "No valid paths found";
         }
         
-        double totalScore = 0;
-        int totalEnclosuresFed = 0;
-        double totalImportance = 0;
-        double totalDistance = 0;
-        
-        MockDistanceCalculator distanceCalc = new MockDistanceCalculator(maxFlightHeight);
-        
         StringBuilder sb = new StringBuilder();
         sb.append("Level 2 Score Details:\n");
         
-        // For each battery swap, calculate the score
-        for (int i = 0; i < paths.size(); i++) {
-            List<Location> path = paths.get(i);
-            List<AnimalEnclosure> fedEnclosures = extractFedEnclosures(path);
-            
-            double pathDistance = distanceCalc.calculatePathDistance(path);
-            
-            double pathImportance = 0;
-            for (AnimalEnclosure enclosure : fedEnclosures) {
-                pathImportance += enclosure.getImportance();
-            }
-            
-            double pathScore = pathImportance * 1000 - pathDistance;
-            
+        // For each battery swap, report the score
+        for (int i = 0; i < solution.getPathCount(); i++) {
             sb.append("Path ").append(i + 1).append(":\n");
-            sb.append("  Enclosures fed: ").append(fedEnclosures.size()).append("\n");
-            sb.append("  Importance: ").append(pathImportance).append("\n");
-            sb.append("  Distance: ").append(pathDistance).append("m\n");
-            sb.append("  Score: ").append(pathScore).append(" points\n");
-            
-            totalScore += pathScore;
-            totalEnclosuresFed += fedEnclosures.size();
-            totalImportance += pathImportance;
-            totalDistance += pathDistance;
+            sb.append("  Enclosures fed: ").append(solution.getFedEnclosures(i).size()).append("\n");
+            sb.append("  Importance: ").append(solution.getPathImportance(i)).append("\n");
+            sb.append("  Distance: ").append(solution.getPathDistance(i)).append("m\n");
+            sb.append("  Score: ").append(solution.getPathScore(i)).append(" points\n");
         }
         
         sb.append("\nSummary:\n");
-        sb.append("Total paths: ").append(paths.size()).append(" (of ").append(maxBatterySwaps).append(" available)\n");
-        sb.append("Total enclosures fed: ").append(totalEnclosuresFed).append("\n");
-        sb.append("Total importance: ").append(totalImportance).append("\n");
-        sb.append("Total distance: ").append(totalDistance).append("m\n");
-        sb.append("Final Score: ").append(totalScore).append(" points");
+        sb.append("Total paths: ").append(solution.getPathCount()).append(" (of ").append(maxBatterySwaps).append(" available)\n");
+        sb.append("Total enclosures fed: ").append(solution.getFedCount()).append("\n");
+        sb.append("Total importance: ").append(solution.getTotalImportance()).append("\n");
+        sb.append("Total distance: ").append(solution.getTotalDistance()).append("m\n");
+        sb.append("Final Score: ").append(solution.getTotalScore()).append(" points");
         
         return sb.toString();
     }
@@ -145,37 +127,18 @@ public class Level2Solver extends LevelSolver {
      * @return A string with diet distribution information
      */
     public String getDietDistribution() {
-        List<List<Location>> paths = solve();
+        Solution solution = getSolution();
         
-        if (paths.isEmpty()) {
+        if (solution.isEmpty()) {
             return "No valid paths found";
         }
         
-        int carnivoresFed = 0;
-        int herbivoresFed = 0;
-        int omnivoresFed = 0;
-        
-        for (List<Location> path : paths) {
-            List<AnimalEnclosure> fedEnclosures = extractFedEnclosures(path);
-            
-            for (AnimalEnclosure enclosure : fedEnclosures) {
-                char diet = enclosure.getDiet();
-                if (diet == 'c') {
-                    carnivoresFed++;
-                } else if (diet == 'h') {
-                    herbivoresFed++;
-                } else if (diet == 'o') {
-                    omnivoresFed++;
-                }
-            }
-        }
-        
         StringBuilder sb = new StringBuilder();
         sb.append("Diet Distribution:\n");
-        sb.append("Carnivores fed: ").append(carnivoresFed).append("\n");
-        sb.append("Herbivores fed: ").append(herbivoresFed).append("\n");
-        sb.append("Omnivores fed: ").append(omnivoresFed).append("\n");
-        sb.append("Total fed: ").append(carnivoresFed + herbivoresFed + omnivoresFed);
+        sb.append("Carnivores fed: ").append(solution.getFedCount('c')).append("\n");
+        sb.append("Herbivores fed: ").append(solution.getFedCount('h')).append("\n");
+        sb.append("Omnivores fed: ").append(solution.getFedCount('o')).append("\n");
+        sb.append("Total fed: ").append(solution.getFedCount());
         
         return sb.toString();
     }
@@ -4,12 +4,15 @@ import core.algorithm.DeadzoneAvoidancePathPlanner;
 import core.algorithm.GreedyPathPlanner;
 import core.algorithm.RouteOptimizer;
 import core.algorithm.ScoreCalculator;
-import core.mock.MockDistanceCalculator;
 import core.models.AnimalEnclosure;
 import core.models.Deadzone;
 import core.models.Depot;
 import core.models.FoodStorage;
 import core.models.Location;
+import core.services.EdgeOracle;
+import core.services.FedSet;
+import core.services.LocationStore;
+import core.services.RemainingSet;
 import core.services.ZooMap;
 import core.utils.OutputFormatter;
 
@@ -41,11 +44,13 @@ public class Level3Solver extends LevelSolver {
         super(zooMap, 2750, 50);
         
         // Initialize deadzone avoidance planner
-        MockDistanceCalculator distanceCalculator = new MockDistanceCalculator(maxFlightHeight);
         this.deadzoneAvoidancePlanner = new DeadzoneAvoidancePathPlanner(
-                distanceCalculator, 
-                zooMap.getAllDeadzones()
+                distanceOracle, 
+                getEdgeOracle()
         );
+        
+        // Reserve checks include the detour home around deadzones
+        distanceOracle.setReturnCostField(getReturnCostField());
     }
     
     /**
@@ -59,11 +64,13 @@ public class Level3Solver extends LevelSolver {
         super(zooMap, batteryCapacity, maxBatterySwaps);
         
         // Initialize deadzone avoidance planner
-        MockDistanceCalculator distanceCalculator = new MockDistanceCalculator(maxFlightHeight);
         this.deadzoneAvoidancePlanner = new DeadzoneAvoidancePathPlanner(
-                distanceCalculator, 
-                zooMap.getAllDeadzones()
+                distanceOracle, 
+                getEdgeOracle()
         );
+        
+        // Reserve checks include the detour home around deadzones
+        distanceOracle.setReturnCostField(getReturnCostField());
     }
     
     /**
@@ -83,10 +90,8 @@ public class Level3Solver extends LevelSolver {
             List<AnimalEnclosure> enclosures,
             List<FoodStorage> foodStorages) {
         
-        // Reset fed status of all enclosures
-        for (AnimalEnclosure enclosure : enclosures) {
-            enclosure.setFed(false);
-        }
+        // What this solution feeds, kept apart from the shared zoo model
+        FedSet fed = new FedSet(locationStore);
         
         // Get deadzones for logging
         List<Deadzone> deadzones = zooMap.getAllDeadzones();
@@ -95,17 +100,62 @@ public class Level3Solver extends LevelSolver {
         // Create an empty list to store our paths
         List<List<Location>> allPaths = new ArrayList<>();
         
-        // Create a copy of enclosures to track remaining ones
-        List<AnimalEnclosure> remainingEnclosures = new ArrayList<>(enclosures);
+        // Track the remaining enclosures by ID, so feeding one is O(1)
+        RemainingSet remainingEnclosures = new RemainingSet(locationStore, enclosures);
         
         // Keep generating paths until we've used all battery swaps or fed all enclosures
-        for (int i = 0; i < maxBatterySwaps && !remainingEnclosures.isEmpty(); i++) {
-            // Use deadzone avoidance planner to create a safe path
+        addPaths(depot, enclosures, remainingEnclosures, foodStorages, allPaths, fed);
+        
+        // Move enclosures between paths; every path this empties frees a battery swap
+        // for new paths to the enclosures that are still unfed
+        while (true) {
+            int pathCount = allPaths.size();
+            allPaths = getInterRouteSearch().improve(allPaths, batteryCapacity);
+            if (allPaths.size() == pathCount || remainingEnclosures.isEmpty()
+                    || addPaths(depot, enclosures, remainingEnclosures, foodStorages, allPaths, fed) == 0) {
+                break;
+            }
+        }
+        
+        // Insert the enclosures that are left wherever their importance outweighs the detour
+        allPaths = getInsertionPlanner().insert(allPaths, enclosures, batteryCapacity, maxBatterySwaps, fed);
+        
+        // Shorten each path with 2-opt and Or-opt moves, keeping detours around deadzones
+        allPaths = getRouteImprover().improveAll(allPaths, batteryCapacity);
+        
+        return allPaths;
+    }
+    
+    /**
+     * Plan paths for the remaining enclosures until the battery swaps run out
+     * or every enclosure is fed.
+     * 
+     * @param depot The depot location
+     * @param enclosures List of all animal enclosures, for progress logging
+     * @param remainingEnclosures The enclosures that still need to be fed; updated as paths are added
+     * @param foodStorages List of food storages
+     * @param allPaths The paths planned so far; new paths are appended
+     * @param fed The enclosures fed so far; updated as paths are added
+     * @return the number of paths added
+     */
+    private int addPaths(
+            Depot depot,
+            List<AnimalEnclosure> enclosures,
+            RemainingSet remainingEnclosures,
+            List<FoodStorage> foodStorages,
+            List<List<Location>> allPaths,
+            FedSet fed) {
+        
+        int added = 0;
+        while (allPaths.size() < maxBatterySwaps && !remainingEnclosures.isEmpty()) {
+            // Use deadzone avoidance planner to create a safe path; it works on a scratch copy
+            // of the fed set, since detours may leave some of its enclosures out
             List<Location> safePath = deadzoneAvoidancePlanner.planPath(
                     depot,
-                    remainingEnclosures,
+                    remainingEnclosures.asList(),
                     foodStorages,
-                    batteryCapacity
+                    batteryCapacity,
+                    fed.copy()
             );
             
             // If path is just the depot or empty, we can't feed any more enclosures
@@ -115,39 +165,44 @@ public class Level3Solver extends LevelSolver {
             
             // Add the path to our collection
             allPaths.add(safePath);
+            added++;
             
             // Update the list of remaining enclosures
-            updateRemainingEnclosures(safePath, remainingEnclosures);
+            updateRemainingEnclosures(safePath, remainingEnclosures, fed);
             
             // Log progress
-            System.out.println("Generated path " + (i + 1) + 
+            System.out.println("Generated path " + allPaths.size() + 
                     ", fed " + (enclosures.size() - remainingEnclosures.size()) + 
                     " of " + enclosures.size() + " enclosures");
         }
-        
-        return allPaths;
+        return added;
     }
     
     /**
      * Updates the list of remaining enclosures by removing those that were fed in the path.
      * 
      * @param path The path that was just completed
-     * @param remainingEnclosures The list of enclosures that still need to be fed
+     * @param remainingEnclosures The enclosures that still need to be fed
+     * @param fed The enclosures fed so far
      */
-    private void updateRemainingEnclosures(List<Location> path, List<AnimalEnclosure> remainingEnclosures) {
+    private void updateRemainingEnclosures(
+            List<Location> path, RemainingSet remainingEnclosures, FedSet fed) {
         // Track current food type
-        Character currentFoodType = null;
+        byte currentDiet = LocationStore.NO_DIET;
         
         for (Location location : path) {
-            if (location instanceof FoodStorage) {
-                FoodStorage storage = (FoodStorage) location;
-                currentFoodType = storage.getFoodType();
-            } else if (location instanceof AnimalEnclosure) {
-                AnimalEnclosure enclosure = (AnimalEnclosure) location;
-                
+            int id = locationStore.idOf(location);
+            if (id < 0) {
+                continue; // Waypoint
+            }
+            
+            if (locationStore.isFoodStorage(id)) {
+                currentDiet = locationStore.diet(id);
+            } else if (locationStore.isEnclosure(id)) {
                 // Check if the enclosure was fed (right food type)
-                if (currentFoodType != null && currentFoodType == enclosure.getDiet()) {
-                    remainingEnclosures.remove(enclosure);
+                if (currentDiet != LocationStore.NO_DIET && currentDiet == locationStore.diet(id)) {
+                    remainingEnclosures.remove(id);
+                    fed.add(id);
                 }
             }
         }
@@ -159,54 +214,30 @@ public class Level3Solver extends LevelSolver {
      * @return A string with score details
      */
     public String getScoreDetails() {
-        List<List<Location>> paths = solve();
+        Solution solution = getSolution();
         
-        if (paths.isEmpty()) {
+        if (solution.isEmpty()) {
             return "No valid paths found";
         }
         
-        double totalScore = 0;
-        int totalEnclosuresFed = 0;
-        double totalImportance = 0;
-        double totalDistance = 0;
-        
-        MockDistanceCalculator distanceCalc = new MockDistanceCalculator(maxFlightHeight);
-        
         StringBuilder sb = new StringBuilder();
         sb.append("Level 3 Score Details:\n");
         
-        // For each battery swap, calculate the score
-        for (int i = 0; i < paths.size(); i++) {
-            List<Location> path = paths.get(i);
-            List<AnimalEnclosure> fedEnclosures = extractFedEnclosures(path);
-            
-            double pathDistance = distanceCalc.calculatePathDistance(path);
-            
-            double pathImportance = 0;
-            for (AnimalEnclosure enclosure : fedEnclosures) {
-                pathImportance += enclosure.getImportance();
-            }
-            
-            double pathScore = pathImportance * 1000 - pathDistance;
-            
+        // For each battery swap, report the score
+        for (int i = 0; i < solution.getPathCount(); i++) {
             sb.append("Path ").append(i + 1).append(":\n");
-            sb.append("  Enclosures fed: ").append(fedEnclosures.size()).append("\n");
-            sb.append("  Importance: ").append(pathImportance).append("\n");
-            sb.append("  Distance: ").append(pathDistance).append("m\n");
-            sb.append("  Score: ").append(pathScore).append(" points\n");
-            
-            totalScore += pathScore;
-            totalEnclosuresFed += fedEnclosures.size();
-            totalImportance += pathImportance;
-            totalDistance += pathDistance;
+            sb.append("  Enclosures fed: ").append(solution.getFedEnclosures(i).size()).append("\n");
+            sb.append("  Importance: ").append(solution.getPathImportance(i)).append("\n");
+            sb.append("  Distance: ").append(solution.getPathDistance(i)).append("m\n");
+            sb.append("  Score: ").append(solution.getPathScore(i)).append(" points\n");
         }
         
         sb.append("\nSummary:\n");
-        sb.append("Total paths: ").append(paths.size()).append(" (of ").append(maxBatterySwaps).append(" available)\n");
-        sb.append("Total enclosures fed: ").append(totalEnclosuresFed).append("\n");
-        sb.append("Total importance: ").append(totalImportance).append("\n");
-        sb.append("Total distance: ").append(totalDistance).append("m\n");
-        sb.append("Final Score: ").append(totalScore).append(" points");
+        sb.append("Total paths: ").append(solution.getPathCount()).append(" (of ").append(maxBatterySwaps).append(" available)\n");
+        sb.append("Total enclosures fed: ").append(solution.getFedCount()).append("\n");
+        sb.append("Total importance: ").append(solution.getTotalImportance()).append("\n");
+        sb.append("Total distance: ").append(solution.getTotalDistance()).append("m\n");
+        sb.append("Final Score: ").append(solution.getTotalScore()).append(" points");
         
         return sb.toString();
     }
@@ -217,20 +248,15 @@ public class Level3Solver extends LevelSolver {
      * @return true if any path intersects a deadzone, false otherwise
      */
     public boolean hasDeadzoneIntersections() {
-        List<List<Location>> paths = solve();
-        List<Deadzone> deadzones = zooMap.getAllDeadzones();
+        EdgeOracle edges = getEdgeOracle();
         
-        for (List<Location> path : paths) {
+        for (List<Location> path : getSolution().getPaths()) {
             for (int i = 0; i < path.size() - 1; i++) {
                 Location current = path.get(i);
                 Location next = path.get(i + 1);
                 
-                for (Deadzone deadzone : deadzones) {
-                    if (deadzone.intersectsLine(
-                            current.getX(), current.getY(),
-                            next.getX(), next.getY())) {
-                        return true;
-                    }
+                if (edges.isBlocked(current, next)) {
+                    return true;
                 }
             }
         }
@@ -2,20 +2,19 @@ package main.java.levels;
 
 import core.algorithm.ClusterPathPlanner;
 import core.algorithm.DeadzoneAvoidancePathPlanner;
-import core.mock.MockDistanceCalculator;
 import core.models.AnimalEnclosure;
 import core.models.Deadzone;
 import core.models.Depot;
 import core.models.FoodStorage;
 import core.models.Location;
+import core.services.FedSet;
+import core.services.LocationStore;
+import core.services.RemainingSet;
 import core.services.ZooMap;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Solver implementation for Level 4.
@@ -33,10 +32,15 @@ public class Level4Solver extends LevelSolver {
     private final ClusterPathPlanner clusterPlanner;
     private final DeadzoneAvoidancePathPlanner deadzoneAvoidancePlanner;
     
+    // Enclosures of the current diet group still to route, built on first use and refilled per group
+    private RemainingSet remainingEnclosures;
+    
     // Configuration for Level 4
     private final int maxClustersPerDiet = 25; // Number of clusters to create per diet type
     private final double clusterRadiusThreshold = 250.0; // Size threshold for clusters (in meters)
     private final int batchSize = 20; // Number of paths to generate in each batch
+    private final int clusteringStarts = 8; // Seeded K-means starts per path, fixed so results don't depend on the core count
+    private long searchTimeLimitMillis = 20_000; // Time for the ruin-and-recreate search, 0 to skip
     
     /**
      * Constructor for Level4Solver with default parameters.
@@ -48,18 +52,22 @@ public class Level4Solver extends LevelSolver {
         super(zooMap, 9250, 250);
         
         // Initialize specialized planners for Level 4
-        MockDistanceCalculator distanceCalculator = new MockDistanceCalculator(maxFlightHeight);
-        
         this.clusterPlanner = new ClusterPathPlanner(
-                distanceCalculator,
+                distanceOracle,
                 maxClustersPerDiet,
                 clusterRadiusThreshold
         );
+        this.clusterPlanner.setCandidateLists(getCandidateLists());
+        this.clusterPlanner.setStarts(clusteringStarts);
+        this.clusterPlanner.setExactSolver(getHeldKarpSolver());
         
         this.deadzoneAvoidancePlanner = new DeadzoneAvoidancePathPlanner(
-                distanceCalculator, 
-                zooMap.getAllDeadzones()
+                distanceOracle, 
+                getEdgeOracle()
         );
+        
+        // Reserve checks include the detour home around deadzones
+        distanceOracle.setReturnCostField(getReturnCostField());
     }
     
     /**
@@ -73,18 +81,22 @@ public class Level4Solver extends LevelSolver {
         super(zooMap, batteryCapacity, maxBatterySwaps);
         
         // Initialize specialized planners for Level 4
-        MockDistanceCalculator distanceCalculator = new MockDistanceCalculator(maxFlightHeight);
-        
         this.clusterPlanner = new ClusterPathPlanner(
-                distanceCalculator,
+                distanceOracle,
                 maxClustersPerDiet,
                 clusterRadiusThreshold
         );
+        this.clusterPlanner.setCandidateLists(getCandidateLists());
+        this.clusterPlanner.setStarts(clusteringStarts);
+        this.clusterPlanner.setExactSolver(getHeldKarpSolver());
         
         this.deadzoneAvoidancePlanner = new DeadzoneAvoidancePathPlanner(
-                distanceCalculator, 
-                zooMap.getAllDeadzones()
+                distanceOracle, 
+                getEdgeOracle()
         );
+        
+        // Reserve checks include the detour home around deadzones
+        distanceOracle.setReturnCostField(getReturnCostField());
     }
     
     /**
@@ -93,6 +105,8 @@ public class Level4Solver extends LevelSolver {
      * - Combines deadzone avoidance with cluster-based planning
      * - Processes enclosures in batches to manage complexity
      * - Prioritizes high-importance clusters
+     * - Plans each cluster path from several seeded K-means starts in parallel
+     * - Spends a time limit on parallel ruin-and-recreate search over all paths
      * 
      * @param depot The depot location
      * @param enclosures List of animal enclosures
@@ -105,10 +119,8 @@ public class Level4Solver extends LevelSolver {
             List<AnimalEnclosure> enclosures,
             List<FoodStorage> foodStorages) {
         
-        // Reset fed status of all enclosures
-        for (AnimalEnclosure enclosure : enclosures) {
-            enclosure.setFed(false);
-        }
+        // What this solution feeds, kept apart from the shared zoo model
+        FedSet fed = new FedSet(locationStore);
         
         System.out.println("Level 4: Planning paths for " + enclosures.size() + " enclosures");
         System.out.println("Using " + maxBatterySwaps + " battery swaps with " + batteryCapacity + "m capacity");
@@ -120,80 +132,120 @@ public class Level4Solver extends LevelSolver {
         // Create a master list for all paths
         List<List<Location>> allPaths = new ArrayList<>();
         
-        // Sort enclosures by importance for prioritization
-        List<AnimalEnclosure> sortedEnclosures = new ArrayList<>(enclosures);
-        sortedEnclosures.sort(Comparator.comparing(AnimalEnclosure::getImportance).reversed());
+        // Process diet groups in batches, most important enclosures first
+        addPaths(depot, allPaths, fed);
+        
+        // Move enclosures between paths; every path this empties frees a battery swap
+        // for new paths to the enclosures that are still unfed
+        while (true) {
+            int pathCount = allPaths.size();
+            allPaths = getInterRouteSearch().improve(allPaths, batteryCapacity);
+            if (allPaths.size() == pathCount || addPaths(depot, allPaths, fed) == 0) {
+                break;
+            }
+        }
+        System.out.println(clusterPlanner.getStatistics());
         
-        // Group enclosures by diet for more efficient planning
-        Map<Character, List<AnimalEnclosure>> enclosuresByDiet = groupEnclosuresByDiet(sortedEnclosures);
+        // Insert the enclosures that are left wherever their importance outweighs the detour
+        allPaths = getInsertionPlanner().insert(allPaths, enclosures, batteryCapacity, maxBatterySwaps, fed);
         
-        // Process diet groups in parallel batches
-        int batterySwapsUsed = 0;
+        // Local moves stall at this size; ruin and recreate whole neighbourhoods on all cores
+        if (searchTimeLimitMillis > 0) {
+            allPaths = getLargeNeighbourhoodSearch().improve(
+                    allPaths, enclosures, batteryCapacity, maxBatterySwaps, searchTimeLimitMillis);
+        }
+        
+        // Shorten each path with 2-opt and Or-opt moves, keeping detours around deadzones
+        allPaths = getRouteImprover().improveAll(allPaths, batteryCapacity);
+        
+        // What the paths feed is scored once, by getSolution(); see getScoreDetails()
+        System.out.println("Level 4 solution: " + allPaths.size() + " of " + maxBatterySwaps
+                + " battery swaps used");
+        
+        return allPaths;
+    }
+    
+    /**
+     * Set how long the ruin-and-recreate search may run on the planned paths.
+     * 
+     * @param millis wall-clock time limit in milliseconds, 0 to skip the search
+     */
+    public void setSearchTimeLimit(long millis) {
+        this.searchTimeLimitMillis = millis;
+        clearSolution();
+    }
+    
+    /**
+     * Plan paths diet group by diet group, a batch at a time, until the battery swaps
+     * run out or no group gets another path. Each group may use the swaps the groups
+     * before it left; the cluster planner runs every path's K-means starts in parallel.
+     * 
+     * @param depot The depot location
+     * @param allPaths The paths planned so far; new paths are appended
+     * @param fed The enclosures fed so far; updated as paths are added
+     * @return the number of paths added
+     */
+    private int addPaths(
+            Depot depot,
+            List<List<Location>> allPaths,
+            FedSet fed) {
+        
+        int added = 0;
         boolean continueProcessing = true;
         
-        while (continueProcessing && batterySwapsUsed < maxBatterySwaps) {
+        while (continueProcessing && allPaths.size() < maxBatterySwaps) {
             continueProcessing = false;
             
-            // Process each diet type
-            for (char diet : new char[]{'c', 'h', 'o'}) {
-                if (!enclosuresByDiet.containsKey(diet)) continue;
-                
-                List<AnimalEnclosure> dietEnclosures = enclosuresByDiet.get(diet);
-                
-                // Filter out already fed enclosures
-                dietEnclosures = dietEnclosures.stream()
-                        .filter(e -> !e.isFed())
-                        .collect(Collectors.toList());
-                
-                if (dietEnclosures.isEmpty()) continue;
-                
-                continueProcessing = true; // We still have enclosures to process
+            for (byte diet = 0; diet < LocationStore.DIETS.length && allPaths.size() < maxBatterySwaps; diet++) {
+                if (dietIndex.enclosureCount(diet) == 0) {
+                    continue;
+                }
                 
-                // Only process a batch of enclosures at a time to manage complexity
-                List<AnimalEnclosure> batchEnclosures = dietEnclosures.stream()
-                        .limit(Math.min(batchSize * 50, dietEnclosures.size()))
-                        .collect(Collectors.toList());
+                // Only process a batch of the most important unfed enclosures at a time to
+                // manage complexity; the diet index already has them in importance order
+                List<AnimalEnclosure> batchEnclosures = new ArrayList<>();
+                for (int id : dietIndex.enclosuresByImportance(diet)) {
+                    if (batchEnclosures.size() == batchSize * 50) {
+                        break;
+                    }
+                    if (!fed.contains(id)) {
+                        batchEnclosures.add((AnimalEnclosure) locationStore.location(id));
+                    }
+                }
                 
                 // Create paths for this diet group
-                int availableSwaps = Math.min(batchSize, maxBatterySwaps - batterySwapsUsed);
+                int availableSwaps = Math.min(batchSize, maxBatterySwaps - allPaths.size());
                 List<List<Location>> dietPaths = createPathsForDietGroup(
-                        depot, batchEnclosures, foodStorages, availableSwaps);
-                
-                // Update battery swaps used
-                batterySwapsUsed += dietPaths.size();
+                        depot, diet, batchEnclosures, availableSwaps, fed);
                 
-                // Add paths to master list
-                allPaths.addAll(dietPaths);
-                
-                // Break if we've used all available battery swaps
-                if (batterySwapsUsed >= maxBatterySwaps) {
-                    break;
+                // Keep going while some group still gets paths
+                if (!dietPaths.isEmpty()) {
+                    continueProcessing = true;
                 }
+                allPaths.addAll(dietPaths);
+                added += dietPaths.size();
             }
         }
         
-        // Calculate and display statistics
-        int totalFed = countFedEnclosures(enclosures);
-        System.out.println("Level 4 solution: Fed " + totalFed + " of " + enclosures.size() + 
-                " enclosures using " + allPaths.size() + " battery swaps");
-        
-        return allPaths;
+        return added;
     }
     
     /**
      * Create paths for a group of enclosures with the same diet type.
      * 
      * @param depot The depot location
-     * @param enclosures List of enclosures (same diet type)
-     * @param allFoodStorages List of all food storages
+     * @param diet The group's diet ordinal
+     * @param enclosures List of enclosures of that diet
      * @param maxPaths Maximum number of paths to create
+     * @param fed The enclosures fed so far; updated as paths are added
      * @return List of paths for this diet group
      */
     private List<List<Location>> createPathsForDietGroup(
             Depot depot,
+            byte diet,
             List<AnimalEnclosure> enclosures,
-            List<FoodStorage> allFoodStorages,
-            int maxPaths) {
+            int maxPaths,
+            FedSet fed) {
         
         List<List<Location>> paths = new ArrayList<>();
         
@@ -202,29 +254,36 @@ public class Level4Solver extends LevelSolver {
             return paths;
         }
         
-        // Get the diet type for this group
-        char diet = enclosures.get(0).getDiet();
-        
-        // Filter food storages to only include those matching the diet
-        List<FoodStorage> matchingFoodStorages = allFoodStorages.stream()
-                .filter(fs -> fs.getFoodType() == diet)
-                .collect(Collectors.toList());
-        
-        if (matchingFoodStorages.isEmpty()) {
+        // Food storages of this diet, grouped once by the diet index
+        int[] storageIds = dietIndex.storages(diet);
+        if (storageIds.length == 0) {
             return paths; // No matching food storages
         }
+        List<FoodStorage> matchingFoodStorages = new ArrayList<>(storageIds.length);
+        for (int id : storageIds) {
+            matchingFoodStorages.add((FoodStorage) locationStore.location(id));
+        }
         
-        // Create a copy of enclosures to track which ones are fed
-        List<AnimalEnclosure> remainingEnclosures = new ArrayList<>(enclosures);
+        // Track the remaining enclosures by ID, so feeding one is O(1); the set spans the
+        // whole store, so one is kept and refilled for every group
+        if (remainingEnclosures == null) {
+            remainingEnclosures = new RemainingSet(locationStore);
+        }
+        remainingEnclosures.clear();
+        for (AnimalEnclosure enclosure : enclosures) {
+            remainingEnclosures.add(enclosure);
+        }
         
         // Generate paths until we've used all allowed paths or fed all enclosures
         for (int i = 0; i < maxPaths && !remainingEnclosures.isEmpty(); i++) {
-            // First, use the cluster planner to create an efficient path
+            // First, use the cluster planner to create an efficient path. Both planners mark
+            // scratch copies of the fed set; only what the safe path feeds is kept
             List<Location> clusterPath = clusterPlanner.planPath(
                     depot,
-                    remainingEnclosures,
+                    remainingEnclosures.asList(),
                     matchingFoodStorages,
-                    batteryCapacity
+                    batteryCapacity,
+                    fed.copy()
             );
             
             // If the path is just the depot or empty, we can't feed any more enclosures
@@ -237,7 +296,8 @@ public class Level4Solver extends LevelSolver {
                     depot,
                     extractLocations(clusterPath),  // Extract locations that aren't depot
                     matchingFoodStorages,
-                    batteryCapacity
+                    batteryCapacity,
+                    fed.copy()
             );
             
             // If the safe path is just the depot or empty, we can't feed any more enclosures
@@ -245,11 +305,13 @@ public class Level4Solver extends LevelSolver {
                 break;
             }
             
-            // Add the path to our collection
             paths.add(safePath);
             
             // Update the list of remaining enclosures
-            updateRemainingEnclosures(safePath, remainingEnclosures);
+            for (int id : fedEnclosureIds(safePath)) {
+                remainingEnclosures.remove(id);
+                fed.add(id);
+            }
         }
         
         return paths;
@@ -271,59 +333,44 @@ public class Level4Solver extends LevelSolver {
     }
     
     /**
-     * Updates the list of remaining enclosures by removing those that were fed in the path.
+     * Find the enclosures a path feeds: those visited while carrying their diet's food,
+     * each once.
      * 
      * @param path The path that was just completed
-     * @param remainingEnclosures The list of enclosures that still need to be fed
+     * @return IDs of the enclosures the path feeds, in visiting order
      */
-    private void updateRemainingEnclosures(List<Location> path, List<AnimalEnclosure> remainingEnclosures) {
+    private int[] fedEnclosureIds(List<Location> path) {
         // Track current food type
-        Character currentFoodType = null;
+        byte currentDiet = LocationStore.NO_DIET;
+        int[] ids = new int[path.size()];
+        int count = 0;
         
         for (Location location : path) {
-            if (location instanceof FoodStorage) {
-                FoodStorage storage = (FoodStorage) location;
-                currentFoodType = storage.getFoodType();
-            } else if (location instanceof AnimalEnclosure) {
-                AnimalEnclosure enclosure = (AnimalEnclosure) location;
-                
-                // Check if the enclosure was fed (right food type)
-                if (currentFoodType != null && currentFoodType == enclosure.getDiet()) {
-                    remainingEnclosures.remove(enclosure);
-                    enclosure.setFed(true);
+            int id = locationStore.idOf(location);
+            if (id < 0) {
+                continue; // Waypoint
+            }
+            
+            if (locationStore.isFoodStorage(id)) {
+                currentDiet = locationStore.diet(id);
+            } else if (locationStore.isEnclosure(id)) {
+                // Check if the enclosure was fed (right food type) and not counted already
+                if (currentDiet != LocationStore.NO_DIET && currentDiet == locationStore.diet(id)
+                        && indexOf(ids, count, id) < 0) {
+                    ids[count++] = id;
                 }
             }
         }
+        return Arrays.copyOf(ids, count);
     }
     
-    /**
-     * Group enclosures by their diet type.
-     * 
-     * @param enclosures List of enclosures to group
-     * @return Map of diet type to list of enclosures
-     */
-    private Map<Character, List<AnimalEnclosure>> groupEnclosuresByDiet(
-            List<AnimalEnclosure> enclosures) {
-        
-        Map<Character, List<AnimalEnclosure>> enclosuresByDiet = new HashMap<>();
-        
-        for (AnimalEnclosure enclosure : enclosures) {
-            char diet = enclosure.getDiet();
-            enclosuresByDiet.computeIfAbsent(diet, k -> new ArrayList<>())
-                    .add(enclosure);
+    private static int indexOf(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
         }
-        
-        return enclosuresByDiet;
-    }
-    
-    /**
-     * Count how many enclosures have been fed.
-     * 
-     * @param enclosures List of all enclosures
-     * @return Number of enclosures that have been fed
-     */
-    private int countFedEnclosures(List<AnimalEnclosure> enclosures) {
-        return (int) enclosures.stream().filter(AnimalEnclosure::isFed).count();
+        return -1;
     }
     
     /**
@@ -332,60 +379,36 @@ public class Level4Solver extends LevelSolver {
      * @return A string with score details and statistics
      */
     public String getScoreDetails() {
-        List<List<Location>> paths = solve();
+        Solution solution = getSolution();
         
-        if (paths.isEmpty()) {
+        if (solution.isEmpty()) {
             return "No valid paths found";
         }
         
-        double totalScore = 0;
-        int totalEnclosuresFed = 0;
-        double totalImportance = 0;
-        double totalDistance = 0;
-        
-        Map<Character, Integer> fedByDiet = new HashMap<>();
-        fedByDiet.put('c', 0);
-        fedByDiet.put('h', 0);
-        fedByDiet.put('o', 0);
-        
-        MockDistanceCalculator distanceCalc = new MockDistanceCalculator(maxFlightHeight);
-        
         StringBuilder sb = new StringBuilder();
         sb.append("Level 4 Score Details:\n");
         
-        // For each battery swap, calculate the score
-        for (int i = 0; i < paths.size(); i++) {
-            List<Location> path = paths.get(i);
-            List<AnimalEnclosure> fedEnclosures = extractFedEnclosures(path);
-            
-            double pathDistance = distanceCalc.calculatePathDistance(path);
-            
-            double pathImportance = 0;
-            for (AnimalEnclosure enclosure : fedEnclosures) {
-                pathImportance += enclosure.getImportance();
-                fedByDiet.put(enclosure.getDiet(), fedByDiet.get(enclosure.getDiet()) + 1);
-            }
-            
-            double pathScore = pathImportance * 1000 - pathDistance;
-            
-            // For Level 4, we have too many paths to show details for each one
-            // Just accumulate the totals
-            totalScore += pathScore;
-            totalEnclosuresFed += fedEnclosures.size();
-            totalImportance += pathImportance;
-            totalDistance += pathDistance;
-        }
-        
+        // For Level 4, we have too many paths to show details for each one
         sb.append("\nSummary:\n");
-        sb.append("Total paths: ").append(paths.size()).append(" (of ").append(maxBatterySwaps).append(" available)\n");
-        sb.append("Total enclosures fed: ").append(totalEnclosuresFed).append(" of ").append(zooMap.getAllEnclosures().size()).append("\n");
+        sb.append("Total paths: ").append(solution.getPathCount()).append(" (of ").append(maxBatterySwaps).append(" available)\n");
+        sb.append("Total enclosures fed: ").append(solution.getFedCount()).append(" of ").append(zooMap.getAllEnclosures().size()).append("\n");
         sb.append("Diet distribution:\n");
-        sb.append("  Carnivores: ").append(fedByDiet.get('c')).append("\n");
-        sb.append("  Herbivores: ").append(fedByDiet.get('h')).append("\n");
-        sb.append("  Omnivores: ").append(fedByDiet.get('o')).append("\n");
-        sb.append("Total importance: ").append(totalImportance).append("\n");
-        sb.append("Total distance: ").append(totalDistance).append("m\n");
-        sb.append("Final Score: ").append(totalScore).append(" points");
+        sb.append("  Carnivores: ").append(solution.getFedCount('c')).append(" of ")
+                .append(dietIndex.enclosureCount(LocationStore.dietOrdinal('c'))).append("\n");
+        sb.append("  Herbivores: ").append(solution.getFedCount('h')).append(" of ")
+                .append(dietIndex.enclosureCount(LocationStore.dietOrdinal('h'))).append("\n");
+        sb.append("  Omnivores: ").append(solution.getFedCount('o')).append(" of ")
+                .append(dietIndex.enclosureCount(LocationStore.dietOrdinal('o'))).append("\n");
+        
+        // The diet index sums each diet's importance once, so the zoo total costs nothing here
+        double zooImportance = 0;
+        for (byte diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            zooImportance += dietIndex.totalImportance(diet);
+        }
+        sb.append("Total importance: ").append(solution.getTotalImportance())
+                .append(" of ").append(zooImportance).append("\n");
+        sb.append("Total distance: ").append(solution.getTotalDistance()).append("m\n");
+        sb.append("Final Score: ").append(solution.getTotalScore()).append(" points");
         
         return sb.toString();
     }
@@ -396,35 +419,21 @@ public class Level4Solver extends LevelSolver {
      * @return A string with efficiency metrics
      */
     public String getEfficiencyMetrics() {
-        List<List<Location>> paths = solve();
+        Solution solution = getSolution();
         
-        if (paths.isEmpty()) {
+        if (solution.isEmpty()) {
             return "No valid paths found";
         }
         
-        // Calculate metrics
-        double totalDistance = 0;
-        int totalEnclosuresFed = 0;
-        double totalImportance = 0;
-        
-        MockDistanceCalculator distanceCalc = new MockDistanceCalculator(maxFlightHeight);
-        
-        for (List<Location> path : paths) {
-            List<AnimalEnclosure> fedEnclosures = extractFedEnclosures(path);
-            totalDistance += distanceCalc.calculatePathDistance(path);
-            totalEnclosuresFed += fedEnclosures.size();
-            
-            for (AnimalEnclosure enclosure : fedEnclosures) {
-                totalImportance += enclosure.getImportance();
-            }
-        }
-        
         // Calculate derived metrics
-        double enclosuresPerPath = (double) totalEnclosuresFed / paths.size();
-        double distancePerEnclosure = totalDistance / totalEnclosuresFed;
+        int pathCount = solution.getPathCount();
+        double totalDistance = solution.getTotalDistance();
+        double totalImportance = solution.getTotalImportance();
+        double enclosuresPerPath = (double) solution.getFedCount() / pathCount;
+        double distancePerEnclosure = totalDistance / solution.getFedCount();
         double importancePerDistance = totalImportance / totalDistance;
-        double importancePerPath = totalImportance / paths.size();
-        double batteryEfficiency = totalDistance / (paths.size() * batteryCapacity) * 100;
+        double importancePerPath = totalImportance / pathCount;
+        double batteryEfficiency = totalDistance / (pathCount * batteryCapacity) * 100;
         
         StringBuilder sb = new StringBuilder();
         sb.append("Level 4 Efficiency Metrics:\n");
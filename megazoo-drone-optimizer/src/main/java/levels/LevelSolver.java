@@ -1,17 +1,31 @@
 package main.java.levels;
 
+import core.algorithm.EdgePriced;
 import core.algorithm.GreedyPathPlanner;
+import core.algorithm.HeldKarpSolver;
+import core.algorithm.InsertionPlanner;
+import core.algorithm.InterRouteSearch;
+import core.algorithm.IslandGeneticAlgorithm;
+import core.algorithm.LargeNeighbourhoodSearch;
+import core.algorithm.RouteImprover;
 import core.algorithm.RouteOptimizer;
+import core.algorithm.SavingsPlanner;
+import core.algorithm.SimulatedAnnealing;
 import core.algorithm.ScoreCalculator;
-import core.mock.MockDistanceCalculator;
 import core.models.AnimalEnclosure;
 import core.models.Depot;
 import core.models.FoodStorage;
 import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DietIndex;
+import core.services.DistanceOracle;
+import core.services.EdgeOracle;
+import core.services.LocationStore;
+import core.services.ReturnCostField;
+import core.services.VisibilityGraph;
 import core.services.ZooMap;
 import core.utils.OutputFormatter;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -22,10 +36,33 @@ public abstract class LevelSolver {
     
     // Core components used by all level solvers
     protected GreedyPathPlanner pathPlanner;
-    protected RouteOptimizer routeOptimizer;
+    private RouteOptimizer routeOptimizer;
     protected ScoreCalculator scoreCalculator;
     protected OutputFormatter outputFormatter;
     
+    // Columnar zoo locations and the drone distances between them, shared by every planner
+    protected LocationStore locationStore;
+    protected DietIndex dietIndex;
+    protected DistanceOracle distanceOracle;
+    private CandidateLists candidateLists;
+    private EdgeOracle edgeOracle;
+    private ReturnCostField returnCostField;
+    private RouteImprover routeImprover;
+    private InterRouteSearch interRouteSearch;
+    private SavingsPlanner savingsPlanner;
+    private InsertionPlanner insertionPlanner;
+    private SimulatedAnnealing simulatedAnnealing;
+    private LargeNeighbourhoodSearch largeNeighbourhoodSearch;
+    private IslandGeneticAlgorithm islandGeneticAlgorithm;
+    private HeldKarpSolver heldKarpSolver;
+    
+    // Spare wall-clock time spent evolving, then annealing, the level's paths, 0 to skip
+    private long evolutionBudgetMillis;
+    private long annealingBudgetMillis;
+    
+    // The solved level, kept so the submission and every report share one solve
+    private Solution solution;
+    
     // Zoo configuration
     protected ZooMap zooMap;
     protected int maxFlightHeight = 50; // Default max flight height
@@ -45,14 +82,209 @@ public abstract class LevelSolver {
         this.maxBatterySwaps = maxBatterySwaps;
         this.maxFlightHeight = zooMap.getMaxHeight();
         
+        // Precompute distances once so all components read from the same table
+        // (a full matrix for small zoos, a bounded block cache for large ones)
+        this.locationStore = zooMap.getLocationStore();
+        this.dietIndex = zooMap.getDietIndex();
+        this.distanceOracle = DistanceOracle.forStore(locationStore, maxFlightHeight);
+        
         // Initialize common components
-        MockDistanceCalculator distanceCalculator = new MockDistanceCalculator(maxFlightHeight);
-        this.pathPlanner = new GreedyPathPlanner(distanceCalculator);
-        this.routeOptimizer = new RouteOptimizer(distanceCalculator);
-        this.scoreCalculator = new ScoreCalculator(distanceCalculator);
+        this.pathPlanner = new GreedyPathPlanner(distanceOracle);
+        this.scoreCalculator = new ScoreCalculator(distanceOracle);
         this.outputFormatter = new OutputFormatter();
     }
     
+    /**
+     * Get the k-nearest-neighbour candidate lists for this zoo.
+     * Built in parallel on first use, so levels that never need them don't pay for them.
+     * 
+     * @return candidate lists over the zoo's enclosures
+     */
+    protected CandidateLists getCandidateLists() {
+        if (candidateLists == null) {
+            candidateLists = new CandidateLists(distanceOracle);
+        }
+        return candidateLists;
+    }
+    
+    /**
+     * Get the cached deadzone facts per edge for this zoo.
+     * Shared by every planner and validator, so each edge is tested against the deadzones once.
+     * 
+     * @return the edge oracle over the zoo's deadzones
+     */
+    protected EdgeOracle getEdgeOracle() {
+        if (edgeOracle == null) {
+            edgeOracle = new EdgeOracle(locationStore, new VisibilityGraph(zooMap.getAllDeadzones(), maxFlightHeight));
+        }
+        return edgeOracle;
+    }
+    
+    /**
+     * Get the obstacle-aware cost of flying home from anywhere in the zoo.
+     * Levels with deadzones attach it to the distance oracle so battery reserve checks
+     * account for the detour back to the depot.
+     * 
+     * @return the return-cost field for the zoo's depot
+     */
+    protected ReturnCostField getReturnCostField() {
+        if (returnCostField == null) {
+            returnCostField = new ReturnCostField(locationStore, getEdgeOracle().getGraph());
+        }
+        return returnCostField;
+    }
+    
+    /**
+     * Attach the edge oracle to a planning stage if the zoo has deadzones; on open zoos
+     * straight distances are exact and the stage skips the lookups.
+     * 
+     * @param stage the planning stage
+     * @return the same stage
+     */
+    private <T extends EdgePriced> T withEdgeOracle(T stage) {
+        if (!zooMap.getAllDeadzones().isEmpty()) {
+            stage.setEdgeOracle(getEdgeOracle());
+        }
+        return stage;
+    }
+    
+    /**
+     * Get the optimizer that splits one long tour into battery paths.
+     * 
+     * @return the route optimizer for this zoo
+     */
+    protected RouteOptimizer getRouteOptimizer() {
+        if (routeOptimizer == null) {
+            routeOptimizer = withEdgeOracle(new RouteOptimizer(distanceOracle));
+            routeOptimizer.setCandidateLists(getCandidateLists());
+        }
+        return routeOptimizer;
+    }
+    
+    /**
+     * Get the 2-opt / Or-opt improver for finished paths.
+     * 
+     * @return the route improver for this zoo
+     */
+    protected RouteImprover getRouteImprover() {
+        if (routeImprover == null) {
+            routeImprover = withEdgeOracle(new RouteImprover(distanceOracle, getCandidateLists()));
+        }
+        return routeImprover;
+    }
+    
+    /**
+     * Get the local search that moves enclosures between finished paths.
+     * 
+     * @return the inter-route search for this zoo
+     */
+    protected InterRouteSearch getInterRouteSearch() {
+        if (interRouteSearch == null) {
+            interRouteSearch = withEdgeOracle(new InterRouteSearch(distanceOracle, getCandidateLists()));
+        }
+        return interRouteSearch;
+    }
+    
+    /**
+     * Get the Clarke-Wright savings planner that builds all battery paths at once.
+     * 
+     * @return the savings planner for this zoo
+     */
+    protected SavingsPlanner getSavingsPlanner() {
+        if (savingsPlanner == null) {
+            savingsPlanner = withEdgeOracle(new SavingsPlanner(distanceOracle, getCandidateLists()));
+        }
+        return savingsPlanner;
+    }
+    
+    /**
+     * Get the prize-collecting insertion planner that adds enclosures by net gain.
+     * 
+     * @return the insertion planner for this zoo
+     */
+    protected InsertionPlanner getInsertionPlanner() {
+        if (insertionPlanner == null) {
+            insertionPlanner = withEdgeOracle(new InsertionPlanner(distanceOracle, getCandidateLists()));
+        }
+        return insertionPlanner;
+    }
+    
+    /**
+     * Get the simulated annealing improver that spends spare time on finished paths.
+     * 
+     * @return the simulated annealing improver for this zoo
+     */
+    protected SimulatedAnnealing getSimulatedAnnealing() {
+        if (simulatedAnnealing == null) {
+            simulatedAnnealing = withEdgeOracle(new SimulatedAnnealing(distanceOracle, getCandidateLists()));
+        }
+        return simulatedAnnealing;
+    }
+    
+    /**
+     * Get the parallel ruin-and-recreate search over all paths at once.
+     * 
+     * @return the large neighbourhood search for this zoo
+     */
+    protected LargeNeighbourhoodSearch getLargeNeighbourhoodSearch() {
+        if (largeNeighbourhoodSearch == null) {
+            largeNeighbourhoodSearch = withEdgeOracle(new LargeNeighbourhoodSearch(distanceOracle, getCandidateLists()));
+        }
+        return largeNeighbourhoodSearch;
+    }
+    
+    /**
+     * Get the island-model genetic algorithm that evolves giant tours of all enclosures.
+     * 
+     * @return the genetic algorithm for this zoo
+     */
+    protected IslandGeneticAlgorithm getIslandGeneticAlgorithm() {
+        if (islandGeneticAlgorithm == null) {
+            islandGeneticAlgorithm = withEdgeOracle(new IslandGeneticAlgorithm(distanceOracle, getCandidateLists()));
+        }
+        return islandGeneticAlgorithm;
+    }
+    
+    /**
+     * Get the exact dynamic-programming planner for paths over a handful of enclosures.
+     * 
+     * @return the Held-Karp solver for this zoo
+     */
+    protected HeldKarpSolver getHeldKarpSolver() {
+        if (heldKarpSolver == null) {
+            heldKarpSolver = withEdgeOracle(new HeldKarpSolver(distanceOracle));
+        }
+        return heldKarpSolver;
+    }
+    
+    /**
+     * Set how long {@link #solve()} may evolve the level's paths after planning them,
+     * before any annealing.
+     * 
+     * @param millis wall-clock time budget in milliseconds, 0 to skip evolution
+     */
+    public void setEvolutionBudget(long millis) {
+        this.evolutionBudgetMillis = millis;
+        clearSolution();
+    }
+    
+    /**
+     * Set how long {@link #solve()} may anneal the level's paths after planning them.
+     * 
+     * @param millis wall-clock time budget in milliseconds, 0 to skip annealing
+     */
+    public void setAnnealingBudget(long millis) {
+        this.annealingBudgetMillis = millis;
+        clearSolution();
+    }
+    
+    /**
+     * Forget the solved level, for settings that change what {@link #solve()} returns.
+     */
+    protected void clearSolution() {
+        this.solution = null;
+    }
+    
     /**
      * Solve the path planning problem for this level.
      * 
@@ -65,7 +297,34 @@ public abstract class LevelSolver {
         List<FoodStorage> foodStorages = zooMap.getAllFoodStorages();
         
         // Call the level-specific optimization method
-        return optimizeForLevel(depot, enclosures, foodStorages);
+        List<List<Location>> paths = optimizeForLevel(depot, enclosures, foodStorages);
+        
+        // Spend any spare time budget improving the paths; keeps the best solution found.
+        // Evolution may use as many paths as the level's battery swaps allow, and never fewer
+        // than the level already planned (Level 1 flies one path on no swaps at all).
+        if (evolutionBudgetMillis > 0 && !paths.isEmpty()) {
+            paths = getIslandGeneticAlgorithm().evolve(
+                    paths, enclosures, batteryCapacity,
+                    Math.max(paths.size(), maxBatterySwaps), evolutionBudgetMillis);
+        }
+        if (annealingBudgetMillis > 0) {
+            paths = getSimulatedAnnealing().improve(paths, enclosures, batteryCapacity, annealingBudgetMillis);
+        }
+        
+        return paths;
+    }
+    
+    /**
+     * Get the solved level, solving it on the first call only. Changing the solver's
+     * budgets afterwards makes the next call solve again.
+     * 
+     * @return the paths from {@link #solve()} with what each of them feeds and costs
+     */
+    public Solution getSolution() {
+        if (solution == null) {
+            solution = Solution.of(solve(), distanceOracle);
+        }
+        return solution;
     }
     
     /**
@@ -74,8 +333,7 @@ public abstract class LevelSolver {
      * @return Formatted string ready for submission
      */
     public String generateSubmission() {
-        List<List<Location>> paths = solve();
-        return outputFormatter.formatForSubmission(paths);
+        return outputFormatter.formatForSubmission(getSolution().getPaths());
     }
     
     /**
@@ -84,47 +342,7 @@ public abstract class LevelSolver {
      * @return The total score for all paths
      */
     public double calculateTotalScore() {
-        List<List<Location>> paths = solve();
-        
-        // Extract fed enclosures for each path
-        List<List<AnimalEnclosure>> fedEnclosuresList = new ArrayList<>();
-        
-        for (List<Location> path : paths) {
-            List<AnimalEnclosure> fedEnclosures = extractFedEnclosures(path);
-            fedEnclosuresList.add(fedEnclosures);
-        }
-        
-        return scoreCalculator.calculateTotalScore(paths, fedEnclosuresList);
-    }
-    
-    /**
-     * Extract the enclosures that were fed in a path.
-     * 
-     * @param path The path to analyze
-     * @return List of enclosures that were fed
-     */
-    protected List<AnimalEnclosure> extractFedEnclosures(List<Location> path) {
-        List<AnimalEnclosure> fedEnclosures = new ArrayList<>();
-        Character currentFoodType = null;
-        
-        for (Location location : path) {
-            if (location instanceof FoodStorage) {
-                FoodStorage storage = (FoodStorage) location;
-                currentFoodType = storage.getFoodType();
-            } else if (location instanceof AnimalEnclosure) {
-                AnimalEnclosure enclosure = (AnimalEnclosure) location;
-                
-                // An enclosure is fed if the drone has the right food type
-                if (currentFoodType != null && currentFoodType == enclosure.getDiet()) {
-                    fedEnclosures.add(enclosure);
-                    
-                    // Mark the enclosure as fed
-                    enclosure.setFed(true);
-                }
-            }
-        }
-        
-        return fedEnclosures;
+        return getSolution().getTotalScore();
     }
     
     /**
@@ -0,0 +1,213 @@
+package main.java.levels;
+
+import core.models.AnimalEnclosure;
+import core.models.Location;
+import core.services.DistanceOracle;
+import core.services.FedSet;
+import core.services.LocationStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable solved level: the paths, the enclosures each path feeds, and the distance,
+ * importance and score per path and in total. Everything is measured in one pass when the
+ * solution is built, so the submission and every report read the same numbers without
+ * solving or walking the paths again.
+ * 
+ * An enclosure counts as fed on the first path that reaches it carrying its diet; later
+ * visits to it feed nothing, as in the competition's scoring.
+ */
+public final class Solution {
+    
+    private final List<List<Location>> paths;
+    private final List<List<AnimalEnclosure>> fedEnclosures;
+    private final FedSet fed;
+    private final double[] pathDistance;
+    private final double[] pathImportance;
+    private final int[] fedByDiet;
+    private final int fedCount;
+    private final double totalDistance;
+    private final double totalImportance;
+    
+    private Solution(List<List<Location>> paths, List<List<AnimalEnclosure>> fedEnclosures, FedSet fed,
+                     double[] pathDistance, double[] pathImportance, int[] fedByDiet) {
+        this.paths = paths;
+        this.fedEnclosures = fedEnclosures;
+        this.fed = fed;
+        this.pathDistance = pathDistance;
+        this.pathImportance = pathImportance;
+        this.fedByDiet = fedByDiet;
+        
+        double distance = 0;
+        double importance = 0;
+        for (int i = 0; i < paths.size(); i++) {
+            distance += pathDistance[i];
+            importance += pathImportance[i];
+        }
+        this.fedCount = fed.size();
+        this.totalDistance = distance;
+        this.totalImportance = importance;
+    }
+    
+    /**
+     * Measure solved paths. The paths are copied, and the zoo model is only read.
+     * 
+     * @param paths the solved paths, each from the depot back to the depot
+     * @param distanceOracle distances between the zoo's locations
+     * @return the measured solution
+     */
+    public static Solution of(List<List<Location>> paths, DistanceOracle distanceOracle) {
+        LocationStore store = distanceOracle.getStore();
+        FedSet fed = new FedSet(store);
+        int[] fedByDiet = new int[LocationStore.DIETS.length];
+        
+        List<List<Location>> copies = new ArrayList<>(paths.size());
+        List<List<AnimalEnclosure>> fedLists = new ArrayList<>(paths.size());
+        double[] pathDistance = new double[paths.size()];
+        double[] pathImportance = new double[paths.size()];
+        
+        for (int i = 0; i < paths.size(); i++) {
+            List<Location> path = paths.get(i);
+            List<AnimalEnclosure> fedOnPath = new ArrayList<>();
+            byte currentDiet = LocationStore.NO_DIET;
+            
+            for (Location location : path) {
+                int id = store.idOf(location);
+                if (id < 0) {
+                    continue; // Waypoints don't change what the drone carries
+                }
+                
+                if (store.isFoodStorage(id)) {
+                    currentDiet = store.diet(id);
+                } else if (store.isEnclosure(id) && currentDiet != LocationStore.NO_DIET
+                        && currentDiet == store.diet(id) && fed.add(id)) {
+                    AnimalEnclosure enclosure = (AnimalEnclosure) location;
+                    fedOnPath.add(enclosure);
+                    fedByDiet[currentDiet]++;
+                    pathImportance[i] += enclosure.getImportance();
+                }
+            }
+            
+            pathDistance[i] = distanceOracle.calculatePathDistance(path);
+            copies.add(Collections.unmodifiableList(new ArrayList<>(path)));
+            fedLists.add(Collections.unmodifiableList(fedOnPath));
+        }
+        
+        return new Solution(Collections.unmodifiableList(copies), Collections.unmodifiableList(fedLists), fed,
+                pathDistance, pathImportance, fedByDiet);
+    }
+    
+    /**
+     * @return the paths, one per battery; neither the list nor the paths can be modified
+     */
+    public List<List<Location>> getPaths() {
+        return paths;
+    }
+    
+    /**
+     * @return number of paths
+     */
+    public int getPathCount() {
+        return paths.size();
+    }
+    
+    /**
+     * @return true if no path was found
+     */
+    public boolean isEmpty() {
+        return paths.isEmpty();
+    }
+    
+    /**
+     * @param path index of the path
+     * @return the enclosures the path feeds, in visiting order
+     */
+    public List<AnimalEnclosure> getFedEnclosures(int path) {
+        return fedEnclosures.get(path);
+    }
+    
+    /**
+     * @return the enclosures fed by every path, aligned with {@link #getPaths()}
+     */
+    public List<List<AnimalEnclosure>> getFedEnclosures() {
+        return fedEnclosures;
+    }
+    
+    /**
+     * @param enclosure an enclosure of the zoo
+     * @return true if some path feeds it
+     */
+    public boolean isFed(AnimalEnclosure enclosure) {
+        return fed.contains(enclosure);
+    }
+    
+    /**
+     * @return a copy of the enclosures fed across all paths, free to change
+     */
+    public FedSet getFedSet() {
+        return fed.copy();
+    }
+    
+    /**
+     * @param path index of the path
+     * @return distance the path flies
+     */
+    public double getPathDistance(int path) {
+        return pathDistance[path];
+    }
+    
+    /**
+     * @param path index of the path
+     * @return total importance of the enclosures the path feeds
+     */
+    public double getPathImportance(int path) {
+        return pathImportance[path];
+    }
+    
+    /**
+     * @param path index of the path
+     * @return the path's score, importance * 1000 - distance
+     */
+    public double getPathScore(int path) {
+        return pathImportance[path] * 1000 - pathDistance[path];
+    }
+    
+    /**
+     * @param dietType diet character, 'c', 'h' or 'o'
+     * @return number of enclosures of that diet fed across all paths
+     * @throws IllegalArgumentException if the diet is not 'c', 'h' or 'o'
+     */
+    public int getFedCount(char dietType) {
+        return fedByDiet[LocationStore.dietOrdinal(dietType)];
+    }
+    
+    /**
+     * @return number of enclosures fed across all paths
+     */
+    public int getFedCount() {
+        return fedCount;
+    }
+    
+    /**
+     * @return distance flown across all paths
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+    
+    /**
+     * @return importance fed across all paths
+     */
+    public double getTotalImportance() {
+        return totalImportance;
+    }
+    
+    /**
+     * @return the score, sum(importance * 1000) - totalDistance
+     */
+    public double getTotalScore() {
+        return totalImportance * 1000 - totalDistance;
+    }
+}
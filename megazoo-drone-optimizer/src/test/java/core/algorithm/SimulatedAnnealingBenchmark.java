@@ -0,0 +1,45 @@
+package core.algorithm;
+
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.FedSet;
+import core.services.TestZoo;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Move rate of the annealer on a 1000-enclosure zoo. Throughput depends on the machine, so
+ * this stays out of the unit tests: run it with -Dbenchmarks=true on a quiet machine.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+public class SimulatedAnnealingBenchmark {
+
+    private static final double CAPACITY = 9250;
+    private static final int MAX_PATHS = 20;
+    private static final double MIN_MOVES_PER_SECOND = 100_000;
+
+    @Test
+    void moveRate() {
+        TestZoo zoo = new TestZoo(1000, 2500, 5);
+        DistanceOracle oracle = DistanceOracle.forStore(zoo.store, 50);
+        CandidateLists candidateLists = new CandidateLists(oracle);
+        List<List<Location>> start = new SavingsPlanner(oracle, candidateLists)
+                .planRoutes(zoo.enclosures, CAPACITY, MAX_PATHS, new FedSet(zoo.store));
+        SimulatedAnnealing annealing = new SimulatedAnnealing(oracle, candidateLists);
+        annealing.setSeed(42);
+
+        // Warm up once so the measured run is compiled code
+        annealing.improve(start, zoo.enclosures, CAPACITY, 500);
+        annealing.improve(start, zoo.enclosures, CAPACITY, 500);
+
+        System.out.println(annealing.getStatistics());
+        assertTrue(annealing.getMovesPerSecond() >= MIN_MOVES_PER_SECOND, annealing.getStatistics());
+    }
+}
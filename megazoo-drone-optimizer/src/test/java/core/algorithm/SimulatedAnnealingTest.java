@@ -0,0 +1,107 @@
+package core.algorithm;
+
+import core.models.Location;
+import core.services.CandidateLists;
+import core.services.DistanceOracle;
+import core.services.FedSet;
+import core.services.LocationStore;
+import core.services.TestZoo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fixed-seed runs of the annealer on a 1000-enclosure zoo, started from savings routes.
+ * Only behaviour is checked here; the move rate is measured by {@link SimulatedAnnealingBenchmark}.
+ */
+public class SimulatedAnnealingTest {
+
+    private static final double CAPACITY = 9250;
+    private static final int MAX_PATHS = 20;
+
+    private TestZoo zoo;
+    private DistanceOracle oracle;
+    private SimulatedAnnealing annealing;
+    private List<List<Location>> start;
+
+    @BeforeEach
+    void setUp() {
+        zoo = new TestZoo(1000, 2500, 5);
+        oracle = DistanceOracle.forStore(zoo.store, 50);
+        CandidateLists candidateLists = new CandidateLists(oracle);
+        start = new SavingsPlanner(oracle, candidateLists)
+                .planRoutes(zoo.enclosures, CAPACITY, MAX_PATHS, new FedSet(zoo.store));
+        annealing = new SimulatedAnnealing(oracle, candidateLists);
+        annealing.setSeed(42);
+    }
+
+    @Test
+    void improvesScoreAndKeepsPathsValid() {
+        List<List<Location>> improved = annealing.improve(start, zoo.enclosures, CAPACITY, 300);
+
+        assertTrue(score(improved) >= score(start), "annealing returned a worse solution");
+        assertEquals(start.size(), improved.size());
+        Set<Integer> fed = new HashSet<>();
+        for (List<Location> path : improved) {
+            assertEquals(zoo.depot, path.get(0));
+            assertEquals(zoo.depot, path.get(path.size() - 1));
+            assertTrue(oracle.calculatePathDistance(path) <= CAPACITY + 1e-6, "path exceeds the battery");
+            for (int id : fedIds(path)) {
+                assertTrue(fed.add(id), "enclosure fed twice");
+            }
+        }
+    }
+
+    @Test
+    void returnsTheBestStateItReports() {
+        List<List<Location>> improved = annealing.improve(start, zoo.enclosures, CAPACITY, 300);
+
+        // The annealer's own scoring agrees with an independent one on the start paths
+        assertEquals(score(start), annealing.getStartScore(), 1e-6 * Math.abs(score(start)));
+        assertTrue(annealing.getBestScore() >= annealing.getStartScore(), "best state worse than the start");
+
+        // The returned paths are the best snapshot; dropping empty storage visits only shortens them
+        double tolerance = 1e-6 * Math.abs(annealing.getBestScore());
+        if (annealing.getBestScore() > annealing.getStartScore()) {
+            assertTrue(score(improved) >= annealing.getBestScore() - tolerance,
+                    "returned paths score below the best state: " + annealing.getStatistics());
+        } else {
+            assertEquals(start, improved);
+        }
+    }
+
+    private double score(List<List<Location>> paths) {
+        double score = 0;
+        for (List<Location> path : paths) {
+            for (int id : fedIds(path)) {
+                score += zoo.store.importance(id) * 1000;
+            }
+            score -= oracle.calculatePathDistance(path);
+        }
+        return score;
+    }
+
+    private Set<Integer> fedIds(List<Location> path) {
+        LocationStore store = zoo.store;
+        Set<Integer> fed = new HashSet<>();
+        byte diet = LocationStore.NO_DIET;
+        for (Location location : path) {
+            int id = store.idOf(location);
+            if (id < 0) {
+                continue;
+            }
+            if (store.isFoodStorage(id)) {
+                diet = store.diet(id);
+            } else if (store.isEnclosure(id) && store.diet(id) == diet) {
+                fed.add(id);
+            }
+        }
+        return fed;
+    }
+}
@@ -0,0 +1,196 @@
+package core.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Claims under contention: builders racing over the same enclosures must each win an
+ * enclosure at most once between them, and failed route claims must roll back completely.
+ * A hand-built zoo pins empty routes and IDs on both sides of a bit-word boundary.
+ */
+public class ClaimRegistryTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 20;
+    private static final int ROUTE_LENGTH = 5;
+
+    private TestZoo zoo;
+    private int[] enclosures;
+
+    @BeforeEach
+    void setUp() {
+        zoo = new TestZoo(1000, 1000, 9);
+        int first = zoo.store.firstEnclosureId();
+        enclosures = IntStream.range(first, first + zoo.store.enclosureCount()).toArray();
+    }
+
+    @Test
+    void everyIdIsClaimedExactlyOnceAcrossThreads() throws InterruptedException {
+        for (int round = 0; round < ROUNDS; round++) {
+            ClaimRegistry claims = new ClaimRegistry(zoo.store);
+            AtomicIntegerArray wins = new AtomicIntegerArray(zoo.store.size());
+            CountDownLatch start = new CountDownLatch(1);
+
+            // Every thread tries every enclosure, in its own order
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int[] order = shuffled(enclosures, new Random(round * THREADS + t));
+                Thread thread = new Thread(() -> {
+                    await(start);
+                    for (int id : order) {
+                        if (claims.claim(id)) {
+                            wins.incrementAndGet(id);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            for (int id : enclosures) {
+                assertEquals(1, wins.get(id), "enclosure " + id + " claimed by the wrong number of threads");
+            }
+            assertEquals(enclosures.length, claims.count());
+        }
+    }
+
+    @Test
+    void routeClaimsNeverOverlapAcrossThreads() throws InterruptedException {
+        ClaimRegistry claims = new ClaimRegistry(zoo.store);
+        AtomicIntegerArray owners = new AtomicIntegerArray(zoo.store.size());
+        CountDownLatch start = new CountDownLatch(1);
+
+        // Threads claim random routes; a route either lands whole or leaves no trace
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                await(start);
+                for (int attempt = 0; attempt < 2000; attempt++) {
+                    int[] route = shuffled(enclosures, random);
+                    if (claims.claimAll(route, 0, ROUTE_LENGTH)) {
+                        for (int i = 0; i < ROUTE_LENGTH; i++) {
+                            owners.incrementAndGet(route[i]);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int owned = 0;
+        for (int id : enclosures) {
+            assertTrue(owners.get(id) <= 1, "enclosure " + id + " is on two routes");
+            assertEquals(owners.get(id) == 1, claims.isClaimed(id), "claim left behind by a rolled-back route");
+            owned += owners.get(id);
+        }
+        assertEquals(owned, claims.count());
+    }
+
+    @Test
+    void failedClaimAllReleasesItsOwnClaimsOnly() {
+        ClaimRegistry claims = new ClaimRegistry(zoo.store);
+        assertTrue(claims.claim(enclosures[2]));
+
+        int[] route = {enclosures[0], enclosures[1], enclosures[2], enclosures[3]};
+        assertFalse(claims.claimAll(route, 0, route.length));
+        assertFalse(claims.isClaimed(enclosures[0]));
+        assertFalse(claims.isClaimed(enclosures[1]));
+        assertTrue(claims.isClaimed(enclosures[2]), "another builder's claim was released");
+        assertFalse(claims.isClaimed(enclosures[3]));
+        assertEquals(1, claims.count());
+    }
+
+    @Test
+    void addToCopiesEveryClaimIntoTheFedSet() {
+        ClaimRegistry claims = new ClaimRegistry(zoo.store);
+        for (int i = 0; i < enclosures.length; i += 7) {
+            claims.claim(enclosures[i]);
+        }
+        claims.claim(zoo.store.size() - 1);
+
+        FedSet fed = new FedSet(zoo.store);
+        claims.addTo(fed);
+        assertEquals(claims.count(), fed.size());
+        for (int id = 0; id < zoo.store.size(); id++) {
+            assertEquals(claims.isClaimed(id), fed.contains(id));
+        }
+    }
+
+    @Test
+    void emptyRouteClaimsNothing() {
+        ClaimRegistry claims = new ClaimRegistry(zoo.store);
+        assertTrue(claims.claimAll(enclosures, 3, 3));
+        assertEquals(0, claims.count());
+    }
+
+    @Test
+    void wordBoundaryIdsAreClaimedAndReleasedIndependently() {
+        // Depot plus 64 enclosures: ID 63 ends the first word, ID 64 starts the second
+        TestZoo small = new TestZoo(Collections.emptyList(), TestZoo.line(64, 'o', 1.0));
+        ClaimRegistry claims = new ClaimRegistry(small.store);
+
+        assertTrue(claims.claimAll(new int[]{62, 63, 64}, 0, 3));
+        assertEquals(3, claims.count());
+        claims.release(63);
+        assertFalse(claims.isClaimed(63));
+        assertTrue(claims.isClaimed(62));
+        assertTrue(claims.isClaimed(64));
+
+        // Releasing what nobody holds changes nothing
+        claims.release(63);
+        assertEquals(2, claims.count());
+
+        // A route failing on its last ID rolls back the IDs before it
+        assertFalse(claims.claimAll(new int[]{1, 63, 64}, 0, 3));
+        assertFalse(claims.isClaimed(1));
+        assertFalse(claims.isClaimed(63));
+        assertEquals(2, claims.count());
+
+        FedSet fed = new FedSet(small.store);
+        claims.addTo(fed);
+        assertTrue(fed.contains(62));
+        assertTrue(fed.contains(64));
+        assertEquals(2, fed.size());
+    }
+
+    private static int[] shuffled(int[] ids, Random random) {
+        int[] copy = ids.clone();
+        for (int i = copy.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = copy[i];
+            copy[i] = copy[j];
+            copy[j] = swap;
+        }
+        return copy;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package core.services;
+
+import core.models.AnimalEnclosure;
+import core.models.FoodStorage;
+import main.java.core.mock.MockAnimalEnclosure;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Orders of the per-diet tables, checked against comparator sorts of the same IDs, and on
+ * hand-built zoos for ties, empty diets and coordinate spans too wide for a sort key.
+ */
+public class DietIndexTest {
+
+    @Test
+    void enclosuresAreOrderedByImportanceThenId() {
+        TestZoo zoo = new TestZoo(2000, 2500, 13);
+        DietIndex index = new DietIndex(zoo.store);
+        LocationStore store = zoo.store;
+
+        for (byte diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            int[] expected = enclosuresOf(store, diet)
+                    .boxed()
+                    .sorted(Comparator.<Integer>comparingDouble(id -> -store.importance(id))
+                            .thenComparingInt(id -> id))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            assertArrayEquals(expected, index.enclosuresByImportance(diet));
+        }
+    }
+
+    @Test
+    void enclosuresAreOrderedByLocationThenId() {
+        TestZoo zoo = new TestZoo(2000, 2500, 14);
+        DietIndex index = new DietIndex(zoo.store);
+        LocationStore store = zoo.store;
+
+        for (byte diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            int[] expected = enclosuresOf(store, diet)
+                    .boxed()
+                    .sorted(Comparator.<Integer>comparingInt(store::x)
+                            .thenComparingInt(store::y)
+                            .thenComparingInt(id -> id))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            assertArrayEquals(expected, index.enclosuresByLocation(diet));
+        }
+    }
+
+    @Test
+    void tiesAndNegativeCoordinatesKeepTheirOrder() {
+        // Equal importances and shared positions, some left of and below the origin
+        TestZoo base = new TestZoo(0, 100, 15);
+        List<AnimalEnclosure> enclosures = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            enclosures.add(new MockAnimalEnclosure(i % 3 - 1, -(i % 2) * 40, 10, i % 4 == 0 ? 2.5 : 7.0, 'h'));
+        }
+        LocationStore store = new LocationStore(base.depot, base.foodStorages, enclosures);
+        DietIndex index = new DietIndex(store);
+        byte herbivores = (byte) LocationStore.dietOrdinal('h');
+
+        int first = store.firstEnclosureId();
+        assertArrayEquals(new int[]{first + 1, first + 2, first + 3, first + 5, first + 6, first + 7,
+                        first + 9, first + 10, first + 11, first, first + 4, first + 8},
+                index.enclosuresByImportance(herbivores));
+        assertArrayEquals(new int[]{first + 3, first + 9, first, first + 6, first + 1, first + 7,
+                        first + 4, first + 10, first + 5, first + 11, first + 2, first + 8},
+                index.enclosuresByLocation(herbivores));
+        assertEquals(0, index.enclosuresByLocation((byte) LocationStore.dietOrdinal('c')).length);
+    }
+
+    @Test
+    void storagesAreGroupedByDietInIdOrder() {
+        TestZoo zoo = new TestZoo(50, 1000, 16);
+        DietIndex index = new DietIndex(zoo.store);
+
+        int total = 0;
+        for (byte diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            int previous = -1;
+            for (int id : index.storages(diet)) {
+                FoodStorage storage = (FoodStorage) zoo.store.location(id);
+                assertEquals(LocationStore.DIETS[diet], storage.getFoodType());
+                assertTrue(id > previous, "storages out of ID order");
+                previous = id;
+            }
+            total += index.storages(diet).length;
+        }
+        assertEquals(zoo.foodStorages.size(), total);
+    }
+
+    @Test
+    void aggregatesSumEachDietsEnclosures() {
+        TestZoo zoo = new TestZoo(500, 1000, 17);
+        DietIndex index = new DietIndex(zoo.store);
+
+        int count = 0;
+        for (byte diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            double importance = enclosuresOf(zoo.store, diet).mapToDouble(zoo.store::importance).sum();
+            assertEquals(enclosuresOf(zoo.store, diet).count(), index.enclosureCount(diet));
+            assertEquals(importance, index.totalImportance(diet), 1e-6 * Math.max(1, importance));
+            count += index.enclosureCount(diet);
+        }
+        assertEquals(zoo.enclosures.size(), count);
+    }
+
+    @Test
+    void dietWithoutLocationsHasEmptyTables() {
+        TestZoo small = new TestZoo(Collections.emptyList(), TestZoo.line(1, 'o', 3.0));
+        DietIndex index = new DietIndex(small.store);
+        byte carnivores = LocationStore.dietOrdinal('c');
+        byte omnivores = LocationStore.dietOrdinal('o');
+
+        assertEquals(0, index.enclosuresByImportance(carnivores).length);
+        assertEquals(0, index.enclosuresByLocation(carnivores).length);
+        assertEquals(0, index.storages(carnivores).length);
+        assertEquals(0, index.storages(omnivores).length);
+        assertEquals(0, index.enclosureCount(carnivores));
+        assertEquals(0.0, index.totalImportance(carnivores), 0);
+        assertEquals(1, index.enclosureCount(omnivores));
+        assertEquals(3.0, index.totalImportance(omnivores), 1e-6);
+        assertArrayEquals(new int[]{small.store.firstEnclosureId()}, index.enclosuresByImportance(omnivores));
+        assertArrayEquals(new int[]{small.store.firstEnclosureId()}, index.enclosuresByLocation(omnivores));
+    }
+
+    @Test
+    void equalImportancesFallBackToIdOrder() {
+        TestZoo small = new TestZoo(Collections.emptyList(), TestZoo.line(5, 'c', 4.0));
+        DietIndex index = new DietIndex(small.store);
+        int first = small.store.firstEnclosureId();
+
+        assertArrayEquals(IntStream.range(first, first + 5).toArray(),
+                index.enclosuresByImportance(LocationStore.dietOrdinal('c')));
+    }
+
+    @Test
+    void coordinatesSpanningTooFarAreRejected() {
+        List<AnimalEnclosure> corners = List.of(
+                new MockAnimalEnclosure(Integer.MIN_VALUE, Integer.MIN_VALUE, 10, 1.0, 'h'),
+                new MockAnimalEnclosure(Integer.MAX_VALUE, Integer.MAX_VALUE, 10, 1.0, 'h'));
+        TestZoo wide = new TestZoo(Collections.emptyList(), corners);
+
+        assertThrows(IllegalArgumentException.class, () -> new DietIndex(wide.store));
+    }
+
+    private static IntStream enclosuresOf(LocationStore store, byte diet) {
+        int first = store.firstEnclosureId();
+        return IntStream.range(first, first + store.enclosureCount()).filter(id -> store.diet(id) == diet);
+    }
+}
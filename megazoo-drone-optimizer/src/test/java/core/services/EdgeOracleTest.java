@@ -0,0 +1,121 @@
+package core.services;
+
+import core.models.AnimalEnclosure;
+import core.models.Deadzone;
+import core.models.FoodStorage;
+import main.java.core.mock.MockAnimalEnclosure;
+import main.java.core.mock.MockDeadzone;
+import main.java.core.mock.MockDepot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Edge facts under contention: threads that miss on the same blocked edge at once must all
+ * see the positive detour length, whichever of them wins the race to fill the slot.
+ */
+public class EdgeOracleTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+
+    @Test
+    void blockedEdgeLengthIsTheSameDetourFromEveryThread() throws InterruptedException {
+        MockDepot depot = new MockDepot(500, 500, 50);
+        AnimalEnclosure west = new MockAnimalEnclosure(100, 500, 50, 1.0, 'c');
+        AnimalEnclosure east = new MockAnimalEnclosure(900, 500, 50, 1.0, 'c');
+        List<AnimalEnclosure> enclosures = List.of(west, east);
+        LocationStore store = new LocationStore(depot, Collections.<FoodStorage>emptyList(), enclosures);
+        List<Deadzone> deadzones = List.of(new MockDeadzone(500, 500, 100));
+        VisibilityGraph graph = new VisibilityGraph(deadzones, 50);
+
+        double expected = graph.shortestPath(west, east).getLength();
+        assertTrue(expected > 800, "the deadzone should force a detour");
+
+        for (int round = 0; round < ROUNDS; round++) {
+            // A fresh oracle per round so every round starts with the edge unknown
+            EdgeOracle oracle = new EdgeOracle(store, graph, 16);
+            AtomicReference<String> failure = new AtomicReference<>();
+            CountDownLatch start = new CountDownLatch(1);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                boolean reversed = t % 2 == 1;
+                Thread thread = new Thread(() -> {
+                    await(start);
+                    for (int call = 0; call < 4; call++) {
+                        double length = reversed ? oracle.length(east, west) : oracle.length(west, east);
+                        if (length != expected) {
+                            failure.compareAndSet(null, "got " + length + ", expected " + expected);
+                        }
+                        if (!oracle.isBlocked(west, east)) {
+                            failure.compareAndSet(null, "edge reported clear");
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertNull(failure.get(), "round " + round);
+            assertEquals(1, oracle.getEntries());
+        }
+    }
+
+    @Test
+    void edgeWithoutDetourIsInfiniteFromEveryThread() throws InterruptedException {
+        // The east enclosure sits inside a deadzone, so no safe route reaches it
+        MockDepot depot = new MockDepot(0, 0, 50);
+        AnimalEnclosure west = new MockAnimalEnclosure(100, 500, 50, 1.0, 'h');
+        AnimalEnclosure east = new MockAnimalEnclosure(900, 500, 50, 1.0, 'h');
+        LocationStore store = new LocationStore(depot, Collections.<FoodStorage>emptyList(), List.of(west, east));
+        VisibilityGraph graph = new VisibilityGraph(List.of(new MockDeadzone(900, 500, 50)), 50);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            EdgeOracle oracle = new EdgeOracle(store, graph, 16);
+            AtomicReference<String> failure = new AtomicReference<>();
+            CountDownLatch start = new CountDownLatch(1);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                Thread thread = new Thread(() -> {
+                    await(start);
+                    for (int call = 0; call < 4; call++) {
+                        double length = oracle.length(west, east);
+                        if (length != Double.POSITIVE_INFINITY) {
+                            failure.compareAndSet(null, "got " + length);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertNull(failure.get(), "round " + round);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package core.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Membership and copy-on-write behaviour of the per-solution fed set, on a random zoo and
+ * on a hand-built one whose IDs straddle a bit-word boundary.
+ */
+public class FedSetTest {
+
+    private TestZoo zoo;
+    private FedSet fed;
+    private int first;
+
+    @BeforeEach
+    void setUp() {
+        zoo = new TestZoo(200, 1000, 3);
+        fed = new FedSet(zoo.store);
+        first = zoo.store.firstEnclosureId();
+    }
+
+    @Test
+    void addRemoveAndContains() {
+        assertTrue(fed.add(first));
+        assertFalse(fed.add(first), "adding twice must report no change");
+        assertTrue(fed.add(zoo.enclosures.get(5)));
+        assertTrue(fed.contains(first));
+        assertTrue(fed.contains(zoo.enclosures.get(5)));
+        assertFalse(fed.contains(first + 1));
+        assertEquals(2, fed.size());
+
+        assertTrue(fed.remove(first));
+        assertFalse(fed.remove(first), "removing twice must report no change");
+        assertFalse(fed.contains(first));
+        assertEquals(1, fed.size());
+    }
+
+    @Test
+    void copiesAreIsolatedFromTheirSource() {
+        fed.add(first);
+        FedSet copy = fed.copy();
+        assertTrue(copy.contains(first));
+
+        copy.add(first + 1);
+        fed.add(first + 2);
+        assertFalse(fed.contains(first + 1), "a write to the copy leaked into the source");
+        assertFalse(copy.contains(first + 2), "a write to the source leaked into the copy");
+        assertEquals(2, fed.size());
+        assertEquals(2, copy.size());
+    }
+
+    @Test
+    void clearingACopyLeavesTheSourceIntact() {
+        for (int id = first; id < first + 64; id++) {
+            fed.add(id);
+        }
+        FedSet copy = fed.copy();
+        FedSet copyOfCopy = copy.copy();
+        copy.clear();
+
+        assertEquals(0, copy.size());
+        assertFalse(copy.contains(first));
+        assertEquals(64, fed.size());
+        assertEquals(64, copyOfCopy.size());
+        for (int id = first; id < first + 64; id++) {
+            assertTrue(fed.contains(id));
+            assertTrue(copyOfCopy.contains(id));
+        }
+    }
+
+    @Test
+    void locationsOutsideTheStoreAreNeverContained() {
+        TestZoo other = new TestZoo(10, 1000, 4);
+        assertFalse(fed.contains(other.enclosures.get(0)));
+        assertFalse(fed.add(other.enclosures.get(0)));
+        assertEquals(0, fed.size());
+    }
+
+    @Test
+    void idsOnBothSidesOfAWordBoundaryAreIndependent() {
+        // Depot plus 64 enclosures: IDs 0..64, so 63 ends the first word and 64 is alone in the second
+        TestZoo small = new TestZoo(Collections.emptyList(), TestZoo.line(64, 'c', 1.0));
+        FedSet set = new FedSet(small.store);
+        assertEquals(65, small.store.size());
+
+        assertTrue(set.add(63));
+        assertTrue(set.add(64));
+        assertTrue(set.contains(63));
+        assertTrue(set.contains(64));
+        assertFalse(set.contains(0));
+
+        FedSet copy = set.copy();
+        assertTrue(copy.remove(64));
+        assertTrue(set.contains(64), "removing the last ID from a copy leaked into the source");
+        assertFalse(copy.contains(64));
+        assertTrue(copy.contains(63));
+
+        assertTrue(set.remove(63));
+        assertEquals(1, set.size());
+        assertTrue(set.contains(64));
+    }
+
+    @Test
+    void zooWithoutEnclosuresHoldsOnlyTheDepot() {
+        TestZoo empty = new TestZoo(Collections.emptyList(), Collections.emptyList());
+        FedSet set = new FedSet(empty.store);
+
+        assertEquals(0, set.size());
+        assertFalse(set.contains(empty.depot));
+        FedSet copy = set.copy();
+        copy.clear();
+        assertTrue(copy.add(0));
+        assertFalse(set.contains(0));
+    }
+}
@@ -0,0 +1,201 @@
+package core.services;
+
+import core.models.AnimalEnclosure;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Swap-remove bookkeeping of the remaining-enclosure set, checked against a plain hash set
+ * after every operation, for the whole set and each diet's view, and on a hand-built zoo for
+ * removals at the last slot and diets without enclosures.
+ */
+public class RemainingSetTest {
+
+    private TestZoo zoo;
+    private RemainingSet remaining;
+
+    @BeforeEach
+    void setUp() {
+        zoo = new TestZoo(300, 1000, 21);
+        remaining = new RemainingSet(zoo.store, zoo.enclosures);
+    }
+
+    @Test
+    void randomAddsAndRemovesMatchAReferenceSet() {
+        Set<Integer> reference = new HashSet<>();
+        for (AnimalEnclosure enclosure : zoo.enclosures) {
+            reference.add(zoo.store.idOf(enclosure));
+        }
+        assertConsistent(reference);
+
+        Random random = new Random(5);
+        int first = zoo.store.firstEnclosureId();
+        for (int step = 0; step < 2000; step++) {
+            int id = first + random.nextInt(zoo.store.enclosureCount());
+            if (random.nextBoolean()) {
+                assertEquals(reference.add(id), remaining.add(id));
+            } else {
+                assertEquals(reference.remove(id), remaining.remove(id));
+            }
+            if (step % 50 == 0) {
+                assertConsistent(reference);
+            }
+        }
+        assertConsistent(reference);
+    }
+
+    @Test
+    void removingMovesTheLastMemberIntoTheFreedSlot() {
+        int victim = remaining.id(3);
+        int last = remaining.id(remaining.size() - 1);
+
+        assertTrue(remaining.remove(victim));
+        assertEquals(last, remaining.id(3));
+        assertEquals(3, remaining.indexOf(last));
+        assertEquals(-1, remaining.indexOf(victim));
+        assertFalse(remaining.contains(victim));
+    }
+
+    @Test
+    void dietViewsHoldOnlyTheirDiet() {
+        int total = 0;
+        for (byte diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            List<AnimalEnclosure> view = remaining.asList(diet);
+            assertEquals(remaining.size(diet), view.size());
+            for (AnimalEnclosure enclosure : view) {
+                assertEquals(LocationStore.DIETS[diet], enclosure.getDiet());
+            }
+            total += view.size();
+        }
+        assertEquals(remaining.size(), total);
+
+        // Views are live: removing through the set shows up in the diet's view
+        AnimalEnclosure enclosure = remaining.asList((byte) 1).get(0);
+        int before = remaining.asList((byte) 1).size();
+        remaining.remove(enclosure);
+        assertEquals(before - 1, remaining.asList((byte) 1).size());
+        assertFalse(remaining.asList((byte) 1).contains(enclosure));
+    }
+
+    @Test
+    void clearedSetCanBeRefilled() {
+        remaining.clear();
+        assertTrue(remaining.isEmpty());
+        for (byte diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            assertEquals(0, remaining.size(diet));
+        }
+        for (AnimalEnclosure enclosure : zoo.enclosures) {
+            assertFalse(remaining.contains(enclosure));
+        }
+
+        List<AnimalEnclosure> subset = new ArrayList<>(zoo.enclosures.subList(10, 40));
+        for (AnimalEnclosure enclosure : subset) {
+            assertTrue(remaining.add(enclosure));
+        }
+        assertEquals(subset.size(), remaining.size());
+        assertEquals(new HashSet<>(subset), new HashSet<>(remaining.asList()));
+    }
+
+    @Test
+    void locationsOutsideTheStoreAreIgnored() {
+        TestZoo other = new TestZoo(10, 1000, 22);
+        int size = remaining.size();
+        assertFalse(remaining.add(other.enclosures.get(0)));
+        assertFalse(remaining.remove(other.enclosures.get(0)));
+        assertFalse(remaining.contains(other.enclosures.get(0)));
+        assertFalse(remaining.add(zoo.foodStorages.get(0)), "food storages are not enclosures");
+        assertEquals(size, remaining.size());
+    }
+
+    /**
+     * Check size, membership, slot positions and every diet's view against the reference.
+     */
+    private void assertConsistent(Set<Integer> reference) {
+        assertEquals(reference.size(), remaining.size());
+        Set<Integer> members = new HashSet<>();
+        for (int i = 0; i < remaining.size(); i++) {
+            int id = remaining.id(i);
+            assertEquals(i, remaining.indexOf(id));
+            members.add(id);
+        }
+        assertEquals(reference, members);
+
+        for (byte diet = 0; diet < LocationStore.DIETS.length; diet++) {
+            Set<Integer> dietMembers = new HashSet<>();
+            for (int i = 0; i < remaining.size(diet); i++) {
+                int id = remaining.id(diet, i);
+                assertEquals(diet, zoo.store.diet(id));
+                dietMembers.add(id);
+            }
+            int expected = 0;
+            for (int id : reference) {
+                if (zoo.store.diet(id) == diet) {
+                    expected++;
+                    assertTrue(dietMembers.contains(id));
+                }
+            }
+            assertEquals(expected, remaining.size(diet));
+        }
+    }
+
+    @Test
+    void removingTheLastSlotMovesNothing() {
+        List<AnimalEnclosure> enclosures = new ArrayList<>(TestZoo.line(3, 'h', 1.0));
+        enclosures.addAll(TestZoo.line(1, 'o', 1.0));
+        TestZoo small = new TestZoo(Collections.emptyList(), enclosures);
+        RemainingSet set = new RemainingSet(small.store, small.enclosures);
+        int first = small.store.firstEnclosureId();
+        byte herbivores = LocationStore.dietOrdinal('h');
+        byte omnivores = LocationStore.dietOrdinal('o');
+
+        // The omnivore holds the last slot overall and the only slot of its diet
+        assertEquals(first + 3, set.id(set.size() - 1));
+        assertTrue(set.remove(first + 3));
+        assertEquals(0, set.size(omnivores));
+        assertTrue(set.asList(omnivores).isEmpty());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(first + i, set.id(i), "a member moved although the last slot was removed");
+            assertEquals(first + i, set.id(herbivores, i));
+        }
+
+        // Removing a diet's last slot leaves the rest of that diet in place too
+        assertTrue(set.remove(first + 2));
+        assertEquals(first, set.id(herbivores, 0));
+        assertEquals(first + 1, set.id(herbivores, 1));
+        assertEquals(2, set.size(herbivores));
+
+        // Down to one member and then to none
+        assertTrue(set.remove(first));
+        assertEquals(first + 1, set.id(0));
+        assertEquals(0, set.indexOf(first + 1));
+        assertTrue(set.remove(first + 1));
+        assertTrue(set.isEmpty());
+        assertFalse(set.remove(first + 1));
+    }
+
+    @Test
+    void dietsWithoutEnclosuresStayEmpty() {
+        TestZoo small = new TestZoo(Collections.emptyList(), TestZoo.line(2, 'c', 1.0));
+        RemainingSet set = new RemainingSet(small.store, small.enclosures);
+        byte herbivores = LocationStore.dietOrdinal('h');
+
+        assertEquals(2, set.size());
+        assertEquals(0, set.size(herbivores));
+        assertTrue(set.asList(herbivores).isEmpty());
+        set.clear();
+        assertEquals(0, set.size(LocationStore.dietOrdinal('c')));
+        assertTrue(set.add(small.enclosures.get(1)));
+        assertEquals(0, set.indexOf(small.store.idOf(small.enclosures.get(1))));
+    }
+}
@@ -0,0 +1,132 @@
+package core.services;
+
+import core.models.AnimalEnclosure;
+import main.java.core.mock.MockAnimalEnclosure;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Ring-search queries of the grid index, checked against a brute-force scan, and on
+ * hand-built zoos for empty indexes, ties and the exact range boundary.
+ */
+public class SpatialIndexTest {
+
+    private TestZoo zoo;
+    private double[] vertical;
+    private int[] enclosures;
+    private SpatialIndex index;
+
+    @BeforeEach
+    void setUp() {
+        zoo = new TestZoo(2000, 3000, 11);
+        vertical = IntStream.of(zoo.store.zs()).mapToDouble(z -> Math.abs(50 - z)).toArray();
+        int first = zoo.store.firstEnclosureId();
+        enclosures = IntStream.range(first, first + zoo.store.enclosureCount()).toArray();
+        index = new SpatialIndex(zoo.store, vertical, enclosures);
+    }
+
+    @Test
+    void nearestSkipsExcludedIdsAndKeepsSearchingOutward() {
+        Random random = new Random(7);
+        FedSet fed = new FedSet(zoo.store);
+        for (int id : enclosures) {
+            if (random.nextInt(10) < 9) {
+                fed.add(id);
+            }
+        }
+
+        int k = 12;
+        for (int query = 0; query < 50; query++) {
+            int x = random.nextInt(3000);
+            int y = random.nextInt(3000);
+            int[] ids = new int[k];
+            double[] distances = new double[k];
+            int found = index.nearest(x, y, 10, k, fed::contains, ids, distances);
+
+            int[] expected = IntStream.of(enclosures)
+                    .filter(id -> !fed.contains(id))
+                    .boxed()
+                    .sorted((a, b) -> Double.compare(distance(x, y, a), distance(x, y, b)))
+                    .limit(k)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            assertEquals(expected.length, found);
+            assertArrayEquals(expected, Arrays.copyOf(ids, found));
+        }
+    }
+
+    @Test
+    void nearestReturnsEverythingLeftWhenFewerThanKPassTheFilter() {
+        FedSet fed = new FedSet(zoo.store);
+        for (int id : enclosures) {
+            fed.add(id);
+        }
+        fed.remove(enclosures[17]);
+        fed.remove(enclosures[1234]);
+
+        int[] ids = new int[5];
+        double[] distances = new double[5];
+        int found = index.nearest(0, 0, 10, 5, fed::contains, ids, distances);
+        assertEquals(2, found);
+        int[] sorted = Arrays.copyOf(ids, found);
+        Arrays.sort(sorted);
+        assertArrayEquals(new int[]{enclosures[17], enclosures[1234]}, sorted);
+    }
+
+    @Test
+    void emptyIndexFindsNothing() {
+        SpatialIndex empty = new SpatialIndex(zoo.store, vertical, new int[0]);
+        assertEquals(0, empty.size());
+        assertEquals(-1, empty.nearest(100, 100, 10));
+        assertEquals(0, empty.nearest(100, 100, 10, 3, -1, new int[3], new double[3]));
+        assertEquals(0, empty.withinRange(100, 100, 10, 1e9, new int[0]));
+    }
+
+    @Test
+    void equidistantIdsAreAllFoundAndTheRangeIsInclusive() {
+        // Four enclosures 30 m from (50, 50) in each direction, all at the same height
+        List<AnimalEnclosure> ring = List.of(
+                new MockAnimalEnclosure(80, 50, 10, 1.0, 'c'),
+                new MockAnimalEnclosure(50, 80, 10, 1.0, 'c'),
+                new MockAnimalEnclosure(20, 50, 10, 1.0, 'c'),
+                new MockAnimalEnclosure(50, 20, 10, 1.0, 'c'));
+        TestZoo small = new TestZoo(Collections.emptyList(), ring);
+        double[] legs = IntStream.of(small.store.zs()).mapToDouble(z -> Math.abs(50 - z)).toArray();
+        int first = small.store.firstEnclosureId();
+        int[] ids = IntStream.range(first, first + 4).toArray();
+        SpatialIndex ringIndex = new SpatialIndex(small.store, legs, ids);
+
+        int[] out = new int[6];
+        double[] distances = new double[6];
+        assertEquals(4, ringIndex.nearest(50, 50, 0, 6, -1, out, distances));
+        int[] found = Arrays.copyOf(out, 4);
+        Arrays.sort(found);
+        assertArrayEquals(ids, found);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(70.0, distances[i], 0);
+        }
+
+        // Exactly 30 m across plus the 40 m landing leg is in range, a hair less is not
+        assertEquals(4, ringIndex.withinRange(50, 50, 0, 70.0, new int[4]));
+        assertEquals(0, ringIndex.withinRange(50, 50, 0, Math.nextDown(70.0), new int[4]));
+
+        // Excluding every ID but one still finds that one, however far the search goes
+        assertEquals(1, ringIndex.nearest(50, 50, 0, 2, id -> id != first + 2, out, distances));
+        assertEquals(first + 2, out[0]);
+    }
+
+    private double distance(int x, int y, int id) {
+        double dx = zoo.store.x(id) - x;
+        double dy = zoo.store.y(id) - y;
+        return 10 + Math.sqrt(dx * dx + dy * dy) + vertical[id];
+    }
+}
@@ -0,0 +1,75 @@
+package core.services;
+
+import core.models.AnimalEnclosure;
+import core.models.Depot;
+import core.models.FoodStorage;
+import main.java.core.mock.MockAnimalEnclosure;
+import main.java.core.mock.MockDepot;
+import main.java.core.mock.MockFoodStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Zoo for tests: either random, with a depot in the middle, three food storages per diet
+ * and enclosures spread uniformly over a square, or hand-built from given locations.
+ * The same seed gives the same random zoo.
+ */
+public class TestZoo {
+
+    public final Depot depot;
+    public final List<FoodStorage> foodStorages = new ArrayList<>();
+    public final List<AnimalEnclosure> enclosures = new ArrayList<>();
+    public final LocationStore store;
+
+    /**
+     * @param enclosureCount number of enclosures
+     * @param size edge length of the zoo in meters
+     * @param seed random seed
+     */
+    public TestZoo(int enclosureCount, int size, long seed) {
+        Random random = new Random(seed);
+        this.depot = new MockDepot(size / 2, size / 2, 15);
+        for (int i = 0; i < 3 * LocationStore.DIETS.length; i++) {
+            foodStorages.add(new MockFoodStorage(random.nextInt(size), random.nextInt(size), random.nextInt(50),
+                    LocationStore.DIETS[i % LocationStore.DIETS.length]));
+        }
+        for (int i = 0; i < enclosureCount; i++) {
+            enclosures.add(new MockAnimalEnclosure(random.nextInt(size), random.nextInt(size), random.nextInt(50),
+                    Math.round(random.nextDouble() * 100) / 10.0,
+                    LocationStore.DIETS[random.nextInt(LocationStore.DIETS.length)]));
+        }
+        this.store = new LocationStore(depot, foodStorages, enclosures);
+    }
+
+    /**
+     * Hand-built zoo around a depot at the origin. IDs follow the store's layout: the depot
+     * is 0, then the storages and then the enclosures in the given order.
+     *
+     * @param foodStorages the zoo's food storages
+     * @param enclosures the zoo's enclosures
+     */
+    public TestZoo(List<FoodStorage> foodStorages, List<AnimalEnclosure> enclosures) {
+        this.depot = new MockDepot(0, 0, 15);
+        this.foodStorages.addAll(foodStorages);
+        this.enclosures.addAll(enclosures);
+        this.store = new LocationStore(depot, this.foodStorages, this.enclosures);
+    }
+
+    /**
+     * Enclosures of one diet and importance, 10 meters apart along the x axis.
+     *
+     * @param count number of enclosures
+     * @param diet their diet type
+     * @param importance their importance
+     * @return the enclosures, west to east
+     */
+    public static List<AnimalEnclosure> line(int count, char diet, double importance) {
+        List<AnimalEnclosure> line = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            line.add(new MockAnimalEnclosure(10 * (i + 1), 0, 10, importance, diet));
+        }
+        return line;
+    }
+}